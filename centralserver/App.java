@@ -12,8 +12,11 @@ import java.rmi.registry.Registry;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import util.ConfigUtil;
+import util.ExecutionMode;
 import util.Logger;
 import util.RMIAccess;
+import util.TaskExecutor;
 import util.ThreadSafeStringFormatter;
 
 /**
@@ -29,6 +32,7 @@ public class App {
 
   private final List<RMIAccess<IChatroomOperations>> chatroomNodes;
   private final Object chatroomNodeLock;
+  private final ChatroomDirectory directory;
   private final List<RMIAccess<IDataOperations>> dataNodesOperations;
   private final Object dataNodeOperationsLock;
   private final List<RMIAccess<IDataParticipant>> dataNodesParticipants;
@@ -40,6 +44,7 @@ public class App {
    */
   public App() {
     this.chatroomNodeLock = new Object();
+    this.directory = new ChatroomDirectory();
     this.dataNodeOperationsLock = new Object();
     this.dataNodeParticipantsLock = new Object();
     this.chatroomNodes = Collections.synchronizedList(new ArrayList<>());
@@ -57,12 +62,38 @@ public class App {
    * @throws RemoteException if there is an error generating RMI interfaces
    */
   public void go(ServerInfo serverInfo) throws RemoteException {
+    // choose the threads that run 2 phase commit tasks before any transaction starts
+    ExecutionMode mode = TaskExecutor.setup(serverInfo.getExecutionMode(),
+        serverInfo.getExecutorThreads());
+    if (mode != serverInfo.getExecutionMode()) {
+      Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Execution mode \"%s\" is not supported by this JVM; using \"%s\"",
+          serverInfo.getExecutionMode(),
+          mode
+          ));
+    }
+    Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
+        "Running tasks in execution mode \"%s\"",
+        mode
+        ));
+
+    // chat server nodes push their load to the central server, which places new chatrooms from
+    // the last load each node reported using the configured placement strategy
+    ChatNodeLoads loads = new ChatNodeLoads(serverInfo.getLoadReportStale(),
+        PlacementStrategy.create(serverInfo.getPlacementPolicy()));
+    Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
+        "Placing chatrooms with placement policy \"%s\"",
+        serverInfo.getPlacementPolicy()
+        ));
+
     // start registry for Register function
     Registry centralOperationsRegistry = 
         LocateRegistry.createRegistry(serverInfo.getRegisterPort());
     ICentralOperations centralOperationsEngine = new CentralOperations(
         this.chatroomNodes,
         this.chatroomNodeLock,
+        this.directory,
+        loads,
         this.dataNodesOperations,
         this.dataNodeOperationsLock,
         this.dataNodesParticipants,
@@ -74,6 +105,8 @@ public class App {
     ResourceCleaner cleaner = new ResourceCleaner(
         this.chatroomNodes,
         this.chatroomNodeLock,
+        this.directory,
+        loads,
         this.dataNodesOperations,
         this.dataNodeOperationsLock,
         this.dataNodesParticipants,
@@ -92,9 +125,12 @@ public class App {
     // start registry for Chatroom -> Central Server communication
     Registry centralChatroomOperationsRegistry = 
         LocateRegistry.createRegistry(serverInfo.getChatroomPort());
+    // concurrent chat log requests are grouped into a single two phase commit
+    LogGroupCommit groupCommit = new LogGroupCommit(this.dataNodesParticipants,
+        this.dataNodeParticipantsLock, coordinatorEngine, serverInfo.getGroupCommitWindow(),
+        serverInfo.getGroupCommitMaxEntries());
     ICentralChatroomOperations centralChatroomOperationsEngine = 
-        new CentralChatroomOperations(this.dataNodesParticipants, 
-            this.dataNodeParticipantsLock, coordinatorEngine);
+        new CentralChatroomOperations(groupCommit, this.directory);
     centralChatroomOperationsRegistry.rebind("ICentralChatroomOperations", 
         centralChatroomOperationsEngine);
 
@@ -105,6 +141,9 @@ public class App {
     ICentralUserOperations centralUserOperationsEngine = new CentralUserOperations(
         this.chatroomNodes,
         this.chatroomNodeLock,
+        this.directory,
+        loads,
+        new ChatroomLister(serverInfo.getListDeadline(), serverInfo.getListCache()),
         this.dataNodesOperations,
         this.dataNodeOperationsLock,
         this.dataNodesParticipants,
@@ -215,6 +254,24 @@ public class App {
           ));
     }
 
-    return new ServerInfo(registerPort, chatroomPort, userPort, coordinatorPort);
+    // optional tuning values are read from system properties
+    long groupCommitWindow = ConfigUtil.getLong("centralserver.groupCommitWindowMs", 5, 0);
+    int groupCommitMaxEntries = ConfigUtil.getInt("centralserver.groupCommitMaxEntries", 1000, 1);
+    ExecutionMode executionMode = ConfigUtil.getEnum("centralserver.executionMode",
+        ExecutionMode.class, ExecutionMode.PLATFORM);
+    int executorThreads = ConfigUtil.getInt("centralserver.executorThreads",
+        TaskExecutor.DEFAULT_PLATFORM_THREADS, 1);
+    long loadReportStale = ConfigUtil.getLong("centralserver.loadReportStaleMs",
+        ChatNodeLoads.DEFAULT_STALE_MS, 1);
+    PlacementPolicy placementPolicy = ConfigUtil.getEnum("centralserver.placementPolicy",
+        PlacementPolicy.class, PlacementPolicy.LEAST_LOADED);
+    long listDeadline = ConfigUtil.getLong("centralserver.listDeadlineMs",
+        ChatroomLister.DEFAULT_DEADLINE_MS, 1);
+    long listCache = ConfigUtil.getLong("centralserver.listCacheMs",
+        ChatroomLister.DEFAULT_CACHE_MS, 0);
+
+    return new ServerInfo(registerPort, chatroomPort, userPort, coordinatorPort,
+        groupCommitWindow, groupCommitMaxEntries, executionMode, executorThreads,
+        loadReportStale, placementPolicy, listDeadline, listCache);
   }
 }
@@ -1,48 +1,42 @@
 package centralserver;
 
+import data.ChatLogEntry;
 import data.ICentralChatroomOperations;
-import data.IDataParticipant;
-import data.Operations;
 import data.Response;
 import data.ResponseStatus;
-import data.Transaction;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.Collections;
 import java.util.List;
 import util.ClientIPUtil;
 import util.Logger;
-import util.RMIAccess;
 import util.ThreadSafeStringFormatter;
 
 /**
  * CentralChatroomOperations class acts as a initiator central server
  * operations pertaining to existing chatrooms. Uses two phase commit for logging the
- * messages from the central chat room.
+ * messages from the central chat room, grouping concurrent log requests into a single commit.
+ * Messages for chatrooms missing from the chatroom directory are rejected before they can join
+ * a group and abort it.
  */
 public class CentralChatroomOperations extends 
     UnicastRemoteObject implements ICentralChatroomOperations {
 
-  private final List<RMIAccess<IDataParticipant>> dataNodesParticipants;
-  private final Object dataNodeParticipantsLock;
-  private final CentralCoordinator coordinator;
+  private final LogGroupCommit groupCommit;
+  private final ChatroomDirectory directory;
 
   /**
-   * Constructor for CentralChatroomOperations class which accepts the paremeters
-   * for participants list, locks of participants data, coordinator object along
-   * side handling the remote exceptions.
+   * Constructor for CentralChatroomOperations class which accepts the group commit stage
+   * that runs two phase commit on logged messages.
    *
-   * @param dataNodesParticipants list of participants of data nodes.
-   * @param dataNodeParticipantsLock locks on the given dataNodeParticipants list.
-   * @param coordinator central server coordinator for all the data nodes.
+   * @param groupCommit groups concurrent log requests into a single two phase commit
+   * @param directory directory of the chat server node hosting each chatroom
    * @throws RemoteException handles any exception cause by the remote access of these nodes.
    */
-  public CentralChatroomOperations(List<RMIAccess<IDataParticipant>> 
-      dataNodesParticipants, Object dataNodeParticipantsLock, 
-        CentralCoordinator coordinator) throws RemoteException {
-    this.dataNodesParticipants = dataNodesParticipants;
-    this.dataNodeParticipantsLock = dataNodeParticipantsLock;
-    this.coordinator = coordinator;
-
+  public CentralChatroomOperations(LogGroupCommit groupCommit, ChatroomDirectory directory)
+      throws RemoteException {
+    this.groupCommit = groupCommit;
+    this.directory = directory;
   }
 
   /**
@@ -63,13 +57,14 @@ public class CentralChatroomOperations extends
         ClientIPUtil.getClientIP()
         ));
 
-    // create a transaction to be committed containing the message received from the chat server
-    Transaction t = new Transaction(Operations.LOGMESSAGE, chatroom, message);
+    if (directory.lookup(chatroom) == null) {
+      return rejectUnknownChatroom(chatroom, 1);
+    }
 
-    // run two phase commit
-    TwoPhaseCommit committer = new TwoPhaseCommit();
+    // run two phase commit on the message received from the chat server along with any other
+    // messages received at the same time
     boolean success = 
-        committer.GenericCommit(dataNodeParticipantsLock, dataNodesParticipants, t, coordinator);
+        groupCommit.commit(Collections.singletonList(new ChatLogEntry(chatroom, message)));
 
     if (success) {
       Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
@@ -85,4 +80,66 @@ public class CentralChatroomOperations extends
       return new Response(ResponseStatus.FAIL, "Unable to log chat message");
     }
   }
+
+  /**
+   * Logs an ordered batch of chatroom messages to available data servers in the system as a
+   * single 2pc transaction
+   *
+   * @param entries the messages to be logged, in the order they should appear in each chat log
+   * @return a response indicating whether the operation succeeded or not
+   * @throws RemoteException if there is an error during remote communication
+   */
+  @Override
+  public Response logChatMessages(List<ChatLogEntry> entries) throws RemoteException {
+
+    Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
+        "Received log chat request for %d messages from chat node at \"%s\"",
+        entries.size(),
+        ClientIPUtil.getClientIP()
+        ));
+
+    for (ChatLogEntry entry : entries) {
+      if (directory.lookup(entry.getChatroom()) == null) {
+        return rejectUnknownChatroom(entry.getChatroom(), entries.size());
+      }
+    }
+
+    // run two phase commit on every message in the batch along with any other messages
+    // received at the same time
+    boolean success = groupCommit.commit(entries);
+
+    if (success) {
+      Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
+          "Successfully logged %d chat messages",
+          entries.size()
+          ));
+      return new Response(ResponseStatus.OK, "success");
+    } else {
+      Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
+          "Failed to log %d chat messages",
+          entries.size()
+          ));
+      return new Response(ResponseStatus.FAIL, "Unable to log chat messages");
+    }
+  }
+
+  /**
+   * Rejects a log request holding a message for a chatroom missing from the chatroom directory,
+   * whose transaction would only abort along with every request grouped with it
+   *
+   * @param chatroom name of the unknown chatroom
+   * @param messages the number of messages in the request
+   * @return a response indicating the request failed
+   */
+  private Response rejectUnknownChatroom(String chatroom, int messages) {
+    Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
+        "Rejected request to log %d chat messages; chatroom \"%s\" does not exist",
+        messages,
+        chatroom
+        ));
+    return new Response(ResponseStatus.FAIL, ThreadSafeStringFormatter.format(
+        "Chatroom \"%s\" does not exist",
+        chatroom
+        ));
+  }
 }
@@ -6,8 +6,10 @@ import data.IDataParticipant;
 import data.Transaction;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import util.ClientIPUtil;
 import util.Logger;
@@ -19,7 +21,10 @@ import util.ThreadSafeStringFormatter;
  * which is responsible for setting coordinator decision for a transaction
  * removing coordinator decision for a transaction, getting decision for 
  * a transaction , waiting and committing a transaction, checking is the
- * transaction is committed by all the participants.
+ * transaction is committed by all the participants. A decision to commit is kept until every
+ * participant sent doCommit has reported haveCommitted, so a participant that missed its doCommit
+ * still learns the decision by asking for it, and a transaction the coordinator no longer tracks
+ * was never decided to commit.
  */
 public class CentralCoordinator extends 
     UnicastRemoteObject implements ICentralCoordinator {
@@ -61,15 +66,27 @@ public class CentralCoordinator extends
   /**
    * removeCoordinatorDecision is responsible for removing the decision
    * which is made by the coordinator on completing the transaction decision.
+   * A decision to commit is kept until the last participant reports haveCommitted.
    *
    * @param t transaction that Coordinator has previously made a decision on
    */
   public void removeCoordinatorDecision(Transaction t) {
-    Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
-        "Removing coordinator decision for transaction \"%s\"",
-        t.toString()
-        ));
-    transactionDecisions.remove(t.getTransactionIndex());
+    synchronized (commitMap) {
+      if (commitMap.containsKey(t.getTransactionIndex())
+          && transactionDecisions.get(t.getTransactionIndex()) == Ack.YES) {
+        Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
+            "Keeping coordinator decision for transaction \"%s\" until every participant has "
+            + "committed",
+            t.toString()
+            ));
+        return;
+      }
+      Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
+          "Removing coordinator decision for transaction \"%s\"",
+          t.toString()
+          ));
+      transactionDecisions.remove(t.getTransactionIndex());
+    }
   }
 
   /**
@@ -88,39 +105,48 @@ public class CentralCoordinator extends
         p.getPort()
         ));
 
-    int count;
-
     int transactionId = t.getTransactionIndex();
-    count = commitMap.get(transactionId);
-    count--;
-
-    // if the count is 0, then all participants have committed
-    if (count == 0) {
+    synchronized (commitMap) {
+      Integer outstanding = commitMap.get(transactionId);
+      if (outstanding == null) {
+        Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
+            "Received haveCommitted on transaction \"%s\" that is not awaiting commits",
+            t.toString()
+            ));
+        return;
+      }
+      int count = outstanding - 1;
+      if (count > 0) {
+        // replace count to indicate another participant has committed
+        commitMap.put(transactionId, count);
+        return;
+      }
+      // all participants have committed, so none needs to ask for the decision any more
       commitMap.remove(transactionId);
+      transactionDecisions.remove(transactionId);
+    }
 
-      // notify the wait object in the doCommit thread to complete transaction
-      Object waitObject = objectMap.get(transactionId);
-      if (waitObject != null) {
-        synchronized (waitObject) {
-          waitObject.notify();
-        }
+    // notify the wait object in the doCommit thread to complete transaction
+    Object waitObject = objectMap.get(transactionId);
+    if (waitObject != null) {
+      synchronized (waitObject) {
+        waitObject.notify();
       }
-      objectMap.remove(transactionId);
-
-      Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
-          "All participants have committed on transaction \"%s\"",
-          t.toString()
-          ));
-      // otherwise, replace count to indicate another participant has committed
-    } else {
-      commitMap.put(transactionId, count);
     }
+    objectMap.remove(transactionId);
+
+    Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
+        "All participants have committed on transaction \"%s\"",
+        t.toString()
+        ));
   }
 
   /**
    * Returns the transaction decision for the given transaction to a participant
    *
    * @param t the transaction to retrieve the decision for
+   * @return the decision on the transaction, NA while it is being voted on, or NO if the
+   *         coordinator no longer tracks it
    */
   @Override
   public Ack getDecision(Transaction t) throws RemoteException {
@@ -129,7 +155,40 @@ public class CentralCoordinator extends
         ClientIPUtil.getClientIP(),
         t.toString()
         ));
-    return transactionDecisions.get(t.getTransactionIndex());
+    return decisionOf(t);
+  }
+
+  /**
+   * Returns the transaction decisions for several transactions to a participant in a single call
+   *
+   * @param transactions the transactions to retrieve the decisions for
+   * @return the decision on each transaction in order, NA for a transaction being voted on and NO
+   *         for one the coordinator no longer tracks
+   */
+  @Override
+  public List<Ack> getDecisions(List<Transaction> transactions) throws RemoteException {
+    Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
+        "A participant at \"%s\" has requested decisions on %d transactions",
+        ClientIPUtil.getClientIP(),
+        transactions.size()
+        ));
+    List<Ack> decisions = new ArrayList<>(transactions.size());
+    for (Transaction t : transactions) {
+      decisions.add(decisionOf(t));
+    }
+    return decisions;
+  }
+
+  /**
+   * Gets the decision on a transaction. Decisions to commit are kept until every participant has
+   * committed, so a transaction no longer tracked was aborted or never decided.
+   *
+   * @param t the transaction
+   * @return the decision on the transaction, or NO if the coordinator no longer tracks it
+   */
+  private Ack decisionOf(Transaction t) {
+    Ack decision = transactionDecisions.get(t.getTransactionIndex());
+    return decision == null ? Ack.NO : decision;
   }
 
   /**
@@ -141,7 +200,19 @@ public class CentralCoordinator extends
    * @param waitObject the wait object used to notify the coordinator the transaction has completed
    */
   public void addWaitCommit(Transaction t, Object waitObject) {
-    int transactionId = t.getTransactionIndex();
+    synchronized (commitMap) {
+      addWaitCommit(t.getTransactionIndex(), waitObject);
+    }
+  }
+
+  /**
+   * Counts one more participant the coordinator waits on to commit a transaction. Called with the
+   * commit map lock held.
+   *
+   * @param transactionId index of the transaction to commit
+   * @param waitObject the wait object used to notify the coordinator the transaction has completed
+   */
+  private void addWaitCommit(int transactionId, Object waitObject) {
     int count = 0;
 
     // if transaction is already being tracked, pull the current number of outstanding participants
@@ -156,6 +227,6 @@ public class CentralCoordinator extends
     }
 
     // track transaction and the number of participants awaiting commit
-    commitMap.put(t.getTransactionIndex(), ++count);
+    commitMap.put(transactionId, ++count);
   }
 }
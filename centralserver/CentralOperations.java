@@ -1,14 +1,17 @@
 package centralserver;
 
+import data.ChatNodeLoadReport;
 import data.ChatroomResponse;
 import data.ICentralOperations;
 import data.IChatroomOperations;
 import data.IDataOperations;
 import data.IDataParticipant;
 import data.RegisterResponse;
+import data.Response;
 import data.ResponseStatus;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.Iterator;
 import java.util.List;
 import util.ClientIPUtil;
 import util.Logger;
@@ -25,6 +28,8 @@ public class CentralOperations extends UnicastRemoteObject implements ICentralOp
 
   private final List<RMIAccess<IChatroomOperations>> chatroomNodes;
   private final Object chatroomNodeLock;
+  private final ChatroomDirectory directory;
+  private final ChatNodeLoads loads;
   private final List<RMIAccess<IDataOperations>> dataNodesOperations;
   private final Object dataNodeOperationsLock;
   private final List<RMIAccess<IDataParticipant>> dataNodesParticipants;
@@ -36,6 +41,8 @@ public class CentralOperations extends UnicastRemoteObject implements ICentralOp
    *
    * @param chatroomNodes list of all chatroomnodes.
    * @param chatroomNodeLock locks on individual chatroomnode.
+   * @param directory the chat server node hosting each chatroom.
+   * @param loads the load last reported by each chat server node.
    * @param dataNodesOperations operations on datanodes.
    * @param dataNodeOperationsLock locks on the operations.
    * @param dataNodesParticipants participants of datanodes.
@@ -45,6 +52,8 @@ public class CentralOperations extends UnicastRemoteObject implements ICentralOp
    */
   public CentralOperations(List<RMIAccess<IChatroomOperations>> chatroomNodes,
       Object chatroomNodeLock,
+      ChatroomDirectory directory,
+      ChatNodeLoads loads,
       List<RMIAccess<IDataOperations>> dataNodesOperations,
       Object dataNodeOperationsLock,
       List<RMIAccess<IDataParticipant>> dataNodesParticipants,
@@ -52,6 +61,8 @@ public class CentralOperations extends UnicastRemoteObject implements ICentralOp
       ServerInfo serverInfo) throws RemoteException {
     this.chatroomNodes = chatroomNodes;
     this.chatroomNodeLock = chatroomNodeLock;
+    this.directory = directory;
+    this.loads = loads;
     this.dataNodesOperations = dataNodesOperations;
     this.dataNodeOperationsLock = dataNodeOperationsLock;
     this.dataNodesParticipants = dataNodesParticipants;
@@ -101,7 +112,7 @@ public class CentralOperations extends UnicastRemoteObject implements ICentralOp
           ));
       // create the chatroom
       ChatroomResponse r = CentralUserOperations.innerCreateChatroom(room, 
-          this.chatroomNodeLock, this.chatroomNodes);
+          this.chatroomNodeLock, this.chatroomNodes, this.directory, this.loads);
       // if chatroom cannot be spun up, log error 
       //(may be case that the charoom has already been spun up
       // from another data node
@@ -138,13 +149,57 @@ public class CentralOperations extends UnicastRemoteObject implements ICentralOp
 
     // track chatroom operations RMI interface for the chat server
     synchronized (chatroomNodeLock) {
-      chatroomNodes.add(new RMIAccess<>(hostname, port, "IChatroomOperations"));
+      // a chat server restarted at the same address no longer hosts the chatrooms of its
+      // previous run; drop the previous registration and its chatrooms from the directory
+      Iterator<RMIAccess<IChatroomOperations>> it = chatroomNodes.iterator();
+      while (it.hasNext()) {
+        RMIAccess<IChatroomOperations> previous = it.next();
+        if (previous.getHostname().equals(hostname) && previous.getPort() == port) {
+          it.remove();
+          loads.remove(previous);
+          Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
+              "Replaced previous registration of chat node at \"%s:%d\"; "
+                  + "removed %d chatrooms from the directory",
+              hostname,
+              port,
+              directory.removeNode(previous)
+              ));
+        }
+      }
+      RMIAccess<IChatroomOperations> node = new RMIAccess<>(hostname, port, "IChatroomOperations");
+      chatroomNodes.add(node);
+      loads.register(node);
     }
 
     // return response telling the chat server node where it can forward chat messages to be logged
     return new RegisterResponse(serverInfo.getChatroomPort());
   }
 
+  /**
+   * Records the current load of a registered chat server node, which the central server uses to
+   * choose where new chatrooms are placed
+   *
+   * @param report the chat server node's current load
+   * @return a response indicating whether the report was accepted; FAIL if the chat server node
+   *         is not registered
+   * @throws RemoteException if there is an error during remote communication
+   */
+  @Override
+  public Response reportChatNodeLoad(ChatNodeLoadReport report) throws RemoteException {
+    // reports arrive from every chat server every few seconds, so only rejected ones are logged
+    if (!loads.report(report)) {
+      Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Received load report from unregistered chat node at \"%s:%d\"",
+          report.getHostname(),
+          report.getOperationsPort()
+          ));
+      return new Response(ResponseStatus.FAIL, "Chat node is not registered");
+    }
+    // keep the user counts the chatroom catalog sorts by up to date
+    directory.getCatalog().setUsers(report.getRoomUsers());
+    return new Response(ResponseStatus.OK, "success");
+  }
+
   /**
    * Gets the master server time for Cristian's Algorithm
    *
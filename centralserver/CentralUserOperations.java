@@ -1,9 +1,12 @@
 package centralserver;
 
 import data.Ack;
+import data.ChatHistoryResponse;
 import data.ChatroomDataResponse;
 import data.ChatroomListResponse;
+import data.ChatroomPageResponse;
 import data.ChatroomResponse;
+import data.ChatroomSort;
 import data.ICentralUserOperations;
 import data.IChatroomOperations;
 import data.IDataOperations;
@@ -15,8 +18,10 @@ import data.Transaction;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import util.ClientIPUtil;
 import util.Logger;
 import util.RMIAccess;
@@ -30,6 +35,9 @@ public class CentralUserOperations extends UnicastRemoteObject implements ICentr
 
   private final List<RMIAccess<IChatroomOperations>> chatroomNodes;
   private final Object chatroomNodeLock;
+  private final ChatroomDirectory directory;
+  private final ChatNodeLoads loads;
+  private final ChatroomLister lister;
   private final List<RMIAccess<IDataOperations>> dataNodesOperations;
   private final Object dataNodeOperationsLock;
   private final List<RMIAccess<IDataParticipant>> dataNodesParticipants;
@@ -37,15 +45,24 @@ public class CentralUserOperations extends UnicastRemoteObject implements ICentr
   private final ResourceCleaner cleaner;
   private final CentralCoordinator coordinator;
   private final Object reestablishLock;
+  // rotates the data node history requests are sent to first
+  private final AtomicInteger nextHistoryNode;
 
   // const message for existing chatrooms -- used during re-establish connection
   private static final String EXISTING_CHATROOM_MESSAGE = "A chatroom with this name already exists";
+  // most messages returned in a single page of chatroom history
+  private static final int MAX_HISTORY_PAGE = 500;
+  // most chatrooms returned in a single page of the chatroom catalog
+  private static final int MAX_CATALOG_PAGE = 100;
 
   /**
    * Constructor of centralUserOperations engine.
    *
    * @param chatroomNodes list of all chatroom nodes in the system
    * @param chatroomNodeLock locks operations on chatroom nodes
+   * @param directory the chat server node hosting each chatroom
+   * @param loads the load last reported by each chat server node
+   * @param lister gathers the chatrooms of every chat server node for list requests
    * @param dataNodesOperations list of data operation node interfaces for all data servers in the system
    * @param dataNodeOperationsLock locks on data operation node interfaces
    * @param dataNodesParticipants list of participant interfaces for all data servers in the system
@@ -56,6 +73,9 @@ public class CentralUserOperations extends UnicastRemoteObject implements ICentr
    */
   public CentralUserOperations(List<RMIAccess<IChatroomOperations>> chatroomNodes,
       Object chatroomNodeLock,
+      ChatroomDirectory directory,
+      ChatNodeLoads loads,
+      ChatroomLister lister,
       List<RMIAccess<IDataOperations>> dataNodesOperations,
       Object dataNodeOperationsLock,
       List<RMIAccess<IDataParticipant>> dataNodesParticipants,
@@ -64,6 +84,9 @@ public class CentralUserOperations extends UnicastRemoteObject implements ICentr
       ResourceCleaner cleaner) throws RemoteException {
     this.chatroomNodes = chatroomNodes;
     this.chatroomNodeLock = chatroomNodeLock;
+    this.directory = directory;
+    this.loads = loads;
+    this.lister = lister;
     this.dataNodesOperations = dataNodesOperations;
     this.dataNodeOperationsLock = dataNodeOperationsLock;
     this.dataNodesParticipants = dataNodesParticipants;
@@ -71,6 +94,7 @@ public class CentralUserOperations extends UnicastRemoteObject implements ICentr
     this.coordinator = coordinator;
     this.cleaner = cleaner;
     this.reestablishLock = new Object();
+    this.nextHistoryNode = new AtomicInteger();
 
   }
 
@@ -239,27 +263,49 @@ public class CentralUserOperations extends UnicastRemoteObject implements ICentr
         ClientIPUtil.getClientIP()
         ));
 
-    List<String> chatroomList = new LinkedList<>();
+    // ask the chat servers outside the lock, so a slow chat server does not hold up chatroom
+    // creation, and all at once, so it does not hold up the other chat servers' answers
+    List<RMIAccess<IChatroomOperations>> nodes;
     synchronized (chatroomNodeLock) {
-      for (RMIAccess<IChatroomOperations> chatroomAccess : this.chatroomNodes) {
-        ChatroomListResponse chatroomListResponse = null;
-        try {
-          chatroomListResponse = chatroomAccess.getAccess().getChatrooms();
-        } catch (NotBoundException e) {
-          Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
-              "Unable to contact Chat server at \"%s:%d\"; skipping",
-              chatroomAccess.getHostname(),
-              chatroomAccess.getPort()
-              ));
-          continue;
-        }
+      nodes = new ArrayList<>(this.chatroomNodes);
+    }
+    return lister.list(nodes);
+  }
 
-        if (chatroomListResponse != null) {
-          chatroomList.addAll(chatroomListResponse.getChatroomNames());
-        }
-      }
+  /**
+   * Gets one page of the chatrooms in the system matching a search, from the central server's
+   * catalog of chatrooms. Further pages are requested with the cursor returned with each page.
+   *
+   * @param query text the chatroom names must start with or contain; empty matches every
+   *              chatroom
+   * @param prefix true if chatroom names must start with the query, false if they must contain it
+   * @param sort the order of the chatrooms
+   * @param cursor the cursor returned with the previous page, or null for the first page
+   * @param limit the most chatrooms in the page
+   * @return the page of chatrooms, otherwise indicates the operation failed
+   * @throws RemoteException if there is an error during remote communication
+   */
+  @Override
+  public ChatroomPageResponse searchChatrooms(String query, boolean prefix, ChatroomSort sort,
+      String cursor, int limit) throws RemoteException {
+
+    Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
+        "Received request for chatrooms matching \"%s\" from user at \"%s\"",
+        query,
+        ClientIPUtil.getClientIP()
+        ));
+
+    int pageSize = Math.max(1, Math.min(limit, MAX_CATALOG_PAGE));
+    ChatroomPageResponse response = directory.getCatalog().page(query, prefix,
+        sort == null ? ChatroomSort.NAME : sort, cursor, pageSize);
+    if (response.getStatus() == ResponseStatus.FAIL) {
+      Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Unable to read chatroom catalog page after cursor \"%s\": \"%s\"",
+          cursor,
+          response.getMessage()
+          ));
     }
-    return new ChatroomListResponse(chatroomList);
+    return response;
   }
 
   /**
@@ -326,7 +372,7 @@ public class CentralUserOperations extends UnicastRemoteObject implements ICentr
 
         // Roll the inner create chatroom THEN doCommit
         response = CentralUserOperations.innerCreateChatroom(chatroomName, 
-            this.chatroomNodeLock, this.chatroomNodes);
+            this.chatroomNodeLock, this.chatroomNodes, this.directory, this.loads);
 
         // If we can't advance,
         if (response.getStatus() == ResponseStatus.FAIL) {
@@ -603,9 +649,7 @@ public class CentralUserOperations extends UnicastRemoteObject implements ICentr
     // return information regarding address and ports for 
     //chatserver that contains the chatroom name provided
     // if chatroom does not exist , returns a fail message
-    synchronized (chatroomNodeLock) {
-      return getChatroomResponse(chatroomName, chatroomNodes);
-    }
+    return getChatroomResponse(chatroomName, directory);
   }
 
   /**
@@ -636,7 +680,7 @@ public class CentralUserOperations extends UnicastRemoteObject implements ICentr
       // create new chatroom using existing create chatroom functionality
       ChatroomResponse response = 
           CentralUserOperations.innerCreateChatroom(chatroomName, 
-              this.chatroomNodeLock, this.chatroomNodes);
+              this.chatroomNodeLock, this.chatroomNodes, this.directory, this.loads);
       // if the create operation fails saying an existing chatroom 
       //already exists, then another user already
       // initiated reestablishing the chatroom
@@ -648,9 +692,7 @@ public class CentralUserOperations extends UnicastRemoteObject implements ICentr
             "Chatroom \"%s\" has already been reestablished; getting chatroom data...",
             chatroomName
             ));
-        synchronized (chatroomNodeLock) {
-          return CentralUserOperations.getChatroomResponse(chatroomName, chatroomNodes);
-        }
+        return CentralUserOperations.getChatroomResponse(chatroomName, directory);
         // otherwise, indicate the reestablish operation succeeded
       } else {
         Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
@@ -668,16 +710,15 @@ public class CentralUserOperations extends UnicastRemoteObject implements ICentr
    * from the server for the specific chatroom.
    *
    * @param chatroomName name of the chat room to retrieve
-   * @param chatroomNodes chat server nodes in the system
+   * @param directory the chat server node hosting each chatroom
    * @return returns the tcp and rmi ports and address used to connect to the server if success, indicates failed
    *         operation otherwise
    * @throws RemoteException handles exceptions caused while accessing remote objects.
    */
   private static ChatroomResponse getChatroomResponse(String chatroomName, 
-      List<RMIAccess<IChatroomOperations>> chatroomNodes) throws RemoteException {
-    // find the RMI accessor supporting the provided chatroom 
-    //from the available chatroom nodes in the system
-    RMIAccess<IChatroomOperations> accessor = findChatroom(chatroomName, chatroomNodes);
+      ChatroomDirectory directory) throws RemoteException {
+    // find the RMI accessor supporting the provided chatroom in the chatroom directory
+    RMIAccess<IChatroomOperations> accessor = directory.lookup(chatroomName);
 
     if (accessor == null) {
       Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
@@ -709,99 +750,25 @@ public class CentralUserOperations extends UnicastRemoteObject implements ICentr
   }
 
   /**
-   * Finds a chatroom from available chat servers in the system
-   *
-   * @param chatroomName the name of the chatroom to find
-   * @param chatroomNodes chat servers in the system
-   * @return RMI accessor for chat server hosting the chatroom
-   * @throws RemoteException if there is an error during remote communication
-   */
-  private synchronized static RMIAccess<IChatroomOperations> findChatroom (
-      String chatroomName, List<RMIAccess<IChatroomOperations>> chatroomNodes) 
-          throws RemoteException {
-    // iterate through a list of available chat nodes to find the chatroom dynamically
-    RMIAccess<IChatroomOperations> accessor = null;
-    for (RMIAccess<IChatroomOperations> chatroomAccess : chatroomNodes) {
-      // get a list of chatrooms from the chatroom server
-      ChatroomListResponse listResponse = null;
-      try {
-        listResponse = chatroomAccess.getAccess().getChatrooms();
-      } catch (NotBoundException e) {
-        Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
-            "Unable to contact Chat server at \"%s:%d\"; skipping",
-            chatroomAccess.getHostname(),
-            chatroomAccess.getPort()
-            ));
-        continue;
-      }
-
-      // iterate through the list of chatroom names, and if the provided 
-      //name matches the name of a chatroom
-      // on the server, collect the RMI accessor for the server hosting
-      //the chatroom and break out of the look
-      for (String name : listResponse.getChatroomNames()) {
-        if (name.compareTo(chatroomName) == 0) {
-          accessor = chatroomAccess;
-          break;
-        }
-      }
-
-      // if accessor is not null, it has been set after finding the appropriate chatroom,
-      // break out of the loop
-      if (accessor != null) {
-        break;
-      }
-    }
-    // return the RMI accessor that has access to the provided chatroom
-    return accessor;
-  }
-
-  /**
-   * Attempts to create a chatroom on an available chat server in the system
+   * Attempts to create a chatroom on an available chat server in the system. The chat server is
+   * chosen by the placement strategy from the load each chat server last reported; the chat
+   * servers are only asked for their load when none has reported recently.
    *
    * @param chatroomName name of the chat room to create
    * @param chatroomNodeLock locks resources on the list of chatroom server interfaces
    * @param chatroomNodes list of all chat server interfaces
+   * @param directory the chat server node hosting each chatroom
+   * @param loads the load last reported by each chat server node
    * @return an object containing address and port information for the server hosting the created chatroom
    * @throws RemoteException if there is an error during remote communication
    */
   public static ChatroomResponse innerCreateChatroom(String chatroomName,
       Object chatroomNodeLock,
-      List<RMIAccess<IChatroomOperations>> chatroomNodes) throws RemoteException {
-    // iterate through a list of chatroom nodes to determine if an instance of the chatroom
-    // exists at a chat server node in the system
-    boolean chatroomExists = false;
-    synchronized (chatroomNodeLock) {
-      for (RMIAccess<IChatroomOperations> chatroomAccess : chatroomNodes) {
-
-        // get a list of names of chatrooms that exist at the server
-        ChatroomListResponse chatroomListResponse = null;
-        try {
-          chatroomListResponse = chatroomAccess.getAccess().getChatrooms();
-        } catch (NotBoundException e) {
-          Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
-              "Unable to contact Chat server at \"%s:%d\"; skipping",
-              chatroomAccess.getHostname(),
-              chatroomAccess.getPort()
-              ));
-          continue;
-        }
-
-        // if the chat server contains a server with the same name, then  the chatroom exists
-        // mark as such and break out of loop
-        for (String name : chatroomListResponse.getChatroomNames()) {
-          if (name.compareTo(chatroomName) == 0) {
-            chatroomExists = true;
-            break;
-          }
-        }
-        // if chatroom has been found already, no need to continue iterating, break out
-        // of loop
-        if (chatroomExists) {
-          break;
-        }
-      }
-    }
+      List<RMIAccess<IChatroomOperations>> chatroomNodes,
+      ChatroomDirectory directory,
+      ChatNodeLoads loads) throws RemoteException {
+    // the chatroom exists if the directory records a chat server node hosting it
+    boolean chatroomExists = directory.lookup(chatroomName) != null;
 
     // if chatroom exists, respond with a FAIL message and use the constant existing chatroom
     // message (used in reestablish chatroom when a user has 
@@ -811,53 +778,44 @@ public class CentralUserOperations extends UnicastRemoteObject implements ICentr
           CentralUserOperations.EXISTING_CHATROOM_MESSAGE);
     }
 
-    ChatroomDataResponse min = null;
-    RMIAccess<IChatroomOperations> minAccess = null;
-
-    // determine the chatroom with the least amount of load
-    synchronized (chatroomNodeLock) {
-      // iterate through all chatrooms to collect their user count and room count
-      for (RMIAccess<IChatroomOperations> chatroomAccess : chatroomNodes) {
-        ChatroomDataResponse chatroomDataResponse = null;
-        try {
-          chatroomDataResponse = chatroomAccess.getAccess().getChatroomData();
-        } catch (NotBoundException e) {
-          Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
-              "Unable to contact Chat server at \"%s:%d\"; skipping",
-              chatroomAccess.getHostname(),
-              chatroomAccess.getPort()
-              ));
-          continue;
-        }
-
-        // if min is null, then no chatroom has yet been evauluated, set the first chatroom
-        // as the min by which other nodes are compared
-        if (min == null) {
-          min = chatroomDataResponse;
-          minAccess = chatroomAccess;
-        } else {
-          // if the current min has more users than the new chatroom node, 
-          //set min to the new chatroom node
-          if (min.getUsers() > chatroomDataResponse.getUsers()) {
-            min = chatroomDataResponse;
-            minAccess = chatroomAccess;
-            // if the current min has the same number of users than the new chatroom node,
-            // and the current min has more chatrooms than the new chatroom node,
-            // set the new chatroom node to be the min
-          } else if (min.getUsers() == chatroomDataResponse.getUsers() 
-              && min.getChatrooms() > chatroomDataResponse.getChatrooms()) {
-            min = chatroomDataResponse;
-            minAccess = chatroomAccess;
+    // choose the chat server from the load reports the chat servers push, without contacting
+    // any of them
+    ChatNodeLoad placed = loads.place(chatroomName);
+
+    // if no chat server has reported recently, ask each of them for its load instead
+    if (placed == null) {
+      List<ChatNodeLoad> polled = new LinkedList<>();
+      synchronized (chatroomNodeLock) {
+        // iterate through all chatrooms to collect their user count and room count
+        for (RMIAccess<IChatroomOperations> chatroomAccess : chatroomNodes) {
+          ChatroomDataResponse chatroomDataResponse = null;
+          try {
+            chatroomDataResponse = chatroomAccess.getAccess().getChatroomData();
+          } catch (NotBoundException e) {
+            Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
+                "Unable to contact Chat server at \"%s:%d\"; skipping",
+                chatroomAccess.getHostname(),
+                chatroomAccess.getPort()
+                ));
+            continue;
           }
+          polled.add(new ChatNodeLoad(chatroomAccess, chatroomDataResponse, 0,
+              System.currentTimeMillis()));
         }
       }
+      if (!polled.isEmpty()) {
+        placed = loads.place(chatroomName, polled);
+      }
     }
 
+    ChatroomDataResponse min = placed == null ? null : placed.getData();
+    RMIAccess<IChatroomOperations> minAccess = placed == null ? null : placed.getNode();
+
     // if min cannot be determined, there are no servers available, log the error and
     // send an error message to the client
     if (min == null || minAccess == null) {
       Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
-          "Unable to determine Chat server with the least load; unable to create chatroom \"%s\"",
+          "Unable to determine Chat server to place chatroom at; unable to create chatroom \"%s\"",
           chatroomName
           ));
       return new ChatroomResponse(ResponseStatus.FAIL, "Unable to create chatroom");
@@ -889,6 +847,33 @@ public class CentralUserOperations extends UnicastRemoteObject implements ICentr
       return new ChatroomResponse(ResponseStatus.FAIL, "Unable to create chatroom");
     }
 
+    // record the chatroom in the directory; if a concurrent request created it at another node
+    // first, remove this copy and report the existing chatroom
+    RMIAccess<IChatroomOperations> existing = directory.putIfAbsent(chatroomName, minAccess);
+    if (existing != null && existing != minAccess) {
+      Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Chatroom \"%s\" was created concurrently at Chat server at \"%s:%d\"; "
+              + "removing duplicate from \"%s:%d\"",
+          chatroomName,
+          existing.getHostname(),
+          existing.getPort(),
+          minAccess.getHostname(),
+          minAccess.getPort()
+          ));
+      try {
+        minAccess.getAccess().deleteChatroom(chatroomName);
+      } catch (NotBoundException e) {
+        Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
+            "Unable to contact Chat server at \"%s:%d\"; cannot delete duplicate chatroom \"%s\"",
+            minAccess.getHostname(),
+            minAccess.getPort(),
+            chatroomName
+            ));
+      }
+      return new ChatroomResponse(ResponseStatus.FAIL, 
+          CentralUserOperations.EXISTING_CHATROOM_MESSAGE);
+    }
+
     // otherwise, log that the create operation succeeded and return information about the server
     // hosting the chatroom
     // can be used by the client to connect to the new  chatroom
@@ -907,8 +892,7 @@ public class CentralUserOperations extends UnicastRemoteObject implements ICentr
   private Response innerDeleteChatroom(String chatroomName) throws RemoteException {
     synchronized (chatroomNodeLock) {
       // find the chat server hosting the chatroom to be deleted
-      RMIAccess<IChatroomOperations> accessor = 
-          CentralUserOperations.findChatroom(chatroomName, chatroomNodes);
+      RMIAccess<IChatroomOperations> accessor = directory.lookup(chatroomName);
 
       // if accessor is null, unable to determine which node contains the chatroom
       // indicate resource cannot be found and thus cant be deleted, and respond
@@ -934,10 +918,66 @@ public class CentralUserOperations extends UnicastRemoteObject implements ICentr
         return new Response(ResponseStatus.FAIL, "Unable to delete chatroom");
       }
 
+      directory.remove(chatroomName, accessor);
       return new Response(ResponseStatus.OK, "Chatroom was successfully deleted");
     }
   }
 
+  /**
+   * Gets one page of the messages logged to a chatroom from an available data node. Messages
+   * are identified by sequence numbers counting from 1 in the order they were logged.
+   *
+   * @param chatroomName name of the chatroom whose messages should be read
+   * @param cursor sequence number the page starts from; 0 with before set reads the newest page
+   * @param before true to read the messages preceding the cursor, false to read those following it
+   * @param limit the most messages in the page
+   * @return the page of messages if the chatroom exists, otherwise indicates the operation failed
+   * @throws RemoteException if there is an error during remote communication
+   */
+  @Override
+  public ChatHistoryResponse getChatHistory(String chatroomName, long cursor, boolean before,
+      int limit) throws RemoteException {
+
+    Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
+        "Received request from client at \"%s\" for history of chatroom \"%s\"",
+        ClientIPUtil.getClientIP(),
+        chatroomName
+        ));
+
+    int pageSize = Math.max(1, Math.min(limit, MAX_HISTORY_PAGE));
+    List<RMIAccess<IDataOperations>> nodes;
+    synchronized (dataNodeOperationsLock) {
+      nodes = new LinkedList<>(this.dataNodesOperations);
+    }
+    if (nodes.isEmpty()) {
+      Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "There are currently no data nodes registered with the central server; "
+              + "unable to read history of chatroom \"%s\"",
+          chatroomName
+          ));
+      return new ChatHistoryResponse(ResponseStatus.FAIL, "Unable to read chatroom history");
+    }
 
+    // start from a different data node on each request to spread reads across the data nodes,
+    // moving on to the next data node if one cannot be contacted
+    int start = Math.floorMod(nextHistoryNode.getAndIncrement(), nodes.size());
+    for (int i = 0; i < nodes.size(); i++) {
+      RMIAccess<IDataOperations> nodeAccessor = nodes.get((start + i) % nodes.size());
+      try {
+        return nodeAccessor.getAccess().getChatHistory(chatroomName, cursor, before, pageSize);
+      } catch (NotBoundException | RemoteException e) {
+        Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
+            "Unable to contact data node at \"%s:%d\"; skipping",
+            nodeAccessor.getHostname(),
+            nodeAccessor.getPort()
+            ));
+      }
+    }
 
+    Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
+        "Unable to contact any data node for history of chatroom \"%s\"",
+        chatroomName
+        ));
+    return new ChatHistoryResponse(ResponseStatus.FAIL, "Unable to read chatroom history");
+  }
 }
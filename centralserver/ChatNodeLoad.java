@@ -0,0 +1,134 @@
+package centralserver;
+
+import data.ChatroomDataResponse;
+import data.IChatroomOperations;
+import util.RMIAccess;
+
+/**
+ * The load of a chat server node as last reported or polled, which placement strategies choose
+ * a chat server node for a new chatroom from. Chatrooms placed at the node since the load was
+ * taken are counted towards it together with the users they are expected to draw, so chatrooms
+ * created in a burst see each other.
+ */
+public class ChatNodeLoad {
+
+  // user capacity assumed for a chat server node that has not reported its own
+  public static final int DEFAULT_USER_CAPACITY = 1000;
+
+  private final RMIAccess<IChatroomOperations> node;
+  private final String key;
+  private final ChatroomDataResponse data;
+  private final int userCapacity;
+  private final long takenAt;
+  // chatrooms in the load plus those placed at the node since
+  private int chatrooms;
+  // users expected in the chatrooms placed at the node since the load was taken
+  private int placedUsers;
+
+  /**
+   * Creates an instance of ChatNodeLoad
+   *
+   * @param node the chat server node
+   * @param data the chatrooms, users and address reported by the node
+   * @param userCapacity the number of users the node is sized for, or 0 if unknown
+   * @param takenAt the time in milliseconds the load was taken
+   */
+  public ChatNodeLoad(RMIAccess<IChatroomOperations> node, ChatroomDataResponse data,
+      int userCapacity, long takenAt) {
+    this.node = node;
+    this.key = node.getHostname() + ":" + node.getPort();
+    this.data = data;
+    this.userCapacity = userCapacity > 0 ? userCapacity : DEFAULT_USER_CAPACITY;
+    this.takenAt = takenAt;
+    this.chatrooms = data.getChatrooms();
+  }
+
+  /**
+   * Gets the chat server node
+   *
+   * @return the RMI accessor for the chat server node
+   */
+  public RMIAccess<IChatroomOperations> getNode() {
+    return node;
+  }
+
+  /**
+   * Gets the data reported by the chat server node, including the address clients connect to
+   *
+   * @return the reported chatroom data
+   */
+  public ChatroomDataResponse getData() {
+    return data;
+  }
+
+  /**
+   * Gets a key identifying the chat server node, stable across reports
+   *
+   * @return the node's hostname and operations port
+   */
+  public String getKey() {
+    return key;
+  }
+
+  /**
+   * Gets the number of users at the chat server node when the load was taken, plus those
+   * expected in chatrooms placed at the node since
+   *
+   * @return the number of users
+   */
+  public int getUsers() {
+    return data.getUsers() + placedUsers;
+  }
+
+  /**
+   * Gets the number of chatrooms at the chat server node, including those placed since the load
+   * was taken
+   *
+   * @return the number of chatrooms
+   */
+  public int getChatrooms() {
+    return chatrooms;
+  }
+
+  /**
+   * Gets the number of users the chat server node is sized for
+   *
+   * @return the node's user capacity
+   */
+  public int getUserCapacity() {
+    return userCapacity;
+  }
+
+  /**
+   * Gets the time the load was taken
+   *
+   * @return the time in milliseconds the load was taken
+   */
+  public long getTakenAt() {
+    return takenAt;
+  }
+
+  /**
+   * Counts a chatroom placed at the chat server node towards its load
+   *
+   * @param expectedUsers the number of users the chatroom is expected to draw
+   */
+  void addChatroom(int expectedUsers) {
+    chatrooms++;
+    placedUsers += expectedUsers;
+  }
+
+  /**
+   * Compares the load of two chat server nodes by users and then by chatrooms
+   *
+   * @param a a chat server node's load
+   * @param b another chat server node's load
+   * @return a negative number if a is less loaded than b, positive if more, 0 if the same
+   */
+  public static int compare(ChatNodeLoad a, ChatNodeLoad b) {
+    if (a.getUsers() != b.getUsers()) {
+      return Integer.compare(a.getUsers(), b.getUsers());
+    }
+    return Integer.compare(a.getChatrooms(), b.getChatrooms());
+  }
+}
@@ -0,0 +1,160 @@
+package centralserver;
+
+import data.ChatNodeLoadReport;
+import data.IChatroomOperations;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import util.RMIAccess;
+
+/**
+ * Snapshot of the load each chat server node last reported to the central server, so choosing
+ * the node a new chatroom is placed at is a local read instead of asking every chat server for
+ * its load. The node is chosen by a placement strategy from the nodes whose reports are fresh,
+ * and each chatroom placed at a node counts towards its load until its next report, together with
+ * the average number of users per chatroom across the reports, so chatrooms created in a burst
+ * see each other.
+ */
+public class ChatNodeLoads {
+
+  // default time in milliseconds after which a chat server node's last report is ignored
+  public static final long DEFAULT_STALE_MS = 10000;
+
+  private final long staleMs;
+  private final PlacementStrategy strategy;
+  private final Object loadLock;
+  // registered chat server nodes by "hostname:port", guarded by loadLock
+  private final Map<String, RMIAccess<IChatroomOperations>> nodes;
+  // last load of each registered node that has reported, guarded by loadLock
+  private final Map<RMIAccess<IChatroomOperations>, ChatNodeLoad> loads;
+
+  /**
+   * Creates an instance of ChatNodeLoads
+   *
+   * @param staleMs time in milliseconds after which a node's last report is ignored
+   * @param strategy chooses the node each chatroom is placed at
+   */
+  public ChatNodeLoads(long staleMs, PlacementStrategy strategy) {
+    this.staleMs = staleMs;
+    this.strategy = strategy;
+    this.loadLock = new Object();
+    this.nodes = new HashMap<>();
+    this.loads = new HashMap<>();
+  }
+
+  /**
+   * Starts accepting load reports from a chat server node that has registered
+   *
+   * @param node the registered chat server node
+   */
+  public void register(RMIAccess<IChatroomOperations> node) {
+    synchronized (loadLock) {
+      RMIAccess<IChatroomOperations> previous = nodes.put(key(node.getHostname(),
+          node.getPort()), node);
+      if (previous != null && previous != node) {
+        loads.remove(previous);
+      }
+    }
+  }
+
+  /**
+   * Forgets a chat server node that has been removed from the system, along with its load
+   *
+   * @param node the removed chat server node
+   */
+  public void remove(RMIAccess<IChatroomOperations> node) {
+    synchronized (loadLock) {
+      nodes.remove(key(node.getHostname(), node.getPort()), node);
+      loads.remove(node);
+    }
+  }
+
+  /**
+   * Records the load reported by a chat server node, replacing its previous report
+   *
+   * @param report the load report
+   * @return true if the report came from a registered node
+   */
+  public boolean report(ChatNodeLoadReport report) {
+    synchronized (loadLock) {
+      RMIAccess<IChatroomOperations> node = nodes.get(key(report.getHostname(),
+          report.getOperationsPort()));
+      if (node == null) {
+        return false;
+      }
+      loads.put(node, new ChatNodeLoad(node, report, report.getUserCapacity(),
+          System.currentTimeMillis()));
+      return true;
+    }
+  }
+
+  /**
+   * Chooses the chat server node to place a chatroom at from the nodes with a fresh report, and
+   * counts the chatroom and the users it is expected to draw towards the node's load until its
+   * next report
+   *
+   * @param chatroomName name of the chatroom being created
+   * @return the last load of the chosen node, or null if no node has reported recently
+   */
+  public ChatNodeLoad place(String chatroomName) {
+    synchronized (loadLock) {
+      long now = System.currentTimeMillis();
+      List<ChatNodeLoad> fresh = new ArrayList<>(loads.size());
+      long reportedUsers = 0;
+      long reportedChatrooms = 0;
+      for (ChatNodeLoad load : loads.values()) {
+        if (now - load.getTakenAt() <= staleMs) {
+          fresh.add(load);
+          reportedUsers += load.getData().getUsers();
+          reportedChatrooms += load.getData().getChatrooms();
+        }
+      }
+      if (fresh.isEmpty()) {
+        return null;
+      }
+      // a new chatroom is expected to draw as many users as the average reported chatroom
+      int expectedUsers = reportedChatrooms == 0 ? 0
+          : (int) Math.round((double) reportedUsers / reportedChatrooms);
+      ChatNodeLoad chosen = strategy.choose(chatroomName, fresh);
+      chosen.addChatroom(expectedUsers);
+      return chosen;
+    }
+  }
+
+  /**
+   * Chooses the chat server node to place a chatroom at from loads polled from the nodes, for
+   * when no node has reported recently
+   *
+   * @param chatroomName name of the chatroom being created
+   * @param polled the load of each chat server node that answered; never empty
+   * @return the load of the chosen node
+   */
+  public ChatNodeLoad place(String chatroomName, List<ChatNodeLoad> polled) {
+    synchronized (loadLock) {
+      return strategy.choose(chatroomName, polled);
+    }
+  }
+
+  /**
+   * Gets the number of chat server nodes that have reported their load
+   *
+   * @return the number of nodes with a load report
+   */
+  public int size() {
+    synchronized (loadLock) {
+      return loads.size();
+    }
+  }
+
+  /**
+   * Builds the key a chat server node is registered under
+   *
+   * @param hostname hostname of the chat server node
+   * @param port port the chat server node accepts operations requests on
+   * @return the key
+   */
+  private static String key(String hostname, int port) {
+    return hostname + ":" + port;
+  }
+}
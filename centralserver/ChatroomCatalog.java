@@ -0,0 +1,248 @@
+package centralserver;
+
+import data.ChatroomPageResponse;
+import data.ChatroomSort;
+import data.ChatroomSummary;
+import data.ResponseStatus;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Searchable index of every chatroom in the chatroom directory, so clients can read the chatrooms
+ * a page at a time instead of the whole list. Chatrooms are indexed by name, for pages in name
+ * order and searches by prefix, and by the number of users in them as last reported by their
+ * chat servers, for pages with the busiest chatrooms first. Searches by substring scan the index
+ * from the cursor and stop after MAX_SCANNED chatrooms, so a search matching few chatrooms
+ * returns short pages rather than scanning the whole catalog in one request. Pages are read
+ * without locking, and a chatroom whose user count changes between pages sorted by users may be
+ * skipped or repeated.
+ */
+public class ChatroomCatalog {
+
+  // most chatrooms examined while filling a single page
+  static final int MAX_SCANNED = 10000;
+
+  /**
+   * A chatroom in the index by user count
+   */
+  private static class Ranked implements Comparable<Ranked> {
+    private final String name;
+    private final int users;
+
+    /**
+     * Creates an instance of Ranked
+     *
+     * @param name name of the chatroom
+     * @param users number of users in the chatroom
+     */
+    private Ranked(String name, int users) {
+      this.name = name;
+      this.users = users;
+    }
+
+    /**
+     * Orders chatrooms with the most users first, then by name
+     *
+     * @param other another chatroom
+     * @return a negative number if this chatroom comes first, positive if it comes later
+     */
+    @Override
+    public int compareTo(Ranked other) {
+      if (users != other.users) {
+        return Integer.compare(other.users, users);
+      }
+      return name.compareTo(other.name);
+    }
+  }
+
+  private final Object catalogLock;
+  // number of users in each chatroom by name; changed only while holding catalogLock
+  private final ConcurrentSkipListMap<String, Integer> byName;
+  // the same chatrooms by number of users; changed only while holding catalogLock
+  private final ConcurrentSkipListSet<Ranked> byUsers;
+
+  /**
+   * Creates an instance of the ChatroomCatalog
+   */
+  public ChatroomCatalog() {
+    this.catalogLock = new Object();
+    this.byName = new ConcurrentSkipListMap<>();
+    this.byUsers = new ConcurrentSkipListSet<>();
+  }
+
+  /**
+   * Adds a chatroom with no users, if it is not already in the catalog
+   *
+   * @param chatroomName name of the chatroom
+   */
+  public void add(String chatroomName) {
+    synchronized (catalogLock) {
+      if (byName.putIfAbsent(chatroomName, 0) == null) {
+        byUsers.add(new Ranked(chatroomName, 0));
+      }
+    }
+  }
+
+  /**
+   * Removes a chatroom
+   *
+   * @param chatroomName name of the chatroom
+   */
+  public void remove(String chatroomName) {
+    synchronized (catalogLock) {
+      Integer users = byName.remove(chatroomName);
+      if (users != null) {
+        byUsers.remove(new Ranked(chatroomName, users));
+      }
+    }
+  }
+
+  /**
+   * Records the number of users in chatrooms as reported by their chat servers. Chatrooms not in
+   * the catalog are ignored.
+   *
+   * @param roomUsers number of users by chatroom name
+   */
+  public void setUsers(Map<String, Integer> roomUsers) {
+    synchronized (catalogLock) {
+      for (Map.Entry<String, Integer> room : roomUsers.entrySet()) {
+        String name = room.getKey();
+        int users = room.getValue();
+        Integer previous = byName.get(name);
+        if (previous == null || previous == users) {
+          continue;
+        }
+        byUsers.remove(new Ranked(name, previous));
+        byName.put(name, users);
+        byUsers.add(new Ranked(name, users));
+      }
+    }
+  }
+
+  /**
+   * Gets the number of chatrooms in the catalog
+   *
+   * @return the number of chatrooms
+   */
+  public int size() {
+    return byName.size();
+  }
+
+  /**
+   * Reads a page of the chatrooms matching a search
+   *
+   * @param query text the chatroom names must start with or contain; empty matches every chatroom
+   * @param prefix true if names must start with the query, false if they must contain it
+   * @param sort the order of the chatrooms
+   * @param cursor the cursor returned with the previous page, or null for the first page
+   * @param limit the most chatrooms in the page
+   * @return the page of chatrooms, or a FAIL response if the cursor is not valid for the sort
+   */
+  public ChatroomPageResponse page(String query, boolean prefix, ChatroomSort sort,
+      String cursor, int limit) {
+    String match = query == null ? "" : query;
+    List<ChatroomSummary> page = new ArrayList<>();
+    String nextCursor;
+
+    if (sort == ChatroomSort.USERS) {
+      NavigableSet<Ranked> view = byUsers;
+      if (cursor != null) {
+        Ranked after = parseCursor(cursor);
+        if (after == null) {
+          return new ChatroomPageResponse(ResponseStatus.FAIL, "Invalid cursor");
+        }
+        view = view.tailSet(after, false);
+      }
+      nextCursor = fill(view.iterator(), room -> room.name, room -> room.users,
+          room -> room.users + ":" + room.name, match, prefix, limit, page);
+    } else {
+      NavigableMap<String, Integer> view = byName;
+      if (prefix && !match.isEmpty()) {
+        // every name starting with the query sorts between the query and the query followed by
+        // the highest character
+        view = view.subMap(match, true, match + Character.MAX_VALUE, true);
+      }
+      if (cursor != null) {
+        view = view.tailMap(cursor, false);
+      }
+      nextCursor = fill(view.entrySet().iterator(), Map.Entry::getKey, Map.Entry::getValue,
+          Map.Entry::getKey, match, prefix, limit, page);
+    }
+
+    return new ChatroomPageResponse(ResponseStatus.OK, "success", page, nextCursor, size());
+  }
+
+  /**
+   * Fills a page with the matching chatrooms from an index, examining at most MAX_SCANNED
+   *
+   * @param it iterates over the index from the cursor
+   * @param name gets the name of a chatroom in the index
+   * @param users gets the number of users in a chatroom in the index
+   * @param cursorOf gets the cursor that continues after a chatroom in the index
+   * @param query text the chatroom names must start with or contain
+   * @param prefix true if names must start with the query, false if they must contain it
+   * @param limit the most chatrooms in the page
+   * @param page the page the matching chatrooms are added to
+   * @param <T> the type of the entries in the index
+   * @return the cursor after the last chatroom examined, or null if the index has been read to
+   *         its end
+   */
+  private static <T> String fill(Iterator<T> it, Function<T, String> name,
+      ToIntFunction<T> users, Function<T, String> cursorOf, String query, boolean prefix,
+      int limit, List<ChatroomSummary> page) {
+    String last = null;
+    int scanned = 0;
+    while (page.size() < limit && scanned < MAX_SCANNED) {
+      if (!it.hasNext()) {
+        return null;
+      }
+      T room = it.next();
+      scanned++;
+      last = cursorOf.apply(room);
+      if (matches(name.apply(room), query, prefix)) {
+        page.add(new ChatroomSummary(name.apply(room), users.applyAsInt(room)));
+      }
+    }
+    return it.hasNext() ? last : null;
+  }
+
+  /**
+   * Whether a chatroom name matches a search
+   *
+   * @param name name of the chatroom
+   * @param query text the name must start with or contain
+   * @param prefix true if the name must start with the query, false if it must contain it
+   * @return true if the name matches
+   */
+  private static boolean matches(String name, String query, boolean prefix) {
+    return prefix ? name.startsWith(query) : name.contains(query);
+  }
+
+  /**
+   * Parses a cursor for a page sorted by users, written as the user count and name of the last
+   * chatroom examined
+   *
+   * @param cursor the cursor
+   * @return the chatroom the next page starts after, or null if the cursor is not valid
+   */
+  private static Ranked parseCursor(String cursor) {
+    int colon = cursor.indexOf(':');
+    if (colon < 0) {
+      return null;
+    }
+    try {
+      return new Ranked(cursor.substring(colon + 1),
+          Integer.parseInt(cursor.substring(0, colon)));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+}
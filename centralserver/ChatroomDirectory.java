@@ -0,0 +1,256 @@
+package centralserver;
+
+import data.ChatroomListResponse;
+import data.IChatroomOperations;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import util.Logger;
+import util.RMIAccess;
+import util.ThreadSafeStringFormatter;
+
+/**
+ * Authoritative directory of the chat server node hosting each chatroom, so finding a chatroom
+ * is a local map read instead of asking every chat server for its chatrooms. The directory is
+ * kept up to date as chatrooms are created, deleted and reestablished and as chat server nodes
+ * register and are removed, and a reconciliation sweep repairs any drift from what the chat
+ * server nodes actually report. Every chatroom in the directory is also in its catalog, which
+ * clients search a page at a time.
+ */
+public class ChatroomDirectory {
+
+  /**
+   * The chat server node hosting a chatroom and when the directory last changed the chatroom
+   */
+  private static class Entry {
+    private final RMIAccess<IChatroomOperations> node;
+    private final long changedAt;
+
+    /**
+     * Creates an instance of Entry
+     *
+     * @param node the chat server node hosting the chatroom
+     * @param changedAt the time in milliseconds the entry was made
+     */
+    private Entry(RMIAccess<IChatroomOperations> node, long changedAt) {
+      this.node = node;
+      this.changedAt = changedAt;
+    }
+  }
+
+  private final Map<String, Entry> rooms;
+  // time each deleted chatroom was removed, so a sweep does not restore it from a stale report
+  private final Map<String, Long> removedAt;
+  private final ChatroomCatalog catalog;
+
+  /**
+   * Creates an instance of the ChatroomDirectory
+   */
+  public ChatroomDirectory() {
+    this.rooms = new ConcurrentHashMap<>();
+    this.removedAt = new ConcurrentHashMap<>();
+    this.catalog = new ChatroomCatalog();
+  }
+
+  /**
+   * Gets the searchable catalog of the chatrooms in the directory
+   *
+   * @return the chatroom catalog
+   */
+  public ChatroomCatalog getCatalog() {
+    return catalog;
+  }
+
+  /**
+   * Finds the chat server node hosting a chatroom
+   *
+   * @param chatroomName name of the chatroom
+   * @return the RMI accessor for the chat server node hosting the chatroom, or null if no node
+   *         hosts it
+   */
+  public RMIAccess<IChatroomOperations> lookup(String chatroomName) {
+    Entry entry = rooms.get(chatroomName);
+    return entry == null ? null : entry.node;
+  }
+
+  /**
+   * Records a chatroom created at a chat server node, unless another node already hosts it
+   *
+   * @param chatroomName name of the chatroom
+   * @param node the chat server node the chatroom was created at
+   * @return the node already hosting the chatroom, or null if the chatroom was recorded
+   */
+  public RMIAccess<IChatroomOperations> putIfAbsent(String chatroomName,
+      RMIAccess<IChatroomOperations> node) {
+    Entry[] existing = new Entry[1];
+    rooms.compute(chatroomName, (k, entry) -> {
+      if (entry != null) {
+        existing[0] = entry;
+        return entry;
+      }
+      removedAt.remove(chatroomName);
+      catalog.add(chatroomName);
+      return new Entry(node, System.currentTimeMillis());
+    });
+    return existing[0] == null ? null : existing[0].node;
+  }
+
+  /**
+   * Removes a deleted chatroom if it is still recorded at the given chat server node
+   *
+   * @param chatroomName name of the chatroom
+   * @param node the chat server node the chatroom was deleted from
+   * @return true if the chatroom was removed
+   */
+  public boolean remove(String chatroomName, RMIAccess<IChatroomOperations> node) {
+    boolean[] removed = new boolean[1];
+    rooms.computeIfPresent(chatroomName, (k, entry) -> {
+      if (entry.node != node) {
+        return entry;
+      }
+      removed[0] = true;
+      removedAt.put(chatroomName, System.currentTimeMillis());
+      catalog.remove(chatroomName);
+      return null;
+    });
+    return removed[0];
+  }
+
+  /**
+   * Removes every chatroom hosted by a chat server node that has been removed from the system
+   *
+   * @param node the removed chat server node
+   * @return the number of chatrooms removed
+   */
+  public int removeNode(RMIAccess<IChatroomOperations> node) {
+    int[] removed = new int[1];
+    for (String name : rooms.keySet()) {
+      rooms.computeIfPresent(name, (k, entry) -> {
+        if (entry.node != node) {
+          return entry;
+        }
+        removed[0]++;
+        catalog.remove(name);
+        return null;
+      });
+    }
+    return removed[0];
+  }
+
+  /**
+   * Gets the number of chatrooms in the directory
+   *
+   * @return the number of chatrooms
+   */
+  public int size() {
+    return rooms.size();
+  }
+
+  /**
+   * Compares the directory against the chatrooms each chat server node reports and repairs any
+   * difference. Chatrooms changed by the directory after the sweep started are left alone, since
+   * the nodes' reports may predate the change, and nodes that cannot be contacted keep their
+   * chatrooms until they are removed from the system.
+   *
+   * @param nodes the chat server nodes registered with the central server
+   * @return the number of chatrooms added, moved or removed
+   */
+  public int reconcile(List<RMIAccess<IChatroomOperations>> nodes) {
+    long sweepStart = System.currentTimeMillis();
+
+    // collect what the reachable nodes report, keeping the first node to report a chatroom
+    Map<String, RMIAccess<IChatroomOperations>> reported = new HashMap<>();
+    Set<RMIAccess<IChatroomOperations>> reachable = new HashSet<>();
+    for (RMIAccess<IChatroomOperations> node : nodes) {
+      ChatroomListResponse response;
+      try {
+        response = node.getAccess().getChatrooms();
+      } catch (NotBoundException | RemoteException e) {
+        Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
+            "Unable to contact Chat server at \"%s:%d\" during chatroom reconciliation; skipping",
+            node.getHostname(),
+            node.getPort()
+            ));
+        continue;
+      }
+      reachable.add(node);
+      for (String name : response.getChatroomNames()) {
+        RMIAccess<IChatroomOperations> first = reported.putIfAbsent(name, node);
+        if (first != null) {
+          Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
+              "Chatroom \"%s\" is hosted by both \"%s:%d\" and \"%s:%d\"",
+              name,
+              first.getHostname(),
+              first.getPort(),
+              node.getHostname(),
+              node.getPort()
+              ));
+        }
+      }
+    }
+
+    int repaired = 0;
+    // add chatrooms the directory is missing and move those recorded at the wrong node
+    for (Map.Entry<String, RMIAccess<IChatroomOperations>> room : reported.entrySet()) {
+      String name = room.getKey();
+      RMIAccess<IChatroomOperations> node = room.getValue();
+      Long removed = removedAt.get(name);
+      if (removed != null && removed >= sweepStart) {
+        continue;
+      }
+      boolean[] changed = new boolean[1];
+      rooms.compute(name, (k, entry) -> {
+        if (entry != null && (entry.node == node || entry.changedAt >= sweepStart
+            || !reachable.contains(entry.node))) {
+          return entry;
+        }
+        changed[0] = true;
+        if (entry == null) {
+          catalog.add(name);
+        }
+        return new Entry(node, entry == null ? 0 : entry.changedAt);
+      });
+      if (changed[0]) {
+        repaired++;
+        Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
+            "Reconciled chatroom \"%s\" to Chat server at \"%s:%d\"",
+            name,
+            node.getHostname(),
+            node.getPort()
+            ));
+      }
+    }
+
+    // remove chatrooms the node they are recorded at no longer reports
+    for (String name : rooms.keySet()) {
+      if (reported.containsKey(name)) {
+        continue;
+      }
+      boolean[] changed = new boolean[1];
+      rooms.computeIfPresent(name, (k, entry) -> {
+        if (entry.changedAt >= sweepStart || !reachable.contains(entry.node)) {
+          return entry;
+        }
+        changed[0] = true;
+        catalog.remove(name);
+        return null;
+      });
+      if (changed[0]) {
+        repaired++;
+        Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
+            "Reconciled chatroom \"%s\" out of the directory; no Chat server reports it",
+            name
+            ));
+      }
+    }
+
+    // chatrooms removed before the sweep started can no longer appear in a stale report
+    removedAt.values().removeIf(time -> time < sweepStart);
+    return repaired;
+  }
+}
@@ -0,0 +1,149 @@
+package centralserver;
+
+import data.ChatroomListResponse;
+import data.IChatroomOperations;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import util.Logger;
+import util.RMIAccess;
+import util.TaskExecutor;
+import util.ThreadSafeStringFormatter;
+
+/**
+ * Gathers the chatrooms hosted by every chat server node for a list request. Every node is asked
+ * at once and the answers are gathered until a deadline, so a list takes as long as the slowest
+ * node up to the deadline rather than the sum of every node's latency. Nodes that do not answer
+ * by the deadline are left out of the list and reported as unavailable. Each node's answer is
+ * cached briefly, and concurrent list requests share a single request to a node.
+ */
+public class ChatroomLister {
+
+  // default time in milliseconds a list request waits for the chat server nodes
+  public static final long DEFAULT_DEADLINE_MS = 1000;
+  // default time in milliseconds a chat server node's answer is reused
+  public static final long DEFAULT_CACHE_MS = 1000;
+
+  /**
+   * The chatrooms a chat server node answered with
+   */
+  private static class Cached {
+    private final List<String> names;
+    private final long fetchedAt;
+
+    /**
+     * Creates an instance of Cached
+     *
+     * @param names names of the chatrooms hosted by the node
+     * @param fetchedAt the time in milliseconds the node answered
+     */
+    private Cached(List<String> names, long fetchedAt) {
+      this.names = names;
+      this.fetchedAt = fetchedAt;
+    }
+  }
+
+  private final long deadlineMs;
+  private final long cacheMs;
+  // last answer of each chat server node
+  private final Map<RMIAccess<IChatroomOperations>, Cached> cache;
+  // requests to chat server nodes that have not answered yet, shared by concurrent lists
+  private final Map<RMIAccess<IChatroomOperations>, Future<List<String>>> fetching;
+
+  /**
+   * Creates an instance of the ChatroomLister
+   *
+   * @param deadlineMs time in milliseconds a list request waits for the chat server nodes
+   * @param cacheMs time in milliseconds a chat server node's answer is reused, or 0 to ask the
+   *                node on every list request
+   */
+  public ChatroomLister(long deadlineMs, long cacheMs) {
+    this.deadlineMs = deadlineMs;
+    this.cacheMs = cacheMs;
+    this.cache = new ConcurrentHashMap<>();
+    this.fetching = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Lists the chatrooms hosted by the chat server nodes
+   *
+   * @param nodes the chat server nodes registered with the central server
+   * @return the names of the chatrooms of every node that answered by the deadline, and the
+   *         nodes that did not
+   */
+  public ChatroomListResponse list(List<RMIAccess<IChatroomOperations>> nodes) {
+    long now = System.currentTimeMillis();
+    long deadline = now + deadlineMs;
+
+    // ask every node without a recent answer at once, joining requests already in flight
+    List<String> chatroomList = new ArrayList<>();
+    Map<RMIAccess<IChatroomOperations>, Future<List<String>>> pending = new LinkedHashMap<>();
+    for (RMIAccess<IChatroomOperations> node : nodes) {
+      Cached cached = cache.get(node);
+      if (cached != null && now - cached.fetchedAt < cacheMs) {
+        chatroomList.addAll(cached.names);
+        continue;
+      }
+      pending.put(node, fetching.computeIfAbsent(node,
+          n -> TaskExecutor.submit(() -> fetch(n))));
+    }
+
+    // gather the answers until the deadline
+    List<String> unavailable = new ArrayList<>();
+    for (Map.Entry<RMIAccess<IChatroomOperations>, Future<List<String>>> entry
+        : pending.entrySet()) {
+      RMIAccess<IChatroomOperations> node = entry.getKey();
+      try {
+        long remaining = Math.max(0, deadline - System.currentTimeMillis());
+        chatroomList.addAll(entry.getValue().get(remaining, TimeUnit.MILLISECONDS));
+      } catch (TimeoutException e) {
+        Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
+            "Chat server at \"%s:%d\" did not answer within %d ms; leaving its chatrooms out "
+                + "of the list",
+            node.getHostname(),
+            node.getPort(),
+            deadlineMs
+            ));
+        unavailable.add(node.getHostname() + ":" + node.getPort());
+      } catch (ExecutionException e) {
+        Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
+            "Unable to contact Chat server at \"%s:%d\"; skipping",
+            node.getHostname(),
+            node.getPort()
+            ));
+        unavailable.add(node.getHostname() + ":" + node.getPort());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        unavailable.add(node.getHostname() + ":" + node.getPort());
+      }
+    }
+
+    // forget the answers of nodes that are no longer registered
+    cache.keySet().retainAll(new HashSet<>(nodes));
+    return new ChatroomListResponse(chatroomList, unavailable);
+  }
+
+  /**
+   * Asks a chat server node for its chatrooms and caches the answer
+   *
+   * @param node the chat server node
+   * @return names of the chatrooms hosted by the node
+   * @throws Exception if the node cannot be contacted
+   */
+  private List<String> fetch(RMIAccess<IChatroomOperations> node) throws Exception {
+    try {
+      List<String> names = node.getAccess().getChatrooms().getChatroomNames();
+      cache.put(node, new Cached(names, System.currentTimeMillis()));
+      return names;
+    } finally {
+      fetching.remove(node);
+    }
+  }
+}
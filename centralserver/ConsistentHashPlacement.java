@@ -0,0 +1,93 @@
+package centralserver;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Places a chatroom at the chat server node its name hashes to on a ring of the nodes, ignoring
+ * load. Each node is placed on the ring at VIRTUAL_NODES points to even out the share of names
+ * each node receives, and when a node joins or leaves only the chatrooms on its arcs of the ring
+ * move. The ring is rebuilt only when the set of available nodes changes.
+ */
+public class ConsistentHashPlacement implements PlacementStrategy {
+
+  // points on the ring for each chat server node
+  static final int VIRTUAL_NODES = 100;
+
+  // ring of points to the key of the node at each point
+  private final TreeMap<Long, String> ring;
+  // keys of the nodes the ring was built from
+  private Set<String> ringNodes;
+  private final MessageDigest md5;
+
+  /**
+   * Creates an instance of ConsistentHashPlacement
+   */
+  public ConsistentHashPlacement() {
+    this.ring = new TreeMap<>();
+    this.ringNodes = new HashSet<>();
+    try {
+      this.md5 = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform is required to support MD5
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Chooses the chat server node the chatroom's name hashes to
+   *
+   * @param chatroomName name of the chatroom being created
+   * @param nodes the load of each available chat server node; never empty
+   * @return the chosen node's load
+   */
+  @Override
+  public ChatNodeLoad choose(String chatroomName, List<ChatNodeLoad> nodes) {
+    Set<String> keys = new HashSet<>();
+    for (ChatNodeLoad node : nodes) {
+      keys.add(node.getKey());
+    }
+    if (!keys.equals(ringNodes)) {
+      ring.clear();
+      for (String key : keys) {
+        for (int i = 0; i < VIRTUAL_NODES; i++) {
+          ring.put(hash(key + "#" + i), key);
+        }
+      }
+      ringNodes = keys;
+    }
+
+    // the first point at or after the name's hash, wrapping around the ring
+    Map.Entry<Long, String> point = ring.ceilingEntry(hash(chatroomName));
+    if (point == null) {
+      point = ring.firstEntry();
+    }
+    for (ChatNodeLoad node : nodes) {
+      if (node.getKey().equals(point.getValue())) {
+        return node;
+      }
+    }
+    return nodes.get(0);
+  }
+
+  /**
+   * Hashes a string to a point on the ring
+   *
+   * @param value the string to hash
+   * @return the first 8 bytes of the string's MD5 digest
+   */
+  private long hash(String value) {
+    byte[] digest = md5.digest(value.getBytes(StandardCharsets.UTF_8));
+    long h = 0;
+    for (int i = 0; i < 8; i++) {
+      h = (h << 8) | (digest[i] & 0xff);
+    }
+    return h;
+  }
+}
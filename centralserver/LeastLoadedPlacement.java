@@ -0,0 +1,29 @@
+package centralserver;
+
+import java.util.List;
+
+/**
+ * Places a chatroom at the chat server node with the fewest users, breaking ties on the fewest
+ * chatrooms. Every create made from the same loads picks the same node, apart from the chatrooms
+ * counted towards it as they are placed.
+ */
+public class LeastLoadedPlacement implements PlacementStrategy {
+
+  /**
+   * Chooses the least loaded chat server node
+   *
+   * @param chatroomName name of the chatroom being created
+   * @param nodes the load of each available chat server node; never empty
+   * @return the least loaded node's load
+   */
+  @Override
+  public ChatNodeLoad choose(String chatroomName, List<ChatNodeLoad> nodes) {
+    ChatNodeLoad min = null;
+    for (ChatNodeLoad node : nodes) {
+      if (min == null || ChatNodeLoad.compare(node, min) < 0) {
+        min = node;
+      }
+    }
+    return min;
+  }
+}
@@ -0,0 +1,167 @@
+package centralserver;
+
+import data.ChatLogEntry;
+import data.IDataParticipant;
+import data.Operations;
+import data.Transaction;
+import java.util.ArrayList;
+import java.util.List;
+import util.Logger;
+import util.RMIAccess;
+import util.ThreadSafeStringFormatter;
+
+/**
+ * Groups chat log requests that arrive close together into a single 2 phase commit. The first
+ * request to arrive when no group is forming leads a new group: it waits for a short window,
+ * or until the group reaches its size limit, for other requests to join, then commits every
+ * message in the group as one transaction. Every request in the group receives the outcome of
+ * that transaction if it committed; if it aborted, each request in the group retries its own
+ * messages as a transaction of their own, so one request's messages cannot fail the others.
+ */
+public class LogGroupCommit {
+
+  private final List<RMIAccess<IDataParticipant>> dataNodesParticipants;
+  private final Object dataNodeParticipantsLock;
+  private final CentralCoordinator coordinator;
+  private final long windowMillis;
+  private final int maxEntries;
+
+  // the group currently accepting requests, guarded by groupLock
+  private final Object groupLock;
+  private Group forming;
+
+  /**
+   * Creates an instance of the LogGroupCommit
+   *
+   * @param dataNodesParticipants list of participants of data nodes
+   * @param dataNodeParticipantsLock locks on the given dataNodeParticipants list
+   * @param coordinator central server coordinator for all the data nodes
+   * @param windowMillis the longest time in milliseconds a group waits for requests to join
+   * @param maxEntries the number of messages after which a group stops waiting and commits
+   */
+  public LogGroupCommit(List<RMIAccess<IDataParticipant>> dataNodesParticipants,
+      Object dataNodeParticipantsLock, CentralCoordinator coordinator, long windowMillis,
+      int maxEntries) {
+    this.dataNodesParticipants = dataNodesParticipants;
+    this.dataNodeParticipantsLock = dataNodeParticipantsLock;
+    this.coordinator = coordinator;
+    this.windowMillis = windowMillis;
+    this.maxEntries = maxEntries;
+    this.groupLock = new Object();
+    this.forming = null;
+  }
+
+  /**
+   * Logs an ordered list of messages as part of the next group commit. Blocks until the group
+   * containing the messages has been committed or aborted.
+   *
+   * @param entries the messages to log, in order
+   * @return true if the messages were logged, false if the transaction logging them was aborted
+   */
+  public boolean commit(List<ChatLogEntry> entries) {
+    Group group;
+    boolean leader;
+    synchronized (groupLock) {
+      leader = forming == null;
+      if (leader) {
+        forming = new Group();
+      }
+      group = forming;
+      group.entries.addAll(entries);
+      group.requests++;
+
+      // a full group stops accepting requests and tells its leader to commit right away
+      if (group.entries.size() >= maxEntries) {
+        forming = null;
+        groupLock.notifyAll();
+      }
+
+      if (leader) {
+        long deadline = System.currentTimeMillis() + windowMillis;
+        long remaining = windowMillis;
+        while (forming == group && remaining > 0) {
+          try {
+            groupLock.wait(remaining);
+          } catch (InterruptedException e) {
+            Logger.writeErrorToLog("Wait for log group commit window was interrupted");
+            break;
+          }
+          remaining = deadline - System.currentTimeMillis();
+        }
+        // close the group so later requests start a new one
+        if (forming == group) {
+          forming = null;
+        }
+      }
+    }
+
+    if (leader) {
+      group.finish(run(group.entries, group.requests));
+    } else {
+      group.await();
+    }
+    if (!group.success && group.requests > 1) {
+      // the group may have been aborted because of another request's messages; retry these
+      // messages on their own so this request receives an outcome of its own
+      return run(entries, 1);
+    }
+    return group.success;
+  }
+
+  /**
+   * Commits messages as a single transaction
+   *
+   * @param entries the messages to commit, in order
+   * @param requests the number of requests the messages came from
+   * @return true if the transaction committed
+   */
+  private boolean run(List<ChatLogEntry> entries, int requests) {
+    Transaction t = new Transaction(Operations.LOGMESSAGES, entries);
+
+    Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
+        "Group committing %d chat messages from %d requests as transaction \"%s\"",
+        entries.size(),
+        requests,
+        t.toString()
+        ));
+
+    TwoPhaseCommit committer = new TwoPhaseCommit();
+    return committer.GenericCommit(dataNodeParticipantsLock, dataNodesParticipants, t,
+        coordinator);
+  }
+
+  /**
+   * The messages and outcome of a single group commit
+   */
+  private static class Group {
+
+    private final List<ChatLogEntry> entries = new ArrayList<>();
+    private int requests = 0;
+    private boolean done = false;
+    private boolean success = false;
+
+    /**
+     * Records the outcome of the group's transaction and wakes every request waiting on it
+     *
+     * @param success true if the transaction committed
+     */
+    synchronized void finish(boolean success) {
+      this.success = success;
+      this.done = true;
+      notifyAll();
+    }
+
+    /**
+     * Waits until the group's transaction has finished
+     */
+    synchronized void await() {
+      while (!done) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Logger.writeErrorToLog("Wait for log group commit was interrupted");
+        }
+      }
+    }
+  }
+}
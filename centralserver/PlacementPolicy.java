@@ -0,0 +1,15 @@
+package centralserver;
+
+/**
+ * Determines how the central server chooses the chat server node a new chatroom is placed at
+ */
+public enum PlacementPolicy {
+  // the node with the fewest users, then the fewest chatrooms
+  LEAST_LOADED,
+  // the less loaded of two nodes chosen at random
+  POWER_OF_TWO,
+  // a node chosen at random in proportion to its unused user capacity
+  WEIGHTED_CAPACITY,
+  // the node the chatroom's name hashes to on a ring of the nodes
+  CONSISTENT_HASH
+}
@@ -0,0 +1,211 @@
+package centralserver;
+
+import data.ChatNodeLoadReport;
+import data.IChatroomOperations;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import util.RMIAccess;
+import util.ThreadSafeStringFormatter;
+
+/**
+ * Simulates placing chatrooms at chat server nodes with each placement strategy over synthetic
+ * create workloads and reports how unevenly the load ends up spread. Chat server nodes of
+ * different user capacities report their load every few creates, and the users of each chatroom
+ * join it as soon as it is created, so placements are made from stale loads as they are at the
+ * central server. No chat server is contacted. All output is printed to console for manual
+ * verification.
+ *
+ * <p>Usage: java -cp chatroom.jar centralserver.PlacementSimulator &lt;chat nodes&gt;
+ * &lt;chatrooms&gt; &lt;creates per report&gt;
+ */
+public class PlacementSimulator {
+
+  // the user capacities of the simulated chat server nodes, assigned in turn
+  private static final int[] CAPACITIES = {1000, 2000, 3000};
+  // seeds for the workloads and for the strategies choosing at random, so runs can be compared;
+  // they differ so the strategies' choices do not follow the chatrooms' sizes
+  private static final long WORKLOAD_SEED = 42;
+  private static final long STRATEGY_SEED = 7;
+
+  /**
+   * Runs every placement strategy over every workload
+   *
+   * @param nodeCount the number of chat server nodes
+   * @param chatrooms the number of chatrooms created
+   * @param createsPerReport the number of chatrooms created between load reports
+   */
+  public void go(int nodeCount, int chatrooms, int createsPerReport) {
+    System.out.println(ThreadSafeStringFormatter.format(
+        "%d chat nodes, %d chatrooms, load reported every %d creates",
+        nodeCount,
+        chatrooms,
+        createsPerReport
+        ));
+    System.out.println("max/mean compares the most loaded node with the average node; "
+        + "1.00 is perfectly even");
+
+    for (String workload : new String[] {"uniform", "skewed"}) {
+      System.out.println();
+      System.out.println(ThreadSafeStringFormatter.format(
+          "Workload \"%s\"",
+          workload
+          ));
+      System.out.println(ThreadSafeStringFormatter.format(
+          "%-18s %14s %14s %20s %12s",
+          "policy",
+          "rooms max/mean",
+          "users max/mean",
+          "utilization max/mean",
+          "ns/create"
+          ));
+      for (PlacementPolicy policy : PlacementPolicy.values()) {
+        simulate(workload, policy, nodeCount, chatrooms, createsPerReport);
+      }
+    }
+  }
+
+  /**
+   * Creates chatrooms with one placement strategy and prints the resulting imbalance
+   *
+   * @param workload "uniform" for chatrooms with evenly spread user counts, "skewed" for a few
+   *                 chatrooms with many users and many with few
+   * @param policy the placement policy
+   * @param nodeCount the number of chat server nodes
+   * @param chatrooms the number of chatrooms created
+   * @param createsPerReport the number of chatrooms created between load reports
+   */
+  private void simulate(String workload, PlacementPolicy policy, int nodeCount, int chatrooms,
+      int createsPerReport) {
+    ChatNodeLoads loads = new ChatNodeLoads(Long.MAX_VALUE,
+        PlacementStrategy.create(policy, new Random(STRATEGY_SEED)));
+    List<RMIAccess<IChatroomOperations>> nodes = new ArrayList<>();
+    for (int i = 0; i < nodeCount; i++) {
+      RMIAccess<IChatroomOperations> node =
+          new RMIAccess<>("chatnode" + i, 1000 + i, "IChatroomOperations");
+      nodes.add(node);
+      loads.register(node);
+    }
+
+    // what each node actually holds, which the central server only sees when it reports
+    int[] rooms = new int[nodeCount];
+    int[] users = new int[nodeCount];
+    Random random = new Random(WORKLOAD_SEED);
+    long placeNanos = 0;
+
+    for (int k = 0; k < chatrooms; k++) {
+      if (k % createsPerReport == 0) {
+        for (int i = 0; i < nodeCount; i++) {
+          loads.report(new ChatNodeLoadReport(rooms[i], users[i], "chatnode" + i, 0, 0,
+              1000 + i, 0, 0, capacity(i), Collections.emptyMap()));
+        }
+      }
+
+      String name = "room" + k;
+      long start = System.nanoTime();
+      ChatNodeLoad placed = loads.place(name);
+      placeNanos += System.nanoTime() - start;
+
+      int i = nodes.indexOf(placed.getNode());
+      rooms[i]++;
+      users[i] += roomUsers(workload, random);
+    }
+
+    double totalUsers = 0;
+    double totalCapacity = 0;
+    for (int i = 0; i < nodeCount; i++) {
+      totalUsers += users[i];
+      totalCapacity += capacity(i);
+    }
+    double maxUtilization = 0;
+    for (int i = 0; i < nodeCount; i++) {
+      maxUtilization = Math.max(maxUtilization, users[i] / (double) capacity(i));
+    }
+
+    System.out.println(ThreadSafeStringFormatter.format(
+        "%-18s %14.2f %14.2f %20.2f %12d",
+        policy,
+        maxOverMean(rooms),
+        maxOverMean(users),
+        maxUtilization / (totalUsers / totalCapacity),
+        placeNanos / chatrooms
+        ));
+  }
+
+  /**
+   * Gets the user capacity of a simulated chat server node
+   *
+   * @param node index of the node
+   * @return the node's user capacity
+   */
+  private static int capacity(int node) {
+    return CAPACITIES[node % CAPACITIES.length];
+  }
+
+  /**
+   * Draws the number of users that join a new chatroom
+   *
+   * @param workload the workload being simulated
+   * @param random the workload's source of randomness
+   * @return the number of users in the chatroom
+   */
+  private static int roomUsers(String workload, Random random) {
+    if (workload.equals("uniform")) {
+      return random.nextInt(21);
+    }
+    // Pareto distributed with the same mean of about 10 users, capped at 1000
+    return (int) Math.min(1000, 1.7 / Math.pow(1 - random.nextDouble(), 1 / 1.2));
+  }
+
+  /**
+   * Divides the largest of some values by their mean
+   *
+   * @param values the values
+   * @return the largest value over the mean value, or 0 if every value is 0
+   */
+  private static double maxOverMean(int[] values) {
+    long total = 0;
+    int max = 0;
+    for (int v : values) {
+      total += v;
+      max = Math.max(max, v);
+    }
+    return total == 0 ? 0 : max / ((double) total / values.length);
+  }
+
+  /**
+   * Starts the simulator
+   *
+   * @param args the number of chat nodes, the number of chatrooms and the number of chatrooms
+   *             created between load reports
+   */
+  public static void main(String[] args) {
+    if (args.length != 3) {
+      System.out.println("Expected 3 arguments <chat nodes> <chatrooms> <creates per report>");
+      return;
+    }
+
+    int[] values = new int[args.length];
+    for (int i = 0; i < args.length; i++) {
+      try {
+        values[i] = Integer.parseInt(args[i]);
+      } catch (NumberFormatException e) {
+        System.out.println(ThreadSafeStringFormatter.format(
+            "Received illegal argument, must be int, received \"%s\"",
+            args[i]
+            ));
+        return;
+      }
+      if (values[i] < 1) {
+        System.out.println(ThreadSafeStringFormatter.format(
+            "Received illegal argument, must be at least 1, received \"%s\"",
+            args[i]
+            ));
+        return;
+      }
+    }
+
+    new PlacementSimulator().go(values[0], values[1], values[2]);
+  }
+}
@@ -0,0 +1,52 @@
+package centralserver;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Chooses the chat server node a new chatroom is placed at from the load of each available
+ * node. Strategies are only called by one thread at a time.
+ */
+public interface PlacementStrategy {
+
+  /**
+   * Chooses the chat server node a new chatroom is placed at
+   *
+   * @param chatroomName name of the chatroom being created
+   * @param nodes the load of each available chat server node; never empty
+   * @return the chosen node's load
+   */
+  ChatNodeLoad choose(String chatroomName, List<ChatNodeLoad> nodes);
+
+  /**
+   * Creates the placement strategy for a policy
+   *
+   * @param policy the placement policy
+   * @return a new strategy implementing the policy
+   */
+  static PlacementStrategy create(PlacementPolicy policy) {
+    return create(policy, new Random());
+  }
+
+  /**
+   * Creates the placement strategy for a policy, with the source of randomness used by
+   * strategies that choose nodes at random
+   *
+   * @param policy the placement policy
+   * @param random the source of randomness
+   * @return a new strategy implementing the policy
+   */
+  static PlacementStrategy create(PlacementPolicy policy, Random random) {
+    switch (policy) {
+      case POWER_OF_TWO:
+        return new PowerOfTwoPlacement(random);
+      case WEIGHTED_CAPACITY:
+        return new WeightedCapacityPlacement(random);
+      case CONSISTENT_HASH:
+        return new ConsistentHashPlacement();
+      case LEAST_LOADED:
+      default:
+        return new LeastLoadedPlacement();
+    }
+  }
+}
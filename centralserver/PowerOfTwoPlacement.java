@@ -0,0 +1,53 @@
+package centralserver;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Places a chatroom at the less loaded of two chat server nodes chosen at random. Creates made
+ * from the same stale loads spread over the nodes instead of all going to the one that looked
+ * least loaded, while still steering away from heavily loaded nodes.
+ */
+public class PowerOfTwoPlacement implements PlacementStrategy {
+
+  private final Random random;
+
+  /**
+   * Creates an instance of PowerOfTwoPlacement
+   */
+  public PowerOfTwoPlacement() {
+    this(new Random());
+  }
+
+  /**
+   * Creates an instance of PowerOfTwoPlacement choosing nodes with the given source of randomness
+   *
+   * @param random the source of randomness
+   */
+  public PowerOfTwoPlacement(Random random) {
+    this.random = random;
+  }
+
+  /**
+   * Chooses the less loaded of two distinct chat server nodes chosen at random
+   *
+   * @param chatroomName name of the chatroom being created
+   * @param nodes the load of each available chat server node; never empty
+   * @return the chosen node's load
+   */
+  @Override
+  public ChatNodeLoad choose(String chatroomName, List<ChatNodeLoad> nodes) {
+    if (nodes.size() == 1) {
+      return nodes.get(0);
+    }
+    int first = random.nextInt(nodes.size());
+    // pick the second node from the others, so the two choices always differ
+    int second = random.nextInt(nodes.size() - 1);
+    if (second >= first) {
+      second++;
+    }
+    ChatNodeLoad a = nodes.get(first);
+    ChatNodeLoad b = nodes.get(second);
+    return ChatNodeLoad.compare(b, a) < 0 ? b : a;
+  }
+}
@@ -20,6 +20,8 @@ public class ResourceCleaner implements Runnable {
 
   private final List<RMIAccess<IChatroomOperations>> chatroomNodes;
   private final Object chatroomNodeLock;
+  private final ChatroomDirectory directory;
+  private final ChatNodeLoads loads;
   private final List<RMIAccess<IDataOperations>> dataNodesOperations;
   private final Object dataNodeOperationsLock;
   private final List<RMIAccess<IDataParticipant>> dataNodesParticipants;
@@ -30,6 +32,8 @@ public class ResourceCleaner implements Runnable {
    *
    * @param chatroomNodes list of all chat server interfaces in the system
    * @param chatroomNodeLock locks operations on chatroomNodes resource
+   * @param directory the chat server node hosting each chatroom
+   * @param loads the load last reported by each chat server node
    * @param dataNodesOperations list of data server operations interfaces in the system
    * @param dataNodeOperationsLock locks operations on the dataNodesOperations resource
    * @param dataNodesParticipants list of data server participant interfaces in the system
@@ -38,12 +42,16 @@ public class ResourceCleaner implements Runnable {
    */
   public ResourceCleaner(List<RMIAccess<IChatroomOperations>> chatroomNodes,
       Object chatroomNodeLock,
+      ChatroomDirectory directory,
+      ChatNodeLoads loads,
       List<RMIAccess<IDataOperations>> dataNodesOperations,
       Object dataNodeOperationsLock,
       List<RMIAccess<IDataParticipant>> dataNodesParticipants,
       Object dataNodeParticipantsLock) throws RemoteException {
     this.chatroomNodes = chatroomNodes;
     this.chatroomNodeLock = chatroomNodeLock;
+    this.directory = directory;
+    this.loads = loads;
     this.dataNodesOperations = dataNodesOperations;
     this.dataNodeOperationsLock = dataNodeOperationsLock;
     this.dataNodesParticipants = dataNodesParticipants;
@@ -70,6 +78,7 @@ public class ResourceCleaner implements Runnable {
 
       this.cleanChatroomNodes();
       this.cleanDataNodes();
+      this.reconcileChatrooms();
     }
 
   }
@@ -98,13 +107,34 @@ public class ResourceCleaner implements Runnable {
         }
       }
 
-      // remove dead nodes from the list of registered chat nodes at the central server
+      // remove dead nodes from the list of registered chat nodes at the central server,
+      // along with the chatrooms they hosted so those chatrooms can be reestablished
       for (RMIAccess<IChatroomOperations> chatNode : downedChatServers) {
         chatroomNodes.remove(chatNode);
+        directory.removeNode(chatNode);
+        loads.remove(chatNode);
       }
     }
   }
 
+  /**
+   * Repairs any drift between the chatroom directory and the chatrooms the chat server nodes
+   * report hosting
+   */
+  public void reconcileChatrooms() {
+    Logger.writeMessageToLog("Reconciling chatroom directory with chat server nodes...");
+    List<RMIAccess<IChatroomOperations>> nodes;
+    synchronized (chatroomNodeLock) {
+      nodes = new LinkedList<>(chatroomNodes);
+    }
+    int repaired = directory.reconcile(nodes);
+    Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
+        "Reconciled chatroom directory; repaired %d chatrooms, %d chatrooms tracked",
+        repaired,
+        directory.size()
+        ));
+  }
+
   /**
    * Cleans up unavailable data server nodes in the system
    */
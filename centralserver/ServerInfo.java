@@ -1,5 +1,7 @@
 package centralserver;
 
+import util.ExecutionMode;
+
 /**
  *  Contains port information used to start central server registries
  */
@@ -8,6 +10,14 @@ public class ServerInfo {
   private final int chatroomPort;
   private final int userPort;
   private final int coordinatorPort;
+  private final long groupCommitWindow;
+  private final int groupCommitMaxEntries;
+  private final ExecutionMode executionMode;
+  private final int executorThreads;
+  private final long loadReportStale;
+  private final PlacementPolicy placementPolicy;
+  private final long listDeadline;
+  private final long listCache;
 
   /**
    * Initializes an instance of the ServerInfo object
@@ -16,12 +26,34 @@ public class ServerInfo {
    * @param chatroomPort the port the central server accepts chatroom operation requests on
    * @param userPort the port the central server accepts user requests on
    * @param coordinatorPort the port that the central server accepts coordinator requests on
+   * @param groupCommitWindow the longest time in milliseconds a chat log request waits for others
+   *                          to join its group commit
+   * @param groupCommitMaxEntries the number of messages after which a group commit starts
+   *                              without waiting out its window
+   * @param executionMode the kind of threads that run 2 phase commit tasks
+   * @param executorThreads the most platform threads used to run 2 phase commit tasks
+   * @param loadReportStale the time in milliseconds after which a chat server's last load
+   *                        report is no longer used to place chatrooms
+   * @param placementPolicy how the chat server a new chatroom is placed at is chosen
+   * @param listDeadline the time in milliseconds a list request waits for the chat servers
+   * @param listCache the time in milliseconds a chat server's list of chatrooms is reused
    */
-  ServerInfo(int registerPort, int chatroomPort, int userPort, int coordinatorPort) {
+  ServerInfo(int registerPort, int chatroomPort, int userPort, int coordinatorPort,
+      long groupCommitWindow, int groupCommitMaxEntries, ExecutionMode executionMode,
+      int executorThreads, long loadReportStale, PlacementPolicy placementPolicy,
+      long listDeadline, long listCache) {
     this.registerPort = registerPort;
     this.chatroomPort = chatroomPort;
     this.userPort = userPort;
     this.coordinatorPort = coordinatorPort;
+    this.groupCommitWindow = groupCommitWindow;
+    this.groupCommitMaxEntries = groupCommitMaxEntries;
+    this.executionMode = executionMode;
+    this.executorThreads = executorThreads;
+    this.loadReportStale = loadReportStale;
+    this.placementPolicy = placementPolicy;
+    this.listDeadline = listDeadline;
+    this.listCache = listCache;
   }
 
   /**
@@ -59,4 +91,80 @@ public class ServerInfo {
   public int getCoordinatorPort() {
     return coordinatorPort;
   }
-}
\ No newline at end of file
+
+  /**
+   * Returns the longest time in milliseconds a chat log request waits for others to join its
+   * group commit
+   *
+   * @return the group commit window in milliseconds
+   */
+  public long getGroupCommitWindow() {
+    return groupCommitWindow;
+  }
+
+  /**
+   * Returns the number of messages after which a group commit starts without waiting out its
+   * window
+   *
+   * @return the largest number of messages in a group commit before it starts
+   */
+  public int getGroupCommitMaxEntries() {
+    return groupCommitMaxEntries;
+  }
+
+  /**
+   * Returns the kind of threads requested to run 2 phase commit tasks
+   *
+   * @return the requested execution mode
+   */
+  public ExecutionMode getExecutionMode() {
+    return executionMode;
+  }
+
+  /**
+   * Returns the most platform threads used to run 2 phase commit tasks
+   *
+   * @return the size of the platform thread pool
+   */
+  public int getExecutorThreads() {
+    return executorThreads;
+  }
+
+  /**
+   * Returns the time after which a chat server's last load report is no longer used to place
+   * chatrooms
+   *
+   * @return the time in milliseconds a load report stays fresh
+   */
+  public long getLoadReportStale() {
+    return loadReportStale;
+  }
+
+  /**
+   * Returns how the chat server a new chatroom is placed at is chosen
+   *
+   * @return the placement policy
+   */
+  public PlacementPolicy getPlacementPolicy() {
+    return placementPolicy;
+  }
+
+  /**
+   * Returns the time a list request waits for the chat servers before leaving out the chatrooms
+   * of those that have not answered
+   *
+   * @return the list deadline in milliseconds
+   */
+  public long getListDeadline() {
+    return listDeadline;
+  }
+
+  /**
+   * Returns the time a chat server's list of chatrooms is reused by later list requests
+   *
+   * @return the time in milliseconds a chat server's list is cached
+   */
+  public long getListCache() {
+    return listCache;
+  }
+}
@@ -7,8 +7,11 @@ import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import util.Logger;
 import util.RMIAccess;
+import util.TaskExecutor;
 import util.ThreadSafeStringFormatter;
 
 /**
@@ -63,18 +66,19 @@ public class TwoPhaseCommit {
         t.toString()
         ));
 
-    // create a canCommit thread for each participant data node in the system
-    List<CanCommitThread> commitThreads = new LinkedList<>();
+    // create a canCommit task for each participant data node in the system
+    List<CanCommitTask> commitTasks = new LinkedList<>();
     synchronized (dataNodeParticipantsLock) {
       for (RMIAccess<IDataParticipant> participant : dataNodesParticipants) {
-        CanCommitThread thread = new CanCommitThread(participant, t);
-        commitThreads.add(thread);
+        CanCommitTask task = new CanCommitTask(participant, t);
+        commitTasks.add(task);
       }
     }
 
     // initiate canCommit for each data node in the system
-    for (CanCommitThread commitThread : commitThreads) {
-      commitThread.start();
+    List<Future<?>> futures = new LinkedList<>();
+    for (CanCommitTask commitTask : commitTasks) {
+      futures.add(TaskExecutor.submit(commitTask));
     }
 
     // if all participants do not indicate NO, the "true" value will 
@@ -82,17 +86,18 @@ public class TwoPhaseCommit {
     // all participants are ready and should issue a doCommit request to each participant
     boolean success = true;
 
-    // collect the thread from each data node
-    for (CanCommitThread thread : commitThreads) {
-      // collect thread
+    // collect the vote from each data node
+    for (int i = 0; i < commitTasks.size(); i++) {
+      CanCommitTask task = commitTasks.get(i);
+      // wait for the task to finish
       try {
-        thread.join();
-      } catch (InterruptedException e) {
+        futures.get(i).get();
+      } catch (InterruptedException | ExecutionException e) {
         Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
-            "Unable to join canCommit thread for participant \"%s:%d\" on transaction \"%s\"",
-            thread.getParticipant().getHostname(),
-            thread.getParticipant().getPort(),
-            thread.getTransaction().toString()
+            "Unable to join canCommit task for participant \"%s:%d\" on transaction \"%s\"",
+            task.getParticipant().getHostname(),
+            task.getParticipant().getPort(),
+            task.getTransaction().toString()
             ));
         success = false;
         continue;
@@ -100,14 +105,14 @@ public class TwoPhaseCommit {
       // if the result is no, set success to false to indicate to 
       //central coordinator that it should issue
       // a doAbort request to all participant nodes
-      if (thread.getResult() == Ack.NO) {
+      if (task.getResult() == Ack.NO) {
         success = false;
       }
       Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
           "Participant at \"%s:%d\" voted \"%s\" on transaction \"%s\"",
-          thread.getParticipant().getHostname(),
-          thread.getParticipant().getPort(),
-          thread.getResult(),
+          task.getParticipant().getHostname(),
+          task.getParticipant().getPort(),
+          task.getResult(),
           t.toString()
           ));
     }
@@ -140,11 +145,17 @@ public class TwoPhaseCommit {
     //doCommit request for the provided transaction
     synchronized (dataNodeParticipantsLock) {
       for (RMIAccess<IDataParticipant> participant : dataNodesParticipants) {
-        Thread commitThread = null;
+        // indicate to the central coordinator that it should wait for this participant
+        // to indicate haveCommitted before continuing execution via the addWaitCommit method;
+        // the participant is registered first so its haveCommitted cannot arrive before the
+        // coordinator is waiting for it, and one that cannot be contacted now keeps the decision
+        // to commit available until it asks for it
+        coordinator.addWaitCommit(t, waitObject);
+        Runnable commitTask = null;
         try {
 
-          // create a thread that issues a doCommit request to the participant
-          commitThread = new Thread(new Runnable() {
+          // create a task that issues a doCommit request to the participant
+          commitTask = new Runnable() {
             IDataParticipant dataNode = participant.getAccess();
 
             @Override
@@ -158,8 +169,8 @@ public class TwoPhaseCommit {
                     ));
               }
             }
-          });
-          // if there is an error starting the thread, log the error 
+          };
+          // if there is an error creating the task, log the error 
           //and continue iterating through data nodes
         } catch (Exception e) {
           Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
@@ -170,11 +181,7 @@ public class TwoPhaseCommit {
           continue;
         }
 
-        // start thread and indicate to the central coordinator that 
-        //it should wait for this participant
-        // to indicate haveCommitted before continuing execution via the addWaitCommit method
-        commitThread.start();
-        coordinator.addWaitCommit(t, waitObject);
+        TaskExecutor.submit(commitTask);
       }
     }
 
@@ -213,8 +220,8 @@ public class TwoPhaseCommit {
       for (RMIAccess<IDataParticipant> participant : dataNodesParticipants) {
         try {
 
-          // create a thread for that issues a doAbort request to the data node participant
-          Thread abortThread = new Thread(new Runnable() {
+          // create a task that issues a doAbort request to the data node participant
+          TaskExecutor.submit(new Runnable() {
             IDataParticipant dataNode = participant.getAccess();
 
             @Override
@@ -229,7 +236,6 @@ public class TwoPhaseCommit {
               }
             }
           });
-          abortThread.start();
         } catch (RemoteException | NotBoundException e) {
           Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
               "Unable to contact data node at \"%s:%d\", skipping...",
@@ -245,19 +251,19 @@ public class TwoPhaseCommit {
   /**
    * Checks if a particular participant can commit a transaction
    */
-  private static class CanCommitThread extends Thread {
+  private static class CanCommitTask implements Runnable {
 
     private final RMIAccess<IDataParticipant> participant;
     private final Transaction t;
     private Ack result = Ack.NA;
 
     /**
-     * Creates an instance of the CanCommitThread
+     * Creates an instance of the CanCommitTask
      *
      * @param participant the participant to request canCommit on
      * @param t the transaction to be checked
      */
-    CanCommitThread(RMIAccess<IDataParticipant> participant, Transaction t) {
+    CanCommitTask(RMIAccess<IDataParticipant> participant, Transaction t) {
       this.participant = participant;
       this.t = t;
     }
@@ -268,7 +274,7 @@ public class TwoPhaseCommit {
     @Override
     public void run() {
       // issue a canCommit request to the provided participant and set the result of the request
-      // for this thread object
+      // for this task object
       try {
         this.result = this.participant.getAccess().canCommit(t, participant);
       } catch (RemoteException | NotBoundException e) {
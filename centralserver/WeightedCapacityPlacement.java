@@ -0,0 +1,68 @@
+package centralserver;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Places a chatroom at a chat server node chosen at random in proportion to its user capacity,
+ * discounted by the share of that capacity already in use. Larger nodes take more chatrooms and
+ * busier nodes fewer, but no node's weight drops to zero, so creates made from the same stale
+ * loads spread over every node instead of crowding onto the last ones that looked free.
+ */
+public class WeightedCapacityPlacement implements PlacementStrategy {
+
+  private final Random random;
+
+  /**
+   * Creates an instance of WeightedCapacityPlacement
+   */
+  public WeightedCapacityPlacement() {
+    this(new Random());
+  }
+
+  /**
+   * Creates an instance of WeightedCapacityPlacement choosing nodes with the given source of
+   * randomness
+   *
+   * @param random the source of randomness
+   */
+  public WeightedCapacityPlacement(Random random) {
+    this.random = random;
+  }
+
+  /**
+   * Chooses a chat server node at random in proportion to its discounted user capacity
+   *
+   * @param chatroomName name of the chatroom being created
+   * @param nodes the load of each available chat server node; never empty
+   * @return the chosen node's load
+   */
+  @Override
+  public ChatNodeLoad choose(String chatroomName, List<ChatNodeLoad> nodes) {
+    double total = 0;
+    for (ChatNodeLoad node : nodes) {
+      total += weight(node);
+    }
+
+    double pick = random.nextDouble() * total;
+    for (ChatNodeLoad node : nodes) {
+      pick -= weight(node);
+      if (pick < 0) {
+        return node;
+      }
+    }
+    return nodes.get(nodes.size() - 1);
+  }
+
+  /**
+   * Gets the weight of a chat server node: its user capacity, halved when the capacity is fully
+   * in use, a third when twice over, and so on
+   *
+   * @param node the node's load
+   * @return the node's weight
+   */
+  private static double weight(ChatNodeLoad node) {
+    double capacity = node.getUserCapacity();
+    return capacity / (1 + node.getUsers() / capacity);
+  }
+}
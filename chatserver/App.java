@@ -1,21 +1,24 @@
 package chatserver;
 
+import data.ICentralChatroomOperations;
 import data.ICentralOperations;
 import data.IChatroomOperations;
-import data.IChatroomUserOperations;
 import data.RegisterResponse;
+import util.ConfigUtil;
 import util.CristiansLogger;
+import util.ExecutionMode;
 import util.RMIAccess;
+import util.TaskExecutor;
 import util.ThreadSafeStringFormatter;
 
+import java.io.File;
 import java.io.IOException;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Initiates the chat server
@@ -23,14 +26,14 @@ import java.util.Map;
 public class App {
 
   private final Map<String, Chatroom> roomMap;
-  private final Object roomMapLock;
 
   /**
    * Creates an instance of the chat server App object
    */
   public App() {
-    this.roomMap = Collections.synchronizedMap(new HashMap<>());
-    this.roomMapLock = new Object();
+    // each chatroom guards its own state, so the map itself is the only state shared by
+    // operations on different chatrooms
+    this.roomMap = new ConcurrentHashMap<>();
   }
 
   /**
@@ -42,6 +45,21 @@ public class App {
    */
   public void go(ServerInfo serverInfo) throws RemoteException, NotBoundException {
 
+    // choose the threads that publish chat messages before any client connects
+    ExecutionMode mode = TaskExecutor.setup(serverInfo.getExecutionMode(),
+        serverInfo.getExecutorThreads());
+    if (mode != serverInfo.getExecutionMode()) {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Execution mode \"%s\" is not supported by this JVM; using \"%s\"",
+          serverInfo.getExecutionMode(),
+          mode
+          ));
+    }
+    CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+        "Running tasks in execution mode \"%s\"",
+        mode
+        ));
+
     // register Data node with the central server
     RMIAccess<ICentralOperations> centralServer = 
         new RMIAccess<>(serverInfo.getCentralServerHostname(),
@@ -59,24 +77,69 @@ public class App {
         centralServer.getAccess().registerChatNode(serverInfo.getHostname(),
         serverInfo.getOperationsPort());
 
+    // messages published to clients are encoded once into pooled buffers shared by every
+    // event loop
+    BufferPool bufferPool = new BufferPool(serverInfo.getBufferSize(),
+        serverInfo.getBufferPoolSize(), serverInfo.isDirectBuffers());
+    MessageEncoder encoder = new MessageEncoder(bufferPool, serverInfo.getEventLoops());
+    OutboundQueueConfig queueConfig = new OutboundQueueConfig(serverInfo.getOutboundQueueLimit(),
+        serverInfo.getSlowConsumerPolicy(), serverInfo.getSlowConsumerBlockTimeout());
+
+    CristiansLogger.writeMessageToLog("Setting up chat log queue...");
+    // published messages are journaled locally and logged with the central server in the
+    // background
+    RMIAccess<ICentralChatroomOperations> centralChatroomAccessor = 
+        new RMIAccess<>(serverInfo.getCentralServerHostname(), registerResponse.getPort(),
+        "ICentralChatroomOperations");
+    ChatLogQueue chatLogQueue;
+    try {
+      chatLogQueue = new ChatLogQueue(centralChatroomAccessor,
+          new File("chatfiles_" + serverInfo.getId()), serverInfo.getLogQueueCapacity(),
+          serverInfo.getLogBatchSize(), serverInfo.getLogDrainers(),
+          serverInfo.getLogRetryInitial(), serverInfo.getLogRetryMax(),
+          serverInfo.isLogJournalSync(), serverInfo.getLogRejectAttempts());
+    } catch (IOException e) {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Unable to open chat log journal for server: \"%s\"; shutting down server",
+          e.getMessage()
+          ));
+      return;
+    }
+    chatLogQueue.start();
+
     CristiansLogger.writeMessageToLog("Setting up chat server operations...");
     // start operations registry
     Registry operationsRegistry = LocateRegistry.createRegistry(serverInfo.getOperationsPort());
-    IChatroomOperations operationsEngine = new ChatroomOperations(roomMap, roomMapLock, serverInfo);
+    IChatroomOperations operationsEngine = 
+        new ChatroomOperations(roomMap, serverInfo, encoder);
     operationsRegistry.rebind("IChatroomOperations", operationsEngine);
 
+    // user operations are shared by RMI clients and clients sending chat frames over TCP
+    ChatroomUserOperations userOperationsEngine =
+        new ChatroomUserOperations(this.roomMap, chatLogQueue);
+
     CristiansLogger.writeMessageToLog("Staring TCP socket connection thread...");
     // start receive thread for socket connections
-    ConnectChatroom thread = 
-        new ConnectChatroom(serverInfo.getTcpPort(), this.roomMap, this.roomMapLock);
+    ConnectChatroom thread = new ConnectChatroom(serverInfo.getTcpPort(),
+        serverInfo.getEventLoops(), encoder, queueConfig, this.roomMap, userOperationsEngine);
     thread.start();
 
+    // start local thread that periodically logs server metrics
+    Thread metricsThread = 
+        new Thread(new MetricsReporter(encoder, chatLogQueue, this.roomMap,
+        serverInfo.getMetricsInterval()));
+    metricsThread.start();
+
+    // start local thread that periodically pushes the server's load to the central server,
+    // which places new chatrooms from the last load each chat server reported
+    Thread loadReportThread =
+        new Thread(new LoadReporter(centralServer, encoder, this.roomMap, serverInfo,
+        serverInfo.getLoadReportInterval()), "LoadReporter");
+    loadReportThread.start();
+
     CristiansLogger.writeMessageToLog("Setting up chatroom user operations...");
     // start RMI chat registry
     Registry userRegistry = LocateRegistry.createRegistry(serverInfo.getRmiPort());
-    IChatroomUserOperations userOperationsEngine = 
-        new ChatroomUserOperations(this.roomMap, 
-            this.roomMapLock, serverInfo, registerResponse.getPort());
     userRegistry.rebind("IChatroomUserOperations", userOperationsEngine);
 
     // indicate the server is ready
@@ -178,8 +241,40 @@ public class App {
           ));
     }
 
+    // optional tuning values are read from system properties
+    int eventLoops = ConfigUtil.getInt("chatserver.eventLoops",
+        Math.max(1, Runtime.getRuntime().availableProcessors() / 2), 1);
+    int bufferSize = ConfigUtil.getInt("chatserver.bufferSize", 2048, 64);
+    int bufferPoolSize = ConfigUtil.getInt("chatserver.bufferPoolSize", 1024, 0);
+    boolean directBuffers = ConfigUtil.getBoolean("chatserver.directBuffers", true);
+    long metricsInterval = ConfigUtil.getLong("chatserver.metricsIntervalMs", 60000, 1);
+    long loadReportInterval = ConfigUtil.getLong("chatserver.loadReportIntervalMs", 2000, 1);
+    int userCapacity = ConfigUtil.getInt("chatserver.userCapacity", 1000, 1);
+    int outboundQueueLimit = ConfigUtil.getInt("chatserver.outboundQueueLimit", 1024, 1);
+    SlowConsumerPolicy slowConsumerPolicy = ConfigUtil.getEnum("chatserver.slowConsumerPolicy",
+        SlowConsumerPolicy.class, SlowConsumerPolicy.DROP_OLDEST);
+    long slowConsumerBlockTimeout = 
+        ConfigUtil.getLong("chatserver.slowConsumerBlockMs", 100, 0);
+    int logQueueCapacity = ConfigUtil.getInt("chatserver.logQueueCapacity", 10000, 1);
+    int logBatchSize = ConfigUtil.getInt("chatserver.logBatchSize", 100, 1);
+    int logDrainers = ConfigUtil.getInt("chatserver.logDrainers", 2, 1);
+    long logRetryInitial = ConfigUtil.getLong("chatserver.logRetryMs", 100, 1);
+    long logRetryMax = ConfigUtil.getLong("chatserver.logRetryMaxMs", 5000, logRetryInitial);
+    boolean logJournalSync = ConfigUtil.getBoolean("chatserver.logJournalSync", true);
+    int logRejectAttempts = ConfigUtil.getInt("chatserver.logRejectAttempts", 10, 1);
+    int backfillMessages = ConfigUtil.getInt("chatserver.backfillMessages", 50, 0);
+    long backfillBytes = ConfigUtil.getLong("chatserver.backfillBytes", 65536, 0);
+    ExecutionMode executionMode = ConfigUtil.getEnum("chatserver.executionMode",
+        ExecutionMode.class, ExecutionMode.PLATFORM);
+    int executorThreads = ConfigUtil.getInt("chatserver.executorThreads",
+        TaskExecutor.DEFAULT_PLATFORM_THREADS, 1);
 
     return new ServerInfo(args[0], args[1], 
-        centralServerPort, args[3], tcpPort, rmiPort, operationsPort);
+        centralServerPort, args[3], tcpPort, rmiPort, operationsPort, eventLoops,
+        bufferSize, bufferPoolSize, directBuffers, metricsInterval,
+        outboundQueueLimit, slowConsumerPolicy, slowConsumerBlockTimeout,
+        logQueueCapacity, logBatchSize, logDrainers, logRetryInitial, logRetryMax, logJournalSync,
+        backfillMessages, backfillBytes, loadReportInterval, userCapacity, logRejectAttempts,
+        executionMode, executorThreads);
   }
 }
@@ -0,0 +1,115 @@
+package chatserver;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of fixed size byte buffers used to hold encoded outbound messages. Buffers are returned
+ * to the pool once every subscriber has been sent the message they hold, so steady state
+ * publishing does not allocate new buffers.
+ */
+public class BufferPool {
+
+  private final int bufferSize;
+  private final int maxPooled;
+  private final boolean direct;
+  private final ArrayDeque<ByteBuffer> pool;
+  private final Object poolLock;
+
+  // allocation counters
+  private final AtomicLong reused;
+  private final AtomicLong allocated;
+  private final AtomicLong oversized;
+
+  /**
+   * Creates an instance of the BufferPool
+   *
+   * @param bufferSize capacity in bytes of each pooled buffer
+   * @param maxPooled maximum number of idle buffers kept by the pool
+   * @param direct whether pooled buffers are allocated outside of the Java heap
+   */
+  public BufferPool(int bufferSize, int maxPooled, boolean direct) {
+    this.bufferSize = bufferSize;
+    this.maxPooled = maxPooled;
+    this.direct = direct;
+    this.pool = new ArrayDeque<>(maxPooled);
+    this.poolLock = new Object();
+    this.reused = new AtomicLong();
+    this.allocated = new AtomicLong();
+    this.oversized = new AtomicLong();
+  }
+
+  /**
+   * Takes an empty buffer from the pool, allocating a new one if the pool is empty
+   *
+   * @return an empty buffer with the pool's buffer size
+   */
+  public ByteBuffer acquire() {
+    ByteBuffer buffer;
+    synchronized (poolLock) {
+      buffer = pool.poll();
+    }
+
+    if (buffer == null) {
+      allocated.incrementAndGet();
+      return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+    }
+
+    reused.incrementAndGet();
+    buffer.clear();
+    return buffer;
+  }
+
+  /**
+   * Allocates a buffer for a message too large for a pooled buffer. The buffer is never returned
+   * to the pool.
+   *
+   * @param size capacity in bytes of the buffer
+   * @return a new buffer with the requested capacity
+   */
+  public ByteBuffer allocateOversized(int size) {
+    oversized.incrementAndGet();
+    return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+  }
+
+  /**
+   * Returns a buffer to the pool
+   *
+   * @param buffer a buffer previously taken from the pool
+   */
+  public void release(ByteBuffer buffer) {
+    synchronized (poolLock) {
+      if (pool.size() < maxPooled) {
+        pool.add(buffer);
+      }
+    }
+  }
+
+  /**
+   * Gets the number of times a pooled buffer was reused
+   *
+   * @return the number of times a pooled buffer was reused
+   */
+  public long getReused() {
+    return reused.get();
+  }
+
+  /**
+   * Gets the number of pooled buffers that had to be allocated
+   *
+   * @return the number of pooled buffers that had to be allocated
+   */
+  public long getAllocated() {
+    return allocated.get();
+  }
+
+  /**
+   * Gets the number of buffers allocated for messages larger than the pooled buffer size
+   *
+   * @return the number of oversized buffers allocated
+   */
+  public long getOversized() {
+    return oversized.get();
+  }
+}
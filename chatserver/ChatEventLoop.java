@@ -0,0 +1,456 @@
+package chatserver;
+
+import data.ChatFrame;
+import data.FrameType;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import util.CristiansLogger;
+import util.TaskExecutor;
+import util.ThreadSafeStringFormatter;
+
+/**
+ * Services a set of non-blocking client sockets on a single thread. Performs the initial
+ * <chatroom>:<username>[:frames=<version>] handshake for new connections, subscribes them to the
+ * requested chatroom, and writes queued messages to subscribers as their sockets become writable.
+ * Clients that negotiated frames also send their chat messages as CHAT frames, which are
+ * handed to the shared task executor to be published, one client's frames at a time and in the
+ * order received, and answered with pipelined ACK frames. Publishing may wait for space in the
+ * chat log queue or for slow subscribers, so it never runs on this thread; a client with too many
+ * frames waiting to be published is not read from until they have been.
+ */
+public class ChatEventLoop extends Thread {
+
+  // size of the scratch buffer used to drain data from subscribed sockets
+  private static final int READ_BUFFER_SIZE = 4096;
+  // most queued messages gathered into a single socket write
+  private static final int MAX_GATHERED_MESSAGES = 64;
+
+  private final int index;
+  private final Selector selector;
+  private final MessageEncoder encoder;
+  private final OutboundQueueConfig queueConfig;
+  private final Map<String, Chatroom> roomMap;
+  private final ChatroomUserOperations userOperations;
+  private final Queue<SocketChannel> pendingRegistrations;
+  // head of an intrusive list of subscribers waiting to be flushed, linked through the
+  // subscribers themselves so requesting a flush does not allocate
+  private final AtomicReference<Subscriber> pendingFlushes;
+  private final ByteBuffer readBuffer;
+  private final ByteBuffer[] writeScratch;
+
+  /**
+   * Creates an instance of the ChatEventLoop thread
+   *
+   * @param index index of the event loop, used to name the thread and select message views
+   * @param encoder encodes messages sent to clients
+   * @param queueConfig limits placed on the outbound queue of each client
+   * @param roomMap a concurrent map containing available chatrooms at the server
+   * @param userOperations publishes chat messages received from clients
+   * @throws IOException if the selector cannot be opened
+   */
+  public ChatEventLoop(int index, MessageEncoder encoder, OutboundQueueConfig queueConfig,
+      Map<String, Chatroom> roomMap, ChatroomUserOperations userOperations) throws IOException {
+    super(ThreadSafeStringFormatter.format("ChatEventLoop-%d", index));
+    this.index = index;
+    this.selector = Selector.open();
+    this.encoder = encoder;
+    this.queueConfig = queueConfig;
+    this.roomMap = roomMap;
+    this.userOperations = userOperations;
+    this.pendingRegistrations = new ConcurrentLinkedQueue<>();
+    this.pendingFlushes = new AtomicReference<>();
+    this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    this.writeScratch = new ByteBuffer[MAX_GATHERED_MESSAGES];
+  }
+
+  /**
+   * Hands a newly accepted client socket to this event loop
+   *
+   * @param channel the accepted client socket, already in non-blocking mode
+   */
+  public void register(SocketChannel channel) {
+    pendingRegistrations.add(channel);
+    selector.wakeup();
+  }
+
+  /**
+   * Asks the event loop to write the queued messages of a subscriber
+   *
+   * @param subscriber the subscriber with queued messages
+   */
+  void requestFlush(Subscriber subscriber) {
+    // a subscriber already waiting to be flushed will see the newly queued message
+    if (!subscriber.markFlushPending()) {
+      return;
+    }
+
+    Subscriber head;
+    do {
+      head = pendingFlushes.get();
+      subscriber.setNextPendingFlush(head);
+    } while (!pendingFlushes.compareAndSet(head, subscriber));
+
+    // only the first subscriber added to an empty list needs to wake the selector
+    if (head == null) {
+      selector.wakeup();
+    }
+  }
+
+  /**
+   * Gets the encoder used for messages sent to clients
+   *
+   * @return the encoder used for messages sent to clients
+   */
+  MessageEncoder getEncoder() {
+    return encoder;
+  }
+
+  /**
+   * Services registered sockets for the duration of the chat server's execution
+   */
+  @Override
+  public void run() {
+    while (true) {
+      try {
+        selector.select();
+      } catch (IOException e) {
+        CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+            "Event loop \"%s\" failed to select ready sockets: \"%s\"",
+            getName(),
+            e.getMessage()
+            ));
+        continue;
+      }
+
+      registerPending();
+      flushPending();
+
+      Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+      while (keys.hasNext()) {
+        SelectionKey key = keys.next();
+        keys.remove();
+        Subscriber subscriber = (Subscriber) key.attachment();
+
+        if (key.isValid() && key.isReadable()) {
+          handleRead(subscriber);
+        }
+        if (key.isValid() && key.isWritable()) {
+          flush(subscriber);
+        }
+      }
+    }
+  }
+
+  /**
+   * Registers sockets handed to this event loop since the last select
+   */
+  private void registerPending() {
+    SocketChannel channel;
+    while ((channel = pendingRegistrations.poll()) != null) {
+      Subscriber subscriber = new Subscriber(channel, this, queueConfig);
+      try {
+        subscriber.setKey(channel.register(selector, SelectionKey.OP_READ, subscriber));
+      } catch (ClosedChannelException e) {
+        CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+            "Client at \"%s\" closed the connection before it could be registered",
+            subscriber.getRemoteAddress()
+            ));
+      }
+    }
+  }
+
+  /**
+   * Writes the queued messages of subscribers that have been published to since the last select
+   */
+  private void flushPending() {
+    Subscriber subscriber = pendingFlushes.getAndSet(null);
+    while (subscriber != null) {
+      Subscriber next = subscriber.getNextPendingFlush();
+      subscriber.setNextPendingFlush(null);
+      subscriber.clearFlushPending();
+      flush(subscriber);
+      subscriber = next;
+    }
+  }
+
+  /**
+   * Reads from a client socket, either to complete the handshake, to receive chat frames, or to
+   * detect that a subscribed client has closed its connection
+   *
+   * @param subscriber the client whose socket is readable
+   */
+  private void handleRead(Subscriber subscriber) {
+    ByteBuffer buffer = subscriber.getHandshakeBuffer();
+    if (buffer == null) {
+      buffer = subscriber.getInboundBuffer();
+    }
+    // once subscribed, text clients do not send data; drain anything received into the scratch
+    // buffer
+    if (buffer == null) {
+      buffer = readBuffer;
+      buffer.clear();
+    }
+
+    int read;
+    try {
+      read = subscriber.getChannel().read(buffer);
+    } catch (IOException e) {
+      read = -1;
+    }
+
+    if (read == -1) {
+      disconnect(subscriber);
+      return;
+    }
+
+    if (subscriber.getHandshakeBuffer() != null) {
+      handleHandshake(subscriber);
+    } else if (subscriber.getInboundBuffer() != null) {
+      handleFrames(subscriber);
+    }
+  }
+
+  /**
+   * Handles every complete frame received from a client that negotiated frames
+   *
+   * @param subscriber the client that sent the frames
+   */
+  private void handleFrames(Subscriber subscriber) {
+    ByteBuffer inbound = subscriber.getInboundBuffer();
+    inbound.flip();
+    try {
+      ChatFrame frame;
+      while ((frame = ChatFrame.read(inbound)) != null) {
+        handleFrame(subscriber, frame);
+      }
+    } catch (IOException e) {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Received malformed frame from client \"%s\" at \"%s\": \"%s\"; closing connection",
+          subscriber.getUsername(),
+          subscriber.getRemoteAddress(),
+          e.getMessage()
+          ));
+      disconnect(subscriber);
+      return;
+    }
+    subscriber.compactInbound();
+  }
+
+  /**
+   * Queues a chat message received as a frame to be published off the event loop. Acks are
+   * written with the client's other queued messages, so a client may send further messages
+   * without waiting for them.
+   *
+   * @param subscriber the client that sent the frame
+   * @param frame the frame received from the client
+   */
+  private void handleFrame(Subscriber subscriber, ChatFrame frame) {
+    if (frame.getType() != FrameType.CHAT) {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Ignoring %s frame sent by client \"%s\" at \"%s\"",
+          frame.getType(),
+          subscriber.getUsername(),
+          subscriber.getRemoteAddress()
+          ));
+      return;
+    }
+
+    if (subscriber.queueChat(frame)) {
+      TaskExecutor.submit(() -> publishChats(subscriber));
+    }
+    // stop reading a client that sends faster than its messages can be published
+    if (subscriber.isReadPaused()) {
+      SelectionKey key = subscriber.getKey();
+      if (key != null && key.isValid()) {
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+      }
+    }
+  }
+
+  /**
+   * Publishes the chat messages a client has sent as frames, in the order they were received,
+   * and queues the ACK for each. Runs on the shared task executor until no frame is waiting.
+   *
+   * @param subscriber the client that sent the frames
+   */
+  private void publishChats(Subscriber subscriber) {
+    ChatFrame frame;
+    while ((frame = subscriber.nextChat()) != null) {
+      // the message is published as the user and chatroom the connection subscribed with,
+      // whatever the frame claims
+      boolean published = userOperations.publishChat(subscriber.getChatroom().getRoomName(),
+          subscriber.getUsername(), frame.getPayload(), subscriber.getRemoteAddress());
+      subscriber.sendAck(frame.getSequence(), published);
+    }
+  }
+
+  /**
+   * Completes the handshake for a client once its full initial message has been received
+   *
+   * @param subscriber the client performing the handshake
+   */
+  private void handleHandshake(Subscriber subscriber) {
+    ByteBuffer buffer = subscriber.getHandshakeBuffer();
+
+    // find the end of the initial client message
+    int end = -1;
+    for (int i = 0; i < buffer.position(); i++) {
+      if (buffer.get(i) == '\n') {
+        end = i;
+        break;
+      }
+    }
+
+    if (end == -1) {
+      // the message is incomplete; wait for more data unless the client has exceeded the limit
+      if (!buffer.hasRemaining()) {
+        CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+            "Initial client message from \"%s\" exceeded %d bytes",
+            subscriber.getRemoteAddress(),
+            buffer.capacity()
+            ));
+        subscriber.sendAndClose("fail");
+      }
+      return;
+    }
+
+    // get the inital client message
+    // in the format <chatroom>:<username>[:frames=<version>]
+    // <chatroom> is used to find the correct chatroom
+    // <username> is used to associate the client socket with the appropriate user
+    // frames=<version> asks for binary frames instead of lines of text
+    String clientMessage = new String(buffer.array(), 0, end, StandardCharsets.UTF_8).trim();
+    String[] vals = clientMessage.split(":");
+
+    // if the length of vals is not 2 or 3, it is either missing or has extra argument
+    if (vals.length != 2 && vals.length != 3) {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Initial client message \"%s\" did not meet <chatroom>:<user> format",
+          clientMessage
+          ));
+
+      // indicate to the client that they cannot be subscribed to a chatroom
+      subscriber.sendAndClose("fail");
+      return;
+    }
+
+    boolean framed = vals.length == 3 && negotiateFrames(vals[2]);
+
+    CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+        "Received subscribe request from user \"%s\" for chatroom \"%s\" using %s",
+        vals[1],
+        vals[0],
+        framed ? "binary frames" : "text"
+        ));
+
+    // get the room the user wants to subscribe to
+    Chatroom chatroom = roomMap.get(vals[0]);
+
+    // if the chatroom is null, it does not exist
+    if (chatroom == null) {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Client \"%s\" attempted to subscribe to non-existent chatroom \"%s\"",
+          vals[1],
+          vals[0]
+          ));
+
+      // indicate to client that the connection request failed
+      subscriber.sendAndClose("fail");
+      return;
+    }
+
+    // queue the success message before subscribing so it precedes any published message
+    // the reply is always a line of text; frames follow it once they have been negotiated
+    subscriber.completeHandshake(chatroom, vals[1], framed);
+    subscriber.send(framed ? "success:" + ChatFrame.HANDSHAKE_OPTION + ChatFrame.VERSION
+        : "success");
+    if (!chatroom.subscribe(subscriber, vals[1])) {
+      // the chatroom was closed after it was looked up; tell the client it is no longer available
+      subscriber.sendChatroomClosed(chatroom.getLastSequence());
+      return;
+    }
+
+    // keep any chat frames the client sent right behind its initial message
+    if (framed && buffer.position() > end + 1) {
+      subscriber.getInboundBuffer().put(buffer.array(), end + 1, buffer.position() - end - 1);
+      handleFrames(subscriber);
+    }
+  }
+
+  /**
+   * Determines whether a client's frames=<version> handshake option can be honored. Clients
+   * asking for an unknown option or an older frame version fall back to the text protocol.
+   *
+   * @param option the third field of the initial client message
+   * @return true if messages should be sent to the client as binary frames
+   */
+  private boolean negotiateFrames(String option) {
+    if (!option.startsWith(ChatFrame.HANDSHAKE_OPTION)) {
+      return false;
+    }
+    try {
+      // a client supporting newer versions also reads the version this server writes
+      return Integer.parseInt(option.substring(ChatFrame.HANDSHAKE_OPTION.length()))
+          >= ChatFrame.VERSION;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Writes queued messages to a subscriber and updates the socket's interest in write readiness
+   *
+   * @param subscriber the subscriber to flush
+   */
+  private void flush(Subscriber subscriber) {
+    SelectionKey key = subscriber.getKey();
+    if (key == null || !key.isValid()) {
+      return;
+    }
+
+    // a client whose chats are waiting to be published is not read from
+    int read = subscriber.isReadPaused() ? 0 : SelectionKey.OP_READ;
+    try {
+      if (subscriber.writeQueued(writeScratch, index)) {
+        if (subscriber.isCloseRequested()) {
+          disconnect(subscriber);
+          return;
+        }
+        key.interestOps(read);
+      } else {
+        // the socket is full; wait until it can accept more data
+        key.interestOps(read | SelectionKey.OP_WRITE);
+      }
+    } catch (IOException e) {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Unable to write to client \"%s\" at \"%s\"; closing connection",
+          subscriber.getUsername(),
+          subscriber.getRemoteAddress()
+          ));
+      disconnect(subscriber);
+    }
+  }
+
+  /**
+   * Closes a client connection and removes it from its chatroom if it is still subscribed
+   *
+   * @param subscriber the client to disconnect
+   */
+  private void disconnect(Subscriber subscriber) {
+    Chatroom chatroom = subscriber.getChatroom();
+    if (chatroom != null) {
+      chatroom.removeSubscriber(subscriber);
+    }
+    subscriber.close();
+  }
+}
@@ -0,0 +1,835 @@
+package chatserver;
+
+import data.ChatLogEntry;
+import data.ICentralChatroomOperations;
+import data.Response;
+import data.ResponseStatus;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import util.CristiansLogger;
+import util.RMIAccess;
+import util.ThreadSafeStringFormatter;
+
+/**
+ * Write-behind queue for logging published chat messages with the central server. Messages are
+ * appended to a local journal and acknowledged as soon as they are queued, then drained to the
+ * central server in the background. Messages that queue up while a request is in flight are sent
+ * together and logged in a single 2pc transaction. Each chatroom is always drained by the same
+ * drain thread, so the messages of a chatroom are logged in the order they were published. A
+ * chatroom whose messages the central server keeps rejecting is set aside without holding up the
+ * other chatrooms of its drain thread, and its messages are moved to a dead-letter file once they
+ * have been rejected too many times.
+ * Messages still in the journal when the chat server stops are logged once it starts again. When
+ * the journal is synced, concurrent chat requests share a single force of the journal to disk.
+ * The journal starts over once every message in it has been logged, and is compacted down to the
+ * messages still waiting once it grows past JOURNAL_COMPACT_BYTES.
+ */
+public class ChatLogQueue {
+
+  // journal size in bytes past which it is rewritten with only the messages still waiting
+  private static final long JOURNAL_COMPACT_BYTES = 16L * 1024 * 1024;
+
+  /**
+   * Outcome of an attempt to log a batch of messages with the central server
+   */
+  private enum LogOutcome {
+    // every message in the batch was logged
+    LOGGED,
+    // the central server did not log the batch
+    REJECTED,
+    // the central server could not be contacted
+    UNREACHABLE
+  }
+
+  /**
+   * The messages of a chatroom waiting to be logged, only used by the chatroom's drain thread
+   */
+  private static class RoomQueue {
+    private final String chatroomName;
+    private final ArrayDeque<QueuedChatMessage> messages;
+    // number of messages at the front of the queue in the batch being logged
+    private int inBatch;
+    // whether the chatroom is sent on its own, once a batch holding it has been rejected
+    private boolean isolated;
+    // number of times in a row the chatroom's messages were rejected when sent on their own
+    private int rejections;
+    // time in milliseconds before which the chatroom is not retried
+    private long retryAt;
+    private long backoff;
+
+    /**
+     * Creates an instance of RoomQueue
+     *
+     * @param chatroomName name of the chatroom
+     * @param backoff the time in milliseconds to wait before the first retry of the chatroom
+     */
+    private RoomQueue(String chatroomName, long backoff) {
+      this.chatroomName = chatroomName;
+      this.messages = new ArrayDeque<>();
+      this.backoff = backoff;
+    }
+
+    /**
+     * Removes the messages in the batch that was logged or moved to the dead-letter file
+     */
+    private void removeBatch() {
+      for (int i = 0; i < inBatch; i++) {
+        messages.poll();
+      }
+      inBatch = 0;
+    }
+  }
+
+  private final RMIAccess<ICentralChatroomOperations> centralServerAccessor;
+  private final int capacity;
+  private final int batchSize;
+  private final long retryInitial;
+  private final long retryMax;
+  private final boolean syncJournal;
+  private final int rejectAttempts;
+  private final File journalFile;
+  private final File checkpointFile;
+  private final File deadLetterFile;
+  private final List<BlockingQueue<QueuedChatMessage>> drainQueues;
+
+  // bounds the number of queued messages, guarded by capacityLock
+  private final Object capacityLock;
+  private int depth;
+
+  // journal state, guarded by journalLock
+  private final Object journalLock;
+  private FileOutputStream journalStream;
+  private DataOutputStream journal;
+  // messages in the journal that have not been logged yet, by sequence number
+  private final TreeMap<Long, QueuedChatMessage> pending;
+  private long nextSequence;
+  // journal size in bytes at which it is next compacted
+  private long compactAt;
+  // last sequence number forced to disk, guarded by syncLock
+  private final Object syncLock;
+  private long syncedSequence;
+
+  // queue metrics
+  private final AtomicLong enqueued;
+  private final AtomicLong logged;
+  private final AtomicLong batches;
+  private final AtomicLong retries;
+  private final AtomicLong replayed;
+  private final AtomicLong syncs;
+  private final AtomicLong deadLettered;
+
+  /**
+   * Creates an instance of the ChatLogQueue, replaying any messages left in the journal by a
+   * previous run of the chat server
+   *
+   * @param centralServerAccessor accessor for the central server's chatroom operations
+   * @param directory directory holding the journal
+   * @param capacity the most messages that may be waiting to be logged
+   * @param batchSize the most messages sent to the central server in a single request
+   * @param drainers the number of threads draining the queue
+   * @param retryInitial the time in milliseconds to wait before the first retry of a message
+   * @param retryMax the longest time in milliseconds to wait between retries of a message
+   * @param syncJournal whether each journal append is forced to disk before it is acknowledged
+   * @param rejectAttempts the number of times the central server may reject a chatroom's
+   *                       messages before they are moved to the dead-letter file
+   * @throws IOException if the journal cannot be read or created
+   */
+  public ChatLogQueue(RMIAccess<ICentralChatroomOperations> centralServerAccessor,
+      File directory, int capacity, int batchSize, int drainers, long retryInitial, long retryMax,
+      boolean syncJournal, int rejectAttempts) throws IOException {
+    this.centralServerAccessor = centralServerAccessor;
+    this.capacity = capacity;
+    this.batchSize = batchSize;
+    this.retryInitial = retryInitial;
+    this.retryMax = retryMax;
+    this.syncJournal = syncJournal;
+    this.rejectAttempts = rejectAttempts;
+    this.drainQueues = new ArrayList<>(drainers);
+    for (int i = 0; i < drainers; i++) {
+      this.drainQueues.add(new LinkedBlockingQueue<>());
+    }
+    this.capacityLock = new Object();
+    this.depth = 0;
+    this.journalLock = new Object();
+    this.pending = new TreeMap<>();
+    this.nextSequence = 1;
+    this.compactAt = JOURNAL_COMPACT_BYTES;
+    this.syncLock = new Object();
+    this.syncedSequence = 0;
+    this.enqueued = new AtomicLong();
+    this.logged = new AtomicLong();
+    this.batches = new AtomicLong();
+    this.retries = new AtomicLong();
+    this.replayed = new AtomicLong();
+    this.syncs = new AtomicLong();
+    this.deadLettered = new AtomicLong();
+
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException(ThreadSafeStringFormatter.format(
+          "Unable to create directory \"%s\"",
+          directory.getPath()
+          ));
+    }
+    this.journalFile = new File(directory, "chatlog.journal");
+    this.checkpointFile = new File(directory, "chatlog.checkpoint");
+    this.deadLetterFile = new File(directory, "chatlog.deadletter");
+
+    long validLength = replay();
+    this.journalStream = new FileOutputStream(journalFile, true);
+    // drop a record left partially written when the chat server stopped
+    this.journalStream.getChannel().truncate(validLength);
+    this.journal = new DataOutputStream(new BufferedOutputStream(journalStream));
+  }
+
+  /**
+   * Starts the threads that drain the queue to the central server
+   */
+  public void start() {
+    for (int i = 0; i < drainQueues.size(); i++) {
+      BlockingQueue<QueuedChatMessage> queue = drainQueues.get(i);
+      Thread t = new Thread(() -> drain(queue), 
+          ThreadSafeStringFormatter.format("ChatLogDrainer-%d", i));
+      t.start();
+    }
+  }
+
+  /**
+   * Queues a published message to be logged with the central server. Returns once the message
+   * has been written to the journal, waiting first if the queue is full, without forcing the
+   * journal to disk; callers that need the message on disk follow up with awaitDurable once they
+   * hold no lock. Messages for the same chatroom are logged in the order they are queued.
+   *
+   * @param chatroomName name of the chatroom the message was published to
+   * @param message the message as published, including the name of its sender
+   * @return the journal sequence number of the message
+   * @throws IOException if the message cannot be written to the journal
+   */
+  public long add(String chatroomName, String message) throws IOException {
+    synchronized (capacityLock) {
+      while (depth >= capacity) {
+        try {
+          capacityLock.wait();
+        } catch (InterruptedException e) {
+          CristiansLogger.writeErrorToLog("Wait for space in chat log queue was interrupted");
+        }
+      }
+      depth++;
+    }
+
+    QueuedChatMessage queued;
+    try {
+      synchronized (journalLock) {
+        queued = new QueuedChatMessage(nextSequence, chatroomName, message);
+        writeRecord(journal, queued);
+        journal.flush();
+        nextSequence++;
+        pending.put(queued.getSequence(), queued);
+      }
+    } catch (IOException e) {
+      releaseCapacity(1);
+      throw e;
+    }
+
+    enqueued.incrementAndGet();
+    drainQueueFor(chatroomName).add(queued);
+    return queued.getSequence();
+  }
+
+  /**
+   * Waits until a queued message has been forced to disk, if the journal is synced. Callers
+   * waiting at the same time share a single force of the journal, so this should be called once
+   * the caller holds no lock that other chat requests need.
+   *
+   * @param sequence the journal sequence number returned by add for the message
+   */
+  public void awaitDurable(long sequence) {
+    if (!syncJournal) {
+      return;
+    }
+    try {
+      syncThrough(sequence);
+    } catch (IOException e) {
+      // the message is in the journal and has been published, so it is still logged; it stays
+      // pending so the checkpoint never passes it, and a later force of the journal covers it
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Unable to force chat log journal to disk: \"%s\"; message %d is lost if the chat "
+              + "server stops before it is logged",
+          e.getMessage(),
+          sequence
+          ));
+    }
+  }
+
+  /**
+   * Gets the number of messages waiting to be logged with the central server
+   *
+   * @return the number of messages waiting to be logged
+   */
+  public int getDepth() {
+    synchronized (capacityLock) {
+      return depth;
+    }
+  }
+
+  /**
+   * Summarizes the chat log queue counters
+   *
+   * @return a printable summary of the chat log queue counters
+   */
+  public String getStats() {
+    return ThreadSafeStringFormatter.format(
+        "depth: %d, capacity: %d, queued: %d, logged: %d, batches: %d, retries: %d, "
+            + "replayed: %d, syncs: %d, dead-lettered: %d",
+        getDepth(),
+        capacity,
+        enqueued.get(),
+        logged.get(),
+        batches.get(),
+        retries.get(),
+        replayed.get(),
+        syncs.get(),
+        deadLettered.get()
+        );
+  }
+
+  /**
+   * Forces the journal to disk up to a sequence number. Messages appended while another chat
+   * request is forcing the journal are covered together by the next force, so concurrent requests
+   * share one force instead of each waiting for their own.
+   *
+   * @param sequence the sequence number of the message that must be on disk
+   * @throws IOException if the journal cannot be forced to disk
+   */
+  private void syncThrough(long sequence) throws IOException {
+    synchronized (syncLock) {
+      if (syncedSequence >= sequence) {
+        return;
+      }
+      long written;
+      FileOutputStream stream;
+      synchronized (journalLock) {
+        written = nextSequence - 1;
+        stream = journalStream;
+      }
+      // the journal is only replaced while the sync lock is held, so stream is still the journal
+      stream.getChannel().force(false);
+      syncs.incrementAndGet();
+      syncedSequence = written;
+    }
+  }
+
+  /**
+   * Logs the messages of one drain queue with the central server for the duration of the
+   * application. Messages are sorted into a queue per chatroom, and the messages waiting in
+   * several chatrooms are sent together as a single batch. A batch is retried with exponential
+   * backoff while the central server cannot be contacted, since no other batch would fare better.
+   * A rejected batch holding several chatrooms is split so that each chatroom is retried on its
+   * own, and a chatroom whose messages are rejected on their own is set aside with exponential
+   * backoff while the other chatrooms keep draining. Its later messages wait behind the rejected
+   * ones so its chat log keeps its order, and messages rejected rejectAttempts times are moved to
+   * the dead-letter file.
+   *
+   * @param queue the drain queue to empty
+   */
+  private void drain(BlockingQueue<QueuedChatMessage> queue) {
+    // chatrooms with messages waiting, in the order they are served
+    Map<String, RoomQueue> rooms = new LinkedHashMap<>();
+    List<QueuedChatMessage> batch = new ArrayList<>(batchSize);
+    List<RoomQueue> served = new ArrayList<>();
+    long backoff = retryInitial;
+    while (true) {
+      collect(queue, rooms);
+      fillBatch(rooms, System.currentTimeMillis(), batch, served);
+      if (batch.isEmpty()) {
+        continue;
+      }
+
+      LogOutcome outcome = log(batch);
+      if (outcome == LogOutcome.UNREACHABLE) {
+        retries.incrementAndGet();
+        for (RoomQueue room : served) {
+          room.inBatch = 0;
+        }
+        try {
+          Thread.sleep(backoff);
+        } catch (InterruptedException e) {
+          CristiansLogger.writeErrorToLog("Chat log retry backoff was interrupted");
+        }
+        backoff = Math.min(backoff * 2, retryMax);
+      } else {
+        backoff = retryInitial;
+        if (outcome == LogOutcome.LOGGED) {
+          for (RoomQueue room : served) {
+            room.removeBatch();
+            room.isolated = false;
+            room.rejections = 0;
+            room.backoff = retryInitial;
+          }
+          logged.addAndGet(batch.size());
+          batches.incrementAndGet();
+          complete(batch);
+          releaseCapacity(batch.size());
+        } else {
+          retries.incrementAndGet();
+          reject(served, batch);
+        }
+      }
+
+      // serve the other chatrooms before those just served come around again
+      for (RoomQueue room : served) {
+        rooms.remove(room.chatroomName);
+        if (!room.messages.isEmpty()) {
+          rooms.put(room.chatroomName, room);
+        }
+      }
+      batch.clear();
+      served.clear();
+    }
+  }
+
+  /**
+   * Sorts the messages waiting in a drain queue into their chatrooms' queues, first waiting for a
+   * message or for the next retry if no chatroom is ready to be sent
+   *
+   * @param queue the drain queue to empty
+   * @param rooms the queues of the chatrooms with messages waiting
+   */
+  private void collect(BlockingQueue<QueuedChatMessage> queue, Map<String, RoomQueue> rooms) {
+    long now = System.currentTimeMillis();
+    long nextRetry = Long.MAX_VALUE;
+    for (RoomQueue room : rooms.values()) {
+      nextRetry = Math.min(nextRetry, room.retryAt);
+    }
+
+    List<QueuedChatMessage> arrived = new ArrayList<>();
+    if (nextRetry > now) {
+      try {
+        QueuedChatMessage first = nextRetry == Long.MAX_VALUE ? queue.take()
+            : queue.poll(nextRetry - now, TimeUnit.MILLISECONDS);
+        if (first != null) {
+          arrived.add(first);
+        }
+      } catch (InterruptedException e) {
+        CristiansLogger.writeErrorToLog("Wait on chat log queue was interrupted");
+      }
+    }
+    // take whatever else has queued up behind the first message
+    queue.drainTo(arrived);
+    for (QueuedChatMessage queued : arrived) {
+      rooms.computeIfAbsent(queued.getChatroomName(), name -> new RoomQueue(name, retryInitial))
+          .messages.add(queued);
+    }
+  }
+
+  /**
+   * Fills a batch with the oldest messages of the chatrooms ready to be sent, in the order they
+   * are served. The messages of a chatroom that were part of a rejected batch are sent on their
+   * own.
+   *
+   * @param rooms the queues of the chatrooms with messages waiting
+   * @param now the current time in milliseconds
+   * @param batch the batch to fill
+   * @param served the chatrooms with messages in the batch
+   */
+  private void fillBatch(Map<String, RoomQueue> rooms, long now, List<QueuedChatMessage> batch,
+      List<RoomQueue> served) {
+    for (RoomQueue room : rooms.values()) {
+      if (batch.size() >= batchSize) {
+        return;
+      }
+      if (room.retryAt > now || (room.isolated && !batch.isEmpty())) {
+        continue;
+      }
+      room.inBatch = Math.min(batchSize - batch.size(), room.messages.size());
+      Iterator<QueuedChatMessage> messages = room.messages.iterator();
+      for (int i = 0; i < room.inBatch; i++) {
+        batch.add(messages.next());
+      }
+      served.add(room);
+      if (room.isolated) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Handles a batch the central server rejected. A batch holding several chatrooms is split so
+   * each chatroom is retried on its own; a chatroom rejected on its own is retried after a
+   * backoff, or once it has been rejected rejectAttempts times, has the rejected messages moved
+   * to the dead-letter file.
+   *
+   * @param served the chatrooms with messages in the batch
+   * @param batch the rejected batch
+   */
+  private void reject(List<RoomQueue> served, List<QueuedChatMessage> batch) {
+    if (served.size() > 1) {
+      // retry each chatroom on its own to find out which of them the central server rejects
+      for (RoomQueue room : served) {
+        room.inBatch = 0;
+        room.isolated = true;
+      }
+      return;
+    }
+
+    RoomQueue room = served.get(0);
+    room.isolated = true;
+    room.rejections++;
+    if (room.rejections >= rejectAttempts && deadLetter(room.chatroomName, batch)) {
+      room.removeBatch();
+      room.isolated = false;
+      room.rejections = 0;
+      room.backoff = retryInitial;
+      room.retryAt = 0;
+      deadLettered.addAndGet(batch.size());
+      complete(batch);
+      releaseCapacity(batch.size());
+      return;
+    }
+
+    room.inBatch = 0;
+    room.retryAt = System.currentTimeMillis() + room.backoff;
+    room.backoff = Math.min(room.backoff * 2, retryMax);
+  }
+
+  /**
+   * Appends messages the central server keeps rejecting to the dead-letter file, in the same
+   * record format as the journal, so they are kept once they leave the journal
+   *
+   * @param chatroomName name of the chatroom the messages were published to
+   * @param batch the rejected messages
+   * @return true if the messages were written to the dead-letter file
+   */
+  private boolean deadLetter(String chatroomName, List<QueuedChatMessage> batch) {
+    try (FileOutputStream stream = new FileOutputStream(deadLetterFile, true)) {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+      for (QueuedChatMessage queued : batch) {
+        writeRecord(out, queued);
+      }
+      out.flush();
+      if (syncJournal) {
+        stream.getChannel().force(false);
+      }
+    } catch (IOException e) {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Unable to write %d rejected messages for chatroom \"%s\" to \"%s\": \"%s\"",
+          batch.size(),
+          chatroomName,
+          deadLetterFile.getPath(),
+          e.getMessage()
+          ));
+      return false;
+    }
+
+    CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+        "Central server rejected %d messages for chatroom \"%s\" %d times; moved them to \"%s\"",
+        batch.size(),
+        chatroomName,
+        rejectAttempts,
+        deadLetterFile.getPath()
+        ));
+    return true;
+  }
+
+  /**
+   * Makes a single attempt to log a batch of messages with the central server
+   *
+   * @param batch the messages to log, in order
+   * @return whether the batch was logged, rejected, or could not be sent
+   */
+  private LogOutcome log(List<QueuedChatMessage> batch) {
+    List<ChatLogEntry> entries = new ArrayList<>(batch.size());
+    for (QueuedChatMessage queued : batch) {
+      entries.add(new ChatLogEntry(queued.getChatroomName(), queued.getMessage()));
+    }
+
+    try {
+      Response r = centralServerAccessor.getAccess().logChatMessages(entries);
+      if (r.getStatus() == ResponseStatus.OK) {
+        return LogOutcome.LOGGED;
+      }
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Central server rejected batch of %d messages: \"%s\"",
+          batch.size(),
+          r.getMessage()
+          ));
+      return LogOutcome.REJECTED;
+    } catch (RemoteException | NotBoundException e) {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Unable to contact central server at \"%s:%d\" to log batch of %d messages, "
+              + "retrying...",
+          centralServerAccessor.getHostname(),
+          centralServerAccessor.getPort(),
+          batch.size()
+          ));
+      return LogOutcome.UNREACHABLE;
+    }
+  }
+
+  /**
+   * Records that a batch of messages has been logged, so it is not replayed when the chat server
+   * restarts
+   *
+   * @param batch the messages that were logged
+   */
+  private void complete(List<QueuedChatMessage> batch) {
+    boolean compact = false;
+    synchronized (journalLock) {
+      for (QueuedChatMessage queued : batch) {
+        pending.remove(queued.getSequence());
+      }
+      try {
+        if (pending.isEmpty()) {
+          // every journaled message has been logged; start the journal over
+          writeCheckpoint(nextSequence - 1);
+          journal.flush();
+          journalStream.getChannel().truncate(0);
+          compactAt = JOURNAL_COMPACT_BYTES;
+        } else {
+          writeCheckpoint(pending.firstKey() - 1);
+          compact = journalStream.getChannel().size() > compactAt;
+        }
+      } catch (IOException e) {
+        // the message may be logged a second time if the chat server restarts
+        CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+            "Unable to update chat log checkpoint: \"%s\"",
+            e.getMessage()
+            ));
+      }
+    }
+    if (compact) {
+      compactJournal();
+    }
+  }
+
+  /**
+   * Rewrites the journal with only the messages that have not been logged yet, so a journal that
+   * never empties because messages keep arriving does not grow without bound. The new journal is
+   * written and forced to disk beside the old one and then moved over it, so a chat server that
+   * stops part way through replays from one or the other.
+   */
+  private void compactJournal() {
+    // the sync lock keeps the journal from being replaced while it is being forced
+    synchronized (syncLock) {
+      synchronized (journalLock) {
+        File temp = new File(journalFile.getPath() + ".tmp");
+        FileOutputStream stream = null;
+        try {
+          long before = journalStream.getChannel().size();
+          if (pending.isEmpty() || before <= compactAt) {
+            return;
+          }
+          stream = new FileOutputStream(temp);
+          DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+          for (QueuedChatMessage queued : pending.values()) {
+            writeRecord(out, queued);
+          }
+          out.flush();
+          stream.getChannel().force(false);
+          Files.move(temp.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+              StandardCopyOption.ATOMIC_MOVE);
+
+          // the new journal holds every message not yet logged and is on disk
+          FileOutputStream old = journalStream;
+          journalStream = stream;
+          journal = out;
+          stream = null;
+          syncedSequence = nextSequence - 1;
+          long after = journalStream.getChannel().size();
+          // messages waiting to be logged may fill much of the journal on their own, so do not
+          // compact again until the journal has grown well past them
+          compactAt = Math.max(JOURNAL_COMPACT_BYTES, 2 * after);
+          closeQuietly(old);
+          CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+              "Compacted chat log journal from %d to %d bytes holding %d messages",
+              before,
+              after,
+              pending.size()
+              ));
+        } catch (IOException e) {
+          CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+              "Unable to compact chat log journal: \"%s\"",
+              e.getMessage()
+              ));
+          if (stream != null) {
+            closeQuietly(stream);
+            temp.delete();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Closes a journal stream that is no longer written to
+   *
+   * @param stream the stream to close
+   */
+  private static void closeQuietly(FileOutputStream stream) {
+    try {
+      stream.close();
+    } catch (IOException e) {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Unable to close chat log journal file: \"%s\"",
+          e.getMessage()
+          ));
+    }
+  }
+
+  /**
+   * Frees space in the queue for more messages
+   *
+   * @param count the number of messages that have left the queue
+   */
+  private void releaseCapacity(int count) {
+    synchronized (capacityLock) {
+      depth -= count;
+      capacityLock.notifyAll();
+    }
+  }
+
+  /**
+   * Gets the drain queue responsible for a chatroom
+   *
+   * @param chatroomName name of the chatroom
+   * @return the drain queue for the chatroom
+   */
+  private BlockingQueue<QueuedChatMessage> drainQueueFor(String chatroomName) {
+    return drainQueues.get(Math.floorMod(chatroomName.hashCode(), drainQueues.size()));
+  }
+
+  /**
+   * Appends a message record to the journal or the dead-letter file. Called with the journal
+   * lock held when writing to the journal.
+   *
+   * @param out the stream to write the record to
+   * @param queued the message to append
+   * @throws IOException if the record cannot be written
+   */
+  private static void writeRecord(DataOutputStream out, QueuedChatMessage queued)
+      throws IOException {
+    byte[] chatroomName = queued.getChatroomName().getBytes(StandardCharsets.UTF_8);
+    byte[] message = queued.getMessage().getBytes(StandardCharsets.UTF_8);
+    out.writeLong(queued.getSequence());
+    out.writeInt(chatroomName.length);
+    out.write(chatroomName);
+    out.writeInt(message.length);
+    out.write(message);
+  }
+
+  /**
+   * Records the sequence number below which every journaled message has been logged
+   *
+   * @param sequence the last sequence number known to be logged
+   * @throws IOException if the checkpoint cannot be written
+   */
+  private void writeCheckpoint(long sequence) throws IOException {
+    File temp = new File(checkpointFile.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+      out.writeLong(sequence);
+    }
+    Files.move(temp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Queues every journaled message that was not logged before the chat server last stopped
+   *
+   * @return the length in bytes of the complete records in the journal
+   * @throws IOException if the journal cannot be read
+   */
+  private long replay() throws IOException {
+    long checkpoint = 0;
+    if (checkpointFile.exists()) {
+      try (DataInputStream in = new DataInputStream(new FileInputStream(checkpointFile))) {
+        checkpoint = in.readLong();
+      } catch (EOFException e) {
+        CristiansLogger.writeErrorToLog("Chat log checkpoint is incomplete; replaying journal");
+      }
+    }
+    nextSequence = checkpoint + 1;
+
+    if (!journalFile.exists()) {
+      return 0;
+    }
+
+    long validLength = 0;
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+      while (true) {
+        long sequence;
+        byte[] chatroomName;
+        byte[] message;
+        try {
+          sequence = in.readLong();
+          chatroomName = readBytes(in, journalFile.length());
+          message = readBytes(in, journalFile.length());
+        } catch (EOFException e) {
+          // the rest of the journal is a record that was only partially written
+          break;
+        }
+        validLength += 16 + chatroomName.length + message.length;
+        nextSequence = Math.max(nextSequence, sequence + 1);
+
+        if (sequence > checkpoint) {
+          QueuedChatMessage queued = new QueuedChatMessage(sequence,
+              new String(chatroomName, StandardCharsets.UTF_8),
+              new String(message, StandardCharsets.UTF_8));
+          pending.put(sequence, queued);
+          depth++;
+          replayed.incrementAndGet();
+          drainQueueFor(queued.getChatroomName()).add(queued);
+        }
+      }
+    }
+
+    if (replayed.get() > 0) {
+      CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+          "Replaying %d chat messages that were not logged before the chat server stopped",
+          replayed.get()
+          ));
+    }
+    return validLength;
+  }
+
+  /**
+   * Reads a length-prefixed field from the journal
+   *
+   * @param in the journal
+   * @param limit the length of the journal, which no field can exceed
+   * @return the bytes of the field
+   * @throws EOFException if the field was only partially written
+   * @throws IOException if the journal cannot be read
+   */
+  private static byte[] readBytes(DataInputStream in, long limit) throws IOException {
+    int length = in.readInt();
+    if (length < 0 || length > limit) {
+      throw new EOFException("Journal record has an invalid length");
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return bytes;
+  }
+}
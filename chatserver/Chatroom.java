@@ -1,10 +1,11 @@
 package chatserver;
 
-import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.net.Socket;
+import data.ChatFrame;
+import data.FrameType;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import util.CristiansLogger;
 import util.ThreadSafeStringFormatter;
@@ -14,44 +15,81 @@ import util.ThreadSafeStringFormatter;
  */
 public class Chatroom {
 
-  private final Map<String, Socket> socketMap;
-  private final Object socketMapLock;
+  private final Map<String, Subscriber> subscriberMap;
+  private final Object subscriberMapLock;
   private final String roomName;
+  private final MessageEncoder encoder;
+  private final Object publishLock;
+  private final Object logLock;
+  // recent messages sent to users as they join, guarded by the subscriber map lock
+  private final RecentMessages recentMessages;
+  // sequence number of the last message published to the chatroom, guarded by the publish lock
+  private long lastSequence;
+  // guarded by the subscriber map lock
+  private boolean closed;
 
   /**
    * constructor of Chatroom which accepts the name which is the unique
    * identifier for each room.
    *
    * @param roomName name of the chat room
+   * @param encoder encodes messages published to the chat room
+   * @param backfillMessages the most recent messages sent to users as they join
+   * @param backfillBytes the largest total encoded size of the recent messages sent to users as
+   *                      they join
    */
-  public Chatroom(String roomName) {
-    this.socketMap = new HashMap<>();
-    this.socketMapLock = new Object();
+  public Chatroom(String roomName, MessageEncoder encoder, int backfillMessages,
+      long backfillBytes) {
+    this.subscriberMap = new HashMap<>();
+    this.subscriberMapLock = new Object();
     this.roomName = roomName;
+    this.encoder = encoder;
+    this.publishLock = new Object();
+    this.logLock = new Object();
+    this.recentMessages = new RecentMessages(backfillMessages, backfillBytes);
+    this.lastSequence = 0;
+    this.closed = false;
   }
 
   /**
-   * Subscribes a user to a chatroom using its username and an instance of the socket.
+   * Subscribes a user to a chatroom using its username and its client connection. The user is
+   * sent the chatroom's recent messages as a single batch before any newly published message.
    *
-   * @param s socket instance
-   * @param username name of the user to associate with the socket
+   * @param s client connection for the user
+   * @param username name of the user to associate with the connection
+   * @return true if the user was subscribed, false if the chatroom has been closed
    */
-  public void subscribe(Socket s, String username) {
+  public boolean subscribe(Subscriber s, String username) {
     CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
         "Subscribing client \"%s\" to chatroom \"%s\"",
         username,
         this.roomName
         ));
 
-    // associate the socket with the user's username so it can be 
+    // associate the connection with the user's username so it can be 
     //retrieved when the user leaves the chatroom
-    synchronized (socketMapLock) {
-      this.socketMap.put(username, s);
+    Subscriber previous;
+    synchronized (subscriberMapLock) {
+      if (this.closed) {
+        return false;
+      }
+      previous = this.subscriberMap.put(username, s);
+      // queue the recent messages while holding the lock, so no message published after they
+      // were read can reach the user ahead of them
+      ChatFrame[] recent = recentMessages.getMessages();
+      if (recent.length > 0) {
+        s.sendBackfill(recent);
+      }
+    }
+    // a user reconnecting replaces their stale connection
+    if (previous != null && previous != s) {
+      previous.close();
     }
+    return true;
   }
 
   /**
-   * Unsubscribes a user and their associated socket from the chatroom
+   * Unsubscribes a user and their associated connection from the chatroom
    *
    * @param username name of the user to be unsubscribed from the chatroom
    */
@@ -62,49 +100,138 @@ public class Chatroom {
         this.roomName
         ));
 
-    // locate the socket associated with the user using their username and remove the socket
-    // from the socket map so the user no longer receives published messages
-    synchronized (socketMapLock) {
-      Socket s = socketMap.get(username);
-      try {
-        s.close();
-      } catch (IOException e) {
-        CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
-            "There was an error closing the socket for user \"%s\""
-            ));
+    // locate the connection associated with the user using their username and remove it
+    // from the subscriber map so the user no longer receives published messages
+    Subscriber s;
+    synchronized (subscriberMapLock) {
+      s = this.subscriberMap.remove(username);
+    }
+    if (s != null) {
+      s.close();
+    }
+  }
+
+  /**
+   * Removes a client connection that has been closed from the chatroom, unless the user has
+   * already subscribed again on a newer connection
+   *
+   * @param s the closed client connection
+   */
+  public void removeSubscriber(Subscriber s) {
+    synchronized (subscriberMapLock) {
+      String username = s.getUsername();
+      if (username == null || this.subscriberMap.get(username) != s) {
+        return;
       }
-      this.socketMap.remove(username);
+      this.subscriberMap.remove(username);
     }
+
+    CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+        "Client \"%s\" disconnected from chatroom \"%s\"",
+        s.getUsername(),
+        this.roomName
+        ));
   }
 
   /**
-   * Publishes a message to all subscribers in the chatroom
+   * Publishes a message to all subscribers in the chatroom. Each message is given the next
+   * sequence number in the chatroom, and is sent as a binary frame to clients that negotiated
+   * frames and as a "<sender> >> <message>" line of text to all other clients.
    *
+   * @param sender name of the user that sent the message
    * @param message the message which should be published to all subscribers
    */
-  public void publish(String message) {
-    synchronized (socketMapLock) {
-      // iterate through the socket map and notify each user via their dedicated socket
-      for (String user : socketMap.keySet()) {
-        CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
-            "Publishing message \"%s\" to user \"%s\"",
-            message,
-            user
-            ));
-        PrintWriter out = null;
-        try {
-          // write message to socket
-          out = 
-              new PrintWriter(new OutputStreamWriter(socketMap.get(user).getOutputStream()), true);
-          out.println(message);
-        } catch (IOException e) {
-          CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
-              "Unable to publish message \"%s\" to client \"%s\"",
-              message,
-              user
-              ));
+  public void publish(String sender, String message) {
+    awaitBacklogged(queueMessage(sender, message));
+  }
+
+  /**
+   * Queues a message for every subscriber in the chatroom without waiting on slow subscribers.
+   * Each message is given the next sequence number in the chatroom, and is sent as a binary frame
+   * to clients that negotiated frames and as a "<sender> >> <message>" line of text to all other
+   * clients.
+   *
+   * @param sender name of the user that sent the message
+   * @param message the message which should be published to all subscribers
+   * @return the subscribers whose queues are over their limit under the BLOCK policy, to be
+   *         waited for with awaitBacklogged once the caller holds no chatroom lock
+   */
+  List<Subscriber> queueMessage(String sender, String message) {
+    String line = sender + " >> " + message;
+    long timestamp = CristiansLogger.getSynchronizedTime();
+    // each format is encoded at most once; every subscriber using it is sent the same bytes
+    OutboundMessage text = null;
+    OutboundMessage frame = null;
+    Subscriber[] subscribers;
+    List<Subscriber> backlogged = null;
+    // publishes to the same chatroom are queued one at a time so every user receives them in
+    // the same order; publishes to other chatrooms proceed in parallel
+    synchronized (publishLock) {
+      long sequence = ++lastSequence;
+      ChatFrame published = new ChatFrame(FrameType.MESSAGE, roomName, sequence, sender,
+          timestamp, message);
+      // queue outside of the subscriber map lock, so queueing does not stop clients from
+      // joining or leaving the chatroom; the message is retained for joining users under the
+      // same lock, so each user receives it exactly once
+      synchronized (subscriberMapLock) {
+        subscribers = subscriberMap.values().toArray(new Subscriber[0]);
+        recentMessages.add(published);
+      }
+      // queue the message on each user's connection; the connection's event loop writes it
+      // to the socket
+      for (Subscriber s : subscribers) {
+        boolean overLimit;
+        if (s.isFramed()) {
+          if (frame == null) {
+            frame = encoder.encode(published);
+          }
+          overLimit = s.queue(frame);
+        } else {
+          if (text == null) {
+            text = encoder.encode(line);
+          }
+          overLimit = s.queue(text);
+        }
+        if (overLimit) {
+          if (backlogged == null) {
+            backlogged = new ArrayList<>();
+          }
+          backlogged.add(s);
         }
+      }
+    }
+    // drop the references held while queueing
+    if (text != null) {
+      text.release();
+    }
+    if (frame != null) {
+      frame.release();
+    }
 
+    CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+        "Published message \"%s\" to %d users in chatroom \"%s\"",
+        line,
+        subscribers.length,
+        this.roomName
+        ));
+    return backlogged == null ? Collections.emptyList() : backlogged;
+  }
+
+  /**
+   * Waits for the queues of slow subscribers to drain, disconnecting those still over their limit
+   * when the block timeout runs out. The timeout applies once to the whole publish, however many
+   * subscribers are slow.
+   *
+   * @param backlogged the subscribers returned by queueMessage
+   */
+  void awaitBacklogged(List<Subscriber> backlogged) {
+    if (backlogged.isEmpty()) {
+      return;
+    }
+    long deadline = System.currentTimeMillis() + backlogged.get(0).getBlockTimeout();
+    for (Subscriber s : backlogged) {
+      if (!s.awaitSpace(deadline)) {
+        s.evictSlow();
       }
     }
   }
@@ -119,11 +246,14 @@ public class Chatroom {
         this.roomName
         ));
 
-    synchronized (socketMapLock) {
-      for (String user : socketMap.keySet()) {
-        try {
-          Socket s = socketMap.get(user);
-          // if socket is null, do no send
+    // hold the publish lock so the close instruction follows every published message
+    synchronized (publishLock) {
+      synchronized (subscriberMapLock) {
+        // no user may subscribe once the chatroom has closed
+        this.closed = true;
+        for (String user : subscriberMap.keySet()) {
+          Subscriber s = subscriberMap.get(user);
+          // if connection is null, do no send
           if (s == null) {
             continue;
           }
@@ -133,22 +263,93 @@ public class Chatroom {
               user
               ));
 
-          // send \c termination string to client to indicate the chatroom is closed
-          PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream()), true);
-          out.println("\\c");
-          // clean up resources
-          out.close();
-          s.close();
-        } catch (IOException e) {
-          CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
-              "Unable to send close message to client \"%s\"",
-              user
-              ));
+          // tell the client the chatroom is closed; the connection is closed by its event loop
+          // once the instruction has been written
+          s.sendChatroomClosed(lastSequence);
         }
+        subscriberMap.clear();
       }
     }
   }
 
+  /**
+   * Gets the name of the chatroom
+   *
+   * @return name of the chatroom
+   */
+  public String getRoomName() {
+    return roomName;
+  }
+
+  /**
+   * Gets the sequence number of the last message published to the chatroom
+   *
+   * @return the sequence number of the last published message, or 0 if none have been published
+   */
+  public long getLastSequence() {
+    synchronized (publishLock) {
+      return lastSequence;
+    }
+  }
+
+  /**
+   * Gets the lock that keeps messages published to the chatroom in the same order when they are
+   * queued to be logged with the central server
+   *
+   * @return the lock ordering the logging of messages published to the chatroom
+   */
+  public Object getLogLock() {
+    return logLock;
+  }
+
+  /**
+   * Summarizes the outbound queue of every user subscribed to the chatroom
+   *
+   * @return a printable summary of the current depth, largest depth and discarded messages of
+   *         each user's queue, or null if no users are subscribed
+   */
+  public String getQueueStats() {
+    Subscriber[] subscribers;
+    synchronized (subscriberMapLock) {
+      subscribers = subscriberMap.values().toArray(new Subscriber[0]);
+    }
+    if (subscribers.length == 0) {
+      return null;
+    }
+
+    StringBuilder sb = new StringBuilder();
+    for (Subscriber s : subscribers) {
+      if (sb.length() > 0) {
+        sb.append(", ");
+      }
+      sb.append(ThreadSafeStringFormatter.format(
+          "%s (depth: %d, max: %d, dropped: %d)",
+          s.getUsername(),
+          s.getQueueDepth(),
+          s.getMaxQueueDepth(),
+          s.getDropped()
+          ));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Gets the number of messages queued for every user subscribed to the chatroom
+   *
+   * @return the total number of messages waiting to be written to the chatroom's users
+   */
+  public int getQueueDepth() {
+    Subscriber[] subscribers;
+    synchronized (subscriberMapLock) {
+      subscribers = subscriberMap.values().toArray(new Subscriber[0]);
+    }
+    int depth = 0;
+    for (Subscriber s : subscribers) {
+      depth += s.getQueueDepth();
+    }
+    return depth;
+  }
+
   /**
    * The count of users currently subscribed to the chatroom
    *
@@ -157,8 +358,8 @@ public class Chatroom {
   public int getUserCount() {
     // retrieve the number of users currently subscribed to this chatroom
     // used for load balancing purposes
-    synchronized (socketMapLock) {
-      return socketMap.size();
+    synchronized (subscriberMapLock) {
+      return subscriberMap.size();
     }
   }
 }
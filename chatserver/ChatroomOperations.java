@@ -22,23 +22,23 @@ import util.ThreadSafeStringFormatter;
 public class ChatroomOperations extends UnicastRemoteObject implements IChatroomOperations {
 
   private final Map<String, Chatroom> roomMap;
-  private final Object roomMapLock;
   private final ServerInfo serverInfo;
+  private final MessageEncoder encoder;
 
   /**
    * Creates an instance of the ChatroomsOperations engine
    *
-   * @param roomMap map containing the chatrooms and their names in the system
-   * @param roomMapLock locks the roomMap resource
+   * @param roomMap concurrent map containing the chatrooms and their names in the system
    * @param serverInfo provides port and addressing information for the server
+   * @param encoder encodes messages published to chatrooms created at the server
    * @throws RemoteException if there is an error during remote communication
    */
   public ChatroomOperations(Map<String, Chatroom> roomMap, 
-      Object roomMapLock, ServerInfo serverInfo) throws RemoteException {
+      ServerInfo serverInfo, MessageEncoder encoder) throws RemoteException {
     // the key for the room list is the name of the room, the value is the chatroom itself
     this.roomMap = roomMap;
-    this.roomMapLock = roomMapLock;
     this.serverInfo = serverInfo;
+    this.encoder = encoder;
   }
 
   /**
@@ -56,24 +56,17 @@ public class ChatroomOperations extends UnicastRemoteObject implements IChatroom
         name
         ));
 
-    synchronized (roomMapLock) {
-      // iterate through a list of chatroom names
-      for (String roomName : roomMap.keySet()) {
-        // if a chatroom already exists by this name, do not create a duplicate chatroom
-        // indicate the create chatroom has failed
-        if (roomName.compareTo(name) == 0) {
-          CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
-              "Chatroom with name \"%s\" already exists",
-              name
-              ));
-          return new Response(ResponseStatus.FAIL, "A room with the provided name already exists");
-        }
-      }
-
-      // otherwise, if no existing chatroom with the same name is at 
-      //this server, create new chatroom
-      // with the provided name
-      roomMap.put(name, new Chatroom(name));
+    // create a new chatroom with the provided name unless a chatroom already exists by this
+    // name at this server
+    Chatroom chatroom = new Chatroom(name, this.encoder, serverInfo.getBackfillMessages(),
+        serverInfo.getBackfillBytes());
+    if (roomMap.putIfAbsent(name, chatroom) != null) {
+      // do not create a duplicate chatroom, indicate the create chatroom has failed
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Chatroom with name \"%s\" already exists",
+          name
+          ));
+      return new Response(ResponseStatus.FAIL, "A room with the provided name already exists");
     }
 
     CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
@@ -102,13 +95,10 @@ public class ChatroomOperations extends UnicastRemoteObject implements IChatroom
 
     // remove the chatroom using the provided name from the room map 
     //using the provided chatroom name
-    synchronized (roomMapLock) {
-      Chatroom r = roomMap.get(name);
-      if (r != null) {
-        // send message to clients that the room is closing
-        r.closeRoom();
-      }
-      roomMap.remove(name);
+    Chatroom r = roomMap.remove(name);
+    if (r != null) {
+      // send message to clients that the room is closing
+      r.closeRoom();
     }
     return new Response(ResponseStatus.OK, "success");
   }
@@ -134,10 +124,8 @@ public class ChatroomOperations extends UnicastRemoteObject implements IChatroom
 
     // collect the number of users in each chatroom and add to the running total number of users
     // interacting with this chat server
-    synchronized (roomMapLock) {
-      for (String roomName : roomMap.keySet()) {
-        users = users + roomMap.get(roomName).getUserCount();
-      }
+    for (Chatroom chatroom : roomMap.values()) {
+      users = users + chatroom.getUserCount();
     }
 
     return new ChatroomDataResponse(chatrooms, users, 
@@ -159,10 +147,7 @@ public class ChatroomOperations extends UnicastRemoteObject implements IChatroom
         ));
 
     // collect the names of all the chatrooms supported at this chat server
-    List<String> chatroomNames = new LinkedList<>();
-    synchronized (roomMapLock) {
-      chatroomNames.addAll(roomMap.keySet());
-    }
+    List<String> chatroomNames = new LinkedList<>(roomMap.keySet());
     return new ChatroomListResponse(chatroomNames);
   }
 
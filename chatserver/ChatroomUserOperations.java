@@ -1,16 +1,14 @@
 package chatserver;
 
-import data.ICentralChatroomOperations;
+import data.ChatFrame;
 import data.IChatroomUserOperations;
-import data.Response;
-import data.ResponseStatus;
 import util.ClientIPUtil;
 import util.CristiansLogger;
-import util.RMIAccess;
 import util.ThreadSafeStringFormatter;
-import java.rmi.NotBoundException;
+import java.io.IOException;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -20,28 +18,19 @@ import java.util.Map;
 public class ChatroomUserOperations extends UnicastRemoteObject implements IChatroomUserOperations {
 
   private final Map<String, Chatroom> roomMap;
-  private final Object roomMapLock;
-  private final RMIAccess<ICentralChatroomOperations> centralServerAccessor;
-  private final Object serverAccessorLock;
-  private final Object logMessageLock;
+  private final ChatLogQueue chatLogQueue;
 
   /**
    * Creates an instance of the ChatroomUserOperations engine
    *
-   * @param roomMap map of all the chatrooms and their names at the local chat server
-   * @param roomMapLock locks the roomMap resource
-   * @param serverInfo provides all addressing and port information for the local chat server
-   * @param centralServerPort port where central server is accepting chatroom operation requests
+   * @param roomMap concurrent map of all the chatrooms and their names at the local chat server
+   * @param chatLogQueue queues published messages to be logged with the central server
    * @throws RemoteException if there is an error during remote communication
    */
   public ChatroomUserOperations(Map<String, Chatroom> roomMap,
-                                Object roomMapLock, ServerInfo serverInfo, int centralServerPort) throws RemoteException {
+                                ChatLogQueue chatLogQueue) throws RemoteException {
     this.roomMap = roomMap;
-    this.roomMapLock = roomMapLock;
-    this.centralServerAccessor = new RMIAccess<>(serverInfo.getCentralServerHostname(), 
-        centralServerPort, "ICentralChatroomOperations");
-    this.serverAccessorLock = new Object();
-    this.logMessageLock = new Object();
+    this.chatLogQueue = chatLogQueue;
   }
 
   /**
@@ -54,89 +43,95 @@ public class ChatroomUserOperations extends UnicastRemoteObject implements IChat
    */
   @Override
   public void chat(String chatroomName, String username, String message) throws RemoteException {
+    publishChat(chatroomName, username, message, ClientIPUtil.getClientIP());
+  }
+
+  /**
+   * Publishes a message from a user to the appropriate chatroom and queues it to be logged. Used
+   * both by the RMI chat operation and by the tasks publishing chat frames received by event
+   * loops, so it may wait and must not be called on an event loop.
+   *
+   * @param chatroomName name of the chat room to publish the message to
+   * @param username name of the user publishing the message
+   * @param message the message to be published
+   * @param clientAddress address of the client that sent the message, used for logging
+   * @return true if the message was published and queued to be logged, false otherwise
+   */
+  boolean publishChat(String chatroomName, String username, String message,
+      String clientAddress) {
 
     CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
         "Received chat message for chatroom \"%s\" from user \"%s\" on message \"%s\" at \"%s\"",
         chatroomName,
         username,
         message,
-        ClientIPUtil.getClientIP()
+        clientAddress
         ));
 
-    // publish the message along with the user's name to all of the 
-    //users subscribed to the given chatroom
-    synchronized (serverAccessorLock) {
-      synchronized (roomMapLock) {
-        // get the chatroom to publish the message to
-        Chatroom chatroom = this.roomMap.get(chatroomName);
-
-        // if the  returned chatroom object is not null, publish the message
-        if (chatroom != null) {
-          chatroom.publish(username + " >> " + message);
-        } else {
-          // otherwise, log that the chatroom the user is trying to publish 
-          //to is nonexistent and return
-          // out of the method
-          CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
-              "User \"%s\" attempted to publish message \"%s\" to non-existent chatroom \"%s\"",
-              username,
-              message,
-              chatroomName
-              ));
-          return;
-        }
-      }
+    // get the chatroom to publish the message to
+    Chatroom chatroom = this.roomMap.get(chatroomName);
+
+    // if the returned chatroom object is null, log that the chatroom the user is trying to
+    // publish to is nonexistent and return out of the method
+    if (chatroom == null) {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "User \"%s\" attempted to publish message \"%s\" to non-existent chatroom \"%s\"",
+          username,
+          message,
+          chatroomName
+          ));
+      return false;
     }
 
-    CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
-        "Attempting to log message \"%s\" from user \"%s\" at \"%s\" for chatroom \"%s\"",
-        message,
-        username,
-        ClientIPUtil.getClientIP(),
-        message
-        ));
+    // a message too large for a chat frame would break the connection of every framed user in
+    // the chatroom, so it is refused before it is logged or published
+    if (!ChatFrame.fits(chatroomName, username, message)) {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "User \"%s\" attempted to publish a message of %d characters to chatroom \"%s\" that "
+              + "does not fit in a chat frame",
+          username,
+          message.length(),
+          chatroomName
+          ));
+      return false;
+    }
 
-    // once the message has been published, log the message with the central server
-    synchronized (this.logMessageLock) {
+    String published = username + " >> " + message;
+    // queue the message to be logged with the central server in the background, then publish it
+    // to all of the users subscribed to the given chatroom; the user's request completes as soon
+    // as the message is queued. Messages for the chatroom are queued in the order published, and
+    // a message that cannot be written to the journal is not published
+    long sequence;
+    List<Subscriber> backlogged;
+    synchronized (chatroom.getLogLock()) {
       try {
-        boolean success = false;
-        // retry logging the message until it succeeds
-        while (!success) {
-
-          Response r = centralServerAccessor.getAccess().logChatMessage(chatroomName, 
-              username + " >> " + message);
-
-          // if the request succeeds, set success to true to break out of the retry loop
-          if (r.getStatus() == ResponseStatus.OK) {
-            success = true;
-            // otherwise log that the attempt failed and continue trying
-          } else {
-            CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
-                "Failed to log message \"%s\" from user \"%s\" at \"%s\" for chatroom \"%s\", "
-                    + "retrying...",
-                    message,
-                    username,
-                    ClientIPUtil.getClientIP(),
-                    message
-                ));
-          }
-        }
-      } catch (NotBoundException e) {
+        sequence = chatLogQueue.add(chatroomName, published);
+      } catch (IOException e) {
         CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
-            "Unable to contact central server at \"%s:%d\"",
-            centralServerAccessor.getHostname(),
-            centralServerAccessor.getPort()
+            "Unable to queue message \"%s\" from user \"%s\" for chatroom \"%s\" to be "
+                + "logged: \"%s\"",
+            message,
+            username,
+            chatroomName,
+            e.getMessage()
             ));
+        return false;
       }
+      backlogged = chatroom.queueMessage(username, message);
     }
+    // force the journal and wait for slow users only once the chatroom's locks are released, so
+    // the chatroom's other publishers share the force and are not held up behind slow users
+    chatLogQueue.awaitDurable(sequence);
+    chatroom.awaitBacklogged(backlogged);
 
     CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
-        "Successfully logged message \"%s\" from user \"%s\" at \"%s\" for chatroom \"%s\"",
+        "Queued message \"%s\" from user \"%s\" at \"%s\" for chatroom \"%s\" to be logged",
         message,
         username,
-        ClientIPUtil.getClientIP(),
+        clientAddress,
         chatroomName
         ));
+    return true;
   }
 
   /**
@@ -156,21 +151,19 @@ public class ChatroomUserOperations extends UnicastRemoteObject implements IChat
         chatroomName
         ));
 
-    synchronized (roomMapLock) {
-      // get the chatroom to publish the message to
-      Chatroom chatroom = this.roomMap.get(chatroomName);
-      // if the chatroom is not null, it exists, publish join message
-      if (chatroom != null) {
-        chatroom.publish("System >> " + username + " has joined the chat");
-        // otherwise log the failure
-      } else {
-        CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
-            "User \"%s\" attempted to issue a join chatroom message to "
-                + "non-existent chatroom \"%s\"",
-                username,
-                chatroomName
-            ));
-      }
+    // get the chatroom to publish the message to
+    Chatroom chatroom = this.roomMap.get(chatroomName);
+    // if the chatroom is not null, it exists, publish join message
+    if (chatroom != null) {
+      chatroom.publish("System", username + " has joined the chat");
+      // otherwise log the failure
+    } else {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "User \"%s\" attempted to issue a join chatroom message to "
+              + "non-existent chatroom \"%s\"",
+              username,
+              chatroomName
+          ));
     }
 
   }
@@ -192,21 +185,19 @@ public class ChatroomUserOperations extends UnicastRemoteObject implements IChat
         chatroomName
         ));
 
-    synchronized (roomMapLock) {
-      // get the chatroom that the user wishes to leave
-      Chatroom chatroom = this.roomMap.get(chatroomName);
-      if (chatroom != null) {
-        // if the chatroom is not null, unsubscribe the user from the chatroom
-        // and publish the leave chatroom message to the remaining subscribers
-        chatroom.unsubscribe(username);
-        chatroom.publish("System >> " + username + " has left the chat");
-      } else {
-        CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
-            "User \"%s\" attempted to leave non-existent chatroom \"%s\"",
-            username,
-            chatroomName
-            ));
-      }
+    // get the chatroom that the user wishes to leave
+    Chatroom chatroom = this.roomMap.get(chatroomName);
+    if (chatroom != null) {
+      // if the chatroom is not null, unsubscribe the user from the chatroom
+      // and publish the leave chatroom message to the remaining subscribers
+      chatroom.unsubscribe(username);
+      chatroom.publish("System", username + " has left the chat");
+    } else {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "User \"%s\" attempted to leave non-existent chatroom \"%s\"",
+          username,
+          chatroomName
+          ));
     }
   }
 }
@@ -1,47 +1,67 @@
 package chatserver;
 
-import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.Map;
 import util.CristiansLogger;
-import util.Logger;
 import util.ThreadSafeStringFormatter;
 
 /**
- * Accepts client TCP connections and associates them with the correct chatroom at the local chat server
+ * Accepts client TCP connections and hands them to a pool of event loops, which associate them
+ * with the correct chatroom at the local chat server
  */
 public class ConnectChatroom extends Thread {
 
   private final int tcpPort;
+  private final int eventLoopCount;
+  private final MessageEncoder encoder;
+  private final OutboundQueueConfig queueConfig;
   private final Map<String, Chatroom> roomMap;
-  private final Object roomMapLock;
+  private final ChatroomUserOperations userOperations;
 
   /**
    * Creates an instance of the ConnectChatroom thread
    *
    * @param tcpPort port number the chat server accepts client TCP connections on
-   * @param roomMap a map containing available chatrooms at the server
-   * @param roomMapLock locks the roomMap resource
+   * @param eventLoopCount number of event loop threads servicing client connections
+   * @param encoder encodes messages sent to clients
+   * @param queueConfig limits placed on the outbound queue of each client
+   * @param roomMap a concurrent map containing available chatrooms at the server
+   * @param userOperations publishes chat messages clients send on their connections
    */
-  public ConnectChatroom(int tcpPort, 
-      Map<String, Chatroom> roomMap, Object roomMapLock) {
+  public ConnectChatroom(int tcpPort, int eventLoopCount, MessageEncoder encoder,
+      OutboundQueueConfig queueConfig, Map<String, Chatroom> roomMap,
+      ChatroomUserOperations userOperations) {
     this.tcpPort = tcpPort;
+    this.eventLoopCount = eventLoopCount;
+    this.encoder = encoder;
+    this.queueConfig = queueConfig;
     this.roomMap = roomMap;
-    this.roomMapLock = roomMapLock;
+    this.userOperations = userOperations;
   }
 
   /**
    * Continuously accepts client TCP connections for the duration of the chat server's execution and
-   * subscribes each client socket with the appropriate chatroom
+   * distributes them across the event loops, which subscribe each client with the appropriate
+   * chatroom once its handshake has been received
    */
   @Override
   public void run() {
 
-    // create a new server socket to accept incoming client TCP connections
-    ServerSocket serverSocket;
+    // create a non-blocking server socket to accept incoming client TCP connections
+    ServerSocketChannel serverChannel;
+    Selector acceptSelector;
     try {
-      serverSocket = new ServerSocket(this.tcpPort);
+      serverChannel = ServerSocketChannel.open();
+      serverChannel.bind(new InetSocketAddress(this.tcpPort));
+      serverChannel.configureBlocking(false);
+      acceptSelector = Selector.open();
+      serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
     } catch (IOException e) {
       CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
           "Unable to establish TCP server socket on port \"%d\"",
@@ -50,83 +70,49 @@ public class ConnectChatroom extends Thread {
       return;
     }
 
-    // run for duration of program
-    while (true) {
-
-      Socket clientSocket;
+    // start the event loops that service accepted connections
+    ChatEventLoop[] eventLoops = new ChatEventLoop[this.eventLoopCount];
+    for (int i = 0; i < eventLoops.length; i++) {
       try {
-        // accept the client connection and track the new client socket in clientSocket
-        clientSocket = serverSocket.accept();
-        // set up reader and writer for the socket for initial communication with client
-        PrintWriter out = 
-            new PrintWriter(new OutputStreamWriter(clientSocket.getOutputStream()), true);
-        BufferedReader in = 
-            new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-
-        CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
-            "Received TCP connection from client at \"%s:%d\"",
-            clientSocket.getInetAddress().getHostAddress(),
-            clientSocket.getPort()
+        eventLoops[i] = new ChatEventLoop(i, this.encoder, this.queueConfig, this.roomMap,
+            this.userOperations);
+      } catch (IOException e) {
+        CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+            "Unable to open selector for event loop %d",
+            i
             ));
+        return;
+      }
+      eventLoops[i].start();
+    }
 
-        // get the inital client message
-        // in the format <chatroom>:<username>
-        // <chatroom> is used to find the correct chatroom
-        // <username> is used to associate the client socket with the appropriate user
-        String clientMessage = in.readLine();
-        String[] vals = clientMessage.split(":");
-
-        // if the length of vals is not 2, it is either missing or has extra argument
-        // log the error and continue receiving new connections
-        if (vals.length != 2) {
+    CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+        "Accepting TCP connections on port \"%d\" with %d event loops",
+        this.tcpPort,
+        eventLoops.length
+        ));
 
-          CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
-              "Initial client message \"%s\" did not meet <chatroom>:<user> format",
-              clientMessage
+    int next = 0;
+    // run for duration of program
+    while (true) {
+      try {
+        acceptSelector.select();
+        acceptSelector.selectedKeys().clear();
+
+        // accept every pending connection and assign each to an event loop in turn
+        SocketChannel clientChannel;
+        while ((clientChannel = serverChannel.accept()) != null) {
+          clientChannel.configureBlocking(false);
+          clientChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+          CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+              "Received TCP connection from client at \"%s\"",
+              clientChannel.getRemoteAddress()
               ));
 
-          // indicate to the client that they cannot be subscribed to a chatroom
-          out.println("fail");
-          // close resources associated with the socket
-          in.close();
-          out.close();
-          clientSocket.close();
-          continue;
+          eventLoops[next].register(clientChannel);
+          next = (next + 1) % eventLoops.length;
         }
-
-        CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
-            "Received subscribe request from user \"%s\" for chatroom \"%s\"",
-            vals[1],
-            vals[0]
-            ));
-
-        synchronized (this.roomMapLock) {
-          // get the room the user wants to subscribe to
-          Chatroom chatroom = roomMap.get(vals[0]);
-
-          // if the chatroom is null, it does not exist, log the error and continue receiving
-          // new client connections
-          if (chatroom == null) {
-
-            CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
-                "Client \"%s\" attempted to subscribe to non-existent chatroom \"%s\"",
-                vals[1],
-                vals[0]
-                ));
-
-            // indicate to client that the connection request failed
-            out.println("fail");
-            // close resources associated with the client socket
-            in.close();
-            out.close();
-            clientSocket.close();
-            continue;
-          }
-          // if chatroom is not null, subscribe the client to the chatroom
-          chatroom.subscribe(clientSocket, vals[1]);
-        }
-
-        out.println("success");
       } catch (IOException e) {
         CristiansLogger.writeErrorToLog("Unable to receive client connection on server socket");
       }
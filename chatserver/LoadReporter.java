@@ -0,0 +1,135 @@
+package chatserver;
+
+import data.ChatNodeLoadReport;
+import data.ICentralOperations;
+import data.Response;
+import data.ResponseStatus;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.util.HashMap;
+import java.util.Map;
+import util.CristiansLogger;
+import util.RMIAccess;
+import util.ThreadSafeStringFormatter;
+
+/**
+ * Periodically pushes the load of the chat server to the central server, which places new
+ * chatrooms from the last load each chat server reported instead of asking every chat server.
+ * Reports carry the number of users in each chatroom whose count changed since the last report
+ * the central server accepted, and every FULL_REPORT_EVERY reports the counts of every chatroom,
+ * so a central server that missed changes catches up. Runs parallel to the main application.
+ */
+public class LoadReporter implements Runnable {
+
+  // every this many reports carry the user counts of every chatroom
+  static final int FULL_REPORT_EVERY = 30;
+
+  private final RMIAccess<ICentralOperations> centralServer;
+  private final MessageEncoder encoder;
+  private final Map<String, Chatroom> roomMap;
+  private final ServerInfo serverInfo;
+  private final long intervalMillis;
+  // user count of each chatroom as last accepted by the central server; only used by the
+  // reporter thread
+  private final Map<String, Integer> reportedUsers;
+  private int reportsSinceFull;
+
+  /**
+   * Creates an instance of the LoadReporter
+   *
+   * @param centralServer RMI accessor for the central server the chat server registered with
+   * @param encoder the encoder used on the broadcast path, which counts bytes written to clients
+   * @param roomMap a concurrent map containing available chatrooms at the server
+   * @param serverInfo information about the chat server's address and ports
+   * @param intervalMillis time between reports in milliseconds
+   */
+  public LoadReporter(RMIAccess<ICentralOperations> centralServer, MessageEncoder encoder,
+      Map<String, Chatroom> roomMap, ServerInfo serverInfo, long intervalMillis) {
+    this.centralServer = centralServer;
+    this.encoder = encoder;
+    this.roomMap = roomMap;
+    this.serverInfo = serverInfo;
+    this.intervalMillis = intervalMillis;
+    this.reportedUsers = new HashMap<>();
+    this.reportsSinceFull = FULL_REPORT_EVERY;
+  }
+
+  /**
+   * Reports the chat server's load on a timer for the duration of the application, starting
+   * immediately so the chat server can be chosen for new chatrooms as soon as it has registered
+   */
+  @Override
+  public void run() {
+    long lastBytes = encoder.getBytesWritten();
+    long lastTime = System.currentTimeMillis();
+    while (true) {
+      long bytes = encoder.getBytesWritten();
+      long now = System.currentTimeMillis();
+      long bytesPerSecond = (bytes - lastBytes) * 1000 / Math.max(1, now - lastTime);
+      lastBytes = bytes;
+      lastTime = now;
+
+      report(bytesPerSecond);
+
+      try {
+        Thread.sleep(this.intervalMillis);
+      } catch (InterruptedException e) {
+        CristiansLogger.writeErrorToLog("Wait on load reporter thread was interrupted");
+      }
+    }
+  }
+
+  /**
+   * Collects the chat server's current load and sends it to the central server
+   *
+   * @param bytesPerSecond bytes per second written to clients since the previous report
+   */
+  private void report(long bytesPerSecond) {
+    boolean full = reportsSinceFull >= FULL_REPORT_EVERY;
+    int chatrooms = 0;
+    int users = 0;
+    int queueDepth = 0;
+    Map<String, Integer> current = new HashMap<>();
+    Map<String, Integer> changed = new HashMap<>();
+    for (Map.Entry<String, Chatroom> entry : roomMap.entrySet()) {
+      Chatroom chatroom = entry.getValue();
+      int roomUsers = chatroom.getUserCount();
+      chatrooms++;
+      users += roomUsers;
+      queueDepth += chatroom.getQueueDepth();
+      current.put(entry.getKey(), roomUsers);
+      if (full || !Integer.valueOf(roomUsers).equals(reportedUsers.get(entry.getKey()))) {
+        changed.put(entry.getKey(), roomUsers);
+      }
+    }
+
+    ChatNodeLoadReport report = new ChatNodeLoadReport(chatrooms, users,
+        serverInfo.getHostname(), serverInfo.getRmiPort(), serverInfo.getTcpPort(),
+        serverInfo.getOperationsPort(), bytesPerSecond, queueDepth,
+        serverInfo.getUserCapacity(), changed);
+    try {
+      Response response = centralServer.getAccess().reportChatNodeLoad(report);
+      if (response.getStatus() == ResponseStatus.FAIL) {
+        CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+            "Central server rejected load report: \"%s\"",
+            response.getMessage()
+            ));
+        // the central server may have restarted; send every count once it accepts a report
+        reportsSinceFull = FULL_REPORT_EVERY;
+        return;
+      }
+    } catch (RemoteException | NotBoundException e) {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Unable to send load report to central server at \"%s:%d\"",
+          centralServer.getHostname(),
+          centralServer.getPort()
+          ));
+      return;
+    }
+
+    // the central server now holds the current counts
+    reportedUsers.clear();
+    reportedUsers.putAll(current);
+    reportsSinceFull = full ? 1 : reportsSinceFull + 1;
+  }
+}
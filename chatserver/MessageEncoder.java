@@ -0,0 +1,194 @@
+package chatserver;
+
+import data.ChatFrame;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import util.ThreadSafeStringFormatter;
+
+/**
+ * Encodes outbound lines to UTF-8, or outbound binary frames, exactly once per message into
+ * pooled buffers, and tracks the allocations made on the broadcast path so it can be confirmed
+ * that fan-out to additional subscribers does not allocate.
+ */
+public class MessageEncoder {
+
+  private final BufferPool pool;
+  private final int eventLoopCount;
+  private final ThreadLocal<CharsetEncoder> encoders;
+
+  // broadcast path counters
+  private final AtomicLong messagesEncoded;
+  private final AtomicLong bytesEncoded;
+  private final AtomicLong viewsAllocated;
+  private final AtomicLong deliveries;
+  private final AtomicLong bytesWritten;
+
+  /**
+   * Creates an instance of the MessageEncoder
+   *
+   * @param pool the pool encoded messages are written into
+   * @param eventLoopCount the number of event loops that write encoded messages
+   */
+  public MessageEncoder(BufferPool pool, int eventLoopCount) {
+    this.pool = pool;
+    this.eventLoopCount = eventLoopCount;
+    // charset encoders are stateful, so each publishing thread keeps its own
+    this.encoders = ThreadLocal.withInitial(() -> StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE));
+    this.messagesEncoded = new AtomicLong();
+    this.bytesEncoded = new AtomicLong();
+    this.viewsAllocated = new AtomicLong();
+    this.deliveries = new AtomicLong();
+    this.bytesWritten = new AtomicLong();
+  }
+
+  /**
+   * Encodes a line of text followed by a newline
+   *
+   * @param line the line to encode
+   * @return the encoded message, holding one reference for the caller
+   */
+  public OutboundMessage encode(String line) {
+    ByteBuffer buffer = pool.acquire();
+    CharsetEncoder encoder = encoders.get();
+    encoder.reset();
+
+    CoderResult result = encoder.encode(CharBuffer.wrap(line), buffer, true);
+    if (!result.isOverflow()) {
+      result = encoder.flush(buffer);
+    }
+
+    BufferPool owner = pool;
+    if (result.isOverflow() || !buffer.hasRemaining()) {
+      // the line does not fit in a pooled buffer; encode it into a buffer of its own
+      pool.release(buffer);
+      byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+      buffer = pool.allocateOversized(bytes.length + 1);
+      buffer.put(bytes);
+      owner = null;
+    }
+    buffer.put((byte) '\n');
+    buffer.flip();
+
+    messagesEncoded.incrementAndGet();
+    bytesEncoded.addAndGet(buffer.remaining());
+    return new OutboundMessage(buffer, owner, this, eventLoopCount);
+  }
+
+  /**
+   * Encodes a binary frame for clients that negotiated frames during the handshake
+   *
+   * @param frame the frame to encode
+   * @return the encoded message, holding one reference for the caller
+   */
+  public OutboundMessage encode(ChatFrame frame) {
+    int length = frame.getEncodedLength();
+    ByteBuffer buffer = pool.acquire();
+    BufferPool owner = pool;
+    if (length > buffer.remaining()) {
+      // the frame does not fit in a pooled buffer; encode it into a buffer of its own
+      pool.release(buffer);
+      buffer = pool.allocateOversized(length);
+      owner = null;
+    }
+    frame.writeTo(buffer);
+    buffer.flip();
+
+    messagesEncoded.incrementAndGet();
+    bytesEncoded.addAndGet(length);
+    return new OutboundMessage(buffer, owner, this, eventLoopCount);
+  }
+
+  /**
+   * Encodes several binary frames back to back into a single message, for clients that
+   * negotiated frames during the handshake
+   *
+   * @param frames the frames to encode, in the order they are written
+   * @return the encoded message, holding one reference for the caller
+   */
+  public OutboundMessage encode(ChatFrame[] frames) {
+    int length = 0;
+    for (ChatFrame frame : frames) {
+      length += frame.getEncodedLength();
+    }
+    ByteBuffer buffer = pool.acquire();
+    BufferPool owner = pool;
+    if (length > buffer.remaining()) {
+      // the frames do not fit in a pooled buffer; encode them into a buffer of their own
+      pool.release(buffer);
+      buffer = pool.allocateOversized(length);
+      owner = null;
+    }
+    for (ChatFrame frame : frames) {
+      frame.writeTo(buffer);
+    }
+    buffer.flip();
+
+    messagesEncoded.incrementAndGet();
+    bytesEncoded.addAndGet(length);
+    return new OutboundMessage(buffer, owner, this, eventLoopCount);
+  }
+
+  /**
+   * Records that an event loop created its view of a message
+   */
+  void recordViewAllocated() {
+    viewsAllocated.incrementAndGet();
+  }
+
+  /**
+   * Records that messages have been completely written to a subscriber
+   *
+   * @param count the number of messages written
+   */
+  void recordDeliveries(int count) {
+    deliveries.addAndGet(count);
+  }
+
+  /**
+   * Records bytes written to a subscriber's socket
+   *
+   * @param bytes the number of bytes written
+   */
+  void recordBytesWritten(long bytes) {
+    bytesWritten.addAndGet(bytes);
+  }
+
+  /**
+   * Gets the total number of bytes written to subscribers' sockets. Each message is counted once
+   * for every subscriber it is written to.
+   *
+   * @return the number of bytes written to subscribers
+   */
+  public long getBytesWritten() {
+    return bytesWritten.get();
+  }
+
+  /**
+   * Summarizes the broadcast path counters. Buffer and view allocations grow with the number of
+   * messages and event loops, while deliveries grow with the number of subscribers.
+   *
+   * @return a printable summary of the broadcast path counters
+   */
+  public String getStats() {
+    return ThreadSafeStringFormatter.format(
+        "messages encoded: %d, bytes encoded: %d, deliveries: %d, bytes written: %d, "
+            + "pooled buffers reused: %d, pooled buffers allocated: %d, "
+            + "oversized buffers allocated: %d, views allocated: %d",
+        messagesEncoded.get(),
+        bytesEncoded.get(),
+        deliveries.get(),
+        bytesWritten.get(),
+        pool.getReused(),
+        pool.getAllocated(),
+        pool.getOversized(),
+        viewsAllocated.get()
+        );
+  }
+}
@@ -0,0 +1,68 @@
+package chatserver;
+
+import java.util.Map;
+import util.CristiansLogger;
+import util.ThreadSafeStringFormatter;
+
+/**
+ * Periodically writes chat server metrics to the server log. Runs parallel to the main
+ * application.
+ */
+public class MetricsReporter implements Runnable {
+
+  private final MessageEncoder encoder;
+  private final ChatLogQueue chatLogQueue;
+  private final Map<String, Chatroom> roomMap;
+  private final long intervalMillis;
+
+  /**
+   * Creates an instance of the MetricsReporter
+   *
+   * @param encoder the encoder used on the broadcast path
+   * @param chatLogQueue queues published messages to be logged with the central server
+   * @param roomMap a concurrent map containing available chatrooms at the server
+   * @param intervalMillis time between reports in milliseconds
+   */
+  public MetricsReporter(MessageEncoder encoder, ChatLogQueue chatLogQueue,
+      Map<String, Chatroom> roomMap, long intervalMillis) {
+    this.encoder = encoder;
+    this.chatLogQueue = chatLogQueue;
+    this.roomMap = roomMap;
+    this.intervalMillis = intervalMillis;
+  }
+
+  /**
+   * Reports metrics on a timer for the duration of the application
+   */
+  @Override
+  public void run() {
+    while (true) {
+      try {
+        Thread.sleep(this.intervalMillis);
+      } catch (InterruptedException e) {
+        CristiansLogger.writeErrorToLog("Wait on metrics reporter thread was interrupted");
+      }
+
+      CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+          "Broadcast metrics: %s",
+          encoder.getStats()
+          ));
+      CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+          "Chat log queue metrics: %s",
+          chatLogQueue.getStats()
+          ));
+
+      for (Map.Entry<String, Chatroom> entry : roomMap.entrySet()) {
+        String queueStats = entry.getValue().getQueueStats();
+        if (queueStats == null) {
+          continue;
+        }
+        CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+            "Outbound queues in chatroom \"%s\": %s",
+            entry.getKey(),
+            queueStats
+            ));
+      }
+    }
+  }
+}
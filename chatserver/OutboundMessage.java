@@ -0,0 +1,85 @@
+package chatserver;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A message that has been encoded once and is shared by every subscriber it is sent to. The
+ * encoded bytes are only ever read through read-only views, one per event loop, so the same
+ * buffer can be written to any number of sockets without copying it. The message is reference
+ * counted and its buffer returns to the pool once the last subscriber has released it.
+ */
+public class OutboundMessage {
+
+  private final ByteBuffer buffer;
+  private final ByteBuffer readOnly;
+  private final ByteBuffer[] views;
+  private final int length;
+  private final BufferPool pool;
+  private final MessageEncoder encoder;
+  private final AtomicInteger refCount;
+
+  /**
+   * Creates an instance of the OutboundMessage holding one reference for its creator
+   *
+   * @param buffer the encoded message, flipped and ready to be read
+   * @param pool the pool the buffer is returned to, or null if the buffer is not pooled
+   * @param encoder the encoder that created the message, used to record allocations
+   * @param eventLoopCount the number of event loops that may write the message
+   */
+  OutboundMessage(ByteBuffer buffer, BufferPool pool, MessageEncoder encoder, int eventLoopCount) {
+    this.buffer = buffer;
+    this.readOnly = buffer.asReadOnlyBuffer();
+    this.views = new ByteBuffer[eventLoopCount];
+    this.length = buffer.remaining();
+    this.pool = pool;
+    this.encoder = encoder;
+    this.refCount = new AtomicInteger(1);
+  }
+
+  /**
+   * Adds a reference to the message for a subscriber it has been queued for
+   */
+  void retain() {
+    refCount.incrementAndGet();
+  }
+
+  /**
+   * Releases a reference to the message, returning its buffer to the pool after the last release
+   */
+  void release() {
+    if (refCount.decrementAndGet() == 0 && pool != null) {
+      pool.release(buffer);
+    }
+  }
+
+  /**
+   * Gets the read-only view of the message owned by an event loop, positioned at the given offset.
+   * Only the owning event loop may call this method for its index, so the view's position can be
+   * reused for every subscriber serviced by that loop.
+   *
+   * @param eventLoopIndex index of the calling event loop
+   * @param offset number of bytes already written to the current subscriber
+   * @return a view of the message's remaining bytes
+   */
+  ByteBuffer view(int eventLoopIndex, int offset) {
+    ByteBuffer view = views[eventLoopIndex];
+    if (view == null) {
+      view = readOnly.duplicate();
+      views[eventLoopIndex] = view;
+      encoder.recordViewAllocated();
+    }
+    view.limit(length);
+    view.position(offset);
+    return view;
+  }
+
+  /**
+   * Gets the encoded size of the message
+   *
+   * @return the encoded size of the message in bytes
+   */
+  int getLength() {
+    return length;
+  }
+}
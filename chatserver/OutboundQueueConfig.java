@@ -0,0 +1,52 @@
+package chatserver;
+
+/**
+ * Limits placed on the outbound queue of every subscriber at the chat server
+ */
+public class OutboundQueueConfig {
+
+  private final int limit;
+  private final SlowConsumerPolicy policy;
+  private final long blockTimeout;
+
+  /**
+   * Creates an instance of the OutboundQueueConfig
+   *
+   * @param limit the most messages queued for a single subscriber
+   * @param policy what to do when a message is published to a subscriber with a full queue
+   * @param blockTimeout the time in milliseconds a publisher waits for space under the BLOCK
+   *                     policy
+   */
+  public OutboundQueueConfig(int limit, SlowConsumerPolicy policy, long blockTimeout) {
+    this.limit = limit;
+    this.policy = policy;
+    this.blockTimeout = blockTimeout;
+  }
+
+  /**
+   * Gets the most messages queued for a single subscriber
+   *
+   * @return the most messages queued for a single subscriber
+   */
+  public int getLimit() {
+    return limit;
+  }
+
+  /**
+   * Gets the policy applied when a message is published to a subscriber with a full queue
+   *
+   * @return the policy applied to slow consumers
+   */
+  public SlowConsumerPolicy getPolicy() {
+    return policy;
+  }
+
+  /**
+   * Gets the time in milliseconds a publisher waits for space under the BLOCK policy
+   *
+   * @return the time in milliseconds a publisher waits for space
+   */
+  public long getBlockTimeout() {
+    return blockTimeout;
+  }
+}
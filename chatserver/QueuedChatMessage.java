@@ -0,0 +1,51 @@
+package chatserver;
+
+/**
+ * A chat message waiting in the chat log queue to be logged with the central server
+ */
+public class QueuedChatMessage {
+
+  private final long sequence;
+  private final String chatroomName;
+  private final String message;
+
+  /**
+   * Creates an instance of the QueuedChatMessage
+   *
+   * @param sequence position of the message in the chat server's journal
+   * @param chatroomName name of the chatroom the message was published to
+   * @param message the message as published, including the name of its sender
+   */
+  public QueuedChatMessage(long sequence, String chatroomName, String message) {
+    this.sequence = sequence;
+    this.chatroomName = chatroomName;
+    this.message = message;
+  }
+
+  /**
+   * Gets the position of the message in the chat server's journal
+   *
+   * @return the position of the message in the journal
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * Gets the name of the chatroom the message was published to
+   *
+   * @return the name of the chatroom
+   */
+  public String getChatroomName() {
+    return chatroomName;
+  }
+
+  /**
+   * Gets the message as published, including the name of its sender
+   *
+   * @return the published message
+   */
+  public String getMessage() {
+    return message;
+  }
+}
@@ -0,0 +1,115 @@
+package chatserver;
+
+import data.ChatFrame;
+
+/**
+ * Ring buffer of the most recent messages published to a chatroom, bounded both by a number of
+ * messages and by their total encoded size. Users joining the chatroom are sent its contents so
+ * they see recent history without a read from a data node. Not thread safe; the owning chatroom
+ * guards it with its subscriber map lock.
+ */
+public class RecentMessages {
+
+  private final int maxMessages;
+  private final long maxBytes;
+  // allocated on the first message so chatrooms nobody writes to hold no buffer
+  private ChatFrame[] messages;
+  // index of the oldest message
+  private int head;
+  private int size;
+  // total encoded size of the retained messages
+  private long bytes;
+
+  /**
+   * Creates an instance of RecentMessages
+   *
+   * @param maxMessages the most messages retained; 0 retains none
+   * @param maxBytes the largest total encoded size of the retained messages in bytes
+   */
+  public RecentMessages(int maxMessages, long maxBytes) {
+    this.maxMessages = maxMessages;
+    this.maxBytes = maxBytes;
+    this.head = 0;
+    this.size = 0;
+    this.bytes = 0;
+  }
+
+  /**
+   * Retains a newly published message, evicting the oldest messages until both the message and
+   * size limits are met. A message larger than the size limit on its own empties the buffer, so
+   * the retained messages never skip over a newer one.
+   *
+   * @param message the published message
+   */
+  public void add(ChatFrame message) {
+    if (maxMessages == 0) {
+      return;
+    }
+    int length = message.getEncodedLength();
+    if (length > maxBytes) {
+      clear();
+      return;
+    }
+    if (messages == null) {
+      messages = new ChatFrame[maxMessages];
+    }
+
+    while (size == maxMessages || bytes + length > maxBytes) {
+      evictOldest();
+    }
+    messages[(head + size) % maxMessages] = message;
+    size++;
+    bytes += length;
+  }
+
+  /**
+   * Removes the oldest retained message
+   */
+  private void evictOldest() {
+    bytes -= messages[head].getEncodedLength();
+    messages[head] = null;
+    head = (head + 1) % maxMessages;
+    size--;
+  }
+
+  /**
+   * Removes every retained message
+   */
+  private void clear() {
+    while (size > 0) {
+      evictOldest();
+    }
+    head = 0;
+  }
+
+  /**
+   * Gets the retained messages
+   *
+   * @return the retained messages, oldest first
+   */
+  public ChatFrame[] getMessages() {
+    ChatFrame[] copy = new ChatFrame[size];
+    for (int i = 0; i < size; i++) {
+      copy[i] = messages[(head + i) % maxMessages];
+    }
+    return copy;
+  }
+
+  /**
+   * Gets the number of retained messages
+   *
+   * @return the number of retained messages
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Gets the total encoded size of the retained messages
+   *
+   * @return the total encoded size of the retained messages in bytes
+   */
+  public long getBytes() {
+    return bytes;
+  }
+}
@@ -1,5 +1,7 @@
 package chatserver;
 
+import util.ExecutionMode;
+
 /**
  * Contains port and addressing information for the local chat server and the central server in the
  * application
@@ -13,6 +15,27 @@ public class ServerInfo {
   private final int tcpPort;
   private final int rmiPort;
   private final int operationsPort;
+  private final int eventLoops;
+  private final int bufferSize;
+  private final int bufferPoolSize;
+  private final boolean directBuffers;
+  private final long metricsInterval;
+  private final int outboundQueueLimit;
+  private final SlowConsumerPolicy slowConsumerPolicy;
+  private final long slowConsumerBlockTimeout;
+  private final int logQueueCapacity;
+  private final int logBatchSize;
+  private final int logDrainers;
+  private final long logRetryInitial;
+  private final long logRetryMax;
+  private final boolean logJournalSync;
+  private final int backfillMessages;
+  private final long backfillBytes;
+  private final long loadReportInterval;
+  private final int userCapacity;
+  private final int logRejectAttempts;
+  private final ExecutionMode executionMode;
+  private final int executorThreads;
 
   /**
    * Creates an instance of the ServerInfo object
@@ -24,9 +47,46 @@ public class ServerInfo {
    * @param tcpPort the port the local chat server should accept client TCP connections on
    * @param rmiPort the port the local chat server should accept client RMI requests on
    * @param operationsPort the port that the local chat server should accept central server requests on
+   * @param eventLoops the number of event loop threads servicing client TCP connections
+   * @param bufferSize the capacity in bytes of pooled buffers holding encoded messages
+   * @param bufferPoolSize the maximum number of idle buffers kept for encoded messages
+   * @param directBuffers whether buffers for encoded messages are allocated off the Java heap
+   * @param metricsInterval the time in milliseconds between server metrics reports
+   * @param outboundQueueLimit the most messages queued for a single client
+   * @param slowConsumerPolicy what to do when a message is published to a client with a full
+   *                           queue
+   * @param slowConsumerBlockTimeout the time in milliseconds a publisher waits for space under
+   *                                 the BLOCK policy
+   * @param logQueueCapacity the most published messages waiting to be logged with the central
+   *                         server
+   * @param logBatchSize the most queued messages logged with the central server in a single
+   *                     request
+   * @param logDrainers the number of threads logging queued messages with the central server
+   * @param logRetryInitial the time in milliseconds before the first retry of a message that
+   *                        could not be logged
+   * @param logRetryMax the longest time in milliseconds between retries of a message
+   * @param logJournalSync whether queued messages are forced to disk before they are
+   *                       acknowledged
+   * @param backfillMessages the most recent messages of a chatroom sent to users as they join
+   * @param backfillBytes the largest total encoded size in bytes of the recent messages of a
+   *                      chatroom sent to users as they join
+   * @param loadReportInterval the time in milliseconds between load reports pushed to the
+   *                           central server
+   * @param userCapacity the number of users the chat server is sized for, used by the central
+   *                     server to weigh chat servers against each other
+   * @param logRejectAttempts the number of times the central server may reject a chatroom's
+   *                          messages before they are set aside in the dead-letter file
+   * @param executionMode the kind of threads that publish chat messages received over TCP
+   * @param executorThreads the most platform threads used to publish chat messages
    */
   ServerInfo(String id, String centralServerHostname, int centralServerPort,
-      String hostname, int tcpPort, int rmiPort, int operationsPort) {
+      String hostname, int tcpPort, int rmiPort, int operationsPort, int eventLoops,
+      int bufferSize, int bufferPoolSize, boolean directBuffers, long metricsInterval,
+      int outboundQueueLimit, SlowConsumerPolicy slowConsumerPolicy,
+      long slowConsumerBlockTimeout, int logQueueCapacity, int logBatchSize, int logDrainers,
+      long logRetryInitial, long logRetryMax, boolean logJournalSync, int backfillMessages,
+      long backfillBytes, long loadReportInterval, int userCapacity, int logRejectAttempts,
+      ExecutionMode executionMode, int executorThreads) {
     this.id = id;
     this.centralServerHostname = centralServerHostname;
     this.centralServerPort = centralServerPort;
@@ -34,6 +94,27 @@ public class ServerInfo {
     this.tcpPort = tcpPort;
     this.rmiPort = rmiPort;
     this.operationsPort = operationsPort;
+    this.eventLoops = eventLoops;
+    this.bufferSize = bufferSize;
+    this.bufferPoolSize = bufferPoolSize;
+    this.directBuffers = directBuffers;
+    this.metricsInterval = metricsInterval;
+    this.outboundQueueLimit = outboundQueueLimit;
+    this.slowConsumerPolicy = slowConsumerPolicy;
+    this.slowConsumerBlockTimeout = slowConsumerBlockTimeout;
+    this.logQueueCapacity = logQueueCapacity;
+    this.logBatchSize = logBatchSize;
+    this.logDrainers = logDrainers;
+    this.logRetryInitial = logRetryInitial;
+    this.logRetryMax = logRetryMax;
+    this.logJournalSync = logJournalSync;
+    this.backfillMessages = backfillMessages;
+    this.backfillBytes = backfillBytes;
+    this.loadReportInterval = loadReportInterval;
+    this.userCapacity = userCapacity;
+    this.logRejectAttempts = logRejectAttempts;
+    this.executionMode = executionMode;
+    this.executorThreads = executorThreads;
   }
 
   /**
@@ -98,4 +179,195 @@ public class ServerInfo {
   public int getOperationsPort() {
     return operationsPort;
   }
+
+  /**
+   * Gets the number of event loop threads servicing client TCP connections
+   *
+   * @return the number of event loop threads servicing client TCP connections
+   */
+  public int getEventLoops() {
+    return eventLoops;
+  }
+
+  /**
+   * Gets the capacity in bytes of pooled buffers holding encoded messages
+   *
+   * @return the capacity in bytes of pooled buffers holding encoded messages
+   */
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  /**
+   * Gets the maximum number of idle buffers kept for encoded messages
+   *
+   * @return the maximum number of idle buffers kept for encoded messages
+   */
+  public int getBufferPoolSize() {
+    return bufferPoolSize;
+  }
+
+  /**
+   * Whether buffers for encoded messages are allocated outside of the Java heap
+   *
+   * @return true if buffers for encoded messages are direct buffers
+   */
+  public boolean isDirectBuffers() {
+    return directBuffers;
+  }
+
+  /**
+   * Gets the time in milliseconds between server metrics reports
+   *
+   * @return the time in milliseconds between server metrics reports
+   */
+  public long getMetricsInterval() {
+    return metricsInterval;
+  }
+
+  /**
+   * Gets the most messages queued for a single client
+   *
+   * @return the most messages queued for a single client
+   */
+  public int getOutboundQueueLimit() {
+    return outboundQueueLimit;
+  }
+
+  /**
+   * Gets the policy applied when a message is published to a client with a full queue
+   *
+   * @return the policy applied to slow consumers
+   */
+  public SlowConsumerPolicy getSlowConsumerPolicy() {
+    return slowConsumerPolicy;
+  }
+
+  /**
+   * Gets the time in milliseconds a publisher waits for space under the BLOCK policy
+   *
+   * @return the time in milliseconds a publisher waits for space
+   */
+  public long getSlowConsumerBlockTimeout() {
+    return slowConsumerBlockTimeout;
+  }
+
+  /**
+   * Gets the most published messages waiting to be logged with the central server
+   *
+   * @return the capacity of the chat log queue
+   */
+  public int getLogQueueCapacity() {
+    return logQueueCapacity;
+  }
+
+  /**
+   * Gets the most queued messages logged with the central server in a single request
+   *
+   * @return the largest chat log batch size
+   */
+  public int getLogBatchSize() {
+    return logBatchSize;
+  }
+
+  /**
+   * Gets the number of threads logging queued messages with the central server
+   *
+   * @return the number of chat log drain threads
+   */
+  public int getLogDrainers() {
+    return logDrainers;
+  }
+
+  /**
+   * Gets the time in milliseconds before the first retry of a message that could not be logged
+   *
+   * @return the initial chat log retry backoff in milliseconds
+   */
+  public long getLogRetryInitial() {
+    return logRetryInitial;
+  }
+
+  /**
+   * Gets the longest time in milliseconds between retries of a message that could not be logged
+   *
+   * @return the largest chat log retry backoff in milliseconds
+   */
+  public long getLogRetryMax() {
+    return logRetryMax;
+  }
+
+  /**
+   * Whether queued messages are forced to disk before they are acknowledged
+   *
+   * @return true if the chat log journal is forced to disk on every append
+   */
+  public boolean isLogJournalSync() {
+    return logJournalSync;
+  }
+
+  /**
+   * Gets the most recent messages of a chatroom sent to users as they join
+   *
+   * @return the most recent messages retained per chatroom
+   */
+  public int getBackfillMessages() {
+    return backfillMessages;
+  }
+
+  /**
+   * Gets the largest total encoded size of the recent messages of a chatroom sent to users as
+   * they join
+   *
+   * @return the largest size in bytes of the recent messages retained per chatroom
+   */
+  public long getBackfillBytes() {
+    return backfillBytes;
+  }
+
+  /**
+   * Gets the time between load reports pushed to the central server
+   *
+   * @return the time in milliseconds between load reports
+   */
+  public long getLoadReportInterval() {
+    return loadReportInterval;
+  }
+
+  /**
+   * Gets the number of users the chat server is sized for
+   *
+   * @return the chat server's user capacity
+   */
+  public int getUserCapacity() {
+    return userCapacity;
+  }
+
+  /**
+   * Gets the number of times the central server may reject a chatroom's messages before they are
+   * set aside
+   *
+   * @return the number of attempts to log rejected messages
+   */
+  public int getLogRejectAttempts() {
+    return logRejectAttempts;
+  }
+
+  /**
+   * Gets the kind of threads that publish chat messages received over TCP
+   *
+   * @return the execution mode of the task executor
+   */
+  public ExecutionMode getExecutionMode() {
+    return executionMode;
+  }
+
+  /**
+   * Gets the most platform threads used to publish chat messages
+   *
+   * @return the number of pooled threads in the PLATFORM execution mode
+   */
+  public int getExecutorThreads() {
+    return executorThreads;
+  }
 }
@@ -0,0 +1,13 @@
+package chatserver;
+
+/**
+ * Determines what happens to a message published to a subscriber whose outbound queue is full
+ */
+public enum SlowConsumerPolicy {
+  // discard the oldest unsent message to make room for the new one
+  DROP_OLDEST,
+  // close the connection of the subscriber
+  DISCONNECT,
+  // wait a bounded time for the queue to drain, then close the connection of the subscriber
+  BLOCK
+}
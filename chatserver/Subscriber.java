@@ -0,0 +1,741 @@
+package chatserver;
+
+import data.ChatFrame;
+import data.FrameType;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import util.CristiansLogger;
+import util.ThreadSafeStringFormatter;
+
+/**
+ * A client TCP connection owned by a single ChatEventLoop. Starts in the handshake state, where the
+ * client identifies the chatroom and user it wants to subscribe as, and is then subscribed to a
+ * Chatroom. Messages published to the subscriber are queued and written to the socket by its
+ * event loop so that no publishing thread ever blocks on a client socket. The queue is bounded,
+ * and a client that falls behind is handled according to the server's SlowConsumerPolicy.
+ */
+public class Subscriber {
+
+  // the longest initial <chatroom>:<username> message accepted from a client
+  private static final int MAX_HANDSHAKE_BYTES = 1024;
+  // initial size of the buffer holding frames received from a client
+  private static final int INBOUND_BUFFER_SIZE = 4096;
+  // initial capacity of the outbound queue; must be a power of two
+  private static final int INITIAL_QUEUE_CAPACITY = 16;
+  // most chat frames received from a client waiting to be published before its socket stops
+  // being read; reading resumes once half of them have been published
+  private static final int MAX_PENDING_CHATS = 256;
+
+  private final SocketChannel channel;
+  private final ChatEventLoop eventLoop;
+  private final OutboundQueueConfig queueConfig;
+  private final Object outboundLock;
+  private final AtomicBoolean flushPending;
+  // outbound queue kept as a ring so queueing and writing do not allocate
+  private OutboundMessage[] outbound;
+  private int head;
+  private int size;
+  // number of bytes of the message at the head of the queue already written to the socket
+  private int headOffset;
+  // number of publishers waiting for space in the queue under the BLOCK policy
+  private int waiters;
+  // queue metrics, guarded by the outbound lock
+  private int maxDepth;
+  private long dropped;
+  // next subscriber in the event loop's list of subscribers waiting to be flushed
+  private Subscriber nextPendingFlush;
+  private SelectionKey key;
+  private ByteBuffer handshakeBuffer;
+  // frames received from a client that negotiated frames, only used by the event loop
+  private ByteBuffer inbound;
+  // chat frames received from the client waiting to be published in the order they were
+  // received, guarded by the chat lock
+  private final Object chatLock;
+  private final Queue<ChatFrame> pendingChats;
+  // whether a task is publishing the pending chats, guarded by the chat lock
+  private boolean publishing;
+  // whether the event loop has stopped reading the socket until pending chats are published
+  private volatile boolean readPaused;
+  private volatile Chatroom chatroom;
+  private volatile String username;
+  // true if the client negotiated binary frames during the handshake
+  private volatile boolean framed;
+  private volatile boolean closeRequested;
+  private volatile boolean closed;
+
+  /**
+   * Creates an instance of the Subscriber
+   *
+   * @param channel the non-blocking client socket
+   * @param eventLoop the event loop that performs all reads and writes on the socket
+   * @param queueConfig limits placed on the outbound queue
+   */
+  Subscriber(SocketChannel channel, ChatEventLoop eventLoop, OutboundQueueConfig queueConfig) {
+    this.channel = channel;
+    this.eventLoop = eventLoop;
+    this.queueConfig = queueConfig;
+    this.outboundLock = new Object();
+    this.flushPending = new AtomicBoolean(false);
+    this.outbound = new OutboundMessage[INITIAL_QUEUE_CAPACITY];
+    this.head = 0;
+    this.size = 0;
+    this.headOffset = 0;
+    this.waiters = 0;
+    this.maxDepth = 0;
+    this.dropped = 0;
+    this.handshakeBuffer = ByteBuffer.allocate(MAX_HANDSHAKE_BYTES);
+    this.chatLock = new Object();
+    this.pendingChats = new ArrayDeque<>();
+    this.publishing = false;
+    this.readPaused = false;
+    this.closeRequested = false;
+    this.closed = false;
+  }
+
+  /**
+   * Queues an encoded message to be written to the client. If the queue is full, the message is
+   * handled according to the server's SlowConsumerPolicy, waiting for space under the BLOCK
+   * policy.
+   *
+   * @param message the encoded message, shared with other subscribers
+   */
+  public void send(OutboundMessage message) {
+    if (queue(message) && !awaitSpace(System.currentTimeMillis() + getBlockTimeout())) {
+      evictSlow();
+    }
+  }
+
+  /**
+   * Queues an encoded message to be written to the client without waiting. Under the BLOCK policy
+   * a message sent to a full queue is queued past the limit, and the caller waits for the queue
+   * to drain with awaitSpace once it no longer holds any chatroom lock.
+   *
+   * @param message the encoded message, shared with other subscribers
+   * @return true if the queue is over its limit and the caller should wait for space
+   */
+  boolean queue(OutboundMessage message) {
+    if (closed || closeRequested) {
+      return false;
+    }
+    message.retain();
+    boolean evicted = false;
+    boolean overLimit = false;
+    synchronized (outboundLock) {
+      if (closed || closeRequested) {
+        message.release();
+        return false;
+      }
+      if (size >= queueConfig.getLimit()) {
+        evicted = !makeRoom();
+      }
+      if (evicted || closed) {
+        message.release();
+      } else {
+        if (size == outbound.length) {
+          grow();
+        }
+        outbound[(head + size) & (outbound.length - 1)] = message;
+        size++;
+        maxDepth = Math.max(maxDepth, size);
+        overLimit = queueConfig.getPolicy() == SlowConsumerPolicy.BLOCK
+            && size > queueConfig.getLimit();
+      }
+    }
+
+    if (evicted) {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Disconnecting slow client \"%s\" at \"%s\" with %d queued messages",
+          username,
+          getRemoteAddress(),
+          queueConfig.getLimit()
+          ));
+    }
+    eventLoop.requestFlush(this);
+    return overLimit;
+  }
+
+  /**
+   * Frees space in a full outbound queue according to the server's SlowConsumerPolicy. Called
+   * with the outbound lock held.
+   *
+   * @return true if the message may be queued, false if the subscriber was evicted
+   */
+  private boolean makeRoom() {
+    switch (queueConfig.getPolicy()) {
+      case DROP_OLDEST:
+        dropOldest();
+        return true;
+      case BLOCK:
+        // the message is queued past the limit and its publisher waits for space afterwards;
+        // event loops must never wait on a queue, and a queue already twice its limit is not
+        // going to drain in time
+        if (!(Thread.currentThread() instanceof ChatEventLoop)
+            && size < queueConfig.getLimit() * 2L) {
+          return true;
+        }
+        dropped++;
+        evict();
+        return false;
+      case DISCONNECT:
+      default:
+        dropped++;
+        evict();
+        return false;
+    }
+  }
+
+  /**
+   * Discards the oldest message that has not started being written. A message already partially
+   * written to the socket is kept so the client never receives a truncated line.
+   */
+  private void dropOldest() {
+    int mask = outbound.length - 1;
+    if (headOffset == 0) {
+      outbound[head].release();
+      outbound[head] = null;
+      head = (head + 1) & mask;
+      size--;
+    } else if (size > 1) {
+      // move the partially written message forward over the message being discarded
+      int next = (head + 1) & mask;
+      outbound[next].release();
+      outbound[next] = outbound[head];
+      outbound[head] = null;
+      head = next;
+      size--;
+    } else {
+      // only the partially written message is queued; let the queue briefly exceed its limit
+      // rather than truncate the line
+      return;
+    }
+    dropped++;
+  }
+
+  /**
+   * Waits for the event loop to drain a queue that is over its limit under the BLOCK policy.
+   * Must not be called with any chatroom lock held, so other publishers and subscribers are not
+   * held up while this publisher waits.
+   *
+   * @param deadline the time in milliseconds after which the publisher stops waiting
+   * @return true if the queue drained to its limit before the deadline, or the connection closed
+   */
+  boolean awaitSpace(long deadline) {
+    synchronized (outboundLock) {
+      waiters++;
+      try {
+        // make sure the event loop is flushing while this publisher waits
+        eventLoop.requestFlush(this);
+        long remaining = deadline - System.currentTimeMillis();
+        while (size > queueConfig.getLimit() && !closed && !closeRequested && remaining > 0) {
+          outboundLock.wait(remaining);
+          remaining = deadline - System.currentTimeMillis();
+        }
+      } catch (InterruptedException e) {
+        CristiansLogger.writeErrorToLog("Wait for space in outbound queue was interrupted");
+      } finally {
+        waiters--;
+      }
+      return size <= queueConfig.getLimit() || closed || closeRequested;
+    }
+  }
+
+  /**
+   * Disconnects a client whose queue did not drain to its limit before its publisher's deadline
+   */
+  void evictSlow() {
+    synchronized (outboundLock) {
+      if (closed || closeRequested) {
+        return;
+      }
+      evict();
+    }
+
+    CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+        "Disconnecting slow client \"%s\" at \"%s\" with more than %d queued messages",
+        username,
+        getRemoteAddress(),
+        queueConfig.getLimit()
+        ));
+    eventLoop.requestFlush(this);
+  }
+
+  /**
+   * Gets the time in milliseconds a publisher waits for space under the BLOCK policy
+   *
+   * @return the time in milliseconds a publisher waits for space
+   */
+  long getBlockTimeout() {
+    return queueConfig.getBlockTimeout();
+  }
+
+  /**
+   * Discards every queued message and asks the event loop to close the connection. Called with
+   * the outbound lock held.
+   */
+  private void evict() {
+    // the queued messages are never written
+    dropped += size;
+    releaseQueued();
+    closeRequested = true;
+  }
+
+  /**
+   * Releases every queued message. Called with the outbound lock held.
+   */
+  private void releaseQueued() {
+    while (size > 0) {
+      outbound[head].release();
+      outbound[head] = null;
+      head = (head + 1) & (outbound.length - 1);
+      size--;
+    }
+    headOffset = 0;
+    if (waiters > 0) {
+      outboundLock.notifyAll();
+    }
+  }
+
+  /**
+   * Queues a line of text meant only for this client
+   *
+   * @param line the line to send, without a trailing newline
+   */
+  public void send(String line) {
+    OutboundMessage message = eventLoop.getEncoder().encode(line);
+    send(message);
+    message.release();
+  }
+
+  /**
+   * Queues a final line of text to be written to the client, after which the connection is closed
+   *
+   * @param line the line to send, without a trailing newline
+   */
+  public void sendAndClose(String line) {
+    send(line);
+    requestClose();
+  }
+
+  /**
+   * Tells the client its chatroom has been closed, using the protocol negotiated during the
+   * handshake, after which the connection is closed
+   *
+   * @param sequence sequence number of the last message published to the chatroom
+   */
+  public void sendChatroomClosed(long sequence) {
+    OutboundMessage message;
+    if (!framed) {
+      // send \c termination string to indicate the chatroom is closed
+      message = eventLoop.getEncoder().encode("\\c");
+    } else {
+      message = eventLoop.getEncoder().encode(new ChatFrame(FrameType.CLOSE,
+          chatroom.getRoomName(), sequence, "System", CristiansLogger.getSynchronizedTime(), ""));
+    }
+    // called with the chatroom's locks held; the connection is closed next, so there is no
+    // point waiting for space
+    queue(message);
+    message.release();
+    requestClose();
+  }
+
+  /**
+   * Queues a chatroom's recent messages as a single write, as binary frames or as lines of text
+   * depending on the protocol negotiated during the handshake
+   *
+   * @param messages the recent messages, oldest first
+   */
+  void sendBackfill(ChatFrame[] messages) {
+    OutboundMessage message;
+    if (framed) {
+      message = eventLoop.getEncoder().encode(messages);
+    } else {
+      StringBuilder lines = new StringBuilder();
+      for (ChatFrame m : messages) {
+        if (lines.length() > 0) {
+          lines.append('\n');
+        }
+        lines.append(m.getSender()).append(" >> ").append(m.getPayload());
+      }
+      message = eventLoop.getEncoder().encode(lines.toString());
+    }
+    // called with the chatroom's subscriber map lock held, so never waits for space
+    queue(message);
+    message.release();
+  }
+
+  /**
+   * Replies to a CHAT frame received from the client
+   *
+   * @param sequence the client's number for the CHAT frame
+   * @param published true if the message was published to the chatroom
+   */
+  void sendAck(long sequence, boolean published) {
+    OutboundMessage message = eventLoop.getEncoder().encode(new ChatFrame(FrameType.ACK,
+        chatroom.getRoomName(), sequence, "System", CristiansLogger.getSynchronizedTime(),
+        published ? "OK" : "FAIL"));
+    send(message);
+    message.release();
+  }
+
+  /**
+   * Queues a chat frame received from the client to be published. Called by the event loop, which
+   * stops reading the socket if too many frames are waiting.
+   *
+   * @param frame the CHAT frame received from the client
+   * @return true if no task is publishing the client's chats and the caller should start one
+   */
+  boolean queueChat(ChatFrame frame) {
+    synchronized (chatLock) {
+      pendingChats.add(frame);
+      if (pendingChats.size() >= MAX_PENDING_CHATS) {
+        readPaused = true;
+      }
+      if (publishing) {
+        return false;
+      }
+      publishing = true;
+      return true;
+    }
+  }
+
+  /**
+   * Takes the next chat frame to publish. Called by the task publishing the client's chats, which
+   * stops once no frame is left. Asks the event loop to read the socket again once enough frames
+   * have been published.
+   *
+   * @return the oldest chat frame waiting to be published, or null if there is none
+   */
+  ChatFrame nextChat() {
+    boolean resume = false;
+    ChatFrame frame;
+    synchronized (chatLock) {
+      frame = pendingChats.poll();
+      if (frame == null) {
+        publishing = false;
+      }
+      if (readPaused && pendingChats.size() <= MAX_PENDING_CHATS / 2) {
+        readPaused = false;
+        resume = true;
+      }
+    }
+    // the event loop restores its interest in reading when it next flushes the subscriber
+    if (resume) {
+      eventLoop.requestFlush(this);
+    }
+    return frame;
+  }
+
+  /**
+   * Whether the event loop should stop reading the socket until pending chats are published
+   *
+   * @return true if too many chat frames from the client are waiting to be published
+   */
+  boolean isReadPaused() {
+    return readPaused;
+  }
+
+  /**
+   * Asks the event loop to close the connection once every queued message has been written
+   */
+  private void requestClose() {
+    synchronized (outboundLock) {
+      closeRequested = true;
+      // publishers waiting for space no longer need to
+      if (waiters > 0) {
+        outboundLock.notifyAll();
+      }
+    }
+    eventLoop.requestFlush(this);
+  }
+
+  /**
+   * Writes as much queued data to the socket as it will currently accept, gathering several
+   * queued messages into each write. Only called from the subscriber's event loop.
+   *
+   * @param scratch array the event loop reuses to gather message views for a write
+   * @param eventLoopIndex index of the calling event loop
+   * @return true if every queued message has been written, false if the socket is full
+   * @throws IOException if the socket cannot be written to
+   */
+  boolean writeQueued(ByteBuffer[] scratch, int eventLoopIndex) throws IOException {
+    synchronized (outboundLock) {
+      int mask = outbound.length - 1;
+      while (size > 0) {
+        int count = Math.min(size, scratch.length);
+        for (int i = 0; i < count; i++) {
+          scratch[i] = outbound[(head + i) & mask].view(eventLoopIndex, i == 0 ? headOffset : 0);
+        }
+
+        long bytes = channel.write(scratch, 0, count);
+
+        // release every message that was completely written
+        int written = 0;
+        boolean full = false;
+        for (int i = 0; i < count; i++) {
+          if (scratch[i].hasRemaining()) {
+            headOffset = scratch[i].position();
+            full = true;
+            break;
+          }
+          outbound[head].release();
+          outbound[head] = null;
+          head = (head + 1) & mask;
+          size--;
+          headOffset = 0;
+          written++;
+        }
+        eventLoop.getEncoder().recordDeliveries(written);
+        eventLoop.getEncoder().recordBytesWritten(bytes);
+        // wake publishers waiting for space under the BLOCK policy
+        if (written > 0 && waiters > 0) {
+          outboundLock.notifyAll();
+        }
+        for (int i = 0; i < count; i++) {
+          scratch[i] = null;
+        }
+
+        if (full) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Doubles the capacity of the outbound queue
+   */
+  private void grow() {
+    OutboundMessage[] larger = new OutboundMessage[outbound.length * 2];
+    for (int i = 0; i < size; i++) {
+      larger[i] = outbound[(head + i) & (outbound.length - 1)];
+    }
+    outbound = larger;
+    head = 0;
+  }
+
+  /**
+   * Closes the client socket and stops delivery to the subscriber
+   */
+  public void close() {
+    synchronized (outboundLock) {
+      closed = true;
+      // release messages that will never be written
+      releaseQueued();
+    }
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // the socket is being discarded; nothing else can be done with it
+    }
+  }
+
+  /**
+   * Gets the number of messages currently queued for the client
+   *
+   * @return the number of messages currently queued
+   */
+  public int getQueueDepth() {
+    synchronized (outboundLock) {
+      return size;
+    }
+  }
+
+  /**
+   * Gets the largest number of messages that have been queued for the client at once
+   *
+   * @return the largest queue depth observed
+   */
+  public int getMaxQueueDepth() {
+    synchronized (outboundLock) {
+      return maxDepth;
+    }
+  }
+
+  /**
+   * Gets the number of messages discarded because the client could not keep up
+   *
+   * @return the number of messages discarded for the client
+   */
+  public long getDropped() {
+    synchronized (outboundLock) {
+      return dropped;
+    }
+  }
+
+  /**
+   * Marks the subscriber as waiting to be flushed by its event loop
+   *
+   * @return true if the subscriber was not already waiting to be flushed
+   */
+  boolean markFlushPending() {
+    return flushPending.compareAndSet(false, true);
+  }
+
+  /**
+   * Clears the mark set by markFlushPending before the event loop flushes the subscriber
+   */
+  void clearFlushPending() {
+    flushPending.set(false);
+  }
+
+  /**
+   * Gets the next subscriber in the event loop's list of subscribers waiting to be flushed
+   *
+   * @return the next subscriber waiting to be flushed
+   */
+  Subscriber getNextPendingFlush() {
+    return nextPendingFlush;
+  }
+
+  /**
+   * Sets the next subscriber in the event loop's list of subscribers waiting to be flushed
+   *
+   * @param next the next subscriber waiting to be flushed
+   */
+  void setNextPendingFlush(Subscriber next) {
+    this.nextPendingFlush = next;
+  }
+
+  /**
+   * Gets the handshake buffer holding the partially received initial client message
+   *
+   * @return the handshake buffer, or null once the handshake has finished
+   */
+  ByteBuffer getHandshakeBuffer() {
+    return handshakeBuffer;
+  }
+
+  /**
+   * Marks the handshake as finished and subscribes the client to a chatroom
+   *
+   * @param chatroom the chatroom the client has subscribed to
+   * @param username name of the user associated with the socket
+   * @param framed true if the client negotiated binary frames
+   */
+  void completeHandshake(Chatroom chatroom, String username, boolean framed) {
+    this.handshakeBuffer = null;
+    this.chatroom = chatroom;
+    this.username = username;
+    this.framed = framed;
+    // clients using frames also send their chat messages on the connection
+    if (framed) {
+      this.inbound = ByteBuffer.allocate(INBOUND_BUFFER_SIZE);
+    }
+  }
+
+  /**
+   * Gets the buffer holding bytes received from the client that have not yet formed a frame
+   *
+   * @return the inbound buffer ready to be read into, or null if the client does not send frames
+   */
+  ByteBuffer getInboundBuffer() {
+    return inbound;
+  }
+
+  /**
+   * Discards the frames that have been handled from the inbound buffer, growing the buffer if it
+   * is full so a frame larger than the buffer can still be received
+   */
+  void compactInbound() {
+    inbound.compact();
+    if (!inbound.hasRemaining() && inbound.capacity() < ChatFrame.MAX_FRAME_BYTES + 4) {
+      ByteBuffer larger =
+          ByteBuffer.allocate(Math.min(inbound.capacity() * 2, ChatFrame.MAX_FRAME_BYTES + 4));
+      inbound.flip();
+      larger.put(inbound);
+      inbound = larger;
+    }
+  }
+
+  /**
+   * Whether the client negotiated binary frames during the handshake
+   *
+   * @return true if messages are sent to the client as binary frames, false if they are sent as
+   *         lines of text
+   */
+  public boolean isFramed() {
+    return framed;
+  }
+
+  /**
+   * Gets the socket for the subscriber
+   *
+   * @return the socket for the subscriber
+   */
+  SocketChannel getChannel() {
+    return channel;
+  }
+
+  /**
+   * Gets the selection key registering the socket with its event loop
+   *
+   * @return the selection key for the socket
+   */
+  SelectionKey getKey() {
+    return key;
+  }
+
+  /**
+   * Sets the selection key registering the socket with its event loop
+   *
+   * @param key the selection key for the socket
+   */
+  void setKey(SelectionKey key) {
+    this.key = key;
+  }
+
+  /**
+   * Gets the chatroom the client is subscribed to
+   *
+   * @return the chatroom, or null if the handshake has not finished
+   */
+  Chatroom getChatroom() {
+    return chatroom;
+  }
+
+  /**
+   * Gets the name of the user associated with the socket
+   *
+   * @return the name of the user, or null if the handshake has not finished
+   */
+  public String getUsername() {
+    return username;
+  }
+
+  /**
+   * Whether the connection should be closed once all queued data has been written
+   *
+   * @return true if the connection should be closed after the final flush
+   */
+  boolean isCloseRequested() {
+    return closeRequested;
+  }
+
+  /**
+   * Whether the connection has been closed
+   *
+   * @return true if the connection has been closed
+   */
+  boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Gets a printable address for the client
+   *
+   * @return the remote address of the client socket
+   */
+  String getRemoteAddress() {
+    try {
+      return String.valueOf(channel.getRemoteAddress());
+    } catch (IOException e) {
+      return "unknown";
+    }
+  }
+}
@@ -1,15 +1,20 @@
 package client;
 
-import data.ChatroomListResponse;
+import data.ChatroomPageResponse;
 import data.ChatroomResponse;
+import data.ChatroomSort;
+import data.ChatroomSummary;
 import data.ICentralUserOperations;
 import data.Response;
 import data.ResponseStatus;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.util.Scanner;
+import util.ConfigUtil;
+import util.ExecutionMode;
 import util.Logger;
 import util.RMIAccess;
+import util.TaskExecutor;
 import util.ThreadSafeStringFormatter;
 
 /**
@@ -17,6 +22,9 @@ import util.ThreadSafeStringFormatter;
  */
 public class App {
 
+  // number of chatrooms shown at a time when listing chatrooms
+  private static final int CHATROOM_PAGE_SIZE = 20;
+
   public App(){}
 
   /**
@@ -245,21 +253,59 @@ public class App {
             }
           }
         } else if (in.compareTo("2") == 0) {
-          // if option 2 is selected, gather a list of available chatrooms in the system and display
-          // them to the user
-          Logger.writeMessageToLog("Attempting to gather list of available chatrooms...");
-
-          ChatroomListResponse r = centralServerAccessor.getAccess().listChatrooms();
+          // if option 2 is selected, page through the available chatrooms in the system, busiest
+          // first, optionally only those whose names contain some text
+          System.out.print("Enter text to search chatroom names for, or leave blank to list all: ");
+          String query = input.nextLine();
+          System.out.println();
 
-          Logger.writeMessageToLog("Successfully gathered list of available chatrooms");
+          Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
+              "Attempting to gather list of available chatrooms matching \"%s\"...",
+              query
+              ));
 
           System.out.println("Available chatrooms:");
 
-          // print chatrooms to screen so user can use them to join one of the chatrooms
-          for (String roomName : r.getChatroomNames()) {
-            System.out.println(roomName);
+          // only ever pull one page at a time, fetching the next when the user asks for it
+          String cursor = null;
+          while (true) {
+            ChatroomPageResponse r = centralServerAccessor.getAccess().searchChatrooms(query,
+                false, ChatroomSort.USERS, cursor, CHATROOM_PAGE_SIZE);
+
+            if (r.getStatus() == ResponseStatus.FAIL) {
+              Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
+                  "Unable to gather list of available chatrooms: \"%s\"",
+                  r.getMessage()
+                  ));
+              System.out.println("Unable to gather the rest of the available chatrooms");
+              break;
+            }
+
+            // print chatrooms to screen so user can use them to join one of the chatrooms
+            for (ChatroomSummary room : r.getChatrooms()) {
+              System.out.println(ThreadSafeStringFormatter.format(
+                  "%s (%d users)",
+                  room.getName(),
+                  room.getUsers()
+                  ));
+            }
+
+            cursor = r.getNextCursor();
+            if (cursor == null) {
+              break;
+            }
+            // a search matching few chatrooms may return an empty page before the next match
+            if (r.getChatrooms().isEmpty()) {
+              continue;
+            }
+            System.out.print("Enter 'n' to see more chatrooms, or anything else to stop: ");
+            if (input.nextLine().compareTo("n") != 0) {
+              break;
+            }
           }
 
+          Logger.writeMessageToLog("Successfully gathered list of available chatrooms");
+
         } else if (in.compareTo("3") == 0) {
           // if option 3 is selected, attempt to create a new chatroom on behalf of the user
           // collect the name of the chatroom to be created
@@ -411,6 +457,17 @@ public class App {
       return;
     }
 
+    // the chat message receive thread runs on the shared task executor
+    ExecutionMode mode = TaskExecutor.setup(serverInfo.getExecutionMode(),
+        TaskExecutor.DEFAULT_PLATFORM_THREADS);
+    if (mode != serverInfo.getExecutionMode()) {
+      Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Execution mode \"%s\" is not supported by this JVM; using \"%s\"",
+          serverInfo.getExecutionMode(),
+          mode
+          ));
+    }
+
     App app = new App();
     try {
       app.go(serverInfo);
@@ -462,7 +519,11 @@ public class App {
           ));
     }
 
-    return new ServerInfo(args[0], centralPort, isTest);
+    // optional tuning values are read from system properties
+    ExecutionMode executionMode = ConfigUtil.getEnum("client.executionMode",
+        ExecutionMode.class, ExecutionMode.PLATFORM);
+
+    return new ServerInfo(args[0], centralPort, isTest, executionMode);
 
   }
 
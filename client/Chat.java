@@ -1,6 +1,8 @@
 package client;
 
+import data.ChatFrame;
 import data.ChatroomResponse;
+import data.FrameType;
 import data.ICentralUserOperations;
 import data.IChatroomUserOperations;
 import data.ResponseStatus;
@@ -10,10 +12,14 @@ import java.io.*;
 import java.net.Socket;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Future;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import util.Logger;
 import util.RMIAccess;
+import util.TaskExecutor;
 import util.ThreadSafeStringFormatter;
 
 /** 
@@ -37,6 +43,14 @@ class Chat extends JFrame implements ActionListener {
   private static final Object reestablishLock = new Object();
   private static Thread chatThread;
   private static boolean isRunning;
+  // true if the chat server agreed to send binary frames during the handshake, in which case chat
+  // messages are also sent to it as frames on the TCP connection rather than through RMI
+  private static volatile boolean framed;
+  private static OutputStream socketOut;
+  // number given to the last chat frame sent, guarded by the reestablish lock
+  private static long lastMessageId = 0;
+  // chat frames the chat server has not acknowledged yet, in the order they were sent
+  private static final Map<Long, String> pendingAcks = new ConcurrentSkipListMap<>();
 
   /**
    * Creates an instance of the Chat object
@@ -171,8 +185,7 @@ class Chat extends JFrame implements ActionListener {
     Logger.writeMessageToLog("Initiating receive thread for TCP connection...");
 
     // start receiving messages from server
-    Thread receiveThread = new Thread(new ReceiveThread(s));
-    receiveThread.start();
+    Future<?> receiveThread = TaskExecutor.submit(new ReceiveThread(s));
 
     Logger.writeMessageToLog("Successfully started receive thread for TCP connection");
 
@@ -216,7 +229,7 @@ class Chat extends JFrame implements ActionListener {
           Logger.writeErrorToLog("Unable to access chatroom server for leave operation");
         }
         // interrupt the receive thread
-        receiveThread.interrupt();
+        receiveThread.cancel(true);
         // remove logout shutdown hook
         Runtime.getRuntime().removeShutdownHook(Chat.chatThread);
 
@@ -273,6 +286,13 @@ class Chat extends JFrame implements ActionListener {
       // grab user text
       String message = textEntry.getText();
 
+      // the chat server refuses messages too large to be published as a chat frame
+      if (!ChatFrame.fits(Chat.chatroomName, Chat.username, message)) {
+        textDisplay.setText(textDisplay.getText()
+            + "\nSystem >> The message is too long to be sent");
+        return;
+      }
+
       Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
           "Attempting to send message \"%s\" to chat server at \"%s:%d\"",
           message,
@@ -280,17 +300,28 @@ class Chat extends JFrame implements ActionListener {
           Chat.rmiPort
           ));
 
-      // send message to server via RMI accessor
+      // send message to server as a frame on the TCP connection if the chat server supports it,
+      // otherwise via RMI accessor
       try {
         // surround with reestablish lock so that the user does not 
         //try to send a message while a connection
         // is being reestablished
         synchronized (Chat.reestablishLock) {
-          chatroomAccessor.getAccess().chat(chatroomName, username, message);
+          if (Chat.framed) {
+            // the chat server's ack is handled by the receive thread, so further messages may
+            // be sent without waiting for it
+            Chat.lastMessageId++;
+            Chat.pendingAcks.put(Chat.lastMessageId, message);
+            Chat.writeChatFrame(Chat.lastMessageId, message);
+          } else {
+            chatroomAccessor.getAccess().chat(chatroomName, username, message);
+          }
         }
         // set the text of field to blank after the message has been sent
         textEntry.setText("");
-      } catch (RemoteException | NotBoundException err) {
+      } catch (IOException | NotBoundException err) {
+        // a message that could not be written as a frame stays pending and is sent again once
+        // the connection has been reestablished
         Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
             "There was an error sending message \"%s\" to chat server at \"%s:%d\": \"%s\"",
             message,
@@ -315,7 +346,6 @@ class Chat extends JFrame implements ActionListener {
   static class ReceiveThread implements Runnable {
 
     private Socket receiveSocket;
-    BufferedReader socketReader;
 
     /**
      * Creates an instance of the ReceiveThread object
@@ -332,41 +362,17 @@ class Chat extends JFrame implements ActionListener {
      */
     @Override
     public void run() {
-      // create a reader to parse data received from the server via the TCP connection
-      try {
-        this.socketReader = new BufferedReader(
-            new InputStreamReader(this.receiveSocket.getInputStream()));
-      } catch (IOException e) {
-        e.printStackTrace();
-      }
-
       // continue to receive until the window is closed and the user leaves the chatroom
       while (true) {
-        String message;
         try {
-          // receive only when information becomes available
-          while ((message = socketReader.readLine()) != null) {
-
-            if (message.compareTo("\\c") == 0) {
-              textDisplay.setText(textDisplay.getText() 
-                  + "\nSystem >> The chatroom has been deleted; "
-                  + "no more messages may be delivered");
-              Chat.isRunning = false;
-              socketReader.close();
-              receiveSocket.close();
-              return;
-            }
-
-            Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
-                "Received message \"%s\" from chat server at \"%s:%d\"",
-                message,
-                Chat.hostname,
-                Chat.tcpPort
-                ));
-
-            // write display to the main part of the window
-            textDisplay.setText(textDisplay.getText() + "\n" + message);
+          // receive only when information becomes available, using the protocol negotiated
+          // with the chat server; returns once the chatroom has been closed
+          if (Chat.framed) {
+            receiveFrames();
+          } else {
+            receiveLines();
           }
+          return;
         } catch (IOException e) {
           // if IO exception occurs, chat server crashed or connection was lost to the TCP socket
           // catch this error and issue a reestablish request to the main server to determine
@@ -406,9 +412,9 @@ class Chat extends JFrame implements ActionListener {
                 return;
               }
 
-              // create new reader for the newly established socket
-              this.socketReader = 
-                  new BufferedReader(new InputStreamReader(this.receiveSocket.getInputStream()));
+              // messages sent as frames that were never acknowledged may have been lost with
+              // the previous chat server, so send them again
+              Chat.resendPending();
 
             } catch (NotBoundException | IOException err) {
               Logger.writeErrorToLog("Unable to reestablish chatroom "
@@ -425,10 +431,109 @@ class Chat extends JFrame implements ActionListener {
         }
       }
     }
+
+    /**
+     * Receives messages sent as binary frames until the chatroom is closed
+     *
+     * @throws IOException if the connection to the chat server is lost
+     */
+    private void receiveFrames() throws IOException {
+      DataInputStream in = new DataInputStream(
+          new BufferedInputStream(this.receiveSocket.getInputStream()));
+      while (true) {
+        ChatFrame chatFrame = ChatFrame.read(in);
+        if (chatFrame.getType() == FrameType.CLOSE) {
+          closeChatroom();
+          return;
+        }
+        if (chatFrame.getType() == FrameType.ACK) {
+          handleAck(chatFrame);
+          continue;
+        }
+        display(chatFrame.getSender() + " >> " + chatFrame.getPayload());
+      }
+    }
+
+    /**
+     * Handles the chat server's reply to a chat message sent as a frame
+     *
+     * @param ack the ACK frame received from the chat server
+     */
+    private void handleAck(ChatFrame ack) {
+      String message = Chat.pendingAcks.remove(ack.getSequence());
+      if ("OK".equals(ack.getPayload())) {
+        Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
+            "Chat server at \"%s:%d\" acknowledged message \"%s\"",
+            Chat.hostname,
+            Chat.tcpPort,
+            message
+            ));
+        return;
+      }
+
+      Logger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Chat server at \"%s:%d\" failed to publish message \"%s\"",
+          Chat.hostname,
+          Chat.tcpPort,
+          message
+          ));
+      textDisplay.setText(textDisplay.getText()
+          + "\nSystem >> Your message \"" + message + "\" could not be delivered");
+    }
+
+    /**
+     * Receives messages sent as lines of text until the chatroom is closed
+     *
+     * @throws IOException if the connection to the chat server is lost
+     */
+    private void receiveLines() throws IOException {
+      BufferedReader socketReader = new BufferedReader(
+          new InputStreamReader(this.receiveSocket.getInputStream()));
+      String message;
+      while ((message = socketReader.readLine()) != null) {
+        if (message.compareTo("\\c") == 0) {
+          closeChatroom();
+          return;
+        }
+        display(message);
+      }
+      throw new EOFException("Chat server closed the connection");
+    }
+
+    /**
+     * Writes a received message to the main part of the window
+     *
+     * @param message the message to display, including the name of its sender
+     */
+    private void display(String message) {
+      Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
+          "Received message \"%s\" from chat server at \"%s:%d\"",
+          message,
+          Chat.hostname,
+          Chat.tcpPort
+          ));
+
+      // write display to the main part of the window
+      textDisplay.setText(textDisplay.getText() + "\n" + message);
+    }
+
+    /**
+     * Informs the user the chatroom has been deleted and closes the connection
+     *
+     * @throws IOException if the socket cannot be closed
+     */
+    private void closeChatroom() throws IOException {
+      textDisplay.setText(textDisplay.getText() 
+          + "\nSystem >> The chatroom has been deleted; "
+          + "no more messages may be delivered");
+      Chat.isRunning = false;
+      receiveSocket.close();
+    }
   }
 
   /**
-   * Creates a TCP socket and establishes a connection with the chat server
+   * Creates a TCP socket and establishes a connection with the chat server. Asks the chat server
+   * for binary frames, and falls back to lines of text if the chat server does not support them.
    *
    * @return the socket that is connected to the chat server
    */
@@ -437,14 +542,14 @@ class Chat extends JFrame implements ActionListener {
     try {
       // create a socket using the hostname and tcp port stored in the chat class
       s = new Socket(Chat.hostname, Chat.tcpPort);
-      // create input and output streams
+      // create output stream
       PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream()), true);
-      BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()));
 
+      String initialMessage = Chat.chatroomName + ":" + Chat.username + ":"
+          + ChatFrame.HANDSHAKE_OPTION + ChatFrame.VERSION;
       Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
-          "Sending initial message \"%s:%s\" to chat server at \"%s:%d\"",
-          Chat.chatroomName,
-          Chat.username,
+          "Sending initial message \"%s\" to chat server at \"%s:%d\"",
+          initialMessage,
           Chat.hostname,
           Chat.tcpPort
           ));
@@ -452,12 +557,20 @@ class Chat extends JFrame implements ActionListener {
       // send initial message with the name of the chatroom and the 
       //user's username such that the socket
       // can be subscribed to the correct chatroom and the socket can be associated with this user
-      out.println(Chat.chatroomName + ":" + Chat.username);
-      String response = in.readLine();
-
-      // if the connection request fails (is not "success"), 
-      //return null to indicate operation failed
-      if (response.compareTo("success") != 0) {
+      out.println(initialMessage);
+      String response = Chat.readResponseLine(s.getInputStream());
+
+      // "success:frames=<version>" means messages follow as binary frames, while "success" means
+      // the chat server only supports lines of text
+      if ("success".equals(response)) {
+        Chat.framed = false;
+      } else if (("success:" + ChatFrame.HANDSHAKE_OPTION + ChatFrame.VERSION).equals(response)) {
+        Chat.framed = true;
+        Chat.socketOut = s.getOutputStream();
+      } else {
+        // if the connection request fails (is not "success"), 
+        //return null to indicate operation failed
+        s.close();
         return null;
       }
 
@@ -466,4 +579,64 @@ class Chat extends JFrame implements ActionListener {
     }
     return s;
   }
+
+  /**
+   * Writes a chat message to the chat server as a CHAT frame on the TCP connection
+   *
+   * @param messageId the number the chat server acknowledges the message with
+   * @param message the message to publish
+   * @throws IOException if the frame cannot be written to the socket
+   */
+  private static void writeChatFrame(long messageId, String message) throws IOException {
+    ChatFrame chatFrame = new ChatFrame(FrameType.CHAT, Chat.chatroomName, messageId,
+        Chat.username, System.currentTimeMillis(), message);
+    Chat.socketOut.write(chatFrame.toBytes());
+    Chat.socketOut.flush();
+  }
+
+  /**
+   * Sends every unacknowledged chat frame again after the connection has been reestablished,
+   * using RMI if the new chat server does not support frames. Called with the reestablish lock
+   * held.
+   *
+   * @throws IOException if a message cannot be sent
+   * @throws NotBoundException if the chat server RMI registry cannot be located
+   */
+  private static void resendPending() throws IOException, NotBoundException {
+    for (Map.Entry<Long, String> pending : Chat.pendingAcks.entrySet()) {
+      Logger.writeMessageToLog(ThreadSafeStringFormatter.format(
+          "Resending unacknowledged message \"%s\" to chat server at \"%s:%d\"",
+          pending.getValue(),
+          Chat.hostname,
+          Chat.tcpPort
+          ));
+      if (Chat.framed) {
+        Chat.writeChatFrame(pending.getKey(), pending.getValue());
+      } else {
+        Chat.chatroomAccessor.getAccess().chat(Chat.chatroomName, Chat.username,
+            pending.getValue());
+        Chat.pendingAcks.remove(pending.getKey());
+      }
+    }
+  }
+
+  /**
+   * Reads the chat server's reply to the initial message one byte at a time, so no data that
+   * follows the reply is consumed before the receive thread starts reading
+   *
+   * @param in the socket's input stream
+   * @return the reply without its trailing newline, or null if the connection was closed
+   * @throws IOException if the socket cannot be read from
+   */
+  private static String readResponseLine(InputStream in) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int b;
+    while ((b = in.read()) != '\n') {
+      if (b == -1) {
+        return null;
+      }
+      line.write(b);
+    }
+    return line.toString("UTF-8").trim();
+  }
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package client;
 
+import util.ExecutionMode;
+
 /**
  * Serverinfo class which holds the necessary port and addressing information for
  * the central server
@@ -9,6 +11,7 @@ public class ServerInfo {
   private final String centralHost;
   private final int centralPort;
   private final boolean isTest;
+  private final ExecutionMode executionMode;
 
   /**
    * Creates an instance of the ServerInfo object
@@ -16,11 +19,14 @@ public class ServerInfo {
    * @param centralHost hostname of the machine supporting the central server
    * @param centralPort port the central server is accepting client requests on
    * @param isTest indicates if the client should run its local test file
+   * @param executionMode the kind of thread that receives chat messages
    */
-  public ServerInfo(String centralHost, int centralPort, boolean isTest) {
+  public ServerInfo(String centralHost, int centralPort, boolean isTest,
+      ExecutionMode executionMode) {
     this.centralHost = centralHost;
     this.centralPort = centralPort;
     this.isTest = isTest;
+    this.executionMode = executionMode;
   }
 
   public String getCentralHost() {
@@ -32,4 +38,13 @@ public class ServerInfo {
   }
 
   public boolean getIsTest() { return this.isTest; }
+
+  /**
+   * Returns the kind of thread requested to receive chat messages
+   *
+   * @return the requested execution mode
+   */
+  public ExecutionMode getExecutionMode() {
+    return executionMode;
+  }
 }
@@ -0,0 +1,323 @@
+package data;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A length-prefixed binary frame exchanged between a chat server and a subscribed client. Clients
+ * that negotiated frames also send their chat messages upstream as CHAT frames on the same
+ * connection, numbered by the client, and the chat server answers each with an ACK frame carrying
+ * the same number. Clients ask for
+ * frames by appending ":frames=<version>" to their initial <chatroom>:<username> message; a chat
+ * server that supports frames answers "success:frames=<version>", and any other answer means the
+ * line-oriented text protocol is used instead.
+ *
+ * <p>Each frame is laid out as:
+ * <pre>
+ * int   length of the rest of the frame
+ * byte  frame format version
+ * byte  frame type
+ * long  sequence number of the message within its chatroom, or the client's number for CHAT
+ *       and ACK frames
+ * long  time the message was published, in milliseconds since the epoch
+ * short length of the chatroom name, followed by the UTF-8 chatroom name
+ * short length of the sender name, followed by the UTF-8 sender name
+ * bytes UTF-8 payload, filling the remainder of the frame
+ * </pre>
+ */
+public class ChatFrame {
+
+  // the frame format version written by this class
+  public static final int VERSION = 1;
+  // option appended to the handshake to negotiate frames
+  public static final String HANDSHAKE_OPTION = "frames=";
+  // the largest frame accepted from either side
+  public static final int MAX_FRAME_BYTES = 1 << 20;
+
+  // length prefix, version, type, sequence, timestamp, and the two name lengths
+  private static final int FIXED_BYTES = 4 + 1 + 1 + 8 + 8 + 2 + 2;
+
+  private final FrameType type;
+  private final String chatroom;
+  private final long sequence;
+  private final String sender;
+  private final long timestamp;
+  private final String payload;
+  // UTF-8 encodings of the strings, kept so the frame's length is known before it is written
+  private final byte[] chatroomBytes;
+  private final byte[] senderBytes;
+  private final byte[] payloadBytes;
+
+  /**
+   * Creates an instance of the ChatFrame
+   *
+   * @param type the kind of frame
+   * @param chatroom name of the chatroom the frame was sent from
+   * @param sequence sequence number of the message within its chatroom
+   * @param sender name of the user that sent the message
+   * @param timestamp time the message was published, in milliseconds since the epoch
+   * @param payload the message text
+   */
+  public ChatFrame(FrameType type, String chatroom, long sequence, String sender, long timestamp,
+      String payload) {
+    this(type, chatroom, sequence, sender, timestamp, payload,
+        chatroom.getBytes(StandardCharsets.UTF_8),
+        sender.getBytes(StandardCharsets.UTF_8),
+        payload.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Creates an instance of the ChatFrame from its fields and their encodings
+   *
+   * @param type the kind of frame
+   * @param chatroom name of the chatroom the frame was sent from
+   * @param sequence sequence number of the message within its chatroom
+   * @param sender name of the user that sent the message
+   * @param timestamp time the message was published, in milliseconds since the epoch
+   * @param payload the message text
+   * @param chatroomBytes UTF-8 encoding of the chatroom name
+   * @param senderBytes UTF-8 encoding of the sender name
+   * @param payloadBytes UTF-8 encoding of the message text
+   */
+  private ChatFrame(FrameType type, String chatroom, long sequence, String sender,
+      long timestamp, String payload, byte[] chatroomBytes, byte[] senderBytes,
+      byte[] payloadBytes) {
+    if (chatroomBytes.length > 0xFFFF || senderBytes.length > 0xFFFF) {
+      throw new IllegalArgumentException("Chatroom and sender names must fit in 65535 bytes");
+    }
+    // a frame the other side would refuse to read is never built
+    if (!fits(chatroomBytes.length, senderBytes.length, payloadBytes.length)) {
+      throw new IllegalArgumentException(String.format(
+          "Frame must fit in %d bytes", MAX_FRAME_BYTES));
+    }
+    this.type = type;
+    this.chatroom = chatroom;
+    this.sequence = sequence;
+    this.sender = sender;
+    this.timestamp = timestamp;
+    this.payload = payload;
+    this.chatroomBytes = chatroomBytes;
+    this.senderBytes = senderBytes;
+    this.payloadBytes = payloadBytes;
+  }
+
+  /**
+   * Whether a frame carrying a message would be accepted by the other side, so a message too
+   * large to be sent as a frame can be refused before it is published
+   *
+   * @param chatroom name of the chatroom the message is sent from
+   * @param sender name of the user that sent the message
+   * @param payload the message text
+   * @return true if the frame fits within MAX_FRAME_BYTES and its names fit their length fields
+   */
+  public static boolean fits(String chatroom, String sender, String payload) {
+    int chatroomLength = chatroom.getBytes(StandardCharsets.UTF_8).length;
+    int senderLength = sender.getBytes(StandardCharsets.UTF_8).length;
+    return chatroomLength <= 0xFFFF && senderLength <= 0xFFFF
+        && fits(chatroomLength, senderLength, payload.getBytes(StandardCharsets.UTF_8).length);
+  }
+
+  /**
+   * Whether a frame with fields of the given encoded lengths fits within MAX_FRAME_BYTES
+   *
+   * @param chatroomLength length in bytes of the UTF-8 chatroom name
+   * @param senderLength length in bytes of the UTF-8 sender name
+   * @param payloadLength length in bytes of the UTF-8 payload
+   * @return true if the frame, less its length prefix, is at most MAX_FRAME_BYTES long
+   */
+  private static boolean fits(int chatroomLength, int senderLength, int payloadLength) {
+    return (long) FIXED_BYTES - 4 + chatroomLength + senderLength + payloadLength
+        <= MAX_FRAME_BYTES;
+  }
+
+  /**
+   * Gets the number of bytes the frame occupies on the wire, including its length prefix
+   *
+   * @return the encoded size of the frame in bytes
+   */
+  public int getEncodedLength() {
+    return FIXED_BYTES + chatroomBytes.length + senderBytes.length + payloadBytes.length;
+  }
+
+  /**
+   * Writes the frame to a buffer, which must have at least getEncodedLength() bytes remaining
+   *
+   * @param buffer the buffer to write the frame to
+   */
+  public void writeTo(ByteBuffer buffer) {
+    buffer.putInt(getEncodedLength() - 4);
+    buffer.put((byte) VERSION);
+    buffer.put(type.getCode());
+    buffer.putLong(sequence);
+    buffer.putLong(timestamp);
+    buffer.putShort((short) chatroomBytes.length);
+    buffer.put(chatroomBytes);
+    buffer.putShort((short) senderBytes.length);
+    buffer.put(senderBytes);
+    buffer.put(payloadBytes);
+  }
+
+  /**
+   * Reads the next frame from a stream, blocking until the whole frame has arrived
+   *
+   * @param in the stream to read from
+   * @return the frame read from the stream
+   * @throws IOException if the stream ends or the frame is malformed
+   */
+  public static ChatFrame read(DataInputStream in) throws IOException {
+    int length = checkLength(in.readInt());
+    byte[] frame = new byte[length];
+    in.readFully(frame);
+    return decode(ByteBuffer.wrap(frame));
+  }
+
+  /**
+   * Reads the next frame from a heap buffer holding received bytes, if the whole frame has
+   * arrived. The buffer's position is moved past the frame only if one is returned.
+   *
+   * @param buffer the received bytes, ready to be read
+   * @return the frame read from the buffer, or null if the buffer holds only part of a frame
+   * @throws IOException if the frame is malformed
+   */
+  public static ChatFrame read(ByteBuffer buffer) throws IOException {
+    if (buffer.remaining() < 4) {
+      return null;
+    }
+    int length = checkLength(buffer.getInt(buffer.position()));
+    if (buffer.remaining() < 4 + length) {
+      return null;
+    }
+    buffer.position(buffer.position() + 4);
+    ByteBuffer frame = buffer.slice();
+    frame.limit(length);
+    buffer.position(buffer.position() + length);
+    return decode(frame);
+  }
+
+  /**
+   * Checks the length prefix of a frame
+   *
+   * @param length the length of the frame following its prefix
+   * @return the length, if it is legal
+   * @throws IOException if the length is too short or too long
+   */
+  private static int checkLength(int length) throws IOException {
+    if (length < FIXED_BYTES - 4 || length > MAX_FRAME_BYTES) {
+      throw new IOException(String.format("Received frame with illegal length %d", length));
+    }
+    return length;
+  }
+
+  /**
+   * Decodes the contents of a frame following its length prefix
+   *
+   * @param buffer heap buffer holding exactly the contents of the frame
+   * @return the decoded frame
+   * @throws IOException if the frame is malformed
+   */
+  private static ChatFrame decode(ByteBuffer buffer) throws IOException {
+    try {
+      int version = buffer.get();
+      if (version != VERSION) {
+        throw new IOException(String.format("Received unsupported frame version %d", version));
+      }
+      FrameType type = FrameType.fromCode(buffer.get());
+      if (type == null) {
+        throw new IOException("Received frame of unknown type");
+      }
+      long sequence = buffer.getLong();
+      long timestamp = buffer.getLong();
+      String chatroom = readString(buffer, buffer.getShort() & 0xFFFF);
+      String sender = readString(buffer, buffer.getShort() & 0xFFFF);
+      String payload = readString(buffer, buffer.remaining());
+      return new ChatFrame(type, chatroom, sequence, sender, timestamp, payload);
+    } catch (RuntimeException e) {
+      // a name length that runs past the end of the frame
+      throw new IOException("Received malformed frame", e);
+    }
+  }
+
+  /**
+   * Decodes a UTF-8 string from the current position of a buffer
+   *
+   * @param buffer the buffer holding the string
+   * @param length the encoded length of the string in bytes
+   * @return the decoded string
+   */
+  private static String readString(ByteBuffer buffer, int length) {
+    if (length > buffer.remaining()) {
+      throw new IndexOutOfBoundsException("String runs past the end of the frame");
+    }
+    String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+        StandardCharsets.UTF_8);
+    buffer.position(buffer.position() + length);
+    return s;
+  }
+
+  /**
+   * Encodes the frame into a byte array ready to be written to a stream
+   *
+   * @return the encoded frame, including its length prefix
+   */
+  public byte[] toBytes() {
+    ByteBuffer buffer = ByteBuffer.allocate(getEncodedLength());
+    writeTo(buffer);
+    return buffer.array();
+  }
+
+  /**
+   * Gets the kind of frame
+   *
+   * @return the kind of frame
+   */
+  public FrameType getType() {
+    return type;
+  }
+
+  /**
+   * Gets the name of the chatroom the frame was sent from
+   *
+   * @return name of the chatroom
+   */
+  public String getChatroom() {
+    return chatroom;
+  }
+
+  /**
+   * Gets the sequence number of the message within its chatroom
+   *
+   * @return the sequence number of the message
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * Gets the name of the user that sent the message
+   *
+   * @return name of the sender
+   */
+  public String getSender() {
+    return sender;
+  }
+
+  /**
+   * Gets the time the message was published
+   *
+   * @return the time the message was published, in milliseconds since the epoch
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * Gets the message text
+   *
+   * @return the message text
+   */
+  public String getPayload() {
+    return payload;
+  }
+}
@@ -0,0 +1,92 @@
+package data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Contains one page of a chatroom's logged messages. Each message is identified by its sequence
+ * number, its 1-based position in the chatroom's chat log, which is used as the cursor to request
+ * the neighbouring pages.
+ */
+public class ChatHistoryResponse extends Response implements Serializable {
+
+  private List<String> messages;
+  private long firstSequence;
+  private long messageCount;
+  private boolean more;
+
+  /**
+   * Creates an instance of the ChatHistoryResponse object
+   *
+   * @param status status of the response
+   * @param message describing the result of the operation
+   * @param messages the messages in the page, oldest first
+   * @param firstSequence sequence number of the first message in the page
+   * @param messageCount the number of messages in the chatroom's chat log
+   * @param more true if there are further messages beyond the page in the requested direction
+   */
+  public ChatHistoryResponse(ResponseStatus status, String message, List<String> messages,
+      long firstSequence, long messageCount, boolean more) {
+    super(status, message);
+    this.messages = messages;
+    this.firstSequence = firstSequence;
+    this.messageCount = messageCount;
+    this.more = more;
+  }
+
+  /**
+   * Creates an instance of the ChatHistoryResponse object when the history cannot be read
+   *
+   * @param status status of the response
+   * @param message describing the result of the operation
+   */
+  public ChatHistoryResponse(ResponseStatus status, String message) {
+    super(status, message);
+  }
+
+  /**
+   * Gets the messages in the page
+   *
+   * @return the messages in the page, oldest first
+   */
+  public List<String> getMessages() {
+    return this.messages;
+  }
+
+  /**
+   * Gets the sequence number of the first message in the page; the cursor for the page before it
+   *
+   * @return sequence number of the first message in the page
+   */
+  public long getFirstSequence() {
+    return this.firstSequence;
+  }
+
+  /**
+   * Gets the sequence number of the last message in the page; the cursor for the page after it
+   *
+   * @return sequence number of the last message in the page, or one less than the first sequence
+   *         number if the page is empty
+   */
+  public long getLastSequence() {
+    return this.firstSequence + this.messages.size() - 1;
+  }
+
+  /**
+   * Gets the number of messages in the chatroom's chat log when the page was read
+   *
+   * @return the number of logged messages in the chatroom
+   */
+  public long getMessageCount() {
+    return this.messageCount;
+  }
+
+  /**
+   * Whether there are further messages beyond the page in the requested direction
+   *
+   * @return true if another page can be requested in the same direction
+   */
+  public boolean hasMore() {
+    return this.more;
+  }
+}
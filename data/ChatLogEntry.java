@@ -0,0 +1,41 @@
+package data;
+
+import java.io.Serializable;
+
+/**
+ * Describes a single chat message to be logged for a chatroom
+ */
+public class ChatLogEntry implements Serializable {
+
+  private final String chatroom;
+  private final String message;
+
+  /**
+   * Creates an instance of the ChatLogEntry
+   *
+   * @param chatroom name of the chat room the message was sent to
+   * @param message the message to be logged
+   */
+  public ChatLogEntry(String chatroom, String message) {
+    this.chatroom = chatroom;
+    this.message = message;
+  }
+
+  /**
+   * Gets the name of the chat room the message was sent to
+   *
+   * @return the name of the chat room the message was sent to
+   */
+  public String getChatroom() {
+    return this.chatroom;
+  }
+
+  /**
+   * Gets the message to be logged
+   *
+   * @return the message to be logged
+   */
+  public String getMessage() {
+    return this.message;
+  }
+}
@@ -0,0 +1,91 @@
+package data;
+
+import java.util.Map;
+
+/**
+ * A load report pushed periodically by a chat server to the central server. Extends the
+ * chatroom data a chat server returns on request with the port the central server reaches it on,
+ * measures of how busy its clients keep it, how many users it is sized for, and the number of
+ * users in the chatrooms whose counts have changed.
+ */
+public class ChatNodeLoadReport extends ChatroomDataResponse {
+
+  private final int operationsPort;
+  private final long bytesPerSecond;
+  private final int queueDepth;
+  private final int userCapacity;
+  private final Map<String, Integer> roomUsers;
+
+  /**
+   * Creates an instance of the ChatNodeLoadReport
+   *
+   * @param chatrooms number of chat rooms at the chat server
+   * @param users number of users at the chat server
+   * @param hostname hostname of the machine supporting the chat server
+   * @param rmiPort rmi port the chat server is accepting client RMI requests on
+   * @param tcpPort tcp port the chat server is accepting client connections on
+   * @param operationsPort port the chat server is accepting operations requests from the central
+   *                       server on
+   * @param bytesPerSecond bytes per second written to clients since the previous report
+   * @param queueDepth number of messages queued for clients and not yet written
+   * @param userCapacity number of users the chat server is sized for
+   * @param roomUsers number of users in each chatroom whose count changed since the chat
+   *                  server's last accepted report, or in every chatroom
+   */
+  public ChatNodeLoadReport(int chatrooms, int users, String hostname, int rmiPort, int tcpPort,
+      int operationsPort, long bytesPerSecond, int queueDepth, int userCapacity,
+      Map<String, Integer> roomUsers) {
+    super(chatrooms, users, hostname, rmiPort, tcpPort);
+    this.operationsPort = operationsPort;
+    this.bytesPerSecond = bytesPerSecond;
+    this.queueDepth = queueDepth;
+    this.userCapacity = userCapacity;
+    this.roomUsers = roomUsers;
+  }
+
+  /**
+   * Gets the port the chat server is accepting operations requests from the central server on
+   *
+   * @return the port the chat server registered with the central server
+   */
+  public int getOperationsPort() {
+    return this.operationsPort;
+  }
+
+  /**
+   * Gets the rate bytes were written to clients of the chat server since the previous report
+   *
+   * @return bytes per second written to clients
+   */
+  public long getBytesPerSecond() {
+    return this.bytesPerSecond;
+  }
+
+  /**
+   * Gets the number of messages queued for clients of the chat server and not yet written
+   *
+   * @return the number of messages queued for clients
+   */
+  public int getQueueDepth() {
+    return this.queueDepth;
+  }
+
+  /**
+   * Gets the number of users the chat server is sized for, relative to other chat servers
+   *
+   * @return the chat server's user capacity
+   */
+  public int getUserCapacity() {
+    return this.userCapacity;
+  }
+
+  /**
+   * Gets the number of users in the chatrooms at the chat server whose counts changed since its
+   * last accepted report, or in every chatroom at the chat server
+   *
+   * @return number of users by chatroom name
+   */
+  public Map<String, Integer> getRoomUsers() {
+    return this.roomUsers;
+  }
+}
@@ -1,15 +1,18 @@
 package data;
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.List;
 
 /**
- * An object containing a list of the names of available chatrooms in the system
+ * An object containing a list of the names of available chatrooms in the system, along with the
+ * chat servers that did not answer in time and whose chatrooms are missing from the list
  */
 
 public class ChatroomListResponse implements Serializable {
 
   private final List<String> chatroomNames;
+  private final List<String> unavailableNodes;
 
   /**
    * Creates an instance of the ChatroomListResponse object
@@ -17,7 +20,19 @@ public class ChatroomListResponse implements Serializable {
    * @param chatroomNames list of names of chatrooms in the system
    */
   public ChatroomListResponse(List<String> chatroomNames) {
+    this(chatroomNames, Collections.emptyList());
+  }
+
+  /**
+   * Creates an instance of the ChatroomListResponse object for a list that may be missing the
+   * chatrooms of some chat servers
+   *
+   * @param chatroomNames list of names of chatrooms in the system
+   * @param unavailableNodes "hostname:port" of each chat server that did not answer in time
+   */
+  public ChatroomListResponse(List<String> chatroomNames, List<String> unavailableNodes) {
     this.chatroomNames = chatroomNames;
+    this.unavailableNodes = unavailableNodes;
   }
 
   /**
@@ -28,4 +43,13 @@ public class ChatroomListResponse implements Serializable {
   public List<String> getChatroomNames() { 
     return this.chatroomNames; 
   }
+
+  /**
+   * Gets the chat servers that did not answer in time, whose chatrooms are missing from the list
+   *
+   * @return "hostname:port" of each chat server that did not answer, empty if the list is complete
+   */
+  public List<String> getUnavailableNodes() {
+    return this.unavailableNodes;
+  }
 }
@@ -0,0 +1,70 @@
+package data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Contains one page of the chatrooms in the central server's catalog matching a search, along
+ * with the cursor used to request the page after it
+ */
+public class ChatroomPageResponse extends Response implements Serializable {
+
+  private List<ChatroomSummary> chatrooms;
+  private String nextCursor;
+  private int totalChatrooms;
+
+  /**
+   * Creates an instance of the ChatroomPageResponse object
+   *
+   * @param status status of the response
+   * @param message describing the result of the operation
+   * @param chatrooms the chatrooms in the page, in the requested order
+   * @param nextCursor the cursor for the page after this one, or null if this is the last page
+   * @param totalChatrooms the number of chatrooms in the catalog, matching the search or not
+   */
+  public ChatroomPageResponse(ResponseStatus status, String message,
+      List<ChatroomSummary> chatrooms, String nextCursor, int totalChatrooms) {
+    super(status, message);
+    this.chatrooms = chatrooms;
+    this.nextCursor = nextCursor;
+    this.totalChatrooms = totalChatrooms;
+  }
+
+  /**
+   * Creates an instance of the ChatroomPageResponse object when the page cannot be read
+   *
+   * @param status status of the response
+   * @param message describing the result of the operation
+   */
+  public ChatroomPageResponse(ResponseStatus status, String message) {
+    super(status, message);
+  }
+
+  /**
+   * Gets the chatrooms in the page
+   *
+   * @return the chatrooms in the page, in the requested order
+   */
+  public List<ChatroomSummary> getChatrooms() {
+    return this.chatrooms;
+  }
+
+  /**
+   * Gets the cursor for the page after this one. A page may hold fewer chatrooms than requested,
+   * even none, while there are still further pages.
+   *
+   * @return the cursor for the next page, or null if this is the last page
+   */
+  public String getNextCursor() {
+    return this.nextCursor;
+  }
+
+  /**
+   * Gets the number of chatrooms in the catalog when the page was read
+   *
+   * @return the number of chatrooms in the catalog, matching the search or not
+   */
+  public int getTotalChatrooms() {
+    return this.totalChatrooms;
+  }
+}
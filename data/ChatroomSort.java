@@ -0,0 +1,11 @@
+package data;
+
+/**
+ * Determines the order of a page of chatrooms read from the central server's catalog
+ */
+public enum ChatroomSort {
+  // alphabetical order of chatroom name
+  NAME,
+  // chatrooms with the most users first, then alphabetical order of chatroom name
+  USERS
+}
@@ -0,0 +1,41 @@
+package data;
+
+import java.io.Serializable;
+
+/**
+ * The name of a chatroom in the central server's catalog and the number of users in it
+ */
+public class ChatroomSummary implements Serializable {
+
+  private final String name;
+  private final int users;
+
+  /**
+   * Creates an instance of the ChatroomSummary object
+   *
+   * @param name name of the chatroom
+   * @param users number of users in the chatroom as last reported by its chat server
+   */
+  public ChatroomSummary(String name, int users) {
+    this.name = name;
+    this.users = users;
+  }
+
+  /**
+   * Gets the name of the chatroom
+   *
+   * @return name of the chatroom
+   */
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+   * Gets the number of users in the chatroom
+   *
+   * @return number of users in the chatroom as last reported by its chat server
+   */
+  public int getUsers() {
+    return this.users;
+  }
+}
@@ -0,0 +1,51 @@
+package data;
+
+/**
+ * Describes the kinds of binary frames exchanged between a chat server and its subscribed clients
+ */
+public enum FrameType {
+  // a message published to the chatroom
+  MESSAGE((byte) 1),
+  // the chatroom has been closed and no more messages will be delivered
+  CLOSE((byte) 2),
+  // a message sent by a client to be published to its chatroom
+  CHAT((byte) 3),
+  // the chat server's reply to a CHAT frame, carrying the client's sequence number and an OK or
+  // FAIL payload
+  ACK((byte) 4);
+
+  private final byte code;
+
+  /**
+   * Creates a FrameType with its code on the wire
+   *
+   * @param code the byte identifying the frame type on the wire
+   */
+  FrameType(byte code) {
+    this.code = code;
+  }
+
+  /**
+   * Gets the byte identifying the frame type on the wire
+   *
+   * @return the byte identifying the frame type
+   */
+  public byte getCode() {
+    return code;
+  }
+
+  /**
+   * Gets the frame type identified by a byte read from the wire
+   *
+   * @param code the byte identifying the frame type
+   * @return the matching frame type, or null if the code is not known
+   */
+  public static FrameType fromCode(byte code) {
+    for (FrameType type : values()) {
+      if (type.code == code) {
+        return type;
+      }
+    }
+    return null;
+  }
+}
@@ -2,6 +2,7 @@ package data;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
 
 
 /**
@@ -19,4 +20,14 @@ public interface ICentralChatroomOperations extends Remote {
    * @throws RemoteException if there is an error during remote communication
    */
   Response logChatMessage(String chatroom, String message) throws RemoteException;
+
+  /**
+   * Logs an ordered batch of chatroom messages to available data servers in the system as a
+   * single 2pc transaction; either every message in the batch is logged or none are
+   *
+   * @param entries the messages to be logged, in the order they should appear in each chat log
+   * @return a response indicating whether the operation succeeded or not
+   * @throws RemoteException if there is an error during remote communication
+   */
+  Response logChatMessages(List<ChatLogEntry> entries) throws RemoteException;
 }
@@ -4,6 +4,7 @@ import util.RMIAccess;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
 
 // data node -> centralized server
 
@@ -30,4 +31,15 @@ public interface ICentralCoordinator extends Remote {
    */
   Ack getDecision(Transaction t) throws RemoteException;
 
+  /**
+   * Gets the decisions made by a Coordinator on several transactions in a single call.
+   *
+   * @param transactions transactions to get the Coordinator's decisions on
+   * @return decision made by Coordinator on each transaction, in the order of the transactions,
+   *         NA for a transaction still being voted on and NO for one the coordinator no longer
+   *         tracks, since decisions to commit are kept until every participant has committed
+   * @throws RemoteException if there is an error with RPC communication
+   */
+  List<Ack> getDecisions(List<Transaction> transactions) throws RemoteException;
+
 }
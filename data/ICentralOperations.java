@@ -38,6 +38,17 @@ public interface ICentralOperations extends Remote {
   RegisterResponse registerChatNode(String hostname, 
       int port) throws RemoteException;
 
+  /**
+   * Records the current load of a registered chat server node, which the central server uses to
+   * choose where new chatrooms are placed
+   *
+   * @param report the chat server node's current load
+   * @return a response indicating whether the report was accepted; FAIL if the chat server node
+   *         is not registered
+   * @throws RemoteException if there is an error during remote communication
+   */
+  Response reportChatNodeLoad(ChatNodeLoadReport report) throws RemoteException;
+
   /**
    * Gets the master server time for Cristian's Algorithm
    *
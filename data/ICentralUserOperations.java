@@ -40,6 +40,22 @@ public interface ICentralUserOperations extends Remote {
    */
   ChatroomListResponse listChatrooms() throws RemoteException;
 
+  /**
+   * Gets one page of the chatrooms in the system matching a search, from the central server's
+   * catalog of chatrooms. Further pages are requested with the cursor returned with each page.
+   *
+   * @param query text the chatroom names must start with or contain; empty matches every
+   *              chatroom
+   * @param prefix true if chatroom names must start with the query, false if they must contain it
+   * @param sort the order of the chatrooms
+   * @param cursor the cursor returned with the previous page, or null for the first page
+   * @param limit the most chatrooms in the page
+   * @return the page of chatrooms, otherwise indicates the operation failed
+   * @throws RemoteException if there is an error during remote communication
+   */
+  ChatroomPageResponse searchChatrooms(String query, boolean prefix, ChatroomSort sort,
+      String cursor, int limit) throws RemoteException;
+
   /**
    * Initiates the creation of a chatroom on behalf of a client. Creates chatroom using
    * two phase commit
@@ -83,4 +99,18 @@ public interface ICentralUserOperations extends Remote {
    */
   ChatroomResponse reestablishChatroom(String chatroomName, String username) throws RemoteException;
 
+  /**
+   * Gets one page of the messages logged to a chatroom from an available data node. Messages
+   * are identified by sequence numbers counting from 1 in the order they were logged.
+   *
+   * @param chatroomName name of the chatroom whose messages should be read
+   * @param cursor sequence number the page starts from; 0 with before set reads the newest page
+   * @param before true to read the messages preceding the cursor, false to read those following it
+   * @param limit the most messages in the page
+   * @return the page of messages if the chatroom exists, otherwise indicates the operation failed
+   * @throws RemoteException if there is an error during remote communication
+   */
+  ChatHistoryResponse getChatHistory(String chatroomName, long cursor, boolean before, int limit)
+      throws RemoteException;
+
 }
@@ -49,4 +49,18 @@ public interface IDataOperations extends Remote {
    */
   boolean chatroomExists(String chatroom) throws RemoteException;
 
+  /**
+   * Gets one page of the messages logged to a chatroom, identified by sequence numbers counting
+   * from 1 in the order the messages were logged
+   *
+   * @param chatroom the chatroom whose messages should be read
+   * @param cursor sequence number the page starts from; 0 with before set reads the newest page
+   * @param before true to read the messages preceding the cursor, false to read those following it
+   * @param limit the most messages in the page
+   * @return the page of messages if the chatroom exists, otherwise indicates the operation failed
+   * @throws RemoteException if there is an error during remote communication
+   */
+  ChatHistoryResponse getChatHistory(String chatroom, long cursor, boolean before, int limit)
+      throws RemoteException;
+
 }
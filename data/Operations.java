@@ -5,6 +5,6 @@ package data;
  */
 public enum Operations {
 
-    CREATEUSER, LOGMESSAGE, CREATECHATROOM, DELETECHATROOM
+    CREATEUSER, LOGMESSAGE, LOGMESSAGES, CREATECHATROOM, DELETECHATROOM
 
 }
@@ -3,6 +3,10 @@ package data;
 import util.ThreadSafeStringFormatter;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Describes a transaction between a Coordinator and Participant.
@@ -16,6 +20,7 @@ public class Transaction implements Serializable {
   Operations op;
   String key;
   String value;
+  List<ChatLogEntry> entries;
   int index;
 
   /**
@@ -30,6 +35,26 @@ public class Transaction implements Serializable {
     this.op = op;
     this.key = key;
     this.value = value;
+    this.entries = null;
+    // ensure index assignment and manipulation is atomic
+    synchronized (messageIndexLock) {
+      this.index = Transaction.messageIndex;
+      Transaction.messageIndex += 1;
+    }
+  }
+
+  /**
+   * Creates an instance of a transaction that operates on an ordered batch of chat log entries,
+   * which may span several chatrooms
+   *
+   * @param op type of operation to perform on the KeyValue store
+   * @param entries the chat log entries the operation applies to, in order
+   */
+  public Transaction(Operations op, List<ChatLogEntry> entries) {
+    this.op = op;
+    this.key = null;
+    this.value = null;
+    this.entries = entries;
     // ensure index assignment and manipulation is atomic
     synchronized (messageIndexLock) {
       this.index = Transaction.messageIndex;
@@ -64,6 +89,32 @@ public class Transaction implements Serializable {
     return this.value; 
   }
 
+  /**
+   * Get the chat log entries associated with the operation in this Transaction.
+   *
+   * @return the chat log entries in this Transaction, or null if it operates on a single key
+   */
+  public List<ChatLogEntry> getEntries() {
+    return this.entries;
+  }
+
+  /**
+   * Get every key touched by this Transaction. For a batch of chat log entries, these are the
+   * names of the chatrooms in the batch.
+   *
+   * @return the keys touched by this Transaction
+   */
+  public Set<String> getKeys() {
+    if (this.entries == null) {
+      return Collections.singleton(this.key);
+    }
+    Set<String> keys = new LinkedHashSet<>();
+    for (ChatLogEntry entry : this.entries) {
+      keys.add(entry.getChatroom());
+    }
+    return keys;
+  }
+
   /**
    * Gets the unique int ID for the transaction on the Coordinating server.
    *
@@ -77,6 +128,15 @@ public class Transaction implements Serializable {
   public String toString() {
     // print the transaction as a string with the operation, the key, and the unique message index
     // for this transaction
+    if (this.entries != null) {
+      return ThreadSafeStringFormatter.format(
+          "%s %s %d (%d entries)",
+          this.op.toString(),
+          getKeys().toString(),
+          this.index,
+          this.entries.size()
+          );
+    }
     return ThreadSafeStringFormatter.format(
         "%s %s %d",
         this.op.toString(),
@@ -4,14 +4,16 @@ import data.ICentralOperations;
 import data.IDataOperations;
 import data.IDataParticipant;
 import data.RegisterResponse;
+import util.ConfigUtil;
 import util.CristiansLogger;
+import util.ExecutionMode;
 import util.RMIAccess;
+import util.TaskExecutor;
 import util.ThreadSafeStringFormatter;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
@@ -24,8 +26,6 @@ import java.util.*;
  */
 public class App {
 
-  private final Map<String, String> userMap;
-  private final Map<String, String> channelMap;
   private final Object userMapLock;
   private final Object channelMapLock;
 
@@ -34,8 +34,6 @@ public class App {
    */
   public App() {
 
-    this.userMap = Collections.synchronizedMap(new HashMap<>());
-    this.channelMap = Collections.synchronizedMap(new HashMap<>());
     this.userMapLock = new Object();
     this.channelMapLock = new Object();
   }
@@ -50,6 +48,21 @@ public class App {
 
   public void go(ServerInfo serverInfo) throws RemoteException, NotBoundException {
 
+    // choose the threads that run 2 phase commit tasks before any transaction starts
+    ExecutionMode mode = TaskExecutor.setup(serverInfo.getExecutionMode(),
+        serverInfo.getExecutorThreads());
+    if (mode != serverInfo.getExecutionMode()) {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Execution mode \"%s\" is not supported by this JVM; using \"%s\"",
+          serverInfo.getExecutionMode(),
+          mode
+          ));
+    }
+    CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+        "Running tasks in execution mode \"%s\"",
+        mode
+        ));
+
     // register Data node with the central server
     RMIAccess<ICentralOperations> centralServer = 
         new RMIAccess<>(serverInfo.getCentralServerHostname(), 
@@ -62,56 +75,52 @@ public class App {
     t.start();
 
 
-    // initialize users.txt file for tracking user data
-    // if non exists, create the file
-    // if the file exists, read existing users into the user map
-    CristiansLogger.writeMessageToLog("Creating users.txt file if none exists");
-    synchronized(userMapLock) {
-      File users = new File("files_" + serverInfo.getId() + "/users.txt");
-      // Read from users file
-      try {
-        // Create file if it doesn't exist yet.
-        users.createNewFile();
-        BufferedReader br = new BufferedReader(new FileReader(users));
-        String user;
-        CristiansLogger.writeMessageToLog("Reading existing users into memory...");
-        while ((user = br.readLine()) != null) {
-          String[] userpass = user.split(":");
-          userMap.put(userpass[0], userpass[1]);
-        }
-        br.close();
-      } catch (IOException e) {
-        CristiansLogger.writeErrorToLog("Unable to find or create "
-            + "users.txt for server; shutting down server");
-        return;
-      }
-    }
-
-    // initialize the chatrooms.txt file for tracking chatroom and username data
-    // if non exists, create the file
-    // if the file exists, read existing chatrooms into memory
-    CristiansLogger.writeMessageToLog("Creating chatrooms.txt file if none exists");
+    // recover the stores of users and chatroom owners, importing the users.txt and chatrooms.txt
+    // files written by earlier versions of the data server
+    CristiansLogger.writeMessageToLog("Recovering user and chatroom stores...");
+    boolean sync = serverInfo.getDurability() == DurabilityMode.GROUP
+        || serverInfo.getDurability() == DurabilityMode.TRANSACTION;
+    KeyValueStore userStore = new KeyValueStore("users",
+        new File("files_" + serverInfo.getId() + "/users"), sync,
+        serverInfo.getCompactRecords(), serverInfo.getSnapshotIntervalMs());
+    KeyValueStore chatroomStore = new KeyValueStore("chatrooms",
+        new File("files_" + serverInfo.getId() + "/chatrooms"), sync,
+        serverInfo.getCompactRecords(), serverInfo.getSnapshotIntervalMs());
     List<String> roomNames = new LinkedList<>();
-    synchronized(channelMapLock) {
-      File chatrooms = new File("files_" + serverInfo.getId() + "/chatrooms.txt");
-      try {
-        // Create file if it doesn't exist yet.
-        chatrooms.createNewFile();
-        BufferedReader br = new BufferedReader(new FileReader(chatrooms));
-        String channel;
-        CristiansLogger.writeMessageToLog("Reading existing chatrooms into memory...");
-        // Read from chatrooms file
-        while ((channel = br.readLine()) != null) {
-          String[] channeluser = channel.split(":");
-          channelMap.put(channeluser[0], channeluser[1]);
-        }
-        br.close();
-      } catch (IOException e) {
-        CristiansLogger.writeErrorToLog("Unable to find or "
-            + "create chatrooms.txt for server; shutting down server");
-        return;
-      }
-      roomNames.addAll(channelMap.keySet());
+    try {
+      recoverStore(userStore, new File("files_" + serverInfo.getId() + "/users.txt"));
+      recoverStore(chatroomStore, new File("files_" + serverInfo.getId() + "/chatrooms.txt"));
+    } catch (IOException e) {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Unable to recover user and chatroom stores: \"%s\"; shutting down server",
+          e.getMessage()
+          ));
+      return;
+    }
+    roomNames.addAll(chatroomStore.keySet());
+
+    // open the chat logs before registering, so no message is logged to a chat log that has not
+    // been checked for records torn by a crash
+    CristiansLogger.writeMessageToLog("Recovering chat logs...");
+    ChatLogStore chatLogStore = new ChatLogStore(
+        new File("files_" + serverInfo.getId() + "/chatlogs"), serverInfo.getSegmentBytes(),
+        serverInfo.getSegmentRollMs(), serverInfo.getDurability(),
+        serverInfo.getFlushIntervalMs(), serverInfo.getFlushRecords());
+    try {
+      long start = System.currentTimeMillis();
+      int recovered = chatLogStore.recover();
+      CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+          "Recovered %d chat logs in %d ms",
+          recovered,
+          System.currentTimeMillis() - start
+          ));
+      chatLogStore.start();
+    } catch (IOException e) {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Unable to recover chat logs: \"%s\"; shutting down server",
+          e.getMessage()
+          ));
+      return;
     }
 
     CristiansLogger.writeMessageToLog("Registering data node with central server...");
@@ -124,24 +133,12 @@ public class App {
         );
 
 
-    // create directory for chatroom logs
-    // if the directory does not exist, create the directory
-    // contains logs for individual chatrooms
-    File chatLogdir = new File("files_" + serverInfo.getId() + "/chatlogs");
-    if (!chatLogdir.exists()) {
-      CristiansLogger.writeMessageToLog("Creating chatlogs directory");
-      if (!chatLogdir.mkdir()) {
-        CristiansLogger.writeErrorToLog("Unable to create chatLogs subdirectory");
-        return;
-      }
-    }
-
     CristiansLogger.writeMessageToLog("Setting up data operations...");
     // start the Data Operations registry
     Registry operationsRegistry = LocateRegistry.createRegistry(serverInfo.getOperationsPort());
     IDataOperations operationsEngine = 
-        new DataOperations(this.userMap, this.userMapLock, 
-            this.channelMap, this.channelMapLock, serverInfo);
+        new DataOperations(userStore, this.userMapLock, 
+            chatroomStore, this.channelMapLock, serverInfo, chatLogStore);
     operationsRegistry.rebind("IDataOperations", operationsEngine);
 
     CristiansLogger.writeMessageToLog("Setting up participant operations...");
@@ -149,12 +146,49 @@ public class App {
     Registry participantRegistry = LocateRegistry.createRegistry(serverInfo.getParticipantPort());
     IDataParticipant participantEngine = 
         new ParticipantOperations(serverInfo.getCentralServerHostname(), 
-            registerResponse.getPort(), serverInfo.getId(), (DataOperations) operationsEngine);
+            registerResponse.getPort(), serverInfo.getId(), (DataOperations) operationsEngine,
+            serverInfo.getDecisionTimeoutMs(), serverInfo.getDecisionTickMs(),
+            serverInfo.getDecisionAttempts());
     participantRegistry.rebind("IDataParticipant", participantEngine);
 
+    // measured from the start of the JVM, so loading classes and recovering stores are included
+    long startupMs = ManagementFactory.getRuntimeMXBean().getUptime();
+    CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+        "Data server ready %d ms after process start",
+        startupMs
+        ));
     System.out.println(ThreadSafeStringFormatter.format(
-        "Data server %s is ready",
-        serverInfo.getId()
+        "Data server %s is ready in %d ms",
+        serverInfo.getId(),
+        startupMs
+        ));
+  }
+
+  /**
+   * Recovers a store of users or chatroom owners, then imports the text file that held its
+   * entries in earlier versions of the data server if it is still present
+   *
+   * @param store the store to recover
+   * @param textFile the text file written by earlier versions
+   * @throws IOException if the store or text file cannot be read
+   */
+  private void recoverStore(KeyValueStore store, File textFile) throws IOException {
+    long start = System.currentTimeMillis();
+    int recovered = store.recover();
+    if (textFile.isFile()) {
+      long imported = store.importTextFile(textFile);
+      CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+          "Imported %d entries from \"%s\"",
+          imported,
+          textFile.getPath()
+          ));
+      recovered = store.size();
+    }
+    CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+        "Recovered %d entries of store \"%s\" in %d ms",
+        recovered,
+        store.getName(),
+        System.currentTimeMillis() - start
         ));
   }
 
@@ -242,9 +276,42 @@ public class App {
           ));
     }
 
+    // optional tuning values are read from system properties
+    ExecutionMode executionMode = ConfigUtil.getEnum("dataserver.executionMode",
+        ExecutionMode.class, ExecutionMode.PLATFORM);
+    int executorThreads = ConfigUtil.getInt("dataserver.executorThreads",
+        TaskExecutor.DEFAULT_PLATFORM_THREADS, 1);
+    long segmentBytes = ConfigUtil.getLong("dataserver.segmentBytes",
+        ChatLogStore.DEFAULT_SEGMENT_BYTES, 1024);
+    if (segmentBytes > Integer.MAX_VALUE / 2) {
+      throw new IllegalArgumentException(ThreadSafeStringFormatter.format(
+          "Received illegal dataserver.segmentBytes value, must be at most %d, received \"%d\"",
+          Integer.MAX_VALUE / 2,
+          segmentBytes
+          ));
+    }
+    long segmentRollMs = ConfigUtil.getLong("dataserver.segmentRollMs", 0, 0);
+    DurabilityMode durability = ConfigUtil.getEnum("dataserver.durability",
+        DurabilityMode.class, DurabilityMode.GROUP);
+    long flushIntervalMs = ConfigUtil.getLong("dataserver.flushIntervalMs",
+        ChatLogStore.DEFAULT_FLUSH_INTERVAL_MS, 0);
+    int flushRecords = ConfigUtil.getInt("dataserver.flushRecords",
+        ChatLogStore.DEFAULT_FLUSH_RECORDS, 1);
+    long compactRecords = ConfigUtil.getLong("dataserver.compactRecords",
+        KeyValueStore.DEFAULT_COMPACT_RECORDS, 1);
+    long snapshotIntervalMs = ConfigUtil.getLong("dataserver.snapshotIntervalMs",
+        KeyValueStore.DEFAULT_SNAPSHOT_INTERVAL_MS, 0);
+    long decisionTimeoutMs = ConfigUtil.getLong("dataserver.decisionTimeoutMs",
+        DecisionTimer.DEFAULT_TIMEOUT_MS, 1);
+    long decisionTickMs = ConfigUtil.getLong("dataserver.decisionTickMs",
+        DecisionTimer.DEFAULT_TICK_MS, 1);
+    int decisionAttempts = ConfigUtil.getInt("dataserver.decisionAttempts",
+        DecisionTimer.DEFAULT_ATTEMPTS, 1);
 
     return new ServerInfo(args[0], args[1], centralServerPort, 
-        args[3], operationsPort, participantPort);
+        args[3], operationsPort, participantPort, executionMode, executorThreads, segmentBytes,
+        segmentRollMs, durability, flushIntervalMs, flushRecords, compactRecords,
+        snapshotIntervalMs, decisionTimeoutMs, decisionTickMs, decisionAttempts);
 
   }
 }
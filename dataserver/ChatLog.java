@@ -0,0 +1,205 @@
+package dataserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import util.CristiansLogger;
+import util.ThreadSafeStringFormatter;
+
+/**
+ * The chat log of a single chatroom: a directory of segments holding its messages in the order
+ * they were logged, numbered from 1. Messages are appended to the newest segment, which is rolled
+ * over to a new segment once it reaches a size or an age.
+ */
+public class ChatLog {
+
+  private final String chatroom;
+  private final File dir;
+  private final long segmentBytes;
+  private final long segmentRollMs;
+  // oldest first; the last segment is the one appended to
+  private final List<ChatLogSegment> segments;
+  private boolean deleted;
+
+  /**
+   * Creates an instance of the ChatLog. The log holds no segments until it is recovered or
+   * created.
+   *
+   * @param chatroom name of the chatroom
+   * @param dir directory holding the chatroom's segments
+   * @param segmentBytes the size in bytes after which the newest segment is rolled over
+   * @param segmentRollMs the age in milliseconds after which the newest segment is rolled over,
+   *                      or 0 to roll over by size only
+   */
+  public ChatLog(String chatroom, File dir, long segmentBytes, long segmentRollMs) {
+    this.chatroom = chatroom;
+    this.dir = dir;
+    this.segmentBytes = segmentBytes;
+    this.segmentRollMs = segmentRollMs;
+    this.segments = new ArrayList<>();
+    this.deleted = false;
+  }
+
+  /**
+   * Opens the chatroom's segments, creating the directory and first segment if there are none,
+   * and checks every record. The newest segment is cut off after its last intact record.
+   *
+   * @throws IOException if a segment cannot be opened or read
+   */
+  public synchronized void open() throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException(ThreadSafeStringFormatter.format(
+          "Unable to create chat log directory \"%s\"",
+          dir.getPath()
+          ));
+    }
+
+    List<Long> baseSequences = new ArrayList<>();
+    File[] files = dir.listFiles((d, name) -> name.endsWith(ChatLogSegment.SUFFIX));
+    if (files != null) {
+      for (File f : files) {
+        String name = f.getName();
+        try {
+          baseSequences.add(Long.parseLong(
+              name.substring(0, name.length() - ChatLogSegment.SUFFIX.length())));
+        } catch (NumberFormatException e) {
+          CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+              "Ignoring unrecognized file \"%s\" in chat log of chatroom \"%s\"",
+              f.getPath(),
+              chatroom
+              ));
+        }
+      }
+    }
+    baseSequences.sort(null);
+
+    for (int i = 0; i < baseSequences.size(); i++) {
+      ChatLogSegment segment = new ChatLogSegment(dir, baseSequences.get(i));
+      boolean newest = i == baseSequences.size() - 1;
+      long discarded = segment.recover(newest);
+      if (discarded > 0) {
+        CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+            "%s %d bytes after the last intact record of \"%s\"",
+            newest ? "Truncated" : "Unable to read",
+            discarded,
+            segment.getFile().getPath()
+            ));
+      }
+      segments.add(segment);
+    }
+
+    if (segments.isEmpty()) {
+      segments.add(new ChatLogSegment(dir, 1));
+    }
+  }
+
+  /**
+   * Appends messages to the chat log in a single write, rolling over to a new segment first if
+   * the newest segment has reached its size or age
+   *
+   * @param messages the messages to append, in the order they were logged
+   * @return the segment the messages were written to
+   * @throws IOException if the chat log has been deleted or the messages cannot be written
+   */
+  public synchronized ChatLogSegment append(List<String> messages) throws IOException {
+    if (deleted) {
+      throw new IOException(ThreadSafeStringFormatter.format(
+          "Chat log of chatroom \"%s\" has been deleted",
+          chatroom
+          ));
+    }
+
+    ChatLogSegment newest = segments.get(segments.size() - 1);
+    if (newest.getSize() > 0 && (newest.getSize() >= segmentBytes
+        || (segmentRollMs > 0
+            && System.currentTimeMillis() - newest.getCreatedAt() >= segmentRollMs))) {
+      newest = new ChatLogSegment(dir, newest.getNextSequence());
+      segments.add(newest);
+      CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+          "Rolled chat log of chatroom \"%s\" over to segment \"%s\"",
+          chatroom,
+          newest.getFile().getName()
+          ));
+    }
+
+    ByteBuffer[] records = new ByteBuffer[messages.size()];
+    for (int i = 0; i < records.length; i++) {
+      records[i] = ChatLogSegment.encode(messages.get(i));
+    }
+    newest.append(records);
+    return newest;
+  }
+
+  /**
+   * Forces every segment of the chat log to disk
+   *
+   * @throws IOException if a segment cannot be forced to disk
+   */
+  public synchronized void force() throws IOException {
+    for (ChatLogSegment segment : segments) {
+      segment.force();
+    }
+  }
+
+  /**
+   * Reads consecutive messages from the chat log
+   *
+   * @param firstSequence sequence number of the first message to read, starting at 1
+   * @param count the most messages to read
+   * @return the messages read, oldest first, stopping early at the end of the chat log
+   * @throws IOException if a segment cannot be read
+   */
+  public synchronized List<String> read(long firstSequence, int count) throws IOException {
+    List<String> messages = new ArrayList<>();
+    long sequence = Math.max(1, firstSequence);
+    for (ChatLogSegment segment : segments) {
+      if (messages.size() >= count) {
+        break;
+      }
+      if (segment.getNextSequence() <= sequence) {
+        continue;
+      }
+      // a damaged segment may end before the next one starts; continue from the next segment
+      sequence = Math.max(sequence, segment.getBaseSequence());
+      int before = messages.size();
+      segment.read(sequence, count - before, messages);
+      sequence += messages.size() - before;
+    }
+    return messages;
+  }
+
+  /**
+   * Gets the number of messages in the chat log
+   *
+   * @return the sequence number of the last message in the chat log, or 0 if it is empty
+   */
+  public synchronized long getMessageCount() {
+    return segments.isEmpty() ? 0 : segments.get(segments.size() - 1).getNextSequence() - 1;
+  }
+
+  /**
+   * Closes the chat log's segments
+   */
+  public synchronized void close() {
+    for (ChatLogSegment segment : segments) {
+      segment.close();
+    }
+  }
+
+  /**
+   * Deletes the chat log's segments and directory. Later appends fail.
+   *
+   * @return true if every file was deleted
+   */
+  public synchronized boolean delete() {
+    deleted = true;
+    boolean success = true;
+    for (ChatLogSegment segment : segments) {
+      success &= segment.delete();
+    }
+    segments.clear();
+    return dir.delete() && success;
+  }
+}
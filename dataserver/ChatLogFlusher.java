@@ -0,0 +1,238 @@
+package dataserver;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import util.CristiansLogger;
+import util.ThreadSafeStringFormatter;
+
+/**
+ * Forces appended chat log segments to disk according to a DurabilityMode. In the PERIODIC and
+ * GROUP modes a single flusher thread forces every segment written since its last flush, so one
+ * fsync covers the appends of many transactions. Each append is given a ticket; GROUP appends
+ * wait until a flush has covered their ticket and are woken together when it completes.
+ */
+public class ChatLogFlusher {
+
+  private final DurabilityMode durability;
+  private final long flushIntervalMs;
+  private final int flushRecords;
+
+  // flush state, guarded by flushLock
+  private final Object flushLock;
+  private final Set<ChatLogSegment> dirty;
+  // ticket of the last append written to a segment
+  private long writtenTicket;
+  // ticket of the last append forced to disk
+  private long durableTicket;
+  // records written since the last flush began and the time the first of them was written
+  private long pendingRecords;
+  private long pendingSince;
+  private IOException flushError;
+  private boolean running;
+  // true from start until the flusher thread's last flush has completed
+  private boolean alive;
+  private Thread flusher;
+
+  /**
+   * Creates an instance of the ChatLogFlusher
+   *
+   * @param durability when appended messages are forced to disk
+   * @param flushIntervalMs the longest time in milliseconds between flushes in the PERIODIC and
+   *                        GROUP modes
+   * @param flushRecords the number of waiting records that starts a flush in the GROUP mode
+   */
+  public ChatLogFlusher(DurabilityMode durability, long flushIntervalMs, int flushRecords) {
+    this.durability = durability;
+    this.flushIntervalMs = flushIntervalMs;
+    this.flushRecords = flushRecords;
+    this.flushLock = new Object();
+    this.dirty = new LinkedHashSet<>();
+    this.writtenTicket = 0;
+    this.durableTicket = 0;
+    this.pendingRecords = 0;
+    this.pendingSince = 0;
+    this.flushError = null;
+    this.running = false;
+    this.alive = false;
+  }
+
+  /**
+   * Starts the flusher thread if the durability mode uses one
+   */
+  public void start() {
+    if (durability != DurabilityMode.PERIODIC && durability != DurabilityMode.GROUP) {
+      return;
+    }
+    synchronized (flushLock) {
+      if (running) {
+        return;
+      }
+      running = true;
+      alive = true;
+      flusher = new Thread(this::flushLoop, "ChatLogFlusher");
+      flusher.start();
+    }
+  }
+
+  /**
+   * Makes records just written to a segment durable as the durability mode requires. In the
+   * TRANSACTION mode the segment is forced before returning; in the GROUP mode this waits for the
+   * flusher thread to force it.
+   *
+   * @param segment the segment the records were written to
+   * @param records the number of records written
+   * @throws IOException if the records cannot be forced to disk, or an earlier flush failed
+   */
+  public void written(ChatLogSegment segment, int records) throws IOException {
+    switch (durability) {
+      case NONE:
+        return;
+      case TRANSACTION:
+        segment.force();
+        return;
+      default:
+        break;
+    }
+
+    synchronized (flushLock) {
+      if (flushError != null) {
+        throw flushError;
+      }
+      boolean idle = dirty.isEmpty();
+      dirty.add(segment);
+      long ticket = ++writtenTicket;
+      if (pendingRecords == 0) {
+        pendingSince = System.currentTimeMillis();
+      }
+      pendingRecords += records;
+      if (idle || (durability == DurabilityMode.GROUP && pendingRecords >= flushRecords)) {
+        flushLock.notifyAll();
+      }
+      if (durability == DurabilityMode.PERIODIC) {
+        return;
+      }
+
+      while (durableTicket < ticket && flushError == null) {
+        if (!alive) {
+          throw new IOException("Chat log flusher is not running");
+        }
+        try {
+          flushLock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while waiting for chat log flush");
+        }
+      }
+      if (durableTicket < ticket) {
+        throw flushError;
+      }
+    }
+  }
+
+  /**
+   * Waits for each flush to become due, then forces the segments written since the last flush
+   * and wakes the appends it covered. Runs until the flusher is stopped, flushing once more on
+   * the way out.
+   */
+  private void flushLoop() {
+    while (true) {
+      List<ChatLogSegment> segments;
+      long target;
+      boolean stopping;
+      synchronized (flushLock) {
+        try {
+          waitForFlush();
+        } catch (InterruptedException e) {
+          running = false;
+        }
+        stopping = !running;
+        segments = new ArrayList<>(dirty);
+        dirty.clear();
+        target = writtenTicket;
+        pendingRecords = 0;
+      }
+
+      IOException error = null;
+      for (ChatLogSegment segment : segments) {
+        try {
+          segment.force();
+        } catch (ClosedChannelException e) {
+          // the chatroom was deleted after the segment was written
+        } catch (IOException e) {
+          error = e;
+        }
+      }
+
+      synchronized (flushLock) {
+        if (error != null && flushError == null) {
+          // the kernel may drop pages it failed to write, so a later flush cannot be trusted
+          flushError = error;
+          CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+              "Unable to force chat logs to disk, failing later appends: \"%s\"",
+              error.getMessage()
+              ));
+        }
+        durableTicket = Math.max(durableTicket, target);
+        alive = !stopping;
+        flushLock.notifyAll();
+      }
+      if (stopping) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Waits until a flush is due: in the PERIODIC mode once the flush interval has passed with
+   * segments written, in the GROUP mode once enough records are waiting or the first of them has
+   * waited for the flush interval. Returns early if the flusher is stopped. Must be called
+   * holding flushLock.
+   *
+   * @throws InterruptedException if the flusher thread is interrupted
+   */
+  private void waitForFlush() throws InterruptedException {
+    while (running && dirty.isEmpty()) {
+      flushLock.wait();
+    }
+    long deadline = pendingSince + flushIntervalMs;
+    long remaining = deadline - System.currentTimeMillis();
+    while (running && remaining > 0
+        && (durability == DurabilityMode.PERIODIC || pendingRecords < flushRecords)) {
+      flushLock.wait(remaining);
+      remaining = deadline - System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * Stops the flusher thread after a last flush of the segments written so far
+   */
+  public void stop() {
+    Thread t;
+    synchronized (flushLock) {
+      running = false;
+      flushLock.notifyAll();
+      t = flusher;
+      flusher = null;
+    }
+    if (t != null) {
+      try {
+        t.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Gets when appended messages are forced to disk
+   *
+   * @return the durability mode
+   */
+  public DurabilityMode getDurability() {
+    return durability;
+  }
+}
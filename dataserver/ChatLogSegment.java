@@ -0,0 +1,289 @@
+package dataserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * One file of a chatroom's chat log, holding consecutive messages starting from the sequence
+ * number in its name. Each message is stored as a record of:
+ * <pre>
+ * int   length of the message
+ * int   CRC32 of the message
+ * bytes UTF-8 message
+ * </pre>
+ * The file's channel is kept open for the life of the segment. A sparse index records the offset
+ * of every INDEX_INTERVAL-th record so a read skips at most INDEX_INTERVAL - 1 records. Not thread
+ * safe; the owning ChatLog guards it.
+ */
+public class ChatLogSegment {
+
+  // number of records between indexed offsets
+  static final int INDEX_INTERVAL = 256;
+  // length and CRC preceding each message
+  static final int HEADER_BYTES = 8;
+  // the longest message accepted when scanning a segment
+  private static final int MAX_RECORD_BYTES = 1 << 24;
+  // suffix of segment file names
+  static final String SUFFIX = ".log";
+
+  private final long baseSequence;
+  private final File file;
+  private final FileChannel channel;
+  private final long createdAt;
+  // offsets[k] is the offset of the record with sequence baseSequence + k * INDEX_INTERVAL
+  private long[] offsets;
+  private int entries;
+  private long recordCount;
+  private long size;
+
+  /**
+   * Opens a segment file, creating it if it does not exist
+   *
+   * @param dir directory holding the chatroom's segments
+   * @param baseSequence sequence number of the first message in the segment
+   * @throws IOException if the segment file cannot be opened
+   */
+  public ChatLogSegment(File dir, long baseSequence) throws IOException {
+    this.baseSequence = baseSequence;
+    this.file = new File(dir, fileName(baseSequence));
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.createdAt = System.currentTimeMillis();
+    this.offsets = new long[16];
+    this.entries = 0;
+    this.recordCount = 0;
+    this.size = 0;
+  }
+
+  /**
+   * Gets the name of the file holding the segment starting at a sequence number
+   *
+   * @param baseSequence sequence number of the first message in the segment
+   * @return the segment file name
+   */
+  static String fileName(long baseSequence) {
+    return String.format("%020d%s", baseSequence, SUFFIX);
+  }
+
+  /**
+   * Scans the records in the segment file, checking the CRC of each and indexing them. Scanning
+   * stops at the first record that is incomplete or fails its check.
+   *
+   * @param truncate true to cut the file off after the last intact record, as is done for the
+   *                 newest segment of a chat log where a write may have been torn by a crash
+   * @return the number of bytes after the last intact record
+   * @throws IOException if the segment file cannot be read
+   */
+  public long recover(boolean truncate) throws IOException {
+    long fileSize = channel.size();
+    long position = 0;
+    if (fileSize > 0) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+      CRC32 crc = new CRC32();
+      while (fileSize - position >= HEADER_BYTES) {
+        int length = buffer.getInt((int) position);
+        if (length < 0 || length > MAX_RECORD_BYTES
+            || position + HEADER_BYTES + length > fileSize) {
+          break;
+        }
+        int expected = buffer.getInt((int) position + 4);
+        ByteBuffer message = buffer.slice((int) position + HEADER_BYTES, length);
+        crc.reset();
+        crc.update(message);
+        if ((int) crc.getValue() != expected) {
+          break;
+        }
+        indexRecord(position);
+        position += HEADER_BYTES + length;
+      }
+    }
+    size = position;
+
+    long discarded = fileSize - position;
+    if (truncate && discarded > 0) {
+      channel.truncate(position);
+    }
+    return discarded;
+  }
+
+  /**
+   * Records the offset of the next record if it falls on an index interval
+   *
+   * @param position offset of the record in the segment file
+   */
+  private void indexRecord(long position) {
+    if (recordCount % INDEX_INTERVAL == 0) {
+      if (entries == offsets.length) {
+        offsets = Arrays.copyOf(offsets, entries * 2);
+      }
+      offsets[entries++] = position;
+    }
+    recordCount++;
+  }
+
+  /**
+   * Encodes a message as a record
+   *
+   * @param message the message to encode
+   * @return the record, ready to be written
+   */
+  static ByteBuffer encode(String message) {
+    byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + bytes.length);
+    record.putInt(bytes.length);
+    record.putInt((int) crc.getValue());
+    record.put(bytes);
+    record.flip();
+    return record;
+  }
+
+  /**
+   * Appends records to the end of the segment in a single write
+   *
+   * @param records the encoded records, in the order their messages were logged
+   * @throws IOException if the records cannot be written
+   */
+  public void append(ByteBuffer[] records) throws IOException {
+    long position = size;
+    long length = 0;
+    for (ByteBuffer record : records) {
+      length += record.remaining();
+    }
+    channel.position(position);
+    long written = 0;
+    while (written < length) {
+      written += channel.write(records);
+    }
+    for (ByteBuffer record : records) {
+      indexRecord(position);
+      position += record.limit();
+    }
+    size = position;
+  }
+
+  /**
+   * Forces the records written to the segment to disk
+   *
+   * @throws IOException if the segment cannot be forced to disk or has been closed
+   */
+  public void force() throws IOException {
+    channel.force(false);
+  }
+
+  /**
+   * Reads consecutive messages from the segment
+   *
+   * @param firstSequence sequence number of the first message to read, within the segment
+   * @param count the most messages to read
+   * @param messages list the messages read are added to
+   * @throws IOException if the segment cannot be read or a record fails its check
+   */
+  public void read(long firstSequence, int count, List<String> messages) throws IOException {
+    long index = firstSequence - baseSequence;
+    if (index < 0 || index >= recordCount || count <= 0) {
+      return;
+    }
+    long position = offsets[(int) (index / INDEX_INTERVAL)];
+    long skip = index % INDEX_INTERVAL;
+    long remaining = recordCount - index;
+
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+        size - position);
+    int offset = 0;
+    CRC32 crc = new CRC32();
+    while (skip > 0) {
+      offset += HEADER_BYTES + buffer.getInt(offset);
+      skip--;
+    }
+    for (int i = 0; i < count && i < remaining; i++) {
+      int length = buffer.getInt(offset);
+      int expected = buffer.getInt(offset + 4);
+      byte[] bytes = new byte[length];
+      buffer.get(offset + HEADER_BYTES, bytes);
+      crc.reset();
+      crc.update(bytes);
+      if ((int) crc.getValue() != expected) {
+        throw new IOException(String.format("Record %d of \"%s\" failed its CRC check",
+            firstSequence + i, file.getPath()));
+      }
+      messages.add(new String(bytes, StandardCharsets.UTF_8));
+      offset += HEADER_BYTES + length;
+    }
+  }
+
+  /**
+   * Closes the segment file
+   */
+  public void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // the segment is no longer used
+    }
+  }
+
+  /**
+   * Closes and deletes the segment file
+   *
+   * @return true if the file was deleted
+   */
+  public boolean delete() {
+    close();
+    return file.delete();
+  }
+
+  /**
+   * Gets the sequence number of the first message in the segment
+   *
+   * @return sequence number of the first message
+   */
+  public long getBaseSequence() {
+    return baseSequence;
+  }
+
+  /**
+   * Gets the sequence number the next message appended to the segment would have
+   *
+   * @return sequence number following the last message in the segment
+   */
+  public long getNextSequence() {
+    return baseSequence + recordCount;
+  }
+
+  /**
+   * Gets the number of bytes in the segment file
+   *
+   * @return the size of the segment in bytes
+   */
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * Gets the time the segment was opened
+   *
+   * @return the time the segment was opened, in milliseconds since the epoch
+   */
+  public long getCreatedAt() {
+    return createdAt;
+  }
+
+  /**
+   * Gets the segment file
+   *
+   * @return the file holding the segment
+   */
+  public File getFile() {
+    return file;
+  }
+}
@@ -0,0 +1,261 @@
+package dataserver;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import util.CristiansLogger;
+import util.ThreadSafeStringFormatter;
+
+/**
+ * Stores the chat logs of every chatroom at the data server, one segmented ChatLog per chatroom
+ * in a directory of the chatroom's name. Chat logs written by earlier versions of the data server
+ * as a single <chatroom>.txt file are imported into segments during recovery.
+ */
+public class ChatLogStore {
+
+  // default size in bytes after which a chat log rolls over to a new segment
+  public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+  // default longest time in milliseconds between chat log flushes
+  public static final long DEFAULT_FLUSH_INTERVAL_MS = 1;
+  // default number of waiting records that starts a chat log flush in the GROUP durability mode
+  public static final int DEFAULT_FLUSH_RECORDS = 256;
+  // suffix of chat logs written as a single text file
+  private static final String LEGACY_SUFFIX = ".txt";
+  // number of messages imported from a text chat log in each append
+  private static final int IMPORT_BATCH = 1000;
+
+  private final File dir;
+  private final long segmentBytes;
+  private final long segmentRollMs;
+  private final Map<String, ChatLog> chatLogs;
+  private final ChatLogFlusher flusher;
+
+  /**
+   * Creates an instance of the ChatLogStore
+   *
+   * @param dir directory holding a subdirectory for each chatroom's chat log
+   * @param segmentBytes the size in bytes after which a chat log rolls over to a new segment
+   * @param segmentRollMs the age in milliseconds after which a chat log rolls over to a new
+   *                      segment, or 0 to roll over by size only
+   * @param durability when appended messages are forced to disk
+   * @param flushIntervalMs the longest time in milliseconds between flushes in the PERIODIC and
+   *                        GROUP durability modes
+   * @param flushRecords the number of waiting records that starts a flush in the GROUP
+   *                     durability mode
+   */
+  public ChatLogStore(File dir, long segmentBytes, long segmentRollMs, DurabilityMode durability,
+      long flushIntervalMs, int flushRecords) {
+    this.dir = dir;
+    this.segmentBytes = segmentBytes;
+    this.segmentRollMs = segmentRollMs;
+    this.chatLogs = new ConcurrentHashMap<>();
+    this.flusher = new ChatLogFlusher(durability, flushIntervalMs, flushRecords);
+  }
+
+  /**
+   * Starts forcing appended messages to disk in the background, if the durability mode does so.
+   * Called once the store has been recovered.
+   */
+  public void start() {
+    flusher.start();
+  }
+
+  /**
+   * Opens every chat log in the store's directory, checking every record and cutting off records
+   * torn by a crash, then imports any text chat logs
+   *
+   * @return the number of chat logs opened
+   * @throws IOException if the directory cannot be created or a chat log cannot be read
+   */
+  public int recover() throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException(ThreadSafeStringFormatter.format(
+          "Unable to create chat log directory \"%s\"",
+          dir.getPath()
+          ));
+    }
+
+    File[] files = dir.listFiles();
+    if (files == null) {
+      return 0;
+    }
+    for (File f : files) {
+      if (f.isDirectory()) {
+        getChatLog(f.getName());
+      }
+    }
+    for (File f : files) {
+      String name = f.getName();
+      if (f.isFile() && name.endsWith(LEGACY_SUFFIX)) {
+        importTextLog(name.substring(0, name.length() - LEGACY_SUFFIX.length()), f);
+      }
+    }
+    return chatLogs.size();
+  }
+
+  /**
+   * Appends the lines of a text chat log to the chatroom's segmented chat log, then renames the
+   * text file so it is not imported again. An import cut short by a crash resumes after the
+   * lines already imported, since nothing else is appended to the chat log during recovery.
+   *
+   * @param chatroom name of the chatroom
+   * @param textLog the text chat log
+   * @throws IOException if the text chat log cannot be read or its messages cannot be written
+   */
+  private void importTextLog(String chatroom, File textLog) throws IOException {
+    ChatLog chatLog = getChatLog(chatroom);
+    long skip = chatLog.getMessageCount();
+    long imported = 0;
+    try (BufferedReader br = new BufferedReader(new FileReader(textLog))) {
+      List<String> batch = new ArrayList<>();
+      String line;
+      while ((line = br.readLine()) != null) {
+        if (skip > 0) {
+          skip--;
+          continue;
+        }
+        batch.add(line);
+        if (batch.size() == IMPORT_BATCH) {
+          chatLog.append(batch);
+          imported += batch.size();
+          batch.clear();
+        }
+      }
+      if (!batch.isEmpty()) {
+        chatLog.append(batch);
+        imported += batch.size();
+      }
+    }
+    if (flusher.getDurability() != DurabilityMode.NONE) {
+      // the text file is only renamed once its messages are on disk
+      chatLog.force();
+    }
+
+    File done = new File(textLog.getPath() + ".imported");
+    if (!textLog.renameTo(done)) {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Unable to rename imported chat log \"%s\"",
+          textLog.getPath()
+          ));
+    }
+    CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+        "Imported %d messages of chatroom \"%s\" from \"%s\"",
+        imported,
+        chatroom,
+        textLog.getPath()
+        ));
+  }
+
+  /**
+   * Gets the chat log of a chatroom, opening it if it is not yet open
+   *
+   * @param chatroom name of the chatroom
+   * @return the chatroom's chat log
+   * @throws IOException if the chat log cannot be opened
+   */
+  private ChatLog getChatLog(String chatroom) throws IOException {
+    ChatLog chatLog = chatLogs.get(chatroom);
+    if (chatLog != null) {
+      return chatLog;
+    }
+    synchronized (chatLogs) {
+      chatLog = chatLogs.get(chatroom);
+      if (chatLog == null) {
+        chatLog = new ChatLog(chatroom, new File(dir, chatroom), segmentBytes, segmentRollMs);
+        chatLog.open();
+        chatLogs.put(chatroom, chatLog);
+      }
+      return chatLog;
+    }
+  }
+
+  /**
+   * Creates the chat log of a new chatroom
+   *
+   * @param chatroom name of the chatroom
+   * @throws IOException if the chat log cannot be created
+   */
+  public void createChatroom(String chatroom) throws IOException {
+    getChatLog(chatroom);
+  }
+
+  /**
+   * Deletes the chat log of a chatroom
+   *
+   * @param chatroom name of the chatroom
+   * @return true if the chat log existed and all of its files were deleted
+   */
+  public boolean deleteChatroom(String chatroom) {
+    ChatLog chatLog;
+    synchronized (chatLogs) {
+      chatLog = chatLogs.remove(chatroom);
+    }
+    return chatLog != null && chatLog.delete();
+  }
+
+  /**
+   * Appends messages to a chatroom's chat log, creating the chat log if it does not exist. Returns
+   * once the messages are as durable as the durability mode requires.
+   *
+   * @param chatroom name of the chatroom
+   * @param messages the messages to append, in the order they were logged
+   * @throws IOException if the messages cannot be written or forced to disk
+   */
+  public void append(String chatroom, List<String> messages) throws IOException {
+    ChatLogSegment segment = getChatLog(chatroom).append(messages);
+    flusher.written(segment, messages.size());
+  }
+
+  /**
+   * Reads consecutive messages from a chatroom's chat log
+   *
+   * @param chatroom name of the chatroom
+   * @param firstSequence sequence number of the first message to read, starting at 1
+   * @param count the most messages to read
+   * @return the messages read, oldest first, or an empty list if the chatroom has no chat log
+   * @throws IOException if the chat log cannot be read
+   */
+  public List<String> read(String chatroom, long firstSequence, int count) throws IOException {
+    ChatLog chatLog = chatLogs.get(chatroom);
+    return chatLog == null ? Collections.emptyList() : chatLog.read(firstSequence, count);
+  }
+
+  /**
+   * Gets the number of messages in a chatroom's chat log
+   *
+   * @param chatroom name of the chatroom
+   * @return the number of messages logged to the chatroom, or 0 if it has no chat log
+   */
+  public long getMessageCount(String chatroom) {
+    ChatLog chatLog = chatLogs.get(chatroom);
+    return chatLog == null ? 0 : chatLog.getMessageCount();
+  }
+
+  /**
+   * Gets when appended messages are forced to disk
+   *
+   * @return the durability mode
+   */
+  public DurabilityMode getDurability() {
+    return flusher.getDurability();
+  }
+
+  /**
+   * Flushes the messages appended so far and closes every chat log
+   */
+  public void close() {
+    flusher.stop();
+    synchronized (chatLogs) {
+      for (ChatLog chatLog : chatLogs.values()) {
+        chatLog.close();
+      }
+      chatLogs.clear();
+    }
+  }
+}
@@ -1,17 +1,16 @@
 package dataserver;
 
+import data.ChatHistoryResponse;
 import data.IDataOperations;
 import data.Response;
 import data.ResponseStatus;
 import util.CristiansLogger;
 import util.ThreadSafeStringFormatter;
 
-import java.io.*;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.IOException;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
-import java.util.Map;
+import java.util.List;
 
 /**
  * DataOperations class which implements IDataOperations and which fulfills the
@@ -19,32 +18,34 @@ import java.util.Map;
  */
 public class DataOperations extends UnicastRemoteObject implements IDataOperations {
 
-  private final Map<String, String> userMap;
-  private final Map<String, String> chatroomMap;
+  private final KeyValueStore userStore;
+  private final KeyValueStore chatroomStore;
   private final Object chatroomMapLock;
   private final Object userMapLock;
   private final ServerInfo serverInfo;
-  private final Path dir;
+  private final ChatLogStore chatLogStore;
 
   /**
    * Creates an instance of the DataOperations engine
    *
-   * @param userMap a map of users registered at the data server
-   * @param userMapLock locks the userMap resource
-   * @param chatroomMap a map of chatrooms in the system and their owners
-   * @param channelMapLock locks the chatroomMap resource
+   * @param userStore the users registered at the data server and their passwords
+   * @param userMapLock locks the userStore resource
+   * @param chatroomStore the chatrooms in the system and their owners
+   * @param channelMapLock locks the chatroomStore resource
    * @param serverInfo port and addressing information required to run the data server
+   * @param chatLogStore the chat logs of the chatrooms at the data server
    * @throws RemoteException if there is an error during remote communication
    */
-  public DataOperations(Map<String, String> userMap, 
-      Object userMapLock, Map<String, String> chatroomMap, 
-      Object channelMapLock, ServerInfo serverInfo) throws RemoteException {
-    this.userMap = userMap;
-    this.chatroomMap = chatroomMap;
+  public DataOperations(KeyValueStore userStore, 
+      Object userMapLock, KeyValueStore chatroomStore, 
+      Object channelMapLock, ServerInfo serverInfo, ChatLogStore chatLogStore)
+      throws RemoteException {
+    this.userStore = userStore;
+    this.chatroomStore = chatroomStore;
     this.chatroomMapLock = channelMapLock;
     this.userMapLock = userMapLock;
     this.serverInfo = serverInfo;
-    this.dir =  Paths.get("files_" + serverInfo.getId() + "/");
+    this.chatLogStore = chatLogStore;
   }
 
   /**
@@ -64,9 +65,10 @@ public class DataOperations extends UnicastRemoteObject implements IDataOperatio
         ));
 
     synchronized (userMapLock) {
-      // if the map of users does not contain the user, then user does not exist
+      // if the store of users does not contain the user, then user does not exist
       // indicate user cannot be verified
-      if (!userMap.containsKey(username)) {
+      String onFile = userStore.get(username);
+      if (onFile == null) {
         CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
             "Unable to verify user \"%s\"",
             username
@@ -76,7 +78,7 @@ public class DataOperations extends UnicastRemoteObject implements IDataOperatio
 
       // if the password provided does not match the user's password, indicate
       // that the user cannot be verified
-      if (userMap.get(username).compareTo(password) != 0) {
+      if (onFile.compareTo(password) != 0) {
         CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
             "Unable to verify user \"%s\"",
             username
@@ -115,7 +117,8 @@ public class DataOperations extends UnicastRemoteObject implements IDataOperatio
     synchronized (chatroomMapLock) {
       // ensure that the chatroom exists
       // if not, indicate chatroom does not exist and return fail response
-      if (!chatroomMap.containsKey(chatroomName)) {
+      String owner = chatroomStore.get(chatroomName);
+      if (owner == null) {
         CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
             "Unable to verify ownership of non-existent chatroom \"%s\" for user \"%s\"",
             chatroomName,
@@ -126,7 +129,7 @@ public class DataOperations extends UnicastRemoteObject implements IDataOperatio
       }
       // if the username associated with the chatroom does not match the username provided,
       // indicate user does not own chatroom and cannot delete the chatroom
-      if (chatroomMap.get(chatroomName).compareTo(username) != 0) {
+      if (owner.compareTo(username) != 0) {
         CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
             "Unable to verify user \"%s\" owns chatroom \"%s\"",
             username,
@@ -163,8 +166,8 @@ public class DataOperations extends UnicastRemoteObject implements IDataOperatio
         ));
 
     // verify that the user exists by determining if their username is currently
-    // tracked in the user map
-    return userMap.containsKey(username);
+    // tracked in the user store
+    return userStore.containsKey(username);
   }
 
   /**
@@ -182,9 +185,66 @@ public class DataOperations extends UnicastRemoteObject implements IDataOperatio
         chatroom
         ));
 
-    // verify the chatroom exists by checking that there is a key in the chatroom map corresponding
-    // to the provided chatroom name
-    return chatroomMap.containsKey(chatroom);
+    // verify the chatroom exists by checking that there is a key in the chatroom store
+    // corresponding to the provided chatroom name
+    return chatroomStore.containsKey(chatroom);
+  }
+
+  /**
+   * Gets one page of the messages logged to a chatroom, identified by sequence numbers counting
+   * from 1 in the order the messages were logged
+   *
+   * @param chatroom the chatroom whose messages should be read
+   * @param cursor sequence number the page starts from; 0 with before set reads the newest page
+   * @param before true to read the messages preceding the cursor, false to read those following it
+   * @param limit the most messages in the page
+   * @return the page of messages if the chatroom exists, otherwise indicates the operation failed
+   * @throws RemoteException if there is an error during remote communication
+   */
+  @Override
+  public ChatHistoryResponse getChatHistory(String chatroom, long cursor, boolean before,
+      int limit) throws RemoteException {
+
+    CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+        "Reading %d messages %s sequence %d in chatroom \"%s\"",
+        limit,
+        before ? "before" : "after",
+        cursor,
+        chatroom
+        ));
+
+    if (!chatroomStore.containsKey(chatroom)) {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Unable to read history of non-existent chatroom \"%s\"",
+          chatroom
+          ));
+      return new ChatHistoryResponse(ResponseStatus.FAIL, "Chatroom does not exist");
+    }
+
+    int pageSize = Math.max(0, limit);
+    try {
+      long count = chatLogStore.getMessageCount(chatroom);
+      long first;
+      long last;
+      if (before) {
+        last = cursor <= 0 ? count : Math.min(cursor - 1, count);
+        first = Math.max(1, last - pageSize + 1);
+      } else {
+        first = Math.max(1, cursor + 1);
+        last = Math.min(count, first + pageSize - 1);
+      }
+      List<String> messages = chatLogStore.read(chatroom, first,
+          (int) Math.max(0, last - first + 1));
+      boolean more = before ? first > 1 : last < count;
+      return new ChatHistoryResponse(ResponseStatus.OK, "success", messages, first, count, more);
+    } catch (IOException e) {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Unable to read chat log of chatroom \"%s\": \"%s\"",
+          chatroom,
+          e.getMessage()
+          ));
+      return new ChatHistoryResponse(ResponseStatus.FAIL, "Unable to read chatroom history");
+    }
   }
 
   /**
@@ -200,31 +260,15 @@ public class DataOperations extends UnicastRemoteObject implements IDataOperatio
         ));
 
     synchronized (chatroomMapLock) {
-      // remove the chatroom from the chatroom map
-      chatroomMap.remove(chatroomName);
-
-      // access the chatrooms.txt file responsible for tracking existing chatrooms in the system
-      String filename = dir.resolve("chatrooms.txt").toString();
+      // remove the chatroom from the chatroom store by appending a tombstone to its log
       try {
-        // Creates the file if it doesn't exist, if it does exist it will append to the file.
-        FileWriter file = new FileWriter(filename, false);
-        BufferedWriter writer = new BufferedWriter(file);
-        // write the chatrooms that are still tracked by the data server into the chatrooms.txt file
-        // write in format <chatroom name>:<username>
-        for (String cName : chatroomMap.keySet()) {
-          writer.write(ThreadSafeStringFormatter.format(
-              "%s:%s",
-              cName,
-              chatroomMap.get(cName)
-              ));
-          writer.newLine();
-        }
-        writer.close();
+        chatroomStore.delete(chatroomName);
       } catch (IOException e) {
-        // if there is an error writing to the file, log the error and return
+        // if there is an error writing to the store, log the error and return
         CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
-            "Something went very wrong writing to file %s",
-            filename
+            "Something went very wrong removing chatroom \"%s\" from the chatroom store: \"%s\"",
+            chatroomName,
+            e.getMessage()
             ));
         return;
       }
@@ -251,10 +295,18 @@ public class DataOperations extends UnicastRemoteObject implements IDataOperatio
         ));
 
     // if the provided username does not exist, place username and password pair into the
-    // local usermap
+    // local user store
     synchronized (userMapLock) {
-      if (!userMap.containsKey(username)) {
-        userMap.put(username, password);
+      if (!userStore.containsKey(username)) {
+        try {
+          userStore.put(username, password);
+        } catch (IOException e) {
+          CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+              "Something went very wrong adding user \"%s\" to the user store: \"%s\"",
+              username,
+              e.getMessage()
+              ));
+        }
       }  
     }
 
@@ -276,27 +328,22 @@ public class DataOperations extends UnicastRemoteObject implements IDataOperatio
 
     synchronized (chatroomMapLock) {
       // if the provided chatroom is not being checked, add the chatroom name and the user that
-      // created the chatroom to the local chatroom map
-      if (!chatroomMap.containsKey(chatroomName)) {
-        chatroomMap.put(chatroomName, username);
-        //create a log file for the chatroom to track logged messages for the chatroom
-        File chatLog = new File(dir.toString() + "/chatlogs/" + chatroomName + ".txt");
+      // created the chatroom to the local chatroom store
+      if (!chatroomStore.containsKey(chatroomName)) {
+        // record the owner, then create a chat log for the chatroom to track logged messages
+        // for the chatroom
         try {
-          if (chatLog.createNewFile()) {
-            CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
-                "Successfully created new chat log file for chatroom \"%s\"",
-                chatroomName
-                ));
-          } else {
-            CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
-                "Unable to create new chat log file for chatroom \"%s\"",
-                chatroomName
-                ));
-          }
+          chatroomStore.put(chatroomName, username);
+          chatLogStore.createChatroom(chatroomName);
+          CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+              "Successfully created new chat log for chatroom \"%s\"",
+              chatroomName
+              ));
         } catch (IOException e) {
           CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
-              "There was an error when creating chat log file for chatroom \"%s\"",
-              chatroomName
+              "There was an error when creating chatroom \"%s\": \"%s\"",
+              chatroomName,
+              e.getMessage()
               ));
           return;
         }
@@ -309,4 +356,13 @@ public class DataOperations extends UnicastRemoteObject implements IDataOperatio
         username
         ));
   }
+
+  /**
+   * Gets the chat logs of the chatrooms at the data server
+   *
+   * @return the data server's chat log store
+   */
+  public ChatLogStore getChatLogStore() {
+    return chatLogStore;
+  }
 }
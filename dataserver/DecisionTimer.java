@@ -0,0 +1,445 @@
+package dataserver;
+
+import data.Ack;
+import data.ICentralCoordinator;
+import data.IDataParticipant;
+import data.Transaction;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import util.CristiansLogger;
+import util.RMIAccess;
+import util.TaskExecutor;
+import util.ThreadSafeStringFormatter;
+
+/**
+ * Tracks the decision deadlines of the transactions a data participant has voted YES on, and asks
+ * the coordinator for its decision on those it has not heard back about in time. Deadlines are
+ * kept in a hashed timer wheel of tickMs-wide buckets turned by a single scheduler thread, so a
+ * transaction costs a map entry instead of a sleeping thread, and scheduling or cancelling one
+ * is O(1). Expired transactions are resolved in batches by one task at a time, with a single call
+ * to the coordinator for the decisions on up to MAX_DECISIONS_PER_CALL of them. The coordinator
+ * keeps a decision to commit until every participant has committed, and answers NO for a
+ * transaction it no longer tracks, so a lost doCommit or doAbort is recovered by asking. A
+ * transaction still being voted on is asked about again after another timeout for as long as it
+ * takes; its keys stay reserved, since aborting a transaction the coordinator may yet decide to
+ * commit would leave this participant diverged from the others, and an error is logged once it
+ * has been asked about maxAttempts times. The timer also keeps the deadlines of transactions
+ * already decided to commit whose commit has been deferred, handing them back to the participant
+ * to commit instead of asking the coordinator.
+ */
+public class DecisionTimer {
+
+  // default time in milliseconds a participant waits for the coordinator's decision
+  public static final long DEFAULT_TIMEOUT_MS = 1000;
+  // default width in milliseconds of a bucket of the timer wheel
+  public static final long DEFAULT_TICK_MS = 100;
+  // default number of times the coordinator is asked about a transaction it has not decided
+  // before an error is logged about it
+  public static final int DEFAULT_ATTEMPTS = 10;
+  // most transactions whose decisions are asked for in a single call to the coordinator
+  static final int MAX_DECISIONS_PER_CALL = 256;
+
+  /**
+   * A transaction waiting for the coordinator's decision
+   */
+  private static class Pending {
+    private final Transaction t;
+    private final RMIAccess<IDataParticipant> participant;
+    private final long deadline;
+    // whether the transaction is known to be decided to commit, so the coordinator is not asked
+    private final boolean committed;
+    // number of times the coordinator has been asked and had no decision
+    private final int attempts;
+
+    /**
+     * Creates an instance of Pending
+     *
+     * @param t the transaction
+     * @param participant the participant RMI accessor the decision is carried out through
+     * @param deadline the time in milliseconds after which the coordinator is asked
+     * @param committed whether the transaction is known to be decided to commit
+     * @param attempts number of times the coordinator has been asked and had no decision
+     */
+    private Pending(Transaction t, RMIAccess<IDataParticipant> participant, long deadline,
+        boolean committed, int attempts) {
+      this.t = t;
+      this.participant = participant;
+      this.deadline = deadline;
+      this.committed = committed;
+      this.attempts = attempts;
+    }
+  }
+
+  private final String coordinatorHostname;
+  private final int coordinatorPort;
+  private final long timeoutMs;
+  private final long tickMs;
+  private final int maxAttempts;
+  // pending transactions by transaction index
+  private final Map<Integer, Pending> pending;
+  // buckets of pending transactions by transaction index, one per tick of the wheel
+  private final List<Map<Integer, Pending>> wheel;
+  private final ScheduledExecutorService scheduler;
+  // transactions whose deadlines have passed, waiting to be resolved, guarded by expiredLock
+  private final Object expiredLock;
+  private List<Pending> expired;
+  // whether a task is resolving expired transactions, guarded by expiredLock
+  private boolean resolving;
+  // the last tick turned by the scheduler thread; only read and written by it
+  private long lastTick;
+
+  /**
+   * Creates an instance of the DecisionTimer. The wheel does not turn until it is started.
+   *
+   * @param coordinatorHostname hostname of the machine supporting the central server
+   * @param coordinatorPort port the coordinator is accepting participant requests on
+   * @param timeoutMs time in milliseconds to wait for the coordinator's decision before asking it
+   * @param tickMs width in milliseconds of a bucket of the timer wheel, and so the most a
+   *               deadline may be overrun by
+   * @param maxAttempts number of times the coordinator is asked about a transaction it has not
+   *                    decided before an error is logged about it
+   */
+  public DecisionTimer(String coordinatorHostname, int coordinatorPort, long timeoutMs,
+      long tickMs, int maxAttempts) {
+    this.coordinatorHostname = coordinatorHostname;
+    this.coordinatorPort = coordinatorPort;
+    this.timeoutMs = timeoutMs;
+    this.tickMs = tickMs;
+    this.maxAttempts = maxAttempts;
+    this.pending = new ConcurrentHashMap<>();
+    // one more bucket than a timeout spans, so a deadline never falls in the bucket being turned
+    int buckets = (int) Math.min(1 << 16, timeoutMs / tickMs + 2);
+    this.wheel = new ArrayList<>(buckets);
+    for (int i = 0; i < buckets; i++) {
+      this.wheel.add(new ConcurrentHashMap<>());
+    }
+    this.scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread t = new Thread(r, "DecisionTimer");
+      t.setDaemon(true);
+      return t;
+    });
+    this.expiredLock = new Object();
+    this.expired = new ArrayList<>();
+    this.resolving = false;
+    this.lastTick = System.currentTimeMillis() / tickMs;
+  }
+
+  /**
+   * Starts turning the timer wheel
+   */
+  public void start() {
+    lastTick = System.currentTimeMillis() / tickMs;
+    scheduler.scheduleAtFixedRate(this::turn, tickMs, tickMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops turning the timer wheel. Transactions still pending are not resolved.
+   */
+  public void stop() {
+    scheduler.shutdownNow();
+  }
+
+  /**
+   * Starts waiting for the coordinator's decision on a transaction
+   *
+   * @param t the transaction voted YES on
+   * @param participant the participant RMI accessor the decision is carried out through
+   */
+  public void schedule(Transaction t, RMIAccess<IDataParticipant> participant) {
+    schedule(new Pending(t, participant, System.currentTimeMillis() + timeoutMs, false, 0));
+  }
+
+  /**
+   * Starts the deadline of a transaction decided to commit whose commit has been deferred. When
+   * the deadline passes the transaction's doCommit is repeated through the participant instead of
+   * asking the coordinator, so a deferred commit is looked at again even if nothing else wakes it.
+   *
+   * @param t the transaction decided to commit
+   * @param participant the participant RMI accessor the commit is carried out through
+   */
+  public void scheduleCommitted(Transaction t, RMIAccess<IDataParticipant> participant) {
+    schedule(new Pending(t, participant, System.currentTimeMillis() + timeoutMs, true, 0));
+  }
+
+  /**
+   * Adds a pending transaction to the wheel, replacing any earlier deadline of the transaction
+   *
+   * @param p the pending transaction
+   */
+  private void schedule(Pending p) {
+    cancel(p.t.getTransactionIndex());
+    pending.put(p.t.getTransactionIndex(), p);
+    bucket(p.deadline).put(p.t.getTransactionIndex(), p);
+  }
+
+  /**
+   * Stops waiting for the coordinator's decision on a transaction, once its doCommit or doAbort
+   * has arrived
+   *
+   * @param transactionIndex index of the transaction
+   */
+  public void cancel(int transactionIndex) {
+    Pending p = pending.remove(transactionIndex);
+    if (p != null) {
+      bucket(p.deadline).remove(transactionIndex);
+    }
+  }
+
+  /**
+   * Gets the number of transactions waiting for the coordinator's decision or for a deferred
+   * commit
+   *
+   * @return the number of pending transactions
+   */
+  public int size() {
+    return pending.size();
+  }
+
+  /**
+   * Gets the bucket of the tick a deadline falls on, rounding up so no deadline fires early
+   *
+   * @param deadline the deadline in milliseconds
+   * @return the bucket
+   */
+  private Map<Integer, Pending> bucket(long deadline) {
+    long tick = (deadline + tickMs - 1) / tickMs;
+    return wheel.get((int) (tick % wheel.size()));
+  }
+
+  /**
+   * Turns the wheel to the current tick, moving the transactions whose deadlines have passed
+   * from every bucket passed over to the expired transactions, and starts resolving them if they
+   * are not already being resolved
+   */
+  private void turn() {
+    try {
+      long now = System.currentTimeMillis();
+      long tick = now / tickMs;
+      // a scheduler that fell behind by a whole revolution visits each bucket only once
+      long first = Math.max(lastTick + 1, tick - wheel.size() + 1);
+      List<Pending> due = new ArrayList<>();
+      for (long t = first; t <= tick; t++) {
+        Iterator<Pending> it = wheel.get((int) (t % wheel.size())).values().iterator();
+        while (it.hasNext()) {
+          Pending p = it.next();
+          if (p.deadline <= now) {
+            it.remove();
+            due.add(p);
+          }
+        }
+      }
+      lastTick = tick;
+      if (due.isEmpty()) {
+        return;
+      }
+      synchronized (expiredLock) {
+        expired.addAll(due);
+        if (resolving) {
+          return;
+        }
+        resolving = true;
+      }
+      TaskExecutor.submit(this::resolveExpired);
+    } catch (RuntimeException e) {
+      // an exception would stop the wheel for good
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Decision timer failed to turn: \"%s\"",
+          e.getMessage()
+          ));
+    }
+  }
+
+  /**
+   * Resolves expired transactions until none are left. Only one task resolves at a time, so
+   * transactions expiring while the coordinator is slow to answer gather into the next batch,
+   * and those whose doCommit or doAbort arrives in the meantime are never asked about.
+   */
+  private void resolveExpired() {
+    while (true) {
+      List<Pending> batch;
+      synchronized (expiredLock) {
+        if (expired.isEmpty()) {
+          resolving = false;
+          return;
+        }
+        batch = expired;
+        expired = new ArrayList<>();
+      }
+      resolve(batch);
+    }
+  }
+
+  /**
+   * Asks the coordinator for its decisions on transactions whose deadlines have passed, up to
+   * MAX_DECISIONS_PER_CALL transactions per call, and carries out each decision. Transactions
+   * already decided to commit are committed without asking. Transactions the coordinator has not
+   * decided, and those whose decisions could not be retrieved, are asked about again after another
+   * timeout.
+   *
+   * @param batch the transactions whose deadlines have passed
+   */
+  private void resolve(List<Pending> batch) {
+    // skip transactions cancelled since they expired
+    List<Pending> undecided = new ArrayList<>(batch.size());
+    for (Pending p : batch) {
+      if (!pending.remove(p.t.getTransactionIndex(), p)) {
+        continue;
+      }
+      if (p.committed) {
+        recommit(p);
+      } else {
+        undecided.add(p);
+      }
+    }
+    if (undecided.isEmpty()) {
+      return;
+    }
+
+    ICentralCoordinator coordinator = null;
+    for (int from = 0; from < undecided.size(); from += MAX_DECISIONS_PER_CALL) {
+      List<Pending> chunk = undecided.subList(from,
+          Math.min(undecided.size(), from + MAX_DECISIONS_PER_CALL));
+      List<Transaction> transactions = new ArrayList<>(chunk.size());
+      for (Pending p : chunk) {
+        transactions.add(p.t);
+      }
+
+      List<Ack> decisions;
+      try {
+        if (coordinator == null) {
+          coordinator = new RMIAccess<ICentralCoordinator>(
+              coordinatorHostname, coordinatorPort, "ICentralCoordinator").getAccess();
+        }
+        decisions = coordinator.getDecisions(transactions);
+      } catch (RemoteException | NotBoundException e) {
+        CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+            "Unable to retrieve decisions on %d transactions from coordinator at \"%s:%d\"; "
+            + "asking again in %d ms",
+            chunk.size(),
+            coordinatorHostname,
+            coordinatorPort,
+            timeoutMs
+            ));
+        coordinator = null;
+        for (Pending p : chunk) {
+          schedule(new Pending(p.t, p.participant, System.currentTimeMillis() + timeoutMs,
+              false, p.attempts));
+        }
+        continue;
+      }
+
+      for (int i = 0; i < chunk.size(); i++) {
+        Pending p = chunk.get(i);
+        try {
+          carryOut(p, decisions.get(i));
+        } catch (RuntimeException e) {
+          // the transactions resolved together do not depend on each other
+          CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+              "Unable to carry out decision on transaction \"%s\": \"%s\"",
+              p.t.toString(),
+              e.toString()
+              ));
+        }
+      }
+    }
+  }
+
+  /**
+   * Repeats the doCommit of a transaction decided to commit whose commit was deferred, so the
+   * participant looks at it again
+   *
+   * @param p the pending transaction
+   */
+  private void recommit(Pending p) {
+    try {
+      p.participant.getAccess().doCommit(p.t, p.participant);
+    } catch (RemoteException | NotBoundException e) {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Unable to repeat deferred commit of transaction \"%s\"; trying again in %d ms",
+          p.t.toString(),
+          timeoutMs
+          ));
+      scheduleCommitted(p.t, p.participant);
+    }
+  }
+
+  /**
+   * Carries out the coordinator's decision on a transaction through the participant
+   *
+   * @param p the pending transaction
+   * @param decision the coordinator's decision
+   */
+  private void carryOut(Pending p, Ack decision) {
+    Transaction t = p.t;
+    // if decision from server is NO, run abort on transaction
+    if (decision == Ack.NO) {
+      CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+          "Received doAbort decision from \"%s:%d\" for %s",
+          coordinatorHostname,
+          coordinatorPort,
+          t.toString()
+          ));
+
+      try {
+        p.participant.getAccess().doAbort(t);
+      } catch (RemoteException | NotBoundException e) {
+        CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+            "Unable to abort on coordinator decision for transaction \"%s\"",
+            t.toString()
+            ));
+      }
+    } else if (decision == Ack.YES) {
+      // if server is YES, run commit on transaction
+      CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+          "Received doCommit decision from \"%s:%d\" for %s",
+          coordinatorHostname,
+          coordinatorPort,
+          t.toString()
+          ));
+
+      // the participant informs the coordinator once the transaction has been committed
+      try {
+        p.participant.getAccess().doCommit(t, p.participant);
+      } catch (RemoteException | NotBoundException e) {
+        CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+            "Unable to commit on coordinator decision for transaction \"%s\"",
+            t.toString()
+            ));
+      }
+
+    } else {
+      // otherwise, the coordinator is still collecting votes; keep the keys reserved and ask
+      // again later, since the transaction may yet be decided to commit
+      int attempts = p.attempts + 1;
+      if (attempts == maxAttempts) {
+        CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+            "Coordinator at \"%s:%d\" has not made a decision about transaction \"%s\" after %d "
+            + "attempts; its keys stay reserved until it does",
+            coordinatorHostname,
+            coordinatorPort,
+            t.toString(),
+            attempts
+            ));
+      } else {
+        CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+            "Coordinator at \"%s:%d\" has not made a decision about transaction \"%s\"; "
+            + "asking again in %d ms",
+            coordinatorHostname,
+            coordinatorPort,
+            t.toString(),
+            timeoutMs
+            ));
+      }
+      schedule(new Pending(t, p.participant, System.currentTimeMillis() + timeoutMs, false,
+          attempts));
+    }
+  }
+}
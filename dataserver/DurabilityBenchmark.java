@@ -0,0 +1,214 @@
+package dataserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import util.CristiansLogger;
+import util.ThreadSafeStringFormatter;
+
+/**
+ * Benchmark for the durability modes of the chat log store. For each mode, many writers append
+ * to the chat logs of a fresh store at once, as the commits of concurrent 2 phase commit
+ * transactions do, and the append throughput and latency distribution are reported. Appends
+ * return once their messages are as durable as the mode requires.
+ * All output is printed to console for manual verification.
+ *
+ * <p>Usage: java -cp chatroom.jar dataserver.DurabilityBenchmark &lt;writers&gt;
+ * &lt;appends per writer&gt; &lt;messages per append&gt; &lt;flush interval ms&gt;
+ * &lt;flush records&gt;
+ */
+public class DurabilityBenchmark {
+
+  private static final String DIRECTORY = "files_durabilitybenchmark";
+  // appends are spread over this many chatrooms
+  private static final int CHATROOMS = 10;
+
+  /**
+   * Runs the benchmark once for every durability mode
+   *
+   * @param writers the number of threads appending at once
+   * @param appends the number of appends made by each writer
+   * @param messagesPerAppend the number of messages in each append
+   * @param flushIntervalMs the longest time in milliseconds between flushes in the PERIODIC and
+   *                        GROUP modes
+   * @param flushRecords the number of waiting records that starts a flush in the GROUP mode
+   * @throws IOException if a chat log store cannot be created
+   * @throws InterruptedException if the benchmark is interrupted while waiting for writers
+   */
+  public void go(int writers, int appends, int messagesPerAppend, long flushIntervalMs,
+      int flushRecords) throws IOException, InterruptedException {
+    System.out.println(ThreadSafeStringFormatter.format(
+        "%d writers making %d appends of %d messages in each durability mode, "
+            + "flushing every %d ms or %d records",
+        writers,
+        appends,
+        messagesPerAppend,
+        flushIntervalMs,
+        flushRecords
+        ));
+    System.out.println();
+    System.out.println(ThreadSafeStringFormatter.format(
+        "%-12s %12s %14s %10s %10s %10s",
+        "Mode",
+        "Appends/s",
+        "Messages/s",
+        "p50 ms",
+        "p99 ms",
+        "Failed"
+        ));
+    for (DurabilityMode mode : DurabilityMode.values()) {
+      run(mode, writers, appends, messagesPerAppend, flushIntervalMs, flushRecords);
+    }
+  }
+
+  /**
+   * Runs the benchmark for one durability mode against a fresh chat log store
+   *
+   * @param mode the durability mode of the store
+   * @param writers the number of threads appending at once
+   * @param appends the number of appends made by each writer
+   * @param messagesPerAppend the number of messages in each append
+   * @param flushIntervalMs the longest time in milliseconds between flushes
+   * @param flushRecords the number of waiting records that starts a flush
+   * @throws IOException if the chat log store cannot be created
+   * @throws InterruptedException if the benchmark is interrupted while waiting for writers
+   */
+  private void run(DurabilityMode mode, int writers, int appends, int messagesPerAppend,
+      long flushIntervalMs, int flushRecords) throws IOException, InterruptedException {
+    File dir = new File(DIRECTORY, mode.name().toLowerCase());
+    deleteRecursively(dir);
+    ChatLogStore chatLogStore = new ChatLogStore(dir, ChatLogStore.DEFAULT_SEGMENT_BYTES, 0,
+        mode, flushIntervalMs, flushRecords);
+    chatLogStore.recover();
+    chatLogStore.start();
+
+    long[] latencies = new long[writers * appends];
+    AtomicInteger failed = new AtomicInteger();
+    CountDownLatch ready = new CountDownLatch(writers);
+    CountDownLatch release = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int w = 0; w < writers; w++) {
+      int writer = w;
+      Thread t = new Thread(() -> {
+        String chatroom = "benchroom" + (writer % CHATROOMS);
+        ready.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (int a = 0; a < appends; a++) {
+          List<String> messages = new ArrayList<>(messagesPerAppend);
+          for (int m = 0; m < messagesPerAppend; m++) {
+            messages.add(ThreadSafeStringFormatter.format(
+                "writer%d: message %d of append %d",
+                writer,
+                m,
+                a
+                ));
+          }
+          long start = System.nanoTime();
+          try {
+            chatLogStore.append(chatroom, messages);
+          } catch (IOException e) {
+            failed.incrementAndGet();
+          }
+          latencies[writer * appends + a] = System.nanoTime() - start;
+        }
+      }, "DurabilityBenchmarkWriter-" + w);
+      threads.add(t);
+      t.start();
+    }
+    ready.await();
+
+    long start = System.nanoTime();
+    release.countDown();
+    for (Thread t : threads) {
+      t.join();
+    }
+    double elapsedSeconds = Math.max(1, System.nanoTime() - start) / 1e9;
+    chatLogStore.close();
+
+    Arrays.sort(latencies);
+    System.out.println(ThreadSafeStringFormatter.format(
+        "%-12s %12.0f %14.0f %10.3f %10.3f %10d",
+        mode,
+        latencies.length / elapsedSeconds,
+        (double) latencies.length * messagesPerAppend / elapsedSeconds,
+        percentile(latencies, 50) / 1e6,
+        percentile(latencies, 99) / 1e6,
+        failed.get()
+        ));
+  }
+
+  /**
+   * Gets a percentile of a sorted array of latencies
+   *
+   * @param sorted the latencies in ascending order
+   * @param percentile the percentile to get, from 0 to 100
+   * @return the latency at the percentile
+   */
+  private static long percentile(long[] sorted, int percentile) {
+    int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+  }
+
+  /**
+   * Deletes a directory left by an earlier run of the benchmark
+   *
+   * @param f the file or directory to delete
+   */
+  private static void deleteRecursively(File f) {
+    File[] children = f.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    f.delete();
+  }
+
+  /**
+   * Starts the benchmark
+   *
+   * @param args &lt;writers&gt; &lt;appends per writer&gt; &lt;messages per append&gt;
+   *             &lt;flush interval ms&gt; &lt;flush records&gt;
+   */
+  public static void main(String[] args) {
+    if (args.length != 5) {
+      System.out.println("Expected 5 arguments <writers> <appends per writer> "
+          + "<messages per append> <flush interval ms> <flush records>");
+      return;
+    }
+
+    int[] values = new int[args.length];
+    for (int i = 0; i < args.length; i++) {
+      try {
+        values[i] = Integer.parseInt(args[i]);
+      } catch (NumberFormatException e) {
+        System.out.println(ThreadSafeStringFormatter.format(
+            "Received illegal argument, must be int, received \"%s\"",
+            args[i]
+            ));
+        return;
+      }
+    }
+
+    CristiansLogger.loggerSetup("DurabilityBenchmark");
+
+    try {
+      new DurabilityBenchmark().go(values[0], values[1], values[2], values[3],
+          values[4]);
+    } catch (IOException | InterruptedException e) {
+      System.out.println(ThreadSafeStringFormatter.format(
+          "Benchmark failed with message: \"%s\"",
+          e.getMessage()
+          ));
+    }
+    System.exit(0);
+  }
+}
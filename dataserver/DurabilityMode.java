@@ -0,0 +1,16 @@
+package dataserver;
+
+/**
+ * Determines when messages appended to chat logs at the data server are forced to disk
+ */
+public enum DurabilityMode {
+  // messages are left to the operating system to write out
+  NONE,
+  // chat logs are forced to disk at a fixed interval; commits do not wait for it
+  PERIODIC,
+  // commits wait for their messages to be forced to disk together with those of concurrent
+  // commits, once enough messages are waiting or the oldest has waited long enough
+  GROUP,
+  // every commit forces its messages to disk before it completes
+  TRANSACTION
+}
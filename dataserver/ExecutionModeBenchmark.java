@@ -0,0 +1,241 @@
+package dataserver;
+
+import centralserver.CentralCoordinator;
+import centralserver.TwoPhaseCommit;
+import data.IDataParticipant;
+import data.Operations;
+import data.Transaction;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import util.CristiansLogger;
+import util.ExecutionMode;
+import util.Logger;
+import util.RMIAccess;
+import util.TaskExecutor;
+import util.ThreadSafeStringFormatter;
+
+/**
+ * Benchmark for the execution modes of the shared TaskExecutor. Starts a coordinator and several
+ * data participants in this process, releases a large number of 2 phase commit transactions at
+ * once, and reports the peak number of platform threads together with the latency distribution
+ * of the transactions. Transactions released together wait for those ahead of them, so their
+ * latency is mostly time spent queued; the latency of transactions sent one at a time before the
+ * burst is reported alongside it. Run once per execution mode to compare them.
+ * All output is printed to console for manual verification.
+ *
+ * <p>Usage: java -cp chatroom.jar dataserver.ExecutionModeBenchmark &lt;PLATFORM|VIRTUAL&gt;
+ * &lt;transactions&gt; &lt;participants&gt; &lt;coordinator port&gt; &lt;participant port&gt;
+ */
+public class ExecutionModeBenchmark {
+
+  private static final String SERVER_ID = "benchmark";
+  // transactions are spread over this many chatrooms
+  private static final int CHATROOMS = 100;
+  // stack size of the threads issuing transactions, kept small so many can run at once
+  private static final long CLIENT_STACK_SIZE = 256 * 1024;
+  // transactions sent one at a time before the burst to measure latency without queueing
+  private static final int SEQUENTIAL_TRANSACTIONS = 50;
+
+  /**
+   * Runs the benchmark
+   *
+   * @param mode the execution mode to run tasks in
+   * @param transactions the number of transactions released at once
+   * @param participantCount the number of data participants
+   * @param coordinatorPort port for the in-process coordinator registry
+   * @param participantPort port for the in-process participant registry
+   * @throws IOException if the in-process registries or chat logs cannot be created
+   * @throws InterruptedException if the benchmark is interrupted while waiting for transactions
+   */
+  public void go(ExecutionMode mode, int transactions, int participantCount, int coordinatorPort,
+      int participantPort) throws IOException, InterruptedException {
+
+    ExecutionMode inEffect = TaskExecutor.setup(mode, TaskExecutor.DEFAULT_PLATFORM_THREADS);
+    System.out.println(ThreadSafeStringFormatter.format(
+        "Requested execution mode %s, running in %s",
+        mode,
+        inEffect
+        ));
+
+    // start the coordinator
+    Registry coordinatorRegistry = LocateRegistry.createRegistry(coordinatorPort);
+    CentralCoordinator coordinator = new CentralCoordinator();
+    coordinatorRegistry.rebind("ICentralCoordinator", coordinator);
+
+    // start the participants, each writing to its own directory
+    Registry participantRegistry = LocateRegistry.createRegistry(participantPort);
+    List<RMIAccess<IDataParticipant>> participants = new ArrayList<>();
+    for (int i = 0; i < participantCount; i++) {
+      String name = "IDataParticipant" + i;
+      participantRegistry.rebind(name, new InProcessParticipant(SERVER_ID + i, coordinatorPort,
+          participantPort).getParticipant());
+      participants.add(new RMIAccess<>("localhost", participantPort, name));
+    }
+    Object participantsLock = new Object();
+
+    // threads started by the transactions, including pooled threads, are counted from here
+    ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    int threadsBefore = threadBean.getThreadCount();
+
+    // latency of a transaction that does not wait behind others
+    long[] sequential = new long[SEQUENTIAL_TRANSACTIONS];
+    for (int i = 0; i < sequential.length; i++) {
+      Transaction tx = new Transaction(Operations.LOGMESSAGE, "benchroom" + (i % CHATROOMS),
+          "sequential message " + i);
+      long start = System.nanoTime();
+      new TwoPhaseCommit().GenericCommit(participantsLock, participants, tx, coordinator);
+      sequential[i] = System.nanoTime() - start;
+    }
+    Arrays.sort(sequential);
+
+    System.out.println(ThreadSafeStringFormatter.format(
+        "Releasing %d concurrent transactions to %d participants",
+        transactions,
+        participantCount
+        ));
+
+    // every transaction is issued from its own thread and released at the same moment
+    long[] latencies = new long[transactions];
+    AtomicInteger aborted = new AtomicInteger();
+    CountDownLatch ready = new CountDownLatch(transactions);
+    CountDownLatch release = new CountDownLatch(1);
+    List<Thread> clients = new ArrayList<>();
+    for (int i = 0; i < transactions; i++) {
+      int index = i;
+      Thread t = new Thread(null, () -> {
+        Transaction tx = new Transaction(Operations.LOGMESSAGE,
+            "benchroom" + (index % CHATROOMS), "message " + index);
+        ready.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        long start = System.nanoTime();
+        if (!new TwoPhaseCommit().GenericCommit(participantsLock, participants, tx,
+            coordinator)) {
+          aborted.incrementAndGet();
+        }
+        latencies[index] = System.nanoTime() - start;
+      }, "BenchmarkClient-" + i, CLIENT_STACK_SIZE);
+      clients.add(t);
+      t.start();
+    }
+    ready.await();
+
+    threadBean.resetPeakThreadCount();
+    long start = System.currentTimeMillis();
+    release.countDown();
+    for (Thread t : clients) {
+      t.join();
+    }
+    long elapsed = Math.max(1, System.currentTimeMillis() - start);
+    int peakThreads = threadBean.getPeakThreadCount();
+
+    Arrays.sort(latencies);
+    System.out.println();
+    System.out.println(ThreadSafeStringFormatter.format(
+        "Execution mode: %s",
+        inEffect
+        ));
+    System.out.println(ThreadSafeStringFormatter.format(
+        "Peak platform threads: %d (%d before the run, %d issuing transactions)",
+        peakThreads,
+        threadsBefore,
+        transactions
+        ));
+    System.out.println(ThreadSafeStringFormatter.format(
+        "Platform threads added by the run, excluding transaction issuers: %d",
+        peakThreads - transactions - threadsBefore
+        ));
+    System.out.println(ThreadSafeStringFormatter.format(
+        "Latency of %d transactions sent one at a time: p50: %.1f ms, p99: %.1f ms",
+        sequential.length,
+        percentile(sequential, 50) / 1000000.0,
+        percentile(sequential, 99) / 1000000.0
+        ));
+    System.out.println(ThreadSafeStringFormatter.format(
+        "Latency p50: %d ms, p99: %d ms, max: %d ms",
+        percentile(latencies, 50) / 1000000,
+        percentile(latencies, 99) / 1000000,
+        latencies[latencies.length - 1] / 1000000
+        ));
+    System.out.println(ThreadSafeStringFormatter.format(
+        "Aborted: %d, elapsed: %d ms, throughput: %.1f transactions/s",
+        aborted.get(),
+        elapsed,
+        transactions * 1000.0 / elapsed
+        ));
+  }
+
+  /**
+   * Gets a percentile of a sorted array of latencies
+   *
+   * @param sorted the latencies in ascending order
+   * @param percentile the percentile to get, from 0 to 100
+   * @return the latency at the percentile
+   */
+  private static long percentile(long[] sorted, int percentile) {
+    int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+  }
+
+  /**
+   * Starts the benchmark
+   *
+   * @param args &lt;PLATFORM|VIRTUAL&gt; &lt;transactions&gt; &lt;participants&gt;
+   *             &lt;coordinator port&gt; &lt;participant port&gt;
+   */
+  public static void main(String[] args) {
+    if (args.length != 5) {
+      System.out.println("Expected 5 arguments <PLATFORM|VIRTUAL> <transactions> "
+          + "<participants> <coordinator port> <participant port>");
+      return;
+    }
+
+    ExecutionMode mode;
+    try {
+      mode = ExecutionMode.valueOf(args[0].toUpperCase());
+    } catch (IllegalArgumentException e) {
+      System.out.println(ThreadSafeStringFormatter.format(
+          "Received illegal execution mode, must be PLATFORM or VIRTUAL, received \"%s\"",
+          args[0]
+          ));
+      return;
+    }
+
+    int[] values = new int[args.length - 1];
+    for (int i = 1; i < args.length; i++) {
+      try {
+        values[i - 1] = Integer.parseInt(args[i]);
+      } catch (NumberFormatException e) {
+        System.out.println(ThreadSafeStringFormatter.format(
+            "Received illegal argument, must be int, received \"%s\"",
+            args[i]
+            ));
+        return;
+      }
+    }
+
+    Logger.loggerSetup("ExecutionModeBenchmarkCoordinator");
+    CristiansLogger.loggerSetup("ExecutionModeBenchmarkParticipant");
+
+    try {
+      new ExecutionModeBenchmark().go(mode, values[0], values[1], values[2], values[3]);
+    } catch (IOException | InterruptedException e) {
+      System.out.println(ThreadSafeStringFormatter.format(
+          "Benchmark failed with message: \"%s\"",
+          e.getMessage()
+          ));
+    }
+    System.exit(0);
+  }
+}
@@ -0,0 +1,187 @@
+package dataserver;
+
+import data.Operations;
+import data.Transaction;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Table of the keys reserved by in-flight 2 phase commit transactions at a data participant,
+ * indexed by key so a vote only looks at the keys its transaction touches. A transaction that
+ * creates a user or creates or deletes a chatroom holds its key exclusively. Chat log transactions
+ * share their chatrooms' keys with each other and are queued on each key in transaction index
+ * order, the order the coordinator created them in; a chat log transaction may commit once it is
+ * first in the queue of every key it touches. Ordering every queue the same way means no two
+ * transactions can wait on each other.
+ */
+public class InFlightTable {
+
+  /**
+   * The transactions holding a single key. Changed only inside ConcurrentHashMap.compute on the
+   * key, so each reservation of the key is atomic.
+   */
+  private static class KeyReservation {
+    // index of the transaction holding the key exclusively, or -1
+    private volatile int exclusive = -1;
+    // indices of the chat log transactions queued on the key, lowest first
+    private final ConcurrentSkipListSet<Integer> queue = new ConcurrentSkipListSet<>();
+
+    /**
+     * Whether no transaction holds the key
+     *
+     * @return true if the reservation can be removed from the table
+     */
+    private boolean isEmpty() {
+      return exclusive < 0 && queue.isEmpty();
+    }
+  }
+
+  private final Map<String, KeyReservation> keys;
+
+  /**
+   * Creates an instance of the InFlightTable
+   */
+  public InFlightTable() {
+    this.keys = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Whether an operation appends to chat logs, which may be queued behind other chat log
+   * operations on the same chatroom instead of conflicting with them
+   *
+   * @param op the operation to check
+   * @return true if the operation is LOGMESSAGE or LOGMESSAGES
+   */
+  public static boolean isLogOperation(Operations op) {
+    return op == Operations.LOGMESSAGE || op == Operations.LOGMESSAGES;
+  }
+
+  /**
+   * Reserves every key of a transaction, or none of them if any key is held by a transaction it
+   * conflicts with
+   *
+   * @param t the transaction being voted on
+   * @return true if every key was reserved
+   */
+  public boolean reserve(Transaction t) {
+    boolean log = isLogOperation(t.getOp());
+    int index = t.getTransactionIndex();
+    List<String> reserved = new ArrayList<>();
+    for (String key : t.getKeys()) {
+      boolean[] granted = new boolean[1];
+      keys.compute(key, (k, r) -> {
+        KeyReservation reservation = r == null ? new KeyReservation() : r;
+        if (reservation.exclusive >= 0 && reservation.exclusive != index) {
+          return r;
+        }
+        if (log) {
+          reservation.queue.add(index);
+        } else if (reservation.queue.isEmpty()) {
+          reservation.exclusive = index;
+        } else {
+          return r;
+        }
+        granted[0] = true;
+        return reservation;
+      });
+      if (!granted[0]) {
+        release(t, reserved);
+        return false;
+      }
+      reserved.add(key);
+    }
+    return true;
+  }
+
+  /**
+   * Releases every key reserved by a transaction that has committed or aborted
+   *
+   * @param t the finished transaction
+   */
+  public void release(Transaction t) {
+    release(t, t.getKeys());
+  }
+
+  /**
+   * Releases some of the keys reserved by a transaction
+   *
+   * @param t the transaction
+   * @param toRelease the keys to release
+   */
+  private void release(Transaction t, Iterable<String> toRelease) {
+    int index = t.getTransactionIndex();
+    for (String key : toRelease) {
+      keys.computeIfPresent(key, (k, reservation) -> {
+        if (reservation.exclusive == index) {
+          reservation.exclusive = -1;
+        }
+        reservation.queue.remove(index);
+        return reservation.isEmpty() ? null : reservation;
+      });
+    }
+  }
+
+  /**
+   * Whether every earlier chat log transaction queued on the keys of a transaction has finished
+   *
+   * @param t the chat log transaction about to commit
+   * @return true if the transaction may commit
+   */
+  public boolean isTurn(Transaction t) {
+    int index = t.getTransactionIndex();
+    for (String key : t.getKeys()) {
+      KeyReservation reservation = keys.get(key);
+      // a transaction that is not queued, such as one repeated by the decision timer, does not
+      // wait on other transactions
+      if (reservation == null || !reservation.queue.contains(index)) {
+        continue;
+      }
+      // the queue holds this transaction, so its first index is at most this one's
+      Iterator<Integer> queued = reservation.queue.iterator();
+      if (queued.hasNext() && queued.next() != index) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Removes the chat log transactions queued ahead of a transaction that are no longer in flight,
+   * such as one whose commit failed part way, so they stop holding up the transaction
+   *
+   * @param t the chat log transaction waiting for its turn
+   * @param inFlight the indices of the transactions still in flight
+   * @return the number of queue entries removed
+   */
+  public int releaseAbandoned(Transaction t, Set<Integer> inFlight) {
+    int index = t.getTransactionIndex();
+    int[] removed = new int[1];
+    for (String key : t.getKeys()) {
+      keys.computeIfPresent(key, (k, reservation) -> {
+        Iterator<Integer> queued = reservation.queue.headSet(index).iterator();
+        while (queued.hasNext()) {
+          if (!inFlight.contains(queued.next())) {
+            queued.remove();
+            removed[0]++;
+          }
+        }
+        return reservation.isEmpty() ? null : reservation;
+      });
+    }
+    return removed[0];
+  }
+
+  /**
+   * Gets the number of keys held by in-flight transactions
+   *
+   * @return the number of reserved keys
+   */
+  public int size() {
+    return keys.size();
+  }
+}
@@ -0,0 +1,265 @@
+package dataserver;
+
+import data.Operations;
+import data.Transaction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import util.ThreadSafeStringFormatter;
+
+/**
+ * Microbenchmark for voting on transactions at a data participant. Holds a number of in-flight
+ * transactions, then has several threads vote on and release further transactions, once against
+ * the key-indexed InFlightTable and once against a scan of every in-flight transaction as votes
+ * were checked before. Also checks that concurrent votes on the same new user grant it once.
+ * All output is printed to console for manual verification.
+ *
+ * <p>Usage: java -cp chatroom.jar dataserver.InFlightTableBenchmark &lt;in-flight transactions&gt;
+ * &lt;votes per thread&gt; &lt;threads&gt;
+ */
+public class InFlightTableBenchmark {
+
+  // chat log transactions are spread over this many chatrooms
+  private static final int CHATROOMS = 1000;
+  // one in this many transactions creates a user instead of logging a message
+  private static final int USER_EVERY = 10;
+
+  /**
+   * Runs the benchmark
+   *
+   * @param inFlightCount the number of transactions held in flight while votes are taken
+   * @param votes the number of votes taken by each thread
+   * @param threads the number of threads voting at once
+   * @throws InterruptedException if the benchmark is interrupted while waiting for voters
+   */
+  public void go(int inFlightCount, int votes, int threads) throws InterruptedException {
+    System.out.println(ThreadSafeStringFormatter.format(
+        "%d in-flight transactions, %d threads taking %d votes each",
+        inFlightCount,
+        threads,
+        votes
+        ));
+
+    List<Transaction> inFlight = new ArrayList<>();
+    for (int i = 0; i < inFlightCount; i++) {
+      inFlight.add(transaction(i, "held"));
+    }
+    List<List<Transaction>> voted = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      List<Transaction> mine = new ArrayList<>();
+      for (int i = 0; i < votes; i++) {
+        mine.add(transaction(i, "voter" + t + "-"));
+      }
+      voted.add(mine);
+    }
+
+    InFlightTable table = new InFlightTable();
+    for (Transaction t : inFlight) {
+      table.reserve(t);
+    }
+    long tableNanos = run(voted, t -> {
+      if (table.reserve(t)) {
+        table.release(t);
+        return true;
+      }
+      return false;
+    });
+
+    Map<Integer, Transaction> transactionMap = Collections.synchronizedMap(new HashMap<>());
+    for (Transaction t : inFlight) {
+      transactionMap.put(t.getTransactionIndex(), t);
+    }
+    long scanNanos = run(voted, t -> {
+      if (scanVote(transactionMap, t)) {
+        transactionMap.remove(t.getTransactionIndex());
+        return true;
+      }
+      return false;
+    });
+
+    long total = (long) votes * threads;
+    System.out.println();
+    System.out.println(ThreadSafeStringFormatter.format(
+        "%-16s %14s %12s",
+        "Vote check",
+        "Votes/s",
+        "ns/vote"
+        ));
+    System.out.println(ThreadSafeStringFormatter.format(
+        "%-16s %14.0f %12d",
+        "key-indexed",
+        total * 1e9 / tableNanos,
+        tableNanos / total
+        ));
+    System.out.println(ThreadSafeStringFormatter.format(
+        "%-16s %14.0f %12d",
+        "scan",
+        total * 1e9 / scanNanos,
+        scanNanos / total
+        ));
+
+    checkExclusive(table, threads);
+  }
+
+  /**
+   * Creates a transaction that logs a message to one of the chatrooms or, for one in USER_EVERY,
+   * creates a user
+   *
+   * @param i number of the transaction
+   * @param prefix prefix of the names of the users created, to keep them unique
+   * @return the transaction
+   */
+  private static Transaction transaction(int i, String prefix) {
+    if (i % USER_EVERY == 0) {
+      return new Transaction(Operations.CREATEUSER, prefix + "user" + i, "password");
+    }
+    return new Transaction(Operations.LOGMESSAGE, "benchroom" + (i % CHATROOMS), "message " + i);
+  }
+
+  /**
+   * Votes on a transaction by scanning every in-flight transaction, as votes were checked before
+   * the key-indexed table
+   *
+   * @param transactionMap the in-flight transactions
+   * @param t the transaction being voted on
+   * @return true if the transaction was added to the in-flight transactions
+   */
+  private static boolean scanVote(Map<Integer, Transaction> transactionMap, Transaction t) {
+    synchronized (transactionMap) {
+      for (Transaction tx : transactionMap.values()) {
+        if (!Collections.disjoint(tx.getKeys(), t.getKeys())
+            && !(InFlightTable.isLogOperation(t.getOp())
+                && InFlightTable.isLogOperation(tx.getOp()))) {
+          return false;
+        }
+      }
+      transactionMap.put(t.getTransactionIndex(), t);
+      return true;
+    }
+  }
+
+  /**
+   * A way of voting on a transaction and releasing it again
+   */
+  private interface Voter {
+    /**
+     * Votes on a transaction, releasing it again if it was granted
+     *
+     * @param t the transaction
+     * @return true if the vote was YES
+     */
+    boolean vote(Transaction t);
+  }
+
+  /**
+   * Has every thread vote on its transactions at once
+   *
+   * @param voted the transactions each thread votes on
+   * @param voter how a vote is taken
+   * @return the time taken by all threads in nanoseconds
+   * @throws InterruptedException if the benchmark is interrupted while waiting for voters
+   */
+  private static long run(List<List<Transaction>> voted, Voter voter)
+      throws InterruptedException {
+    CountDownLatch release = new CountDownLatch(1);
+    List<Thread> voters = new ArrayList<>();
+    for (List<Transaction> mine : voted) {
+      Thread t = new Thread(() -> {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (Transaction tx : mine) {
+          voter.vote(tx);
+        }
+      });
+      voters.add(t);
+      t.start();
+    }
+    long start = System.nanoTime();
+    release.countDown();
+    for (Thread t : voters) {
+      t.join();
+    }
+    return Math.max(1, System.nanoTime() - start);
+  }
+
+  /**
+   * Has every thread vote at once on its own transaction creating the same user, and checks that
+   * exactly one vote is YES
+   *
+   * @param table the in-flight table
+   * @param threads the number of threads voting
+   * @throws InterruptedException if the benchmark is interrupted while waiting for voters
+   */
+  private static void checkExclusive(InFlightTable table, int threads)
+      throws InterruptedException {
+    int rounds = 1000;
+    int failures = 0;
+    for (int round = 0; round < rounds; round++) {
+      List<List<Transaction>> voted = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        voted.add(Collections.singletonList(
+            new Transaction(Operations.CREATEUSER, "contended" + round, "password")));
+      }
+      AtomicInteger granted = new AtomicInteger();
+      run(voted, t -> {
+        if (table.reserve(t)) {
+          granted.incrementAndGet();
+          return true;
+        }
+        return false;
+      });
+      if (granted.get() != 1) {
+        failures++;
+      }
+    }
+    System.out.println();
+    System.out.println(ThreadSafeStringFormatter.format(
+        "Contended user creation: %d of %d rounds granted exactly one vote",
+        rounds - failures,
+        rounds
+        ));
+  }
+
+  /**
+   * Starts the benchmark
+   *
+   * @param args &lt;in-flight transactions&gt; &lt;votes per thread&gt; &lt;threads&gt;
+   */
+  public static void main(String[] args) {
+    if (args.length != 3) {
+      System.out.println("Expected 3 arguments <in-flight transactions> <votes per thread> "
+          + "<threads>");
+      return;
+    }
+
+    int[] values = new int[args.length];
+    for (int i = 0; i < args.length; i++) {
+      try {
+        values[i] = Integer.parseInt(args[i]);
+      } catch (NumberFormatException e) {
+        System.out.println(ThreadSafeStringFormatter.format(
+            "Received illegal argument, must be int, received \"%s\"",
+            args[i]
+            ));
+        return;
+      }
+    }
+
+    try {
+      new InFlightTableBenchmark().go(values[0], values[1], values[2]);
+    } catch (InterruptedException e) {
+      System.out.println(ThreadSafeStringFormatter.format(
+          "Benchmark failed with message: \"%s\"",
+          e.getMessage()
+          ));
+    }
+    System.exit(0);
+  }
+}
@@ -0,0 +1,63 @@
+package dataserver;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A data participant run inside the process of a stress test or benchmark, with its stores in
+ * the directory files_&lt;id&gt; and every tuning value at the data server's default
+ */
+public class InProcessParticipant {
+
+  private final ChatLogStore chatLogStore;
+  private final ParticipantOperations participant;
+
+  /**
+   * Recovers the participant's stores and creates the participant
+   *
+   * @param id unique id of the participant, naming the directory holding its stores
+   * @param coordinatorPort port of the registry holding the coordinator
+   * @param participantPort port of the registry the participant is bound to
+   * @throws IOException if the participant's stores cannot be recovered
+   */
+  public InProcessParticipant(String id, int coordinatorPort, int participantPort)
+      throws IOException {
+    ServerInfo serverInfo = ServerInfo.withDefaults(id, "localhost", coordinatorPort,
+        "localhost", 0, participantPort);
+    this.chatLogStore = new ChatLogStore(new File("files_" + id + "/chatlogs"),
+        serverInfo.getSegmentBytes(), serverInfo.getSegmentRollMs(), serverInfo.getDurability(),
+        serverInfo.getFlushIntervalMs(), serverInfo.getFlushRecords());
+    chatLogStore.recover();
+    chatLogStore.start();
+    KeyValueStore userStore = new KeyValueStore("users", new File("files_" + id + "/users"),
+        false, serverInfo.getCompactRecords(), serverInfo.getSnapshotIntervalMs());
+    userStore.recover();
+    KeyValueStore chatroomStore = new KeyValueStore("chatrooms",
+        new File("files_" + id + "/chatrooms"), false, serverInfo.getCompactRecords(),
+        serverInfo.getSnapshotIntervalMs());
+    chatroomStore.recover();
+    DataOperations operationsEngine = new DataOperations(userStore, new Object(),
+        chatroomStore, new Object(), serverInfo, chatLogStore);
+    this.participant = new ParticipantOperations("localhost", coordinatorPort, id,
+        operationsEngine, serverInfo.getDecisionTimeoutMs(), serverInfo.getDecisionTickMs(),
+        serverInfo.getDecisionAttempts());
+  }
+
+  /**
+   * Gets the participant's chat log store
+   *
+   * @return the chat log store
+   */
+  public ChatLogStore getChatLogStore() {
+    return chatLogStore;
+  }
+
+  /**
+   * Gets the participant, to be bound to the participant registry
+   *
+   * @return the participant
+   */
+  public ParticipantOperations getParticipant() {
+    return participant;
+  }
+}
@@ -0,0 +1,238 @@
+package dataserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+import util.ThreadSafeStringFormatter;
+
+/**
+ * Binary snapshot of the entries of a KeyValueStore. Entries are written in chunks of about
+ * CHUNK_BYTES, each checked by its own CRC32, and a table of the chunks is written after them so
+ * the chunks can be memory-mapped and parsed on several threads at once. The file is laid out as:
+ * <pre>
+ * chunks   repeated int key length, UTF-8 key, int value length, UTF-8 value
+ * table    per chunk: long offset, int length, int CRC32, int entries
+ * trailer  long table offset, long entries, int chunks, int MAGIC
+ * </pre>
+ */
+public class KeyValueSnapshot {
+
+  // identifies a chunked snapshot; snapshots without it hold log records
+  static final int MAGIC = 0x4b565331;
+  static final int TRAILER_BYTES = 24;
+  // target size of a chunk; a larger entry gets a chunk of its own
+  private static final int CHUNK_BYTES = 1 << 20;
+  private static final int TABLE_ENTRY_BYTES = 20;
+
+  /**
+   * Whether a file is a chunked snapshot
+   *
+   * @param channel the open file
+   * @return true if the file ends with a chunked snapshot trailer
+   * @throws IOException if the file cannot be read
+   */
+  public static boolean isChunked(FileChannel channel) throws IOException {
+    long size = channel.size();
+    if (size < TRAILER_BYTES) {
+      return false;
+    }
+    ByteBuffer trailer = ByteBuffer.allocate(4);
+    channel.read(trailer, size - 4);
+    trailer.flip();
+    return trailer.remaining() == 4 && trailer.getInt() == MAGIC;
+  }
+
+  /**
+   * Writes entries to a new snapshot file. The entries may change while they are written.
+   *
+   * @param path the file to write
+   * @param entries the entries to write
+   * @return the number of entries written
+   * @throws IOException if the file cannot be written
+   */
+  public static long write(Path path, Map<String, String> entries) throws IOException {
+    List<long[]> table = new ArrayList<>();
+    long written = 0;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      ByteBuffer chunk = ByteBuffer.allocate(CHUNK_BYTES);
+      int chunkEntries = 0;
+      long offset = 0;
+      for (Map.Entry<String, String> entry : entries.entrySet()) {
+        byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+        byte[] value = entry.getValue().getBytes(StandardCharsets.UTF_8);
+        int length = 8 + key.length + value.length;
+        if (length > chunk.remaining() && chunkEntries > 0) {
+          offset += writeChunk(channel, chunk, chunkEntries, offset, table);
+          chunkEntries = 0;
+        }
+        if (length > chunk.capacity()) {
+          chunk = ByteBuffer.allocate(length);
+        }
+        chunk.putInt(key.length).put(key).putInt(value.length).put(value);
+        chunkEntries++;
+        written++;
+      }
+      if (chunkEntries > 0) {
+        offset += writeChunk(channel, chunk, chunkEntries, offset, table);
+      }
+
+      ByteBuffer footer = ByteBuffer.allocate(table.size() * TABLE_ENTRY_BYTES + TRAILER_BYTES);
+      for (long[] t : table) {
+        footer.putLong(t[0]).putInt((int) t[1]).putInt((int) t[2]).putInt((int) t[3]);
+      }
+      footer.putLong(offset).putLong(written).putInt(table.size()).putInt(MAGIC);
+      footer.flip();
+      while (footer.hasRemaining()) {
+        channel.write(footer);
+      }
+      channel.force(true);
+    }
+    return written;
+  }
+
+  /**
+   * Writes a filled chunk and records it in the table, then empties the chunk buffer
+   *
+   * @param channel the snapshot file
+   * @param chunk the chunk buffer
+   * @param chunkEntries the number of entries in the chunk
+   * @param offset offset of the chunk in the file
+   * @param table the table the chunk is recorded in
+   * @return the length of the chunk
+   * @throws IOException if the chunk cannot be written
+   */
+  private static int writeChunk(FileChannel channel, ByteBuffer chunk, int chunkEntries,
+      long offset, List<long[]> table) throws IOException {
+    chunk.flip();
+    int length = chunk.remaining();
+    CRC32 crc = new CRC32();
+    crc.update(chunk.array(), 0, length);
+    while (chunk.hasRemaining()) {
+      channel.write(chunk);
+    }
+    chunk.clear();
+    table.add(new long[] {offset, length, (int) crc.getValue(), chunkEntries});
+    return length;
+  }
+
+  /**
+   * Reads a snapshot, memory-mapping its chunks and parsing them on several threads at once
+   *
+   * @param channel the open snapshot file
+   * @param threads the most threads parsing chunks
+   * @return the entries, in a map sized for them
+   * @throws IOException if the file cannot be read or a chunk fails its check
+   */
+  public static Map<String, String> read(FileChannel channel, int threads) throws IOException {
+    long size = channel.size();
+    ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+    channel.read(trailer, size - TRAILER_BYTES);
+    trailer.flip();
+    long tableOffset = trailer.getLong();
+    long entryCount = trailer.getLong();
+    int chunks = trailer.getInt();
+
+    ByteBuffer table = ByteBuffer.allocate(chunks * TABLE_ENTRY_BYTES);
+    channel.read(table, tableOffset);
+    table.flip();
+    if (table.remaining() != chunks * TABLE_ENTRY_BYTES) {
+      throw new IOException("Snapshot chunk table is incomplete");
+    }
+
+    Map<String, String> entries = new ConcurrentHashMap<>(
+        (int) Math.min(Integer.MAX_VALUE, entryCount * 4 / 3 + 16), 0.75f, threads);
+    AtomicInteger nextChunk = new AtomicInteger();
+    AtomicReference<IOException> error = new AtomicReference<>();
+    Runnable parser = () -> {
+      int i;
+      while (error.get() == null && (i = nextChunk.getAndIncrement()) < chunks) {
+        try {
+          readChunk(channel, table, i, entries);
+        } catch (IOException e) {
+          error.compareAndSet(null, e);
+        }
+      }
+    };
+
+    List<Thread> parsers = new ArrayList<>();
+    for (int t = 1; t < Math.min(threads, chunks); t++) {
+      Thread thread = new Thread(parser, "KeyValueSnapshotParser-" + t);
+      parsers.add(thread);
+      thread.start();
+    }
+    parser.run();
+    for (Thread thread : parsers) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while reading snapshot");
+      }
+    }
+
+    if (error.get() != null) {
+      throw error.get();
+    }
+    if (entries.size() != entryCount) {
+      throw new IOException(ThreadSafeStringFormatter.format(
+          "Snapshot holds %d entries, expected %d",
+          entries.size(),
+          entryCount
+          ));
+    }
+    return entries;
+  }
+
+  /**
+   * Maps one chunk, checks its CRC and parses its entries
+   *
+   * @param channel the open snapshot file
+   * @param table the chunk table
+   * @param index index of the chunk in the table
+   * @param entries map the entries are added to
+   * @throws IOException if the chunk cannot be read or fails its check
+   */
+  private static void readChunk(FileChannel channel, ByteBuffer table, int index,
+      Map<String, String> entries) throws IOException {
+    int base = index * TABLE_ENTRY_BYTES;
+    long offset = table.getLong(base);
+    int length = table.getInt(base + 8);
+    int expected = table.getInt(base + 12);
+    int count = table.getInt(base + 16);
+
+    MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    byte[] bytes = new byte[length];
+    mapped.get(bytes);
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    if ((int) crc.getValue() != expected) {
+      throw new IOException(ThreadSafeStringFormatter.format(
+          "Snapshot chunk %d failed its CRC check",
+          index
+          ));
+    }
+
+    ByteBuffer chunk = ByteBuffer.wrap(bytes);
+    for (int i = 0; i < count; i++) {
+      int keyLength = chunk.getInt();
+      String key = new String(bytes, chunk.position(), keyLength, StandardCharsets.UTF_8);
+      chunk.position(chunk.position() + keyLength);
+      int valueLength = chunk.getInt();
+      String value = new String(bytes, chunk.position(), valueLength, StandardCharsets.UTF_8);
+      chunk.position(chunk.position() + valueLength);
+      entries.put(key, value);
+    }
+  }
+}
@@ -0,0 +1,616 @@
+package dataserver;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import util.CristiansLogger;
+import util.ThreadSafeStringFormatter;
+
+/**
+ * Log-structured store of string keys and values held in memory and on disk. Every put and delete
+ * is appended to a log as a record, a delete as a tombstone, so a write costs the same however
+ * many entries the store holds. Once the log has grown past both the compaction threshold and the
+ * number of live entries, or the last snapshot is older than the snapshot interval, the store
+ * compacts: it starts a new log generation and writes the live entries to a KeyValueSnapshot in
+ * the background, after which the older snapshot and logs are deleted. Recovery loads the newest
+ * snapshot, parsing it on several threads, and replays the logs written after it.
+ *
+ * <p>Files of generation G are snapshot-G, holding every entry as of the start of log-G, and
+ * log-G. Each log record is stored as:
+ * <pre>
+ * int   length of the payload
+ * int   CRC32 of the payload
+ * byte  PUT or DELETE
+ * int   length of the key
+ * bytes UTF-8 key
+ * bytes UTF-8 value, empty for a delete
+ * </pre>
+ * Snapshots written before snapshots were chunked hold PUT records in the same format.
+ */
+public class KeyValueStore {
+
+  // default number of log records after which the store compacts
+  public static final long DEFAULT_COMPACT_RECORDS = 100000;
+  // default age in milliseconds of the last snapshot after which a write starts a compaction
+  public static final long DEFAULT_SNAPSHOT_INTERVAL_MS = 5 * 60 * 1000;
+  private static final byte PUT = 1;
+  private static final byte DELETE = 2;
+  // length and CRC preceding each payload
+  private static final int HEADER_BYTES = 8;
+  // the longest payload accepted when scanning a file
+  private static final int MAX_RECORD_BYTES = 1 << 20;
+  private static final String SNAPSHOT_PREFIX = "snapshot-";
+  private static final String LOG_PREFIX = "log-";
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private final String name;
+  private final File dir;
+  private final boolean sync;
+  private final long compactRecords;
+  private final long snapshotIntervalMs;
+  // replaced by recovery with a map sized for the snapshot
+  private Map<String, String> entries;
+
+  // log state, guarded by writeLock
+  private final Object writeLock;
+  private FileChannel log;
+  private long generation;
+  private long logRecords;
+  private long lastSnapshotAt;
+  private boolean compacting;
+
+  /**
+   * Creates an instance of the KeyValueStore. The store is empty until it is recovered.
+   *
+   * @param name name of the store, used in log messages and thread names
+   * @param dir directory holding the store's snapshots and logs
+   * @param sync whether each write is forced to disk before it returns
+   * @param compactRecords the number of log records after which the store compacts, once the log
+   *                       also holds more records than there are live entries
+   * @param snapshotIntervalMs the age in milliseconds of the last snapshot after which a write
+   *                           starts a compaction, or 0 to compact by log size only
+   */
+  public KeyValueStore(String name, File dir, boolean sync, long compactRecords,
+      long snapshotIntervalMs) {
+    this.name = name;
+    this.dir = dir;
+    this.sync = sync;
+    this.compactRecords = compactRecords;
+    this.snapshotIntervalMs = snapshotIntervalMs;
+    this.entries = new ConcurrentHashMap<>();
+    this.writeLock = new Object();
+    this.generation = 0;
+    this.logRecords = 0;
+    this.lastSnapshotAt = System.currentTimeMillis();
+    this.compacting = false;
+  }
+
+  /**
+   * Loads the newest snapshot and replays every log written after it, then opens the newest log
+   * for appending. Records torn by a crash at the end of the newest log are cut off.
+   *
+   * @return the number of live entries
+   * @throws IOException if the directory cannot be created or a file cannot be read
+   */
+  public int recover() throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException(ThreadSafeStringFormatter.format(
+          "Unable to create store directory \"%s\"",
+          dir.getPath()
+          ));
+    }
+
+    long snapshotGeneration = 0;
+    List<Long> logGenerations = new ArrayList<>();
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        String fileName = f.getName();
+        if (fileName.endsWith(TEMP_SUFFIX)) {
+          // a snapshot cut short by a crash; the logs it would have replaced are still present
+          f.delete();
+        } else if (fileName.startsWith(SNAPSHOT_PREFIX)) {
+          snapshotGeneration = Math.max(snapshotGeneration,
+              parseGeneration(fileName, SNAPSHOT_PREFIX));
+        } else if (fileName.startsWith(LOG_PREFIX)) {
+          logGenerations.add(parseGeneration(fileName, LOG_PREFIX));
+        }
+      }
+    }
+    logGenerations.sort(null);
+
+    synchronized (writeLock) {
+      entries = new ConcurrentHashMap<>();
+      if (snapshotGeneration > 0) {
+        File snapshotFile = file(SNAPSHOT_PREFIX, snapshotGeneration);
+        try (FileChannel snapshot = FileChannel.open(snapshotFile.toPath(),
+            StandardOpenOption.READ)) {
+          if (KeyValueSnapshot.isChunked(snapshot)) {
+            entries = KeyValueSnapshot.read(snapshot,
+                Runtime.getRuntime().availableProcessors());
+          } else if (replay(snapshot, false) > 0) {
+            throw new IOException(ThreadSafeStringFormatter.format(
+                "Snapshot \"%s\" is damaged",
+                snapshotFile.getPath()
+                ));
+          }
+        }
+        lastSnapshotAt = snapshotFile.lastModified();
+      }
+
+      generation = Math.max(1, snapshotGeneration);
+      logRecords = 0;
+      for (int i = 0; i < logGenerations.size(); i++) {
+        long g = logGenerations.get(i);
+        if (g < snapshotGeneration) {
+          // covered by the snapshot; left behind by a crash before it could be deleted
+          file(LOG_PREFIX, g).delete();
+          continue;
+        }
+        boolean newest = i == logGenerations.size() - 1;
+        FileChannel channel = FileChannel.open(file(LOG_PREFIX, g).toPath(),
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long discarded = replay(channel, newest);
+        if (discarded > 0) {
+          CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+              "%s %d bytes after the last intact record of \"%s\"",
+              newest ? "Truncated" : "Unable to read",
+              discarded,
+              file(LOG_PREFIX, g).getPath()
+              ));
+        }
+        if (newest) {
+          log = channel;
+          generation = g;
+        } else {
+          channel.close();
+        }
+      }
+      if (log == null) {
+        log = openLog(generation);
+      }
+      log.position(log.size());
+    }
+    return entries.size();
+  }
+
+  /**
+   * Gets the generation number from the name of a snapshot or log
+   *
+   * @param fileName name of the file
+   * @param prefix prefix of the file's kind
+   * @return the generation of the file
+   * @throws IOException if the name does not hold a generation
+   */
+  private long parseGeneration(String fileName, String prefix) throws IOException {
+    try {
+      return Long.parseLong(fileName.substring(prefix.length()));
+    } catch (NumberFormatException e) {
+      throw new IOException(ThreadSafeStringFormatter.format(
+          "Unrecognized file \"%s\" in store \"%s\"",
+          fileName,
+          name
+          ));
+    }
+  }
+
+  /**
+   * Gets the snapshot or log of a generation
+   *
+   * @param prefix prefix of the file's kind
+   * @param generation generation of the file
+   * @return the file
+   */
+  private File file(String prefix, long generation) {
+    return new File(dir, ThreadSafeStringFormatter.format(
+        "%s%020d",
+        prefix,
+        generation
+        ));
+  }
+
+  /**
+   * Opens the log of a generation for appending, creating it if it does not exist
+   *
+   * @param generation generation of the log
+   * @return the log's channel
+   * @throws IOException if the log cannot be opened
+   */
+  private FileChannel openLog(long generation) throws IOException {
+    return FileChannel.open(file(LOG_PREFIX, generation).toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+  }
+
+  /**
+   * Applies every intact record of a snapshot or log to the entries, in order. Counts the
+   * records toward compaction if the file is a log.
+   *
+   * @param channel the file to replay
+   * @param truncate true to cut the file off after the last intact record
+   * @return the number of bytes after the last intact record
+   * @throws IOException if the file cannot be read
+   */
+  private long replay(FileChannel channel, boolean truncate) throws IOException {
+    long fileSize = channel.size();
+    long position = 0;
+    if (fileSize > 0) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+      CRC32 crc = new CRC32();
+      while (fileSize - position >= HEADER_BYTES) {
+        int length = buffer.getInt((int) position);
+        if (length < 5 || length > MAX_RECORD_BYTES
+            || position + HEADER_BYTES + length > fileSize) {
+          break;
+        }
+        int expected = buffer.getInt((int) position + 4);
+        byte[] payload = new byte[length];
+        buffer.get((int) position + HEADER_BYTES, payload);
+        crc.reset();
+        crc.update(payload);
+        if ((int) crc.getValue() != expected) {
+          break;
+        }
+        apply(ByteBuffer.wrap(payload));
+        position += HEADER_BYTES + length;
+      }
+    }
+
+    long discarded = fileSize - position;
+    if (truncate && discarded > 0) {
+      channel.truncate(position);
+    }
+    return discarded;
+  }
+
+  /**
+   * Applies a record's payload to the entries and counts it toward compaction
+   *
+   * @param payload the record's payload
+   */
+  private void apply(ByteBuffer payload) {
+    byte op = payload.get();
+    int keyLength = payload.getInt();
+    String key = new String(payload.array(), payload.position(), keyLength,
+        StandardCharsets.UTF_8);
+    int valueOffset = payload.position() + keyLength;
+    if (op == PUT) {
+      entries.put(key, new String(payload.array(), valueOffset,
+          payload.limit() - valueOffset, StandardCharsets.UTF_8));
+    } else {
+      entries.remove(key);
+    }
+    logRecords++;
+  }
+
+  /**
+   * Encodes a put or delete as a record
+   *
+   * @param op PUT or DELETE
+   * @param key the key written
+   * @param value the value put, or null for a delete
+   * @return the record, ready to be written
+   */
+  private static ByteBuffer encode(byte op, String key, String value) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    byte[] valueBytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    int length = 1 + 4 + keyBytes.length + valueBytes.length;
+    ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + length);
+    record.putInt(length);
+    record.putInt(0);
+    record.put(op);
+    record.putInt(keyBytes.length);
+    record.put(keyBytes);
+    record.put(valueBytes);
+    CRC32 crc = new CRC32();
+    crc.update(record.array(), HEADER_BYTES, length);
+    record.putInt(4, (int) crc.getValue());
+    record.flip();
+    return record;
+  }
+
+  /**
+   * Writes a record to the end of a file
+   *
+   * @param channel the file to write to
+   * @param record the encoded record
+   * @throws IOException if the record cannot be written
+   */
+  private static void write(FileChannel channel, ByteBuffer record) throws IOException {
+    while (record.hasRemaining()) {
+      channel.write(record);
+    }
+  }
+
+  /**
+   * Gets the value of a key
+   *
+   * @param key the key to look up
+   * @return the key's value, or null if it is not in the store
+   */
+  public String get(String key) {
+    return entries.get(key);
+  }
+
+  /**
+   * Whether a key is in the store
+   *
+   * @param key the key to look up
+   * @return true if the key has a value
+   */
+  public boolean containsKey(String key) {
+    return entries.containsKey(key);
+  }
+
+  /**
+   * Gets the keys in the store. The set reflects later writes.
+   *
+   * @return the keys in the store
+   */
+  public Set<String> keySet() {
+    return entries.keySet();
+  }
+
+  /**
+   * Gets the number of live entries
+   *
+   * @return the number of keys in the store
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Sets the value of a key, appending the put to the log
+   *
+   * @param key the key to set
+   * @param value the key's new value
+   * @throws IOException if the put cannot be written to the log
+   */
+  public void put(String key, String value) throws IOException {
+    append(encode(PUT, key, value), () -> entries.put(key, value));
+  }
+
+  /**
+   * Removes a key, appending a tombstone to the log
+   *
+   * @param key the key to remove
+   * @throws IOException if the tombstone cannot be written to the log
+   */
+  public void delete(String key) throws IOException {
+    append(encode(DELETE, key, null), () -> entries.remove(key));
+  }
+
+  /**
+   * Appends a record to the log, then applies it in memory. Starts a compaction if the log has
+   * grown large enough.
+   *
+   * @param record the encoded record
+   * @param update applies the record to the entries
+   * @throws IOException if the record cannot be written to the log
+   */
+  private void append(ByteBuffer record, Runnable update) throws IOException {
+    synchronized (writeLock) {
+      write(log, record);
+      if (sync) {
+        log.force(false);
+      }
+      update.run();
+      logRecords++;
+      if (!compacting && ((logRecords >= compactRecords && logRecords >= entries.size())
+          || (snapshotIntervalMs > 0
+              && System.currentTimeMillis() - lastSnapshotAt >= snapshotIntervalMs))) {
+        startCompaction();
+      }
+    }
+  }
+
+  /**
+   * Moves appends to a new log generation and writes the entries to the matching snapshot on a
+   * background thread. Must be called holding writeLock.
+   *
+   * @throws IOException if the new log cannot be opened
+   */
+  private void startCompaction() throws IOException {
+    long snapshotGeneration = rollLog();
+    compacting = true;
+    Thread t = new Thread(() -> {
+      try {
+        writeSnapshot(snapshotGeneration);
+      } catch (IOException e) {
+        CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+            "Unable to compact store \"%s\": \"%s\"",
+            name,
+            e.getMessage()
+            ));
+      } finally {
+        synchronized (writeLock) {
+          compacting = false;
+          writeLock.notifyAll();
+        }
+      }
+    }, "KeyValueStoreCompactor-" + name);
+    t.start();
+  }
+
+  /**
+   * Closes the current log and opens the next generation for appending. Must be called holding
+   * writeLock.
+   *
+   * @return the generation of the new log
+   * @throws IOException if the new log cannot be opened
+   */
+  private long rollLog() throws IOException {
+    FileChannel next = openLog(generation + 1);
+    log.force(false);
+    log.close();
+    log = next;
+    generation++;
+    logRecords = 0;
+    return generation;
+  }
+
+  /**
+   * Writes every entry to the snapshot of a generation, then deletes the older snapshot and logs.
+   * Writes made while the snapshot is written may or may not be in it; they are all in the
+   * generation's log, which is replayed over the snapshot, so recovery reaches the same entries.
+   *
+   * @param snapshotGeneration generation of the snapshot, whose log was opened before it began
+   * @throws IOException if the snapshot cannot be written
+   */
+  private void writeSnapshot(long snapshotGeneration) throws IOException {
+    long start = System.currentTimeMillis();
+    File snapshot = file(SNAPSHOT_PREFIX, snapshotGeneration);
+    File temp = new File(snapshot.getPath() + TEMP_SUFFIX);
+    long written = KeyValueSnapshot.write(temp.toPath(), entries);
+    Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        String fileName = f.getName();
+        if ((fileName.startsWith(SNAPSHOT_PREFIX) && !fileName.endsWith(TEMP_SUFFIX)
+            && parseGeneration(fileName, SNAPSHOT_PREFIX) < snapshotGeneration)
+            || (fileName.startsWith(LOG_PREFIX)
+            && parseGeneration(fileName, LOG_PREFIX) < snapshotGeneration)) {
+          f.delete();
+        }
+      }
+    }
+    synchronized (writeLock) {
+      lastSnapshotAt = start;
+    }
+    CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+        "Compacted store \"%s\" to %d entries in %d ms",
+        name,
+        written,
+        System.currentTimeMillis() - start
+        ));
+  }
+
+  /**
+   * Writes the store's entries to a new snapshot, waiting for it to be written
+   *
+   * @throws IOException if the snapshot cannot be written
+   */
+  public void compact() throws IOException {
+    long snapshotGeneration;
+    synchronized (writeLock) {
+      while (compacting) {
+        try {
+          writeLock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while waiting for compaction");
+        }
+      }
+      snapshotGeneration = rollLog();
+      compacting = true;
+    }
+    try {
+      writeSnapshot(snapshotGeneration);
+    } finally {
+      synchronized (writeLock) {
+        compacting = false;
+        writeLock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Imports the entries of a text file written by earlier versions of the data server, one
+   * key:value line per entry, then renames the file so it is not imported again. Lines are
+   * split at the first colon. The imported entries are written straight to a snapshot. A store
+   * that already holds entries finished an import cut short before the rename, so the file is
+   * only renamed.
+   *
+   * @param textFile the text file
+   * @return the number of lines imported
+   * @throws IOException if the text file cannot be read or the snapshot cannot be written
+   */
+  public long importTextFile(File textFile) throws IOException {
+    long imported = 0;
+    if (entries.isEmpty()) {
+      imported = readTextFile(textFile);
+      compact();
+    }
+
+    File done = new File(textFile.getPath() + ".imported");
+    if (!textFile.renameTo(done)) {
+      CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+          "Unable to rename imported file \"%s\"",
+          textFile.getPath()
+          ));
+    }
+    return imported;
+  }
+
+  /**
+   * Reads the key:value lines of a text file into the entries
+   *
+   * @param textFile the text file
+   * @return the number of lines read
+   * @throws IOException if the text file cannot be read
+   */
+  private long readTextFile(File textFile) throws IOException {
+    long imported = 0;
+    try (BufferedReader br = new BufferedReader(new FileReader(textFile))) {
+      String line;
+      while ((line = br.readLine()) != null) {
+        int separator = line.indexOf(':');
+        if (separator < 0) {
+          continue;
+        }
+        entries.put(line.substring(0, separator), line.substring(separator + 1));
+        imported++;
+      }
+    }
+    return imported;
+  }
+
+  /**
+   * Gets the name of the store
+   *
+   * @return the store's name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Closes the log, waiting for a running compaction to finish
+   */
+  public void close() {
+    synchronized (writeLock) {
+      while (compacting) {
+        try {
+          writeLock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+      try {
+        if (log != null) {
+          log.force(false);
+          log.close();
+        }
+      } catch (IOException e) {
+        // the store is no longer used
+      }
+    }
+  }
+}
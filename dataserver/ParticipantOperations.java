@@ -5,18 +5,17 @@ import util.CristiansLogger;
 import util.RMIAccess;
 import util.ThreadSafeStringFormatter;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Implements IDataParticipant interface and is responsible for defining
@@ -24,12 +23,44 @@ import java.util.Map;
  */
 public class ParticipantOperations extends UnicastRemoteObject implements IDataParticipant {
 
+  /**
+   * A chat log transaction decided to commit before its turn came
+   */
+  private static class DeferredCommit {
+    private final Transaction t;
+    // the participant accessor to report haveCommitted through
+    private final RMIAccess<IDataParticipant> p;
+    // the time in milliseconds the transaction was first deferred
+    private final long since;
+
+    /**
+     * Creates an instance of DeferredCommit
+     *
+     * @param t the deferred transaction
+     * @param p the participant accessor to report haveCommitted through
+     * @param since the time in milliseconds the transaction was first deferred
+     */
+    private DeferredCommit(Transaction t, RMIAccess<IDataParticipant> p, long since) {
+      this.t = t;
+      this.p = p;
+      this.since = since;
+    }
+  }
+
   private final String coordinatorHostname;
   private final int coordinatorPort;
   private final DataOperations operationsEngine;
-  private final Path dir;
   private final Map<Integer, Transaction> transactionMap;
-  private final Map<Integer, CoordinatorDecisionThread> decisionThreadMap;
+  // asks the coordinator for its decision on transactions it has not sent one for in time
+  private final DecisionTimer decisionTimer;
+  // keys reserved by the transactions in transactionMap
+  private final InFlightTable inFlight;
+  // chat log transactions decided to commit before their turn came, in the order their doCommit
+  // arrived, guarded by its own lock
+  private final Map<Integer, DeferredCommit> deferredCommits;
+  // time in milliseconds a deferred commit waits before the transactions ahead of it that are no
+  // longer in flight are cleared from its keys
+  private final long deferTimeoutMs;
 
   /**
    * Creates an instance of the ParticipantOperations engine
@@ -38,17 +69,28 @@ public class ParticipantOperations extends UnicastRemoteObject implements IDataP
    * @param coordinatorPort port that the central server is accepting participant requests on
    * @param serverId unique ID for the local data server
    * @param operationsEngine provides read and write operations on resources at the local data server
+   * @param decisionTimeoutMs time in milliseconds to wait for the coordinator's decision on a
+   *                          transaction voted YES on before asking the coordinator for it
+   * @param decisionTickMs width in milliseconds of a bucket of the decision timer wheel
+   * @param decisionAttempts number of times the coordinator is asked about a transaction it has
+   *                         not decided before an error is logged about it
    * @throws RemoteException if there is an error during remote communication
    */
   public ParticipantOperations(String coordinatorHostname, 
       int coordinatorPort, String serverId, 
-      DataOperations operationsEngine) throws RemoteException {
+      DataOperations operationsEngine, long decisionTimeoutMs,
+      long decisionTickMs, int decisionAttempts) throws RemoteException {
     this.coordinatorHostname = coordinatorHostname;
     this.coordinatorPort = coordinatorPort;
     this.operationsEngine = operationsEngine;
-    this.dir =  Paths.get("files_" + serverId + "/");
-    this.transactionMap = Collections.synchronizedMap(new HashMap<>());
-    this.decisionThreadMap = Collections.synchronizedMap(new HashMap<>());
+    this.transactionMap = new ConcurrentHashMap<>();
+    this.decisionTimer = new DecisionTimer(coordinatorHostname, coordinatorPort,
+        decisionTimeoutMs, decisionTickMs, decisionAttempts);
+    this.decisionTimer.start();
+    this.inFlight = new InFlightTable();
+    this.deferredCommits = new LinkedHashMap<>();
+    // by then every transaction ahead has had a decision for several timeouts
+    this.deferTimeoutMs = decisionTimeoutMs * (decisionAttempts + 1);
   }
 
   /**
@@ -73,20 +115,19 @@ public class ParticipantOperations extends UnicastRemoteObject implements IDataP
       return Ack.NO;
     }
 
-    // check if current node is committing on same key
+    // check if current node is committing on same key by reserving the transaction's keys
+    // a batch of chat log entries touches the key of every chatroom in the batch
+    // chat log transactions on the same key do not conflict; they are queued and committed in
+    // transaction order, so a busy chatroom's messages pipeline instead of aborting
     int transactionKey = t.getTransactionIndex();
-    String key = t.getKey();
-    for (Transaction tx : transactionMap.values()) {
-      if (tx.getKey().equals(key)) {
-        return Ack.NO;
-      }
+    // a chat log transaction partly queued before the conflict may briefly hold up a deferred one;
+    // the deferred commit's own deadline picks it up again, so the vote never commits others
+    if (!inFlight.reserve(t)) {
+      return Ack.NO;
     }
-    // We didn't find that key, so we are good to proceed.
     transactionMap.put(transactionKey, t);
-    CoordinatorDecisionThread thread = 
-        new CoordinatorDecisionThread(this.coordinatorHostname, this.coordinatorPort, t, p);
-    thread.start();
-    decisionThreadMap.put(transactionKey, thread);
+    // We didn't find that key, so we are good to proceed.
+    decisionTimer.schedule(t, p);
     return Ack.YES;
   }
 
@@ -105,20 +146,75 @@ public class ParticipantOperations extends UnicastRemoteObject implements IDataP
         t.toString()
         ));
 
-    // set the decision thread associated to the transaction to be finished
-    // so the local data participant does not call getDecision on a transaction
-    // it has already committed
-    CoordinatorDecisionThread th = decisionThreadMap.get(t.getTransactionIndex());
-    if (th != null) {
-      th.setFinished();
+    // a chat log transaction whose turn has not come yet is deferred instead of holding the
+    // calling thread, and is committed once the transactions ahead of it have finished
+    if (InFlightTable.isLogOperation(t.getOp())) {
+      DeferredCommit deferred;
+      synchronized (deferredCommits) {
+        if (inFlight.isTurn(t)) {
+          deferredCommits.remove(t.getTransactionIndex());
+          deferred = null;
+        } else {
+          deferred = deferredCommits.get(t.getTransactionIndex());
+          if (deferred == null) {
+            deferred = new DeferredCommit(t, p, System.currentTimeMillis());
+            deferredCommits.put(t.getTransactionIndex(), deferred);
+            CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+                "Deferred doCommit on transaction \"%s\" until earlier transactions finish",
+                t.toString()
+                ));
+          }
+          // keep the deadline armed so the decision timer repeats the doCommit, and the
+          // transaction is looked at again even if no transaction ahead of it finishes
+          decisionTimer.scheduleCommitted(t, p);
+        }
+      }
+      if (deferred != null) {
+        // a transaction that has waited past every decision deadline is held up only by
+        // transactions that are no longer in flight; clear them from its keys
+        if (System.currentTimeMillis() - deferred.since >= deferTimeoutMs) {
+          releaseAbandoned(t);
+        }
+        return;
+      }
+    }
+
+    applyCommit(t, p);
+
+    // commit the deferred transactions that were waiting on this one
+    if (InFlightTable.isLogOperation(t.getOp())) {
+      commitDeferred();
+    }
+  }
+
+  /**
+   * Runs a transaction that has been decided to commit on the local data server and reports
+   * haveCommitted to the coordinator
+   *
+   * @param t transaction to commit
+   * @param p this data nodes RMIAccess interface
+   * @throws RemoteException if there is an error during remote communication
+   */
+  private void applyCommit(Transaction t, RMIAccess<IDataParticipant> p) throws RemoteException {
+
+    // cancel the decision deadline of the transaction so the local data participant does not
+    // call getDecision on a transaction it has already committed
+    decisionTimer.cancel(t.getTransactionIndex());
+
+    // claim the transaction, so a doCommit repeated by the decision timer and the coordinator
+    // runs it only once
+    if (transactionMap.remove(t.getTransactionIndex()) == null) {
+      CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
+          "Transaction \"%s\" has already been committed or aborted",
+          t.toString()
+          ));
+      return;
     }
-    decisionThreadMap.remove(t.getTransactionIndex());
 
     // determine the type of operation provided in the transaction
     switch (t.getOp()) {
-      // if create user, verify that user does not exist and then write the
-      // username:password combination to the users.txt file and create the user
-      // in local memory
+      // if create user, verify that user does not exist and then record the
+      // username and password in the local user store
       case CREATEUSER:
         if (operationsEngine.userExists(t.getKey())) {
           // enforce at most once semantics if multiple concurrent requests are received
@@ -128,13 +224,10 @@ public class ParticipantOperations extends UnicastRemoteObject implements IDataP
               ));
           break;
         }
-        // Usernames and passwords stored in the format username:password 
-        writeFile("users.txt", t.getKey() + ":" + t.getValue());
         operationsEngine.createUser(t.getKey(), t.getValue());
         break;
-        // if create chatroom, verify that the chatroom des not exist, and then write the
-        // chatroomname:username combination to the chatrooms.txt file and track
-        // the chatroom in local memory
+        // if create chatroom, verify that the chatroom des not exist, and then record the
+        // chatroom and its owner in the local chatroom store
       case CREATECHATROOM:
         if (operationsEngine.chatroomExists(t.getKey())) {
           // enforce at most once semantics if multiple concurrent requests are received
@@ -142,12 +235,10 @@ public class ParticipantOperations extends UnicastRemoteObject implements IDataP
               + "been created in concurrent transaction");
           break;
         }
-        // Chatroom ownership is stored in the format chatroom:user
-        writeFile("chatrooms.txt", t.getKey() + ":" + t.getValue());
         operationsEngine.createChatroom(t.getKey(), t.getValue());
         break;
         // if delete chatroom, ensure that the chatroom does not exist
-        // then, delete the log file associated with the chatroom
+        // then, delete the chat log associated with the chatroom
         // and delete the chatroom from local memory
       case DELETECHATROOM:
         if (!operationsEngine.chatroomExists(t.getKey())) {
@@ -156,24 +247,35 @@ public class ParticipantOperations extends UnicastRemoteObject implements IDataP
               + "been deleted in concurrent transaction");
           break;
         }
-        File chatroom = new File(dir.resolve("chatlogs/" + t.getKey()).toString() + ".txt");
         operationsEngine.deleteChatroom(t.getKey());
-        if (chatroom.delete()) {
+        if (operationsEngine.getChatLogStore().deleteChatroom(t.getKey())) {
           CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
-              "Deleted chatroom file for chatroom \"%s\"",
+              "Deleted chat log for chatroom \"%s\"",
               t.getKey()
               ));
         } else {
           CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
-              "Failed to delete chatroom file \"%s\"",
+              "Failed to delete chat log for chatroom \"%s\"",
               t.getKey()
               ));
         }
         break;
-        // if log message, write the message store in the transaction value to the
-        // chatlog file for the chatroom
+        // if log message, append the message stored in the transaction value to the
+        // chat log for the chatroom
       case LOGMESSAGE:
-        writeFile("chatlogs/" + t.getKey() + ".txt", t.getValue());
+        appendChatLog(t.getKey(), Collections.singletonList(t.getValue()));
+        break;
+        // if log messages, group the batch by chatroom, keeping the order of the messages,
+        // and append each chatroom's messages to its chat log in a single write
+      case LOGMESSAGES:
+        Map<String, List<String>> messagesByChatroom = new LinkedHashMap<>();
+        for (ChatLogEntry entry : t.getEntries()) {
+          messagesByChatroom.computeIfAbsent(entry.getChatroom(), k -> new LinkedList<>())
+              .add(entry.getMessage());
+        }
+        for (Map.Entry<String, List<String>> chatroomMessages : messagesByChatroom.entrySet()) {
+          appendChatLog(chatroomMessages.getKey(), chatroomMessages.getValue());
+        }
         break;
         // otherwise, log that an invalid command has been received
       default:
@@ -184,6 +286,12 @@ public class ParticipantOperations extends UnicastRemoteObject implements IDataP
         break;
     }
 
+    // let the next chat log transaction on the same chatrooms commit
+    boolean log = InFlightTable.isLogOperation(t.getOp());
+    if (log) {
+      inFlight.release(t);
+    }
+
     // after operation has been run, contact coordinator and indicate 
     //that the local data participant node
     // haveCommitted on the provided transaction
@@ -201,8 +309,10 @@ public class ParticipantOperations extends UnicastRemoteObject implements IDataP
           ));
     }
 
-    // remove the transaction from the local transaction map
-    transactionMap.remove(t.getTransactionIndex());
+    // free the key the transaction held until the coordinator learned of the commit
+    if (!log) {
+      inFlight.release(t);
+    }
   }
 
   /**
@@ -214,56 +324,92 @@ public class ParticipantOperations extends UnicastRemoteObject implements IDataP
   @Override
   public void doAbort(Transaction t) throws RemoteException {
 
-    // set the decision thread associated to the transaction to be finished
-    // so the local data participant does not call getDecision on a transaction
-    // it has already aborted
-    CoordinatorDecisionThread th = decisionThreadMap.get(t.getTransactionIndex());
-    if (th != null) {
-      th.setFinished();
-    }
-    decisionThreadMap.remove(t.getTransactionIndex());
+    // cancel the decision deadline of the transaction so the local data participant does not
+    // call getDecision on a transaction it has already aborted
+    decisionTimer.cancel(t.getTransactionIndex());
 
     CristiansLogger.writeMessageToLog(ThreadSafeStringFormatter.format(
         "Received doAbort on transaction \"%s\"",
         t.toString()
         ));
 
-    // check if index exists before removing (if it matches)
-    int transactionKey = t.getTransactionIndex();
-    if (transactionMap.containsKey(transactionKey)) {
-      transactionMap.remove(transactionKey);
+    // release the transaction's keys only if this participant reserved them for it
+    if (transactionMap.remove(t.getTransactionIndex()) != null) {
+      inFlight.release(t);
     }
 
+    // an aborted chat log transaction no longer holds up later transactions on its chatrooms
+    if (InFlightTable.isLogOperation(t.getOp())) {
+      commitDeferred();
+    }
+
+  }
+
+  /**
+   * Commits deferred chat log transactions, in the order their doCommit arrived, for as long as
+   * one of them has reached the front of the queue of every key it touches
+   *
+   * @throws RemoteException if there is an error during remote communication
+   */
+  private void commitDeferred() throws RemoteException {
+    while (true) {
+      DeferredCommit next = null;
+      synchronized (deferredCommits) {
+        Iterator<DeferredCommit> it = deferredCommits.values().iterator();
+        while (it.hasNext()) {
+          DeferredCommit deferred = it.next();
+          if (inFlight.isTurn(deferred.t)) {
+            it.remove();
+            next = deferred;
+            break;
+          }
+        }
+      }
+      if (next == null) {
+        return;
+      }
+      applyCommit(next.t, next.p);
+    }
   }
 
   /**
-   * Fulfills the functionality of writing provided data into the requested file
+   * Clears the transactions queued ahead of a deferred chat log transaction that are no longer
+   * in flight, and commits the deferred transactions that were waiting on them
    *
-   * @param fileName name of the file to write to
-   * @param data data to be written to file
-   * @return true if write was successful, false otherwise
+   * @param t the deferred transaction
    * @throws RemoteException if there is an error during remote communication
    */
-  public synchronized boolean writeFile(String fileName, String data) throws RemoteException {
+  private void releaseAbandoned(Transaction t) throws RemoteException {
+    int released = inFlight.releaseAbandoned(t, transactionMap.keySet());
+    if (released == 0) {
+      return;
+    }
+    CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
+        "Released %d abandoned reservations holding up deferred transaction \"%s\"",
+        released,
+        t.toString()
+        ));
+    commitDeferred();
+  }
+
+  /**
+   * Appends messages to a chatroom's chat log
+   *
+   * @param chatroom name of the chatroom
+   * @param messages the messages to append, in order
+   * @return true if the messages were written, false otherwise
+   */
+  private boolean appendChatLog(String chatroom, List<String> messages) {
     try {
-      // Creates the file if it doesn't exist, if it does exist it will append to the file.
-      FileWriter file = new FileWriter(dir.resolve(fileName).toString(), true);
-      BufferedWriter writer = new BufferedWriter(file);
-      // write data
-      writer.write(data);
-      // write newline
-      writer.newLine();
-      // clean resources
-      writer.close();
+      operationsEngine.getChatLogStore().append(chatroom, messages);
       return true;
     } catch (IOException e) {
       CristiansLogger.writeErrorToLog(ThreadSafeStringFormatter.format(
-          "Something went very wrong writing to file \"%s\"",
-          fileName
+          "Something went very wrong appending to the chat log of chatroom \"%s\": \"%s\"",
+          chatroom,
+          e.getMessage()
           ));
       return false;
     }
   }
-
-
 }
@@ -0,0 +1,194 @@
+package dataserver;
+
+import centralserver.CentralCoordinator;
+import centralserver.TwoPhaseCommit;
+import data.IDataParticipant;
+import data.Operations;
+import data.Transaction;
+import java.io.IOException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import util.CristiansLogger;
+import util.Logger;
+import util.RMIAccess;
+import util.ThreadSafeStringFormatter;
+
+/**
+ * Stress test for chat log transactions at a participant. Starts a coordinator and a single data
+ * participant in this process, then has many concurrent senders log messages to the same
+ * chatroom through 2 phase commit. Reports how many transactions were aborted and verifies that
+ * every sender's messages reached the chat log in the order they were sent.
+ * All output is printed to console for manual verification.
+ *
+ * <p>Usage: java -cp chatroom.jar dataserver.ParticipantStressTest
+ * &lt;senders&gt; &lt;messages per sender&gt; &lt;coordinator port&gt; &lt;participant port&gt;
+ */
+public class ParticipantStressTest {
+
+  private static final String SERVER_ID = "stresstest";
+  private static final String CHATROOM = "stressroom";
+
+  /**
+   * Runs the stress test
+   *
+   * @param senders the number of concurrent senders
+   * @param messagesPerSender the number of messages each sender logs
+   * @param coordinatorPort port for the in-process coordinator registry
+   * @param participantPort port for the in-process participant registry
+   * @throws IOException if the in-process registries or chat log cannot be created
+   * @throws InterruptedException if the test is interrupted while waiting for senders
+   */
+  public void go(int senders, int messagesPerSender, int coordinatorPort, int participantPort)
+      throws IOException, InterruptedException {
+
+    // start the coordinator
+    Registry coordinatorRegistry = LocateRegistry.createRegistry(coordinatorPort);
+    CentralCoordinator coordinator = new CentralCoordinator();
+    coordinatorRegistry.rebind("ICentralCoordinator", coordinator);
+
+    // start a participant writing to a fresh chat log
+    InProcessParticipant participant =
+        new InProcessParticipant(SERVER_ID, coordinatorPort, participantPort);
+    participant.getChatLogStore().deleteChatroom(CHATROOM);
+    Registry participantRegistry = LocateRegistry.createRegistry(participantPort);
+    participantRegistry.rebind("IDataParticipant", participant.getParticipant());
+
+    List<RMIAccess<IDataParticipant>> participants = new ArrayList<>();
+    participants.add(new RMIAccess<>("localhost", participantPort, "IDataParticipant"));
+    Object participantsLock = new Object();
+
+    System.out.println(ThreadSafeStringFormatter.format(
+        "Logging %d messages from each of %d concurrent senders to chatroom \"%s\"",
+        messagesPerSender,
+        senders,
+        CHATROOM
+        ));
+
+    AtomicInteger committed = new AtomicInteger();
+    AtomicInteger aborted = new AtomicInteger();
+    List<Thread> threads = new ArrayList<>();
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < senders; i++) {
+      int sender = i;
+      Thread t = new Thread(() -> {
+        TwoPhaseCommit committer = new TwoPhaseCommit();
+        for (int j = 0; j < messagesPerSender; j++) {
+          Transaction tx = new Transaction(Operations.LOGMESSAGE, CHATROOM,
+              ThreadSafeStringFormatter.format("sender%d >> %d", sender, j));
+          // retry aborted messages as the chat server would
+          while (!committer.GenericCommit(participantsLock, participants, tx, coordinator)) {
+            aborted.incrementAndGet();
+            tx = new Transaction(Operations.LOGMESSAGE, CHATROOM, tx.getValue());
+          }
+          committed.incrementAndGet();
+        }
+      });
+      threads.add(t);
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+    int attempts = committed.get() + aborted.get();
+    System.out.println();
+    System.out.println(ThreadSafeStringFormatter.format(
+        "Committed: %d, aborted: %d, abort rate: %.2f%%",
+        committed.get(),
+        aborted.get(),
+        100.0 * aborted.get() / attempts
+        ));
+    System.out.println(ThreadSafeStringFormatter.format(
+        "Elapsed: %d ms, throughput: %.1f commits/s",
+        elapsed,
+        committed.get() * 1000.0 / elapsed
+        ));
+
+    verifyChatLog(participant.getChatLogStore(), senders, messagesPerSender);
+  }
+
+  /**
+   * Checks that every message reached the chat log exactly once and in each sender's order
+   *
+   * @param chatLogStore the chat logs written by the participant
+   * @param senders the number of concurrent senders
+   * @param messagesPerSender the number of messages each sender logged
+   */
+  private void verifyChatLog(ChatLogStore chatLogStore, int senders, int messagesPerSender) {
+    List<String> messages;
+    try {
+      messages = chatLogStore.read(CHATROOM, 1, Integer.MAX_VALUE);
+    } catch (IOException e) {
+      System.out.println(ThreadSafeStringFormatter.format(
+          "Unable to read chat log of chatroom \"%s\": %s",
+          CHATROOM,
+          e.getMessage()
+          ));
+      return;
+    }
+
+    Map<String, Integer> nextExpected = new HashMap<>();
+    boolean ordered = true;
+    for (String message : messages) {
+      String[] parts = message.split(" >> ");
+      int expected = nextExpected.getOrDefault(parts[0], 0);
+      if (Integer.parseInt(parts[1]) != expected) {
+        ordered = false;
+      }
+      nextExpected.put(parts[0], expected + 1);
+    }
+
+    System.out.println(ThreadSafeStringFormatter.format(
+        "Chat log messages: %d (expected %d), per-sender order preserved: %s",
+        messages.size(),
+        senders * messagesPerSender,
+        ordered
+        ));
+  }
+
+  /**
+   * Starts the stress test
+   *
+   * @param args &lt;senders&gt; &lt;messages per sender&gt; &lt;coordinator port&gt;
+   *             &lt;participant port&gt;
+   */
+  public static void main(String[] args) {
+    if (args.length != 4) {
+      System.out.println("Expected 4 arguments <senders> <messages per sender> "
+          + "<coordinator port> <participant port>");
+      return;
+    }
+
+    int[] values = new int[args.length];
+    for (int i = 0; i < args.length; i++) {
+      try {
+        values[i] = Integer.parseInt(args[i]);
+      } catch (NumberFormatException e) {
+        System.out.println(ThreadSafeStringFormatter.format(
+            "Received illegal argument, must be int, received \"%s\"",
+            args[i]
+            ));
+        return;
+      }
+    }
+
+    Logger.loggerSetup("ParticipantStressTestCoordinator");
+    CristiansLogger.loggerSetup("ParticipantStressTestParticipant");
+
+    try {
+      new ParticipantStressTest().go(values[0], values[1], values[2], values[3]);
+    } catch (IOException | InterruptedException e) {
+      System.out.println(ThreadSafeStringFormatter.format(
+          "Stress test failed with message: \"%s\"",
+          e.getMessage()
+          ));
+    }
+    System.exit(0);
+  }
+}
@@ -1,5 +1,8 @@
 package dataserver;
 
+import util.ExecutionMode;
+import util.TaskExecutor;
+
 /**
  * Provides port and addressing information required to run the data server
  */
@@ -11,6 +14,18 @@ public class ServerInfo {
   private final String hostname;
   private final int operationsPort;
   private final int participantPort;
+  private final ExecutionMode executionMode;
+  private final int executorThreads;
+  private final long segmentBytes;
+  private final long segmentRollMs;
+  private final DurabilityMode durability;
+  private final long flushIntervalMs;
+  private final int flushRecords;
+  private final long compactRecords;
+  private final long snapshotIntervalMs;
+  private final long decisionTimeoutMs;
+  private final long decisionTickMs;
+  private final int decisionAttempts;
 
   /**
    * Creates an instance of the ServerInfo object
@@ -21,15 +36,74 @@ public class ServerInfo {
    * @param hostname hostname of the machine supporting the local data server
    * @param operationsPort port the local data server should accept central server requests on
    * @param participantPort port the local data server should accept coordinator requests on
+   * @param executionMode the kind of threads that run 2 phase commit tasks
+   * @param executorThreads the most platform threads used to run 2 phase commit tasks
+   * @param segmentBytes the size in bytes after which a chat log rolls over to a new segment
+   * @param segmentRollMs the age in milliseconds after which a chat log rolls over to a new
+   *                      segment, or 0 to roll over by size only
+   * @param durability when messages appended to chat logs are forced to disk
+   * @param flushIntervalMs the longest time in milliseconds between chat log flushes in the
+   *                        PERIODIC and GROUP durability modes
+   * @param flushRecords the number of waiting records that starts a chat log flush in the GROUP
+   *                     durability mode
+   * @param compactRecords the number of log records after which the user and chatroom stores
+   *                       compact
+   * @param snapshotIntervalMs the age in milliseconds of the last snapshot of the user or
+   *                           chatroom store after which a write compacts it, or 0 to compact by
+   *                           log size only
+   * @param decisionTimeoutMs the time in milliseconds to wait for the coordinator's decision on a
+   *                          transaction voted YES on before asking the coordinator for it
+   * @param decisionTickMs the width in milliseconds of a bucket of the decision timer wheel
+   * @param decisionAttempts the number of times the coordinator is asked about a transaction it
+   *                         has not decided before an error is logged about it
    */
   ServerInfo(String id, String centralServerHostname, 
-      int centralServerPort, String hostname, int operationsPort, int participantPort) {
+      int centralServerPort, String hostname, int operationsPort, int participantPort,
+      ExecutionMode executionMode, int executorThreads, long segmentBytes, long segmentRollMs,
+      DurabilityMode durability, long flushIntervalMs, int flushRecords,
+      long compactRecords, long snapshotIntervalMs, long decisionTimeoutMs,
+      long decisionTickMs, int decisionAttempts) {
     this.id = id;
     this.centralServerHostname = centralServerHostname;
     this.centralServerPort = centralServerPort;
     this.hostname = hostname;
     this.operationsPort = operationsPort;
     this.participantPort = participantPort;
+    this.executionMode = executionMode;
+    this.executorThreads = executorThreads;
+    this.segmentBytes = segmentBytes;
+    this.segmentRollMs = segmentRollMs;
+    this.durability = durability;
+    this.flushIntervalMs = flushIntervalMs;
+    this.flushRecords = flushRecords;
+    this.compactRecords = compactRecords;
+    this.snapshotIntervalMs = snapshotIntervalMs;
+    this.decisionTimeoutMs = decisionTimeoutMs;
+    this.decisionTickMs = decisionTickMs;
+    this.decisionAttempts = decisionAttempts;
+  }
+
+  /**
+   * Creates an instance of the ServerInfo object with every optional tuning value at the default
+   * the data server uses when its property is not set
+   *
+   * @param id unique id of the data server
+   * @param centralServerHostname hostname of the machine supporting the central server
+   * @param centralServerPort port the central server is accepting registration requests on
+   * @param hostname hostname of the machine supporting the local data server
+   * @param operationsPort port the local data server should accept central server requests on
+   * @param participantPort port the local data server should accept coordinator requests on
+   * @return the server info
+   */
+  static ServerInfo withDefaults(String id, String centralServerHostname, int centralServerPort,
+      String hostname, int operationsPort, int participantPort) {
+    return new ServerInfo(id, centralServerHostname, centralServerPort, hostname, operationsPort,
+        participantPort, ExecutionMode.PLATFORM, TaskExecutor.DEFAULT_PLATFORM_THREADS,
+        ChatLogStore.DEFAULT_SEGMENT_BYTES, 0, DurabilityMode.GROUP,
+        ChatLogStore.DEFAULT_FLUSH_INTERVAL_MS, ChatLogStore.DEFAULT_FLUSH_RECORDS,
+        KeyValueStore.DEFAULT_COMPACT_RECORDS, KeyValueStore.DEFAULT_SNAPSHOT_INTERVAL_MS,
+        DecisionTimer.DEFAULT_TIMEOUT_MS, DecisionTimer.DEFAULT_TICK_MS,
+        DecisionTimer.DEFAULT_ATTEMPTS);
   }
 
   /**
@@ -85,4 +159,117 @@ public class ServerInfo {
   public int getParticipantPort() {
     return participantPort;
   }
-}
\ No newline at end of file
+
+  /**
+   * Returns the kind of threads requested to run 2 phase commit tasks
+   *
+   * @return the requested execution mode
+   */
+  public ExecutionMode getExecutionMode() {
+    return executionMode;
+  }
+
+  /**
+   * Returns the most platform threads used to run 2 phase commit tasks
+   *
+   * @return the size of the platform thread pool
+   */
+  public int getExecutorThreads() {
+    return executorThreads;
+  }
+
+  /**
+   * Gets the size in bytes after which a chat log rolls over to a new segment
+   *
+   * @return the largest size of a chat log segment before it is rolled over
+   */
+  public long getSegmentBytes() {
+    return segmentBytes;
+  }
+
+  /**
+   * Gets the age in milliseconds after which a chat log rolls over to a new segment
+   *
+   * @return the largest age of a chat log segment before it is rolled over, or 0 if segments are
+   *         rolled over by size only
+   */
+  public long getSegmentRollMs() {
+    return segmentRollMs;
+  }
+
+  /**
+   * Gets when messages appended to chat logs are forced to disk
+   *
+   * @return the durability mode of the chat logs
+   */
+  public DurabilityMode getDurability() {
+    return durability;
+  }
+
+  /**
+   * Gets the longest time in milliseconds between chat log flushes in the PERIODIC and GROUP
+   * durability modes
+   *
+   * @return the flush interval in milliseconds
+   */
+  public long getFlushIntervalMs() {
+    return flushIntervalMs;
+  }
+
+  /**
+   * Gets the number of waiting records that starts a chat log flush in the GROUP durability mode
+   *
+   * @return the number of records that starts a flush
+   */
+  public int getFlushRecords() {
+    return flushRecords;
+  }
+
+  /**
+   * Gets the number of log records after which the user and chatroom stores compact
+   *
+   * @return the number of log records that starts a compaction
+   */
+  public long getCompactRecords() {
+    return compactRecords;
+  }
+
+  /**
+   * Gets the age in milliseconds of the last snapshot of the user or chatroom store after which a
+   * write compacts it
+   *
+   * @return the snapshot interval in milliseconds, or 0 if stores compact by log size only
+   */
+  public long getSnapshotIntervalMs() {
+    return snapshotIntervalMs;
+  }
+
+  /**
+   * Gets the time in milliseconds to wait for the coordinator's decision on a transaction voted
+   * YES on before asking the coordinator for it
+   *
+   * @return the decision timeout in milliseconds
+   */
+  public long getDecisionTimeoutMs() {
+    return decisionTimeoutMs;
+  }
+
+  /**
+   * Gets the width in milliseconds of a bucket of the decision timer wheel
+   *
+   * @return the decision timer tick in milliseconds
+   */
+  public long getDecisionTickMs() {
+    return decisionTickMs;
+  }
+
+  /**
+   * Gets the number of times the coordinator is asked about a transaction it has not decided
+   * before an error is logged about it
+   *
+   * @return the number of decision attempts
+   */
+  public int getDecisionAttempts() {
+    return decisionAttempts;
+  }
+}
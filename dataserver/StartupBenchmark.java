@@ -0,0 +1,136 @@
+package dataserver;
+
+import java.io.File;
+import java.io.IOException;
+import util.CristiansLogger;
+import util.ThreadSafeStringFormatter;
+
+/**
+ * Benchmark for recovering the user store at data server startup. Fills a fresh store with
+ * users, snapshots it, writes further users to the log after the snapshot, then times recovering
+ * the store from the snapshot and the log tail as the data server does when it starts.
+ * All output is printed to console for manual verification.
+ *
+ * <p>Usage: java -cp chatroom.jar dataserver.StartupBenchmark &lt;users&gt;
+ * &lt;users after snapshot&gt;
+ */
+public class StartupBenchmark {
+
+  private static final String DIRECTORY = "files_startupbenchmark/users";
+
+  /**
+   * Runs the benchmark
+   *
+   * @param users the number of users in the snapshot
+   * @param delta the number of users written to the log after the snapshot
+   * @throws IOException if the store cannot be written or recovered
+   */
+  public void go(int users, int delta) throws IOException {
+    File dir = new File(DIRECTORY);
+    deleteRecursively(dir);
+
+    System.out.println(ThreadSafeStringFormatter.format(
+        "Writing %d users, then %d more after the snapshot...",
+        users,
+        delta
+        ));
+    long start = System.currentTimeMillis();
+    // compact only when asked to, so the snapshot holds exactly the first users
+    KeyValueStore store = new KeyValueStore("users", dir, false, Long.MAX_VALUE, 0);
+    store.recover();
+    for (int i = 0; i < users; i++) {
+      store.put("user" + i, "password" + i);
+    }
+    long snapshotStart = System.currentTimeMillis();
+    store.compact();
+    long snapshotMs = System.currentTimeMillis() - snapshotStart;
+    for (int i = users; i < users + delta; i++) {
+      store.put("user" + i, "password" + i);
+    }
+    store.close();
+    store = null;
+    System.out.println(ThreadSafeStringFormatter.format(
+        "Wrote store in %d ms, snapshot in %d ms",
+        System.currentTimeMillis() - start,
+        snapshotMs
+        ));
+
+    System.gc();
+    Runtime runtime = Runtime.getRuntime();
+    long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+    KeyValueStore recovered = new KeyValueStore("users", dir, false, Long.MAX_VALUE, 0);
+    start = System.currentTimeMillis();
+    int entries = recovered.recover();
+    long recoverMs = System.currentTimeMillis() - start;
+    System.gc();
+    long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+
+    String last = "user" + (users + delta - 1);
+    System.out.println(ThreadSafeStringFormatter.format(
+        "Recovered %d entries (expected %d) in %d ms on %d processors; %s=%s",
+        entries,
+        users + delta,
+        recoverMs,
+        runtime.availableProcessors(),
+        last,
+        recovered.get(last)
+        ));
+    System.out.println(ThreadSafeStringFormatter.format(
+        "Heap held by the recovered store: %d MB",
+        (heapAfter - heapBefore) / (1024 * 1024)
+        ));
+    recovered.close();
+  }
+
+  /**
+   * Deletes a directory left by an earlier run of the benchmark
+   *
+   * @param f the file or directory to delete
+   */
+  private static void deleteRecursively(File f) {
+    File[] children = f.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    f.delete();
+  }
+
+  /**
+   * Starts the benchmark
+   *
+   * @param args &lt;users&gt; &lt;users after snapshot&gt;
+   */
+  public static void main(String[] args) {
+    if (args.length != 2) {
+      System.out.println("Expected 2 arguments <users> <users after snapshot>");
+      return;
+    }
+
+    int[] values = new int[args.length];
+    for (int i = 0; i < args.length; i++) {
+      try {
+        values[i] = Integer.parseInt(args[i]);
+      } catch (NumberFormatException e) {
+        System.out.println(ThreadSafeStringFormatter.format(
+            "Received illegal argument, must be int, received \"%s\"",
+            args[i]
+            ));
+        return;
+      }
+    }
+
+    CristiansLogger.loggerSetup("StartupBenchmark");
+
+    try {
+      new StartupBenchmark().go(values[0], values[1]);
+    } catch (IOException e) {
+      System.out.println(ThreadSafeStringFormatter.format(
+          "Benchmark failed with message: \"%s\"",
+          e.getMessage()
+          ));
+    }
+    System.exit(0);
+  }
+}
@@ -0,0 +1,141 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Reads optional tuning values for the servers and client from JVM system properties (supplied on
+ * the command line with -Dname=value). Positional command line arguments remain the only required
+ * configuration; every property read here falls back to a default when it is not set.
+ */
+public class ConfigUtil {
+
+  /**
+   * Reads an int property
+   *
+   * @param name name of the system property
+   * @param defaultValue value to use if the property is not set
+   * @param min smallest value the property may take
+   * @return the value of the property, or the default value if it is not set
+   * @throws IllegalArgumentException if the property is not an int or is smaller than min
+   */
+  public static int getInt(String name, int defaultValue, int min) {
+    String value = System.getProperty(name);
+    if (value == null) {
+      return defaultValue;
+    }
+
+    int parsed;
+    try {
+      parsed = Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(ThreadSafeStringFormatter.format(
+          "Received illegal <%s> value, must be int, received \"%s\"",
+          name,
+          value
+          ));
+    }
+
+    if (parsed < min) {
+      throw new IllegalArgumentException(ThreadSafeStringFormatter.format(
+          "Received illegal <%s> value, must be at least %d, received \"%d\"",
+          name,
+          min,
+          parsed
+          ));
+    }
+    return parsed;
+  }
+
+  /**
+   * Reads a long property
+   *
+   * @param name name of the system property
+   * @param defaultValue value to use if the property is not set
+   * @param min smallest value the property may take
+   * @return the value of the property, or the default value if it is not set
+   * @throws IllegalArgumentException if the property is not a long or is smaller than min
+   */
+  public static long getLong(String name, long defaultValue, long min) {
+    String value = System.getProperty(name);
+    if (value == null) {
+      return defaultValue;
+    }
+
+    long parsed;
+    try {
+      parsed = Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(ThreadSafeStringFormatter.format(
+          "Received illegal <%s> value, must be long, received \"%s\"",
+          name,
+          value
+          ));
+    }
+
+    if (parsed < min) {
+      throw new IllegalArgumentException(ThreadSafeStringFormatter.format(
+          "Received illegal <%s> value, must be at least %d, received \"%d\"",
+          name,
+          min,
+          parsed
+          ));
+    }
+    return parsed;
+  }
+
+  /**
+   * Reads a boolean property
+   *
+   * @param name name of the system property
+   * @param defaultValue value to use if the property is not set
+   * @return the value of the property, or the default value if it is not set
+   * @throws IllegalArgumentException if the property is not "true" or "false"
+   */
+  public static boolean getBoolean(String name, boolean defaultValue) {
+    String value = System.getProperty(name);
+    if (value == null) {
+      return defaultValue;
+    }
+
+    if (value.trim().equalsIgnoreCase("true")) {
+      return true;
+    } else if (value.trim().equalsIgnoreCase("false")) {
+      return false;
+    }
+    throw new IllegalArgumentException(ThreadSafeStringFormatter.format(
+        "Received illegal <%s> value, must be true or false, received \"%s\"",
+        name,
+        value
+        ));
+  }
+
+  /**
+   * Reads an enum property; matching is case insensitive and treats "-" as "_"
+   *
+   * @param name name of the system property
+   * @param type the enum class the property maps to
+   * @param defaultValue value to use if the property is not set
+   * @param <E> type of the enum
+   * @return the value of the property, or the default value if it is not set
+   * @throws IllegalArgumentException if the property does not name a constant of the enum
+   */
+  public static <E extends Enum<E>> E getEnum(String name, Class<E> type, E defaultValue) {
+    String value = System.getProperty(name);
+    if (value == null) {
+      return defaultValue;
+    }
+
+    String normalized = value.trim().replace('-', '_');
+    for (E constant : type.getEnumConstants()) {
+      if (constant.name().equalsIgnoreCase(normalized)) {
+        return constant;
+      }
+    }
+    throw new IllegalArgumentException(ThreadSafeStringFormatter.format(
+        "Received illegal <%s> value \"%s\", must be one of %s",
+        name,
+        value,
+        Arrays.toString(type.getEnumConstants())
+        ));
+  }
+}
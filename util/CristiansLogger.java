@@ -132,19 +132,26 @@ public class CristiansLogger implements Runnable {
         ));
   }
 
+  /**
+   * Gets the current time adjusted by the difference between the local clock and the server clock
+   *
+   * @return the synchronized current time in milliseconds since the epoch
+   */
+  public static long getSynchronizedTime() {
+    synchronized (diffLock) {
+      return System.currentTimeMillis() + diff;
+    }
+  }
+
   /**
    * Formats the current time in Year-Month-Day Hour-Minute-Second.Millisecond format
    *
    * @return current time with millisecond precision
    */
   protected static String getFormattedTimeInMilli() {
-    long millitime;
-
     // modify the time used to log a message by the difference between 
     //the local clock and the server clock
-    synchronized (diffLock) {
-      millitime = System.currentTimeMillis() + diff;
-    }
+    long millitime = CristiansLogger.getSynchronizedTime();
     Date date = new Date(millitime);
     // create expression to define format of current time with millisecond precision
     SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
@@ -0,0 +1,11 @@
+package util;
+
+/**
+ * Determines what kind of threads run the short-lived tasks submitted to the TaskExecutor
+ */
+public enum ExecutionMode {
+  // tasks run on a bounded pool of platform threads
+  PLATFORM,
+  // every task runs on its own virtual thread, where the JVM supports them
+  VIRTUAL
+}
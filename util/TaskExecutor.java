@@ -0,0 +1,150 @@
+package util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the short-lived tasks of a server or client, such as the per-participant requests of a
+ * 2 phase commit, on a single executor shared by the whole process. The executor is chosen once
+ * at start-up: PLATFORM mode uses a bounded pool of platform threads, and VIRTUAL mode starts a
+ * virtual thread per task. Virtual threads are looked up reflectively so the application still
+ * builds and runs on JVMs without them, where VIRTUAL mode falls back to the platform pool.
+ *
+ * <p>Tasks must not wait on other tasks submitted to the executor, since in PLATFORM mode every
+ * pool thread could be held by a waiting task.
+ */
+public class TaskExecutor {
+
+  // default size of the platform thread pool
+  public static final int DEFAULT_PLATFORM_THREADS = 256;
+  // time in seconds an idle platform thread is kept before it exits
+  private static final long KEEP_ALIVE_SECONDS = 60;
+
+  private static final Object executorLock = new Object();
+  // guarded by the executor lock
+  private static ExecutorService executor;
+  private static ExecutionMode mode;
+
+  /**
+   * Creates the shared executor. Called once at start-up, before any task is submitted; tasks
+   * submitted without a call to setup run in PLATFORM mode with the default pool size.
+   *
+   * @param requested the execution mode requested at start-up
+   * @param platformThreads the most platform threads used to run tasks in PLATFORM mode, or if
+   *                        virtual threads are not supported
+   * @return the execution mode in effect, which is PLATFORM if virtual threads were requested
+   *         but are not supported by the JVM
+   */
+  public static ExecutionMode setup(ExecutionMode requested, int platformThreads) {
+    synchronized (executorLock) {
+      if (executor != null) {
+        executor.shutdown();
+      }
+
+      if (requested == ExecutionMode.VIRTUAL) {
+        executor = newVirtualThreadExecutor();
+        if (executor != null) {
+          mode = ExecutionMode.VIRTUAL;
+          return mode;
+        }
+      }
+
+      executor = newPlatformThreadExecutor(platformThreads);
+      mode = ExecutionMode.PLATFORM;
+      return mode;
+    }
+  }
+
+  /**
+   * Runs a task on the shared executor
+   *
+   * @param task the task to run
+   * @return a future completing when the task has run
+   */
+  public static Future<?> submit(Runnable task) {
+    return getExecutor().submit(task);
+  }
+
+  /**
+   * Runs a task producing a result on the shared executor
+   *
+   * @param task the task to run
+   * @param <T> the type of result produced by the task
+   * @return a future holding the result of the task
+   */
+  public static <T> Future<T> submit(Callable<T> task) {
+    return getExecutor().submit(task);
+  }
+
+  /**
+   * Gets the execution mode in effect
+   *
+   * @return the execution mode in effect
+   */
+  public static ExecutionMode getMode() {
+    synchronized (executorLock) {
+      getExecutor();
+      return mode;
+    }
+  }
+
+  /**
+   * Gets the shared executor, creating the default platform pool if setup has not been called
+   *
+   * @return the shared executor
+   */
+  private static ExecutorService getExecutor() {
+    synchronized (executorLock) {
+      if (executor == null) {
+        executor = newPlatformThreadExecutor(DEFAULT_PLATFORM_THREADS);
+        mode = ExecutionMode.PLATFORM;
+      }
+      return executor;
+    }
+  }
+
+  /**
+   * Creates a pool of at most the given number of daemon platform threads. Idle threads exit
+   * after a while, and tasks queue when every thread is busy.
+   *
+   * @param platformThreads the most threads in the pool
+   * @return the platform thread pool
+   */
+  private static ExecutorService newPlatformThreadExecutor(int platformThreads) {
+    AtomicInteger count = new AtomicInteger();
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(platformThreads, platformThreads,
+        KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+          Thread t = new Thread(r,
+              ThreadSafeStringFormatter.format("TaskExecutor-%d", count.incrementAndGet()));
+          // virtual threads are always daemon threads; match them so neither mode keeps the
+          // process alive
+          t.setDaemon(true);
+          return t;
+        });
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  /**
+   * Creates an executor starting a virtual thread per task, if the JVM supports virtual threads
+   *
+   * @return the virtual thread executor, or null if virtual threads are not supported
+   */
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class
+          .getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // the method is missing before virtual threads were introduced, and throws while they
+      // are a preview feature that has not been enabled
+      return null;
+    }
+  }
+}